@@ -0,0 +1,139 @@
+package com.moonymango.snareTest;
+
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.ui.scene3D.batch_rendering.BatchMesh;
+import com.moonymango.snare.ui.scene3D.mesh.SquareMesh;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BatchMeshTest {
+
+    // square mesh: 4 vertices, 6 indices
+    private static final int VERTICES = 4;
+    private static final int INDICES = 6;
+
+    GameStub mGame;
+    SquareMesh mSquare;
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        mSquare = new SquareMesh(mGame);
+    }
+
+    @Test
+    public void testChunks() {
+        // small capacity, buffers have to grow
+        final BatchMesh batch = new BatchMesh(mGame, "batch", 4, 6);
+        final int cnt = BatchMesh.MAX_CHUNK_SIZE + 6;
+        final GameObj[] objs = new GameObj[cnt];
+        for (int i = 0; i < cnt; i++) {
+            objs[i] = new GameObj(mGame, "obj" + i);
+            objs[i].setPosition(i, 0, 0);
+            objs[i].onUpdateTransform(0, 0, 0);
+            batch.add(objs[i], mSquare);
+        }
+        assertEquals(cnt, batch.getMemberCnt());
+        assertEquals(2, batch.getChunkCnt());
+
+        batch.selectChunk(0);
+        assertEquals(BatchMesh.MAX_CHUNK_SIZE, batch.getChunkSize());
+        assertEquals(0, batch.getIndexOffset());
+        assertEquals(BatchMesh.MAX_CHUNK_SIZE * INDICES, batch.getIndexCount());
+
+        batch.selectChunk(1);
+        assertEquals(6, batch.getChunkSize());
+        assertEquals(BatchMesh.MAX_CHUNK_SIZE * INDICES, batch.getIndexOffset());
+        assertEquals(6 * INDICES, batch.getIndexCount());
+        // x translation of members in chunk
+        for (int i = 0; i < 6; i++) {
+            assertEquals(BatchMesh.MAX_CHUNK_SIZE + i, batch.getTransforms()[i * 16 + 12], 0);
+        }
+        assertIndices(batch, BatchMesh.MAX_CHUNK_SIZE * VERTICES);
+
+        // members behind removed one move forward
+        assertTrue(batch.remove(objs[0]));
+        assertFalse(batch.remove(objs[0]));
+        assertEquals(cnt - 1, batch.getMemberCnt());
+        batch.selectChunk(1);
+        assertEquals(5, batch.getChunkSize());
+        assertEquals(BatchMesh.MAX_CHUNK_SIZE + 1, batch.getTransforms()[12], 0);
+        assertIndices(batch, BatchMesh.MAX_CHUNK_SIZE * VERTICES);
+
+        batch.selectChunk(0);
+        assertEquals(1, batch.getTransforms()[12], 0);
+        assertIndices(batch, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateMember() {
+        final BatchMesh batch = new BatchMesh(mGame, "batch", 4, 6);
+        final GameObj obj = new GameObj(mGame, "obj");
+        batch.add(obj, mSquare);
+        batch.add(obj, mSquare);
+    }
+
+    @Test
+    public void testChangedMesh() {
+        final BatchMesh batch = new BatchMesh(mGame, "batch", 2 * VERTICES, 2 * INDICES);
+        final ScaledSquareMesh mesh = new ScaledSquareMesh();
+        batch.add(new GameObj(mGame, "a"), mesh);
+        mesh.setScale(2);
+        batch.add(new GameObj(mGame, "b"), mesh);
+
+        // second member gets the changed data
+        final float[] v = new float[2 * VERTICES * 8];
+        batch.copyVertices(v, 8);
+        for (int i = 0; i < VERTICES; i++) {
+            assertEquals(2 * v[i * 8], v[(VERTICES + i) * 8], 0);
+        }
+    }
+
+    /** Indices of selected chunk are the square indices offset by member. */
+    private void assertIndices(BatchMesh batch, int firstVertex) {
+        final short[] square = new short[INDICES];
+        mSquare.copyIndices(square);
+        final short[] indices = new short[batch.getIndexCount()];
+        batch.copyIndices(indices);
+        for (int i = 0; i < indices.length; i++) {
+            final int member = i / INDICES;
+            assertEquals(firstVertex + member * VERTICES + square[i % INDICES], indices[i]);
+        }
+    }
+
+    private class ScaledSquareMesh extends SquareMesh {
+        float mScale = 1;
+
+        ScaledSquareMesh() {
+            super(BatchMeshTest.this.mGame);
+        }
+
+        void setScale(float scale) {
+            mScale = scale;
+            updateVertices(1);
+        }
+
+        @Override
+        protected FloatBuffer getVertices() {
+            final FloatBuffer b = super.getVertices();
+            for (int i = 0; i < b.capacity(); i += 8) {
+                for (int j = 0; j < 3; j++) {
+                    b.put(i + j, b.get(i + j) * mScale);
+                }
+            }
+            return b;
+        }
+    }
+}
@@ -3,12 +3,17 @@ package com.moonymango.snareTest;
 
 import android.support.test.runner.AndroidJUnit4;
 
+import com.moonymango.snare.events.DefaultEvent;
+import com.moonymango.snare.events.IGameObjNewEvent;
 import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.game.GameObj.GameObjLayer;
 import com.moonymango.snare.physics.BaseBoundingVolume;
 import com.moonymango.snare.physics.BaseBoundingVolume.IntersectionDistance;
 import com.moonymango.snare.physics.BaseBoundingVolume.VolumeType;
 import com.moonymango.snare.physics.BaseSimpleBoundingVolume;
+import com.moonymango.snare.physics.BoundingVolumeTree;
 import com.moonymango.snare.physics.IPhysics;
+import com.moonymango.snare.physics.Raycast;
 import com.moonymango.snare.physics.SimpleAABB;
 import com.moonymango.snare.physics.SimpleCollisionPair;
 import com.moonymango.snare.physics.SimpleCylinderBoundingVolume;
@@ -16,6 +21,7 @@ import com.moonymango.snare.physics.SimpleCylinderBoundingVolume.AxisOrientation
 import com.moonymango.snare.physics.SimplePhysics;
 import com.moonymango.snare.physics.SimpleSphereBoundingVolume;
 import com.moonymango.snare.physics.SimpleSquareBoundingVolume;
+import com.moonymango.snare.ui.scene3D.PerspectiveCamera;
 import com.moonymango.snare.ui.scene3D.mesh.SquareMesh;
 import com.moonymango.snare.util.Geometry;
 
@@ -23,8 +29,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
 public class BoundingVolumeTest {
@@ -563,4 +573,181 @@ public class BoundingVolumeTest {
         assertNull(d);
     }
 
+    @Test
+    public void testRaycastHierarchy()
+    {
+        final GameObjLayer layerA = new GameObjLayer("a", 1);
+        final GameObjLayer layerB = new GameObjLayer("b", 2);
+        final GameObj[] objs = new GameObj[10];
+
+        // row of spheres along x axis, alternating layers
+        for (int i = 0; i < objs.length; i++) {
+            SimpleSphereBoundingVolume bv = (SimpleSphereBoundingVolume) mPhysics.createBoundingVolume(VolumeType.SPHERE);
+            bv.setDimensions(1);
+            objs[i] = new GameObj(mGame, "sphere" + i, i % 2 == 0 ? layerA : layerB);
+            objs[i].addComponent(bv);
+            objs[i].setPosition(5 * (i + 1), 0, 0);
+            objs[i].onUpdateTransform(0, 0, 0);
+            DefaultEvent e = new DefaultEvent(mGame);
+            e.setType(IGameObjNewEvent.EVENT_TYPE);
+            e.setGameObj(objs[i]);
+            mPhysics.handleEvent(e);
+        }
+
+        mS[0] = 0;
+        mS[1] = 0;
+        mS[2] = 0;
+        mS[3] = 1;
+        mV[0] = 1;
+        mV[1] = 0;
+        mV[2] = 0;
+        mV[3] = 0;
+
+        Raycast r = mPhysics.doRaycast(mS, mV, GameObj.DEFAULT_OBJ_LAYER);
+        assertEquals(objs[0], r.getNearestHit());
+        assertEquals(4, r.getNearestHitPoint()[0], Geometry.PRECISION);
+        r.recycle();
+
+        // first hit mode has to find same object
+        r = mPhysics.doRaycastFirstHit(mS, mV, GameObj.DEFAULT_OBJ_LAYER);
+        assertEquals(objs[0], r.getNearestHit());
+        r.recycle();
+
+        // layer mask skips objects of layer a
+        r = mPhysics.doRaycastFirstHit(mS, mV, layerB);
+        assertEquals(objs[1], r.getNearestHit());
+        r.recycle();
+
+        // move first object out of the way, tree has to follow
+        objs[0].setPosition(5, 10, 0);
+        objs[0].onUpdateTransform(0, 0, 0);
+        mPhysics.tick(0, 0, 0);
+        r = mPhysics.doRaycastFirstHit(mS, mV, GameObj.DEFAULT_OBJ_LAYER);
+        assertEquals(objs[1], r.getNearestHit());
+        r.recycle();
+
+        // moved after a raycast in the same frame, without tick
+        objs[1].setPosition(10, 10, 0);
+        objs[1].onUpdateTransform(0, 0, 0);
+        r = mPhysics.doRaycastFirstHit(mS, mV, GameObj.DEFAULT_OBJ_LAYER);
+        assertEquals(objs[2], r.getNearestHit());
+        r.recycle();
+
+        // ray pointing away from all objects
+        mV[0] = -1;
+        r = mPhysics.doRaycastFirstHit(mS, mV, GameObj.DEFAULT_OBJ_LAYER);
+        assertNull(r.getNearestHit());
+        r.recycle();
+    }
+
+    @Test
+    public void testFrustrumCulling()
+    {
+        // camera at origin looking along -z, 90° field of view, so the
+        // frustrum is 20 units wide at z = -10
+        final PerspectiveCamera cam = new PerspectiveCamera(false);
+        cam.setFieldOfView(90);
+        final GameObj camObj = new GameObj(mGame, "camera");
+        camObj.addComponent(cam);
+        cam.lookAt(0, 0, -1, 0, 1, 0);
+        camObj.onUpdateTransform(0, 0, 0);
+        cam.onPreDraw();
+
+        final SimpleAABB box = (SimpleAABB) mPhysics.createBoundingVolume(VolumeType.BOX);
+        box.setDimensions(new float[] {-5, -1, -1, 1}, new float[] {5, 1, 1, 1});
+        final SimpleSphereBoundingVolume sphere = (SimpleSphereBoundingVolume)
+                mPhysics.createBoundingVolume(VolumeType.SPHERE);
+        sphere.setDimensions(1);
+        final SimpleCylinderBoundingVolume cylinder = (SimpleCylinderBoundingVolume)
+                mPhysics.createBoundingVolume(VolumeType.CYLINDER);
+        cylinder.setDimensions(1, 2);
+        final SimpleSquareBoundingVolume square = (SimpleSquareBoundingVolume)
+                mPhysics.createBoundingVolume(VolumeType.SQUARE);
+        square.setDimensions(new SquareMesh(mGame));
+
+        final BaseSimpleBoundingVolume[] volumes = {box, sphere, cylinder, square};
+        for (BaseSimpleBoundingVolume bv : volumes) {
+            final GameObj obj = new GameObj(mGame, "bv");
+            obj.addComponent(bv);
+            assertInFrustrum(true, bv, cam, 0, 0, -10);
+            // behind camera and beyond far plane
+            assertInFrustrum(false, bv, cam, 0, 0, 10);
+            assertInFrustrum(false, bv, cam, 0, 0, -200);
+            // intersecting right plane and outside
+            assertInFrustrum(true, bv, cam, 10.5f, 0, -10);
+            assertInFrustrum(false, bv, cam, 0, 30, -10);
+        }
+
+        // box is tested as oriented box, not via its bounding sphere,
+        // which would still intersect the frustrum after rotation
+        final GameObj obj = box.getGameObj();
+        assertInFrustrum(true, box, cam, 14, 0, -10);
+        obj.rotate(0, 0, 1, 90);
+        assertInFrustrum(false, box, cam, 14, 0, -10);
+    }
+
+    @Test
+    public void testTreeCulling()
+    {
+        final PerspectiveCamera cam = new PerspectiveCamera(false);
+        cam.setFieldOfView(90);
+        final GameObj camObj = new GameObj(mGame, "camera");
+        camObj.addComponent(cam);
+        cam.lookAt(0, 0, -1, 0, 1, 0);
+        camObj.onUpdateTransform(0, 0, 0);
+        cam.onPreDraw();
+
+        // tree query has to return same volumes as testing each volume
+        final Random rnd = new Random(42);
+        final BoundingVolumeTree tree = new BoundingVolumeTree();
+        final int cnt = 500;
+        final BaseSimpleBoundingVolume[] volumes = new BaseSimpleBoundingVolume[cnt];
+        final int[] leaves = new int[cnt];
+        for (int i = 0; i < cnt; i++) {
+            final SimpleSphereBoundingVolume bv = (SimpleSphereBoundingVolume)
+                    mPhysics.createBoundingVolume(VolumeType.SPHERE);
+            bv.setDimensions(0.5f + rnd.nextFloat());
+            final GameObj obj = new GameObj(mGame, "bv" + i);
+            obj.addComponent(bv);
+            obj.setPosition(rnd.nextFloat() * 200 - 100, rnd.nextFloat() * 200 - 100,
+                    rnd.nextFloat() * 200 - 100);
+            obj.onUpdateTransform(0, 0, 0);
+            volumes[i] = bv;
+            leaves[i] = tree.add(bv);
+        }
+
+        final ArrayList<BaseSimpleBoundingVolume> visible = new ArrayList<>();
+        for (int round = 0; round < 2; round++) {
+            visible.clear();
+            tree.cull(cam, visible);
+            int expected = 0;
+            for (int i = 0; i < cnt; i++) {
+                if (volumes[i].isInFrustrum(cam)) {
+                    expected++;
+                    assertTrue(visible.contains(volumes[i]));
+                }
+            }
+            assertEquals(expected, visible.size());
+            assertTrue(expected > 0 && expected < cnt);
+
+            // move objects and update tree
+            for (int i = 0; i < cnt; i++) {
+                final GameObj obj = volumes[i].getGameObj();
+                final float[] pos = obj.getPosition();
+                obj.setPosition(pos[0], pos[1], pos[2] - 20);
+                obj.onUpdateTransform(round + 1, 0, 0);
+                tree.move(leaves[i]);
+            }
+        }
+    }
+
+    private static void assertInFrustrum(boolean expected, BaseSimpleBoundingVolume bv,
+            PerspectiveCamera cam, float x, float y, float z)
+    {
+        final GameObj obj = bv.getGameObj();
+        obj.setPosition(x, y, z);
+        obj.onUpdateTransform(0, 0, 0);
+        assertEquals(expected, bv.isInFrustrum(cam));
+    }
+
 }
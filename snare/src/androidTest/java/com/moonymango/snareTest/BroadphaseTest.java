@@ -0,0 +1,168 @@
+package com.moonymango.snareTest;
+
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.physics.BaseBoundingVolume.VolumeType;
+import com.moonymango.snare.physics.BaseSimpleBoundingVolume;
+import com.moonymango.snare.physics.BruteForceBroadphase;
+import com.moonymango.snare.physics.IBroadphase;
+import com.moonymango.snare.physics.SimpleCollisionPair;
+import com.moonymango.snare.physics.SimplePhysics;
+import com.moonymango.snare.physics.SimpleSphereBoundingVolume;
+import com.moonymango.snare.physics.SweepAndPruneBroadphase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BroadphaseTest {
+
+    /** Every n-th volume is a collision checker (e.g. projectiles). */
+    private static final int CHECKER_RATIO = 4;
+    /** Edge length of space per volume, keeps density constant. */
+    private static final float SPACE_PER_VOLUME = 4;
+
+    GameStub mGame;
+    SimplePhysics mPhysics;
+    SimpleCollisionPair mPair;
+    final ArrayList<BaseSimpleBoundingVolume> mVolumes = new ArrayList<>();
+    final ArrayList<BaseSimpleBoundingVolume> mCandidates = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        mPhysics = new SimplePhysics(mGame);
+        mPair = new SimpleCollisionPair(mGame);
+    }
+
+    @Test
+    public void testCandidates() {
+        createVolumes(500);
+        final IBroadphase bf = new BruteForceBroadphase();
+        final IBroadphase sap = new SweepAndPruneBroadphase();
+        for (int i = 0; i < mVolumes.size(); i++) {
+            bf.add(mVolumes.get(i));
+            sap.add(mVolumes.get(i));
+        }
+
+        // every collision found without pruning must also be found
+        // by sweep and prune
+        final int bfCollisions = countCollisions(bf);
+        final int sapCollisions = countCollisions(sap);
+        assertTrue(bfCollisions > 0);
+        assertEquals(bfCollisions, sapCollisions);
+
+        // move some objects and try again
+        for (int i = 0; i < mVolumes.size(); i += 3) {
+            final GameObj obj = mVolumes.get(i).getGameObj();
+            final float[] p = obj.getPosition();
+            obj.setPosition(p[0] + 3, p[1] - 2, p[2]);
+            obj.onUpdateTransform(0, 0, 0);
+            mVolumes.get(i).onUpdate(0, 0, 0);
+        }
+        assertEquals(countCollisions(bf), countCollisions(sap));
+
+        // removed volumes must not show up as candidates
+        final BaseSimpleBoundingVolume removed = mVolumes.get(0);
+        sap.remove(removed);
+        assertEquals(mVolumes.size() - 1, sap.getVolumeCnt());
+        sap.update();
+        for (int i = 0; i < mVolumes.size(); i++) {
+            mCandidates.clear();
+            sap.query(mVolumes.get(i), mCandidates);
+            assertTrue(!mCandidates.contains(removed));
+        }
+    }
+
+    @Test
+    public void testBenchmark() {
+        final int[] sizes = {100, 1000, 5000};
+        for (int size : sizes) {
+            createVolumes(size);
+            benchmark("brute force", new BruteForceBroadphase(), size);
+            benchmark("sweep and prune", new SweepAndPruneBroadphase(), size);
+        }
+    }
+
+    private void benchmark(String name, IBroadphase bp, int size) {
+        for (int i = 0; i < mVolumes.size(); i++) {
+            bp.add(mVolumes.get(i));
+        }
+        final long start = SystemClock.elapsedRealtimeNanos();
+        final int pairs = countPairs(bp);
+        final long time = SystemClock.elapsedRealtimeNanos() - start;
+        Log.i(IGame.ENGINE_NAME, name + ", " + size + " volumes: " + pairs + " pairs, "
+                + (time / 1000) + " us");
+    }
+
+    /** Performs collision check like {@link SimplePhysics}.tick() and returns pair count. */
+    private int countPairs(IBroadphase bp) {
+        bp.update();
+        int pairs = 0;
+        for (int i = 0; i < mVolumes.size(); i += CHECKER_RATIO) {
+            final BaseSimpleBoundingVolume bvA = mVolumes.get(i);
+            mCandidates.clear();
+            bp.query(bvA, mCandidates);
+            for (int j = mCandidates.size() - 1; j >= 0; j--) {
+                final BaseSimpleBoundingVolume bvB = mCandidates.get(j);
+                if (bvA == bvB || !bvB.getGameObj().getLayer().covers(bvA.getGameObj().getLayer())) {
+                    continue;
+                }
+                mPair.init(bvA, bvB);
+                mPair.isCollision();
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    private int countCollisions(IBroadphase bp) {
+        bp.update();
+        int collisions = 0;
+        for (int i = 0; i < mVolumes.size(); i += CHECKER_RATIO) {
+            final BaseSimpleBoundingVolume bvA = mVolumes.get(i);
+            mCandidates.clear();
+            bp.query(bvA, mCandidates);
+            for (int j = mCandidates.size() - 1; j >= 0; j--) {
+                final BaseSimpleBoundingVolume bvB = mCandidates.get(j);
+                if (bvA == bvB) {
+                    continue;
+                }
+                mPair.init(bvA, bvB);
+                if (mPair.isCollision()) {
+                    collisions++;
+                }
+            }
+        }
+        return collisions;
+    }
+
+    private void createVolumes(int cnt) {
+        final Random rnd = new Random(42);
+        final float edge = SPACE_PER_VOLUME * (float) Math.cbrt(cnt);
+        mVolumes.clear();
+        for (int i = 0; i < cnt; i++) {
+            final SimpleSphereBoundingVolume bv = (SimpleSphereBoundingVolume)
+                    mPhysics.createBoundingVolume(VolumeType.SPHERE);
+            bv.setDimensions(0.5f + rnd.nextFloat());
+            final GameObj obj = new GameObj(mGame, "volume" + i);
+            obj.addComponent(bv);
+            obj.setPosition(rnd.nextFloat() * edge, rnd.nextFloat() * edge, rnd.nextFloat() * edge);
+            obj.setScale(0.5f + rnd.nextFloat());
+            obj.onUpdateTransform(0, 0, 0);
+            mVolumes.add(bv);
+        }
+    }
+}
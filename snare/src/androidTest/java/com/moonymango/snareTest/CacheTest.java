@@ -0,0 +1,189 @@
+package com.moonymango.snareTest;
+
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.util.Cache;
+import com.moonymango.snare.util.CacheItem;
+import com.moonymango.snare.util.CacheItemDescriptor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CacheTest {
+
+    GameStub mGame;
+    TestCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        mCache = new TestCache(mGame);
+    }
+
+    @Test
+    public void testCounters() {
+        final TestDescr a = new TestDescr(mGame, "a");
+        final TestItem h1 = a.get(mCache);
+        final TestItem h2 = a.get(mCache);
+        assertSame(h1, h2);
+        new TestDescr(mGame, "b").get(mCache);
+
+        assertEquals(1, mCache.getHitCnt());
+        assertEquals(2, mCache.getMissCnt());
+        assertEquals(3, mCache.getHandlesCnt());
+        assertEquals(2, mCache.getItemCnt());
+
+        mCache.resetStats();
+        assertEquals(0, mCache.getHitCnt());
+        assertEquals(0, mCache.getMissCnt());
+    }
+
+    @Test
+    public void testEvictionOrder() {
+        final TestDescr a = new TestDescr(mGame, "a");
+        final TestDescr b = new TestDescr(mGame, "b");
+        final TestDescr c = new TestDescr(mGame, "c");
+        final TestItem ha = a.get(mCache);
+        final TestItem hb = b.get(mCache);
+        final TestItem hc = c.get(mCache);
+
+        // items with handles cannot be evicted
+        assertFalse(mCache.evict());
+
+        a.releaseHandle(ha);
+        c.releaseHandle(hc);
+        b.releaseHandle(hb);
+
+        // reacquiring takes c out of the eviction list
+        final TestItem hc2 = c.get(mCache);
+        assertSame(hc, hc2);
+
+        assertTrue(mCache.evict());
+        assertTrue(ha.mRemoved);
+        assertTrue(mCache.evict());
+        assertTrue(hb.mRemoved);
+        assertFalse(mCache.evict());
+        assertFalse(hc.mRemoved);
+        assertEquals(2, mCache.getEvictionCnt());
+        assertEquals(1, mCache.getItemCnt());
+
+        // evicted item gets created again
+        assertNotSame(ha, a.get(mCache));
+        assertEquals(4, mCache.getMissCnt());
+    }
+
+    @Test
+    public void testPinnedItem() {
+        final TestDescr a = new TestDescr(mGame, "a");
+        final TestDescr b = new TestDescr(mGame, "b");
+        final TestItem ha = a.get(mCache);
+        final TestItem hb = b.get(mCache);
+        ha.mPinned = true;
+        a.releaseHandle(ha);
+        b.releaseHandle(hb);
+
+        // items refusing removal are skipped
+        assertTrue(mCache.evict());
+        assertTrue(hb.mRemoved);
+        assertFalse(mCache.evict());
+        assertEquals(1, mCache.getItemCnt());
+    }
+
+    @Test
+    public void testManualEviction() {
+        final TestDescr a = new TestDescr(mGame, "a");
+        final TestDescr b = new TestDescr(mGame, "b");
+        final TestItem ha = a.get(mCache);
+        final TestItem hb = b.get(mCache);
+        ha.mPinned = true;
+        assertSame(null, mCache.lru());
+        a.releaseHandle(ha);
+        b.releaseHandle(hb);
+
+        // pinned items are returned as well, removal is up to the caller
+        assertSame(ha, mCache.lru());
+        mCache.evict(ha);
+        assertFalse(ha.mRemoved);
+        assertSame(hb, mCache.lru());
+        assertEquals(1, mCache.getEvictionCnt());
+        assertEquals(1, mCache.getItemCnt());
+    }
+
+    private static class TestCache extends Cache<TestCache, TestDescr, TestItem> {
+
+        TestCache(IGame game) {
+            super(game, CleanUpPolicy.USER_DEFINED);
+        }
+
+        boolean evict() {
+            return freeLeastRecentlyUsed();
+        }
+
+        TestItem lru() {
+            return getLeastRecentlyUsed(null);
+        }
+
+        void evict(TestItem item) {
+            evictItem(item);
+        }
+
+        @Override
+        protected boolean allowItemCreation(TestDescr descr) {
+            return true;
+        }
+    }
+
+    private static class TestDescr extends CacheItemDescriptor<TestCache, TestDescr, TestItem> {
+
+        TestDescr(IGame game, String name) {
+            super(game, name, null);
+        }
+
+        TestItem get(TestCache cache) {
+            return getHandle(cache);
+        }
+
+        @Override
+        protected TestItem createCacheItem() {
+            return new TestItem(this);
+        }
+    }
+
+    private static class TestItem extends CacheItem<TestCache, TestDescr, TestItem> {
+
+        boolean mPinned;
+        boolean mRemoved;
+
+        TestItem(TestDescr descr) {
+            super(descr);
+        }
+
+        @Override
+        public void onAddedToCache() {}
+
+        @Override
+        public void onRefCntIncr() {}
+
+        @Override
+        public void onRefCntDecr() {}
+
+        @Override
+        public boolean onRemoveFromCachePending() {
+            if (mPinned) {
+                return false;
+            }
+            mRemoved = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.moonymango.snareTest;
+
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.moonymango.snare.events.DefaultEventPool;
+import com.moonymango.snare.events.EventManager;
+import com.moonymango.snare.events.EventManager.DispatchMode;
+import com.moonymango.snare.events.EventManager.EventPriority;
+import com.moonymango.snare.events.EventManager.IEventListener;
+import com.moonymango.snare.events.EventManager.IEventType;
+import com.moonymango.snare.events.IEvent;
+import com.moonymango.snare.events.IGameStateChangedEvent;
+import com.moonymango.snare.events.IUserEvent;
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.util.Pool.OverflowPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class EventManagerTest {
+
+    GameStub mGame;
+    EventManager mEM;
+    final ArrayList<Integer> mReceived = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        // small queue to test overflow
+        mEM = new EventManager(new DefaultEventPool(mGame), 8);
+    }
+
+    @Test
+    public void testDeliveryOrder() {
+        mEM.addListener(IUserEvent.EVENT_TYPE, new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                final int value = (Integer) ((IUserEvent) event).getData();
+                mReceived.add(value);
+                if (value == 0) {
+                    // events queued by listeners go to the next tick
+                    queue(100);
+                }
+                return false;
+            }
+        });
+
+        for (int i = 0; i < 20; i++) {
+            queue(i);
+        }
+        mEM.tick(0);
+        assertEquals(20, mReceived.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) mReceived.get(i));
+        }
+
+        mReceived.clear();
+        mEM.tick(0);
+        assertEquals(1, mReceived.size());
+        assertEquals(100, (int) mReceived.get(0));
+
+        mReceived.clear();
+        mEM.tick(0);
+        assertTrue(mReceived.isEmpty());
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        final int producers = 4;
+        final int events = 10000;
+        final int[] last = new int[producers];
+        mEM = new EventManager(new DefaultEventPool(mGame));
+        mEM.addListener(IUserEvent.EVENT_TYPE, new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                final int[] data = (int[]) ((IUserEvent) event).getData();
+                // events of a single producer have to arrive in order
+                assertEquals(last[data[0]] + 1, data[1]);
+                last[data[0]] = data[1];
+                return false;
+            }
+        });
+
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            last[p] = -1;
+            final int id = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < events; i++) {
+                        final IUserEvent e = mEM.obtain(IUserEvent.EVENT_TYPE);
+                        e.setUserData(new int[] {id, i});
+                        mEM.queueEvent(e);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread t : threads) {
+                running |= t.isAlive();
+            }
+            mEM.tick(0);
+        }
+        mEM.tick(0);
+        for (int p = 0; p < producers; p++) {
+            assertEquals(events - 1, last[p]);
+        }
+    }
+
+    @Test
+    public void testTimeBudget() {
+        final int events = 100;
+        mEM = new EventManager(new DefaultEventPool(mGame));
+        assertEquals(EventPriority.HIGH, mEM.getPriority(IGameStateChangedEvent.EVENT_TYPE));
+        assertEquals(EventPriority.NORMAL, mEM.getPriority(IUserEvent.EVENT_TYPE));
+
+        final int[] stateChanges = new int[1];
+        mEM.addListener(IUserEvent.EVENT_TYPE, new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                mReceived.add((Integer) ((IUserEvent) event).getData());
+                // each event takes 1 ms
+                SystemClock.sleep(1);
+                return false;
+            }
+        });
+        mEM.addListener(IGameStateChangedEvent.EVENT_TYPE, new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                // user events queued earlier must not be dispatched before
+                assertTrue(mReceived.isEmpty());
+                stateChanges[0]++;
+                return false;
+            }
+        });
+
+        for (int i = 0; i < events; i++) {
+            queue(i);
+        }
+        mEM.queueEvent(mEM.obtain(IGameStateChangedEvent.EVENT_TYPE));
+
+        // high priority event is dispatched first, user events get deferred
+        assertFalse(mEM.tick(10));
+        assertEquals(1, stateChanges[0]);
+        assertTrue(mReceived.size() > 0);
+        assertTrue(mReceived.size() < events);
+        assertEquals(mReceived.size() + 1, mEM.getDispatchedCnt());
+        assertEquals(events - mReceived.size(), mEM.getDeferredCnt());
+
+        // deferred events arrive in order, ahead of newly queued ones
+        queue(events);
+        while (!mEM.tick(10));
+        assertEquals(0, mEM.getDeferredCnt());
+        assertEquals(events + 1, mReceived.size());
+        for (int i = 0; i <= events; i++) {
+            assertEquals(i, (int) mReceived.get(i));
+        }
+
+        // low priority events come last
+        mReceived.clear();
+        mEM.setPriority(IUserEvent.EVENT_TYPE, EventPriority.LOW);
+        queue(0);
+        mEM.queueEvent(mEM.obtain(IGameStateChangedEvent.EVENT_TYPE));
+        assertTrue(mEM.tick(0));
+        assertEquals(2, stateChanges[0]);
+        assertEquals(1, mReceived.size());
+    }
+
+    @Test
+    public void testEnqueueLatency() throws InterruptedException {
+        final int frames = 200;
+        mEM = new EventManager(new DefaultEventPool(mGame));
+        // listener simulates long dispatch on game thread
+        mEM.addListener(IUserEvent.EVENT_TYPE, new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                final long until = SystemClock.elapsedRealtimeNanos() + 20000;
+                while (SystemClock.elapsedRealtimeNanos() < until);
+                return false;
+            }
+        });
+
+        final long[] latency = new long[2];  // max, sum
+        final int[] cnt = new int[1];
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.interrupted()) {
+                    final long start = SystemClock.elapsedRealtimeNanos();
+                    final IUserEvent e = mEM.obtain(IUserEvent.EVENT_TYPE);
+                    mEM.queueEvent(e);
+                    final long t = SystemClock.elapsedRealtimeNanos() - start;
+                    latency[0] = Math.max(latency[0], t);
+                    latency[1] += t;
+                    cnt[0]++;
+                    SystemClock.sleep(1);
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < frames; i++) {
+            mEM.tick(0);
+            SystemClock.sleep(2);
+        }
+        producer.interrupt();
+        producer.join();
+
+        Log.i(IGame.ENGINE_NAME, "enqueue latency: " + cnt[0] + " events, max "
+                + latency[0] / 1000 + " us, avg " + latency[1] / Math.max(cnt[0], 1) + " ns");
+    }
+
+    @Test
+    public void testReturnNullPool() {
+        final DefaultEventPool pool = new DefaultEventPool(mGame);
+        pool.setMaxCapacity(1, OverflowPolicy.RETURN_NULL);
+        try {
+            new EventManager(pool);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // policy changed after construction
+        final DefaultEventPool pool2 = new DefaultEventPool(mGame);
+        final EventManager em = new EventManager(pool2);
+        pool2.setMaxCapacity(1, OverflowPolicy.RETURN_NULL);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                em.obtain(IUserEvent.EVENT_TYPE);
+            }
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testArrayDispatch() {
+        assertEquals(DispatchMode.ARRAY, mEM.getDispatchMode());
+        final IEventListener first = new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                mReceived.add(1);
+                return false;
+            }
+        };
+        final IEventListener second = new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                mReceived.add(2);
+                // removing a listener while dispatching must not affect current event
+                mEM.removeListener(IUserEvent.EVENT_TYPE, first);
+                return true;
+            }
+        };
+        final IEventListener third = new IEventListener() {
+            @Override
+            public boolean handleEvent(IEvent event) {
+                mReceived.add(3);
+                return false;
+            }
+        };
+        assertTrue(mEM.addListener(IUserEvent.EVENT_TYPE, first));
+        assertTrue(mEM.addListener(IUserEvent.EVENT_TYPE, second));
+        assertTrue(mEM.addListener(IUserEvent.EVENT_TYPE, third));
+        assertFalse(mEM.addListener(IUserEvent.EVENT_TYPE, first));
+        assertEquals(3, mEM.getListenerCnt());
+
+        // second listener consumes the event
+        mEM.triggerEvent(mEM.obtain(IUserEvent.EVENT_TYPE));
+        assertEquals(2, mReceived.size());
+        assertEquals(1, (int) mReceived.get(0));
+        assertEquals(2, (int) mReceived.get(1));
+
+        mReceived.clear();
+        mEM.triggerEvent(mEM.obtain(IUserEvent.EVENT_TYPE));
+        assertEquals(1, mReceived.size());
+        assertEquals(2, (int) mReceived.get(0));
+
+        // event types without listeners
+        mEM.triggerEvent(mEM.obtain(new BenchmarkEventType(0)));
+        assertEquals(1, mReceived.size());
+    }
+
+    @Test
+    public void testDispatchBenchmark() {
+        benchmarkDispatch(DispatchMode.MAP);
+        benchmarkDispatch(DispatchMode.ARRAY);
+    }
+
+    private void benchmarkDispatch(DispatchMode mode) {
+        final int types = 50;
+        final int listeners = 500;
+        final int events = 100000;
+        final int[] cnt = new int[1];
+        mEM = new EventManager(new DefaultEventPool(mGame), 1024, mode);
+
+        final IEventType[] t = new IEventType[types];
+        for (int i = 0; i < types; i++) {
+            t[i] = new BenchmarkEventType(i);
+        }
+        for (int i = 0; i < listeners; i++) {
+            mEM.addListener(t[i % types], new IEventListener() {
+                @Override
+                public boolean handleEvent(IEvent event) {
+                    cnt[0]++;
+                    return false;
+                }
+            });
+        }
+
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < events; i++) {
+            mEM.triggerEvent(mEM.obtain(t[i % types]));
+        }
+        final long time = SystemClock.elapsedRealtimeNanos() - start;
+        assertEquals(events * (listeners / types), cnt[0]);
+        Log.i(IGame.ENGINE_NAME, mode + " dispatch, " + types + " types, " + listeners
+                + " listeners: " + events * 1000000L / Math.max(time, 1) + " events/ms");
+    }
+
+    private void queue(int value) {
+        final IUserEvent e = mEM.obtain(IUserEvent.EVENT_TYPE);
+        e.setUserData(value);
+        mEM.queueEvent(e);
+    }
+
+    private static class BenchmarkEventType implements IEventType {
+        private final int mId;
+
+        BenchmarkEventType(int id) {
+            mId = id;
+        }
+
+        @Override
+        public String getName() {
+            return "BENCHMARK_" + mId;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.moonymango.snareTest;
+
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.moonymango.snare.game.FrameProfiler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FrameProfilerTest {
+
+    private static final int MS = 1000000;
+
+    @Test
+    public void testSpans() {
+        final FrameProfiler p = new FrameProfiler(64);
+        for (int f = 0; f < 10; f++) {
+            p.onFrame();
+            p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.UPDATE);
+            p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.PHYSICS);
+            // every 5th frame is slow
+            SystemClock.sleep(f % 5 == 4 ? 20 : 2);
+            p.end(FrameProfiler.TRACK_GAME);
+            p.end(FrameProfiler.TRACK_GAME);
+
+            p.begin(FrameProfiler.TRACK_RENDER, FrameProfiler.DRAW);
+            p.end(FrameProfiler.TRACK_RENDER);
+        }
+        p.onFrame();
+
+        assertEquals(3, p.getNameCnt());
+        assertTrue(p.getLastFrameTime(FrameProfiler.PHYSICS) >= 20 * MS);
+        assertTrue(p.getLastFrameTime(FrameProfiler.UPDATE)
+                >= p.getLastFrameTime(FrameProfiler.PHYSICS));
+
+        final long p50 = p.getPercentile(FrameProfiler.PHYSICS, 50);
+        assertTrue(p50 >= 2 * MS);
+        assertTrue(p50 < 20 * MS);
+        assertTrue(p.getPercentile(FrameProfiler.PHYSICS, 99) >= 20 * MS);
+        assertEquals(0, p.getPercentile("unknown", 50));
+    }
+
+    @Test
+    public void testTraceExport() throws Exception {
+        final FrameProfiler p = new FrameProfiler(8);
+        for (int f = 0; f < 10; f++) {
+            p.onFrame();
+            p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.UPDATE);
+            p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.LOGIC);
+            p.end(FrameProfiler.TRACK_GAME);
+            p.end(FrameProfiler.TRACK_GAME);
+        }
+        // open span is not exported
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.UPDATE);
+
+        StringWriter w = new StringWriter();
+        assertEquals(4, p.writeTrace(w, 2));
+        assertTrue(w.toString().startsWith("{\"traceEvents\":["));
+        assertTrue(w.toString().contains("\"name\":\"logic\",\"ph\":\"X\""));
+
+        // ring buffer holds 8 spans only
+        w = new StringWriter();
+        assertEquals(7, p.writeTrace(w, 100));
+    }
+
+    @Test
+    public void testDisabled() {
+        final FrameProfiler p = new FrameProfiler(0);
+        p.onFrame();
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.UPDATE);
+        p.end(FrameProfiler.TRACK_GAME);
+        assertEquals(0, p.getNameCnt());
+        assertEquals(0, p.getFrame());
+    }
+}
@@ -0,0 +1,155 @@
+package com.moonymango.snareTest;
+
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.moonymango.snare.game.GameSettings;
+import com.moonymango.snare.opengl.BaseGLObj.GLObjState;
+import com.moonymango.snare.opengl.BufferObj;
+import com.moonymango.snare.opengl.BufferObj.IBufferConfigurationSetup;
+import com.moonymango.snare.opengl.BufferObj.IBufferDataProvider;
+import com.moonymango.snare.opengl.BufferObj.IBufferUpdateSetup;
+import com.moonymango.snare.opengl.GLObjCache;
+import com.moonymango.snare.opengl.GLObjDescriptor;
+import com.moonymango.snare.opengl.GLObjDescriptor.GLObjType;
+import com.moonymango.snare.opengl.ProgramObj;
+import com.moonymango.snare.opengl.ProgramObj.ILocationHolder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.FloatBuffer;
+
+import static android.opengl.GLES20.GL_DYNAMIC_DRAW;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class GLObjCacheTest {
+
+    GameStub mGame;
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        mGame.mSettings = new GameSettings(mGame);
+        mGame.mSettings.RENDER_OPTIONS.GPU_MEMORY_BUDGET = 1024;
+        mGame.mGLObjCache = new GLObjCache(mGame);
+    }
+
+    @Test
+    public void testRetainedBufferNewProvider() {
+        final GLObjDescriptor d = new GLObjDescriptor(mGame, "buffer", GLObjType.BUFFER);
+        final Provider a = new Provider(GL_STATIC_DRAW);
+        final Provider b = new Provider(GL_STATIC_DRAW);
+
+        final BufferObj obj = (BufferObj) d.getHandle();
+        assertFalse(obj.isConfigured());
+        obj.configure(a);
+        load(obj);
+
+        // stays in GPU, but without the provider of the released owner
+        d.releaseHandle(obj);
+        assertTrue(obj.isLoaded());
+        assertFalse(obj.isConfigured());
+        assertNull(obj.getProvider());
+
+        // new owner takes over the loaded buffer
+        final BufferObj obj2 = (BufferObj) d.getHandle();
+        assertSame(obj, obj2);
+        assertFalse(obj2.isConfigured());
+        obj2.configure(b);
+        assertTrue(obj2.isConfigured());
+        assertTrue(obj2.isLoaded());
+        assertSame(b, obj2.getProvider());
+        assertEquals(1, mGame.mGLObjCache.getItemCnt());
+
+        // size may differ from the loaded content, so the first update
+        // of the new owner loads the complete buffer
+        obj2.update(1);
+        assertEquals(GLObjState.TO_LOAD, obj2.getState());
+        load(obj2);
+        obj2.update(1);
+        assertEquals(GLObjState.TO_UPDATE, obj2.getState());
+    }
+
+    @Test
+    public void testUpdatableBufferNotRetained() {
+        final GLObjDescriptor d = new GLObjDescriptor(mGame, "dynamic", GLObjType.BUFFER);
+        final BufferObj obj = (BufferObj) d.getHandle();
+        obj.configure(new Provider(GL_DYNAMIC_DRAW));
+        load(obj);
+        d.releaseHandle(obj);
+        assertEquals(GLObjState.TO_UNLOAD, obj.getState());
+
+        // static usage, but content changed by owner
+        final GLObjDescriptor d2 = new GLObjDescriptor(mGame, "updated", GLObjType.BUFFER);
+        final BufferObj obj2 = (BufferObj) d2.getHandle();
+        obj2.configure(new Provider(GL_STATIC_DRAW));
+        load(obj2);
+        obj2.update(1);
+        obj2.setState(GLObjState.LOADED);
+        d2.releaseHandle(obj2);
+        assertEquals(GLObjState.TO_UNLOAD, obj2.getState());
+    }
+
+    @Test
+    public void testBufferWithoutBudget() {
+        mGame.mSettings.RENDER_OPTIONS.GPU_MEMORY_BUDGET = 0;
+        final GLObjDescriptor d = new GLObjDescriptor(mGame, "buffer", GLObjType.BUFFER);
+        final BufferObj obj = (BufferObj) d.getHandle();
+        obj.configure(new Provider(GL_STATIC_DRAW));
+        load(obj);
+
+        d.releaseHandle(obj);
+        assertEquals(GLObjState.TO_UNLOAD, obj.getState());
+    }
+
+    @Test
+    public void testProgramNotRetained() {
+        final GLObjDescriptor d = new GLObjDescriptor(mGame, "program", GLObjType.PROGRAM);
+        final ProgramObj obj = (ProgramObj) d.getHandle();
+        obj.configure("vertex", "fragment", new ILocationHolder() {
+            @Override
+            public void extractLocations(String programName, int prog) {}
+        });
+        obj.setState(GLObjState.LOADED);
+
+        // location holder of next owner needs the program to be linked again
+        d.releaseHandle(obj);
+        assertEquals(GLObjState.TO_UNLOAD, obj.getState());
+    }
+
+    /** 
+     * Does what GLObjCache does on GL thread. There is no GL context in
+     * tests, so GL calls have no effect. 
+     */
+    private static void load(BufferObj obj) {
+        obj.onLoad();
+        obj.setState(GLObjState.LOADED);
+    }
+
+    private static class Provider implements IBufferDataProvider {
+        private final int mUsage;
+        private final FloatBuffer mData = BufferObj.convert2FloatBuffer(new float[16]);
+
+        Provider(int usage) {
+            mUsage = usage;
+        }
+
+        @Override
+        public void getConfigurationSetup(String name, IBufferConfigurationSetup setup) {
+            setup.setBuffer(mData);
+            setup.enableAutoSize(true);
+            setup.setUsage(mUsage);
+        }
+
+        @Override
+        public void getUpdateSetup(String name, int pass, IBufferUpdateSetup setup) {}
+    }
+}
@@ -2,16 +2,22 @@ package com.moonymango.snareTest;
 
 
 import android.opengl.Matrix;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
 
 import com.moonymango.snare.game.GameObj;
 import com.moonymango.snare.game.GameObj.GameObjLayer;
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.game.TransformStore;
 import com.moonymango.snare.util.Geometry;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 
@@ -84,6 +90,121 @@ public class GameObjTest  {
         
     }
 
+    @Test
+    public void testTransformStore() {
+        final GameStub game = new GameStub();
+        final TransformStore store = new TransformStore(2);
+        final Random rnd = new Random(42);
+        final int cnt = 20;
+        final GameObj[] objs = new GameObj[cnt];
+        final GameObj[] refs = new GameObj[cnt];
+        for (int i = 0; i < cnt; i++) {
+            objs[i] = new GameObj(game, "obj" + i);
+            refs[i] = new GameObj(game, "ref" + i);
+            // pending modifications must survive adding to store
+            objs[i].setPosition(i, 0, 0);
+            refs[i].setPosition(i, 0, 0);
+            store.add(objs[i]);
+        }
+        assertEquals(cnt, store.getObjCnt());
+        store.update(0);
+        assertEquals(cnt, store.getUpdatedCnt());
+
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < cnt; i++) {
+                // only some objects are modified each round
+                switch (rnd.nextInt(4)) {
+                    case 0:
+                        final float x = rnd.nextFloat(), y = rnd.nextFloat(), z = rnd.nextFloat();
+                        objs[i].setPosition(x, y, z);
+                        refs[i].setPosition(x, y, z);
+                        break;
+                    case 1:
+                        final float a = rnd.nextFloat() * 360;
+                        objs[i].rotate(0, 1, 0, a);
+                        refs[i].rotate(0, 1, 0, a);
+                        break;
+                    case 2:
+                        final float sc = 0.5f + rnd.nextFloat();
+                        objs[i].setScale(sc, 2 * sc, sc);
+                        refs[i].setScale(sc, 2 * sc, sc);
+                        break;
+                    default:
+                        break;
+                }
+                assertEquals(refs[i].isDirty(), objs[i].isDirty());
+            }
+            store.update(round);
+            for (int i = 0; i < cnt; i++) {
+                refs[i].onUpdateTransform(round, 0, 0);
+                assertFalse(objs[i].isDirty());
+                assertEquals(refs[i].getTransformVersion(), objs[i].getTransformVersion());
+                assertMatrixEquals(refs[i].getToWorld(), objs[i].getToWorld());
+                assertMatrixEquals(refs[i].getFromWorld(), objs[i].getFromWorld());
+                assertMatrixEquals(refs[i].getRotation(), objs[i].getRotation());
+            }
+        }
+
+        // removed object keeps its transformation, slot gets reused
+        final GameObj removed = objs[0];
+        removed.setPosition(7, 8, 9);
+        store.remove(removed);
+        assertEquals(cnt - 1, store.getObjCnt());
+        assertTrue(removed.isDirty());
+        assertEquals(8, removed.getPosition()[1], Geometry.PRECISION);
+        final GameObj added = new GameObj(game, "added");
+        added.placeAt(objs[1]);
+        store.add(added);
+        store.update(100);
+        objs[1].onUpdateTransform(100, 0, 0);
+        assertMatrixEquals(objs[1].getToWorld(), added.getToWorld());
+    }
+
+    @Test
+    public void testTransformStoreBenchmark() {
+        final GameStub game = new GameStub();
+        final int cnt = 10000;
+        final int frames = 100;
+        final GameObj[] objs = new GameObj[cnt];
+        final GameObj[] stored = new GameObj[cnt];
+        final TransformStore store = new TransformStore(cnt);
+        for (int i = 0; i < cnt; i++) {
+            objs[i] = new GameObj(game, "obj" + i);
+            stored[i] = new GameObj(game, "stored" + i);
+            store.add(stored[i]);
+        }
+
+        // move every 10th object each frame
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int f = 0; f < frames; f++) {
+            for (int i = f % 10; i < cnt; i += 10) {
+                objs[i].setPosition(f, i, 0);
+            }
+            for (int i = cnt - 1; i >= 0; i--) {
+                objs[i].onUpdateTransform(f, 0, 0);
+            }
+        }
+        final long perObject = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int f = 0; f < frames; f++) {
+            for (int i = f % 10; i < cnt; i += 10) {
+                stored[i].setPosition(f, i, 0);
+            }
+            store.update(f);
+        }
+        final long soa = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.i(IGame.ENGINE_NAME, "transform update, " + cnt + " objects: per object "
+                + perObject / frames / 1000 + " us/frame, store " + soa / frames / 1000 + " us/frame");
+    }
+
+    private static void assertMatrixEquals(float[] expected, float[] actual) {
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected[i], actual[i], Geometry.PRECISION);
+        }
+    }
+
     @Test
     public void testGameObjLayer() {
         final GameObjLayer l0 = new GameObjLayer("l0", 0x01);
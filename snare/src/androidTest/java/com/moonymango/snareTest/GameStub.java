@@ -9,6 +9,7 @@ import android.opengl.GLSurfaceView;
 import com.moonymango.snare.audio.SnareAudioManager;
 import com.moonymango.snare.events.EventManager;
 import com.moonymango.snare.game.BaseGameView;
+import com.moonymango.snare.game.FrameProfiler;
 import com.moonymango.snare.game.GameObj;
 import com.moonymango.snare.game.GameSettings;
 import com.moonymango.snare.game.IGame;
@@ -27,6 +28,12 @@ import com.moonymango.snare.ui.PlayerGameView;
 
 public class GameStub implements IGame
 {
+    private final ProcessManager mProcManager = new ProcessManager();
+    private final FrameProfiler mProfiler = new FrameProfiler(FrameProfiler.DEFAULT_CAPACITY);
+    ResourceCache mResourceCache;
+    GameSettings mSettings;
+    GLObjCache mGLObjCache;
+
     @Override
     public void waitForDraw()
     {
@@ -66,7 +73,7 @@ public class GameStub implements IGame
     @Override
     public ResourceCache getResourceCache()
     {
-        return null;
+        return mResourceCache;
     }
 
     @Override
@@ -90,7 +97,7 @@ public class GameStub implements IGame
     @Override
     public GameSettings getSettings()
     {
-        return null;
+        return mSettings;
     }
 
     @Override
@@ -168,13 +175,19 @@ public class GameStub implements IGame
     @Override
     public ProcessManager getProcManager()
     {
-        return null;
+        return mProcManager;
     }
 
     @Override
     public GLObjCache getGLObjCache()
     {
-        return null;
+        return mGLObjCache;
+    }
+
+    @Override
+    public FrameProfiler getProfiler()
+    {
+        return mProfiler;
     }
 
     @Override
@@ -0,0 +1,263 @@
+package com.moonymango.snareTest;
+
+
+import android.os.Build;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.res.BaseResource;
+import com.moonymango.snare.res.IAssetName;
+import com.moonymango.snare.res.data.Max3DSParser;
+import com.moonymango.snare.res.data.Max3DSStreamParser;
+import com.moonymango.snare.res.data.MeshBuilder;
+import com.moonymango.snare.res.data.MeshResHandle;
+import com.moonymango.snare.res.data.MeshResource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class MeshImportTest {
+
+    private static final String NAME = "Torus";
+
+    GameStub mGame;
+    MeshResource mRes;
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        mRes = new MeshResource(mGame, new IAssetName() {
+            @Override
+            public String getName() {
+                return "torus.3ds";
+            }
+
+            @Override
+            public String getQualifier() {
+                return NAME;
+            }
+
+            @Override
+            public Class<? extends BaseResource> getType() {
+                return MeshResource.class;
+            }
+        });
+    }
+
+    @Test
+    public void testSameResult() throws Exception {
+        final byte[] data = createTorus(20, 12);
+        final MeshResHandle a = importLegacy(data);
+        final MeshResHandle b = importStreamed(data);
+        assertSameMesh(a, b);
+    }
+
+    @Test
+    public void testHardEdges() throws Exception {
+        // coarse torus has sharp edges, vertices get copied
+        final byte[] data = createTorus(4, 4);
+        final MeshResHandle a = importLegacy(data);
+        final MeshResHandle b = importStreamed(data);
+        assertSameMesh(a, b);
+        assertTrue(b.getVertexAttribs().capacity() * 4 / b.getStride() > 16);
+    }
+
+    @Test
+    public void testMissingObject() throws Exception {
+        final Max3DSStreamParser p = new Max3DSStreamParser();
+        assertFalse(p.parse(ByteBuffer.wrap(createTorus(4, 4)), "Box"));
+        assertFalse(p.parse(ByteBuffer.wrap(new byte[10]), NAME));
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        // 300x300 grid, no renderer so 32 bit indices are not available
+        final int n = 300;
+        final float[] positions = new float[3 * n * n];
+        final int[] indices = new int[6 * (n - 1) * (n - 1)];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                positions[3 * (i*n + j)] = i;
+                positions[3 * (i*n + j) + 1] = j;
+            }
+        }
+        int t = 0;
+        for (int i = 0; i < n - 1; i++) {
+            for (int j = 0; j < n - 1; j++) {
+                final int v = i*n + j;
+                indices[t++] = v;
+                indices[t++] = v + n;
+                indices[t++] = v + n + 1;
+                indices[t++] = v;
+                indices[t++] = v + n + 1;
+                indices[t++] = v + 1;
+            }
+        }
+        final int[] original = indices.clone();
+        final MeshResHandle hnd = new MeshBuilder(positions.clone(), null, n * n,
+                indices, t / 3).build(mRes, null);
+
+        assertFalse(hnd.hasIntIndices());
+        assertEquals(2, hnd.getPartCnt());
+        final int stride = hnd.getStride() / 4;
+        int offset = 0;
+        for (int p = 0; p < hnd.getPartCnt(); p++) {
+            final FloatBuffer vb = hnd.getVertexAttribs(p);
+            final ShortBuffer ib = (ShortBuffer) hnd.getIndices(p);
+            assertTrue(vb.capacity() / stride <= 0x10000);
+            // every corner still references the same position
+            for (int i = 0; i < hnd.getIndicesCnt(p); i++) {
+                final int k = (ib.get(i) & 0xffff) * stride;
+                final int o = 3 * original[offset + i];
+                assertEquals(positions[o], vb.get(k), 0);
+                assertEquals(positions[o + 1], vb.get(k + 1), 0);
+            }
+            offset += hnd.getIndicesCnt(p);
+        }
+        assertEquals(t, offset);
+    }
+
+    /**
+     * Only logs timings and allocations of both parsers, wall clock times
+     * vary too much between devices and runs to be asserted.
+     */
+    @Test
+    public void testBenchmark() throws Exception {
+        // ~61k triangles
+        final byte[] data = createTorus(175, 175);
+        final int runs = 5;
+
+        long alloc = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            importLegacy(data);
+        }
+        final long legacyTime = (System.nanoTime() - start) / runs;
+        final long legacyAlloc = (getAllocatedBytes() - alloc) / runs;
+
+        alloc = getAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            importStreamed(data);
+        }
+        final long streamTime = (System.nanoTime() - start) / runs;
+        final long streamAlloc = (getAllocatedBytes() - alloc) / runs;
+
+        Log.i(IGame.ENGINE_NAME, "import 3DS " + 2*175*175 + " triangles: object parser "
+                + legacyTime / 1000000 + " ms, " + formatAlloc(alloc, legacyAlloc)
+                + "; stream parser " + streamTime / 1000000 + " ms, "
+                + formatAlloc(alloc, streamAlloc));
+    }
+
+    private MeshResHandle importLegacy(byte[] data) throws Exception {
+        final Max3DSParser p = new Max3DSParser();
+        assertTrue(p.parse(new ByteArrayInputStream(data), NAME));
+        return new MeshResHandle(mRes, p, null);
+    }
+
+    private MeshResHandle importStreamed(byte[] data) throws Exception {
+        final Max3DSStreamParser p = new Max3DSStreamParser();
+        assertTrue(p.parse(ByteBuffer.wrap(data), NAME));
+        return new MeshBuilder(p).build(mRes, null);
+    }
+
+    /** @return Bytes allocated by runtime so far, -1 if not available. */
+    private static long getAllocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+    private static String formatAlloc(long start, long bytes) {
+        return start < 0 ? "allocations n/a" : bytes / 1024 + " KB";
+    }
+
+    private static void assertSameMesh(MeshResHandle a, MeshResHandle b) {
+        assertEquals(a.getStride(), b.getStride());
+        assertEquals(a.getIndicesCnt(), b.getIndicesCnt());
+        assertEquals(a.getVertexAttribs().capacity(), b.getVertexAttribs().capacity());
+        final int stride = a.getStride() / 4;
+        final FloatBuffer va = a.getVertexAttribs();
+        final FloatBuffer vb = b.getVertexAttribs();
+        final ShortBuffer ia = a.getIndices();
+        final ShortBuffer ib = b.getIndices();
+        for (int i = 0; i < a.getIndicesCnt(); i++) {
+            final int ka = (ia.get(i) & 0xffff) * stride;
+            final int kb = (ib.get(i) & 0xffff) * stride;
+            for (int k = 0; k < stride; k++) {
+                assertEquals(va.get(ka + k), vb.get(kb + k), 1e-5f);
+            }
+        }
+        assertEquals(a.getMinX(), b.getMinX(), 0);
+        assertEquals(a.getMaxY(), b.getMaxY(), 0);
+        assertEquals(a.getMaxZ(), b.getMaxZ(), 0);
+    }
+
+    /**
+     * Creates 3DS file containing a torus with texture coordinates.
+     * @param n Segments around main axis.
+     * @param m Segments around tube.
+     */
+    private static byte[] createTorus(int n, int m) {
+        final int vCnt = n * m;
+        final int tCnt = 2 * n * m;
+        final int vLen = 6 + 2 + vCnt * 12;
+        final int uvLen = 6 + 2 + vCnt * 8;
+        final int fLen = 6 + 2 + tCnt * 8;
+        final int triLen = 6 + vLen + uvLen + fLen;
+        final int objLen = 6 + NAME.length() + 1 + triLen;
+        final int meshLen = 6 + objLen;
+        final int mainLen = 6 + meshLen;
+
+        final ByteBuffer b = ByteBuffer.allocate(mainLen).order(ByteOrder.LITTLE_ENDIAN);
+        b.putShort((short) 0x4d4d).putInt(mainLen);
+        b.putShort((short) 0x3d3d).putInt(meshLen);
+        b.putShort((short) 0x4000).putInt(objLen);
+        b.put(NAME.getBytes()).put((byte) 0);
+        b.putShort((short) 0x4100).putInt(triLen);
+
+        b.putShort((short) 0x4110).putInt(vLen).putShort((short) vCnt);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                final double u = 2 * Math.PI * i / n;
+                final double v = 2 * Math.PI * j / m;
+                b.putFloat((float) ((2 + Math.cos(v)) * Math.cos(u)));
+                b.putFloat((float) ((2 + Math.cos(v)) * Math.sin(u)));
+                b.putFloat((float) Math.sin(v));
+            }
+        }
+        b.putShort((short) 0x4140).putInt(uvLen).putShort((short) vCnt);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                b.putFloat((float) i / n).putFloat((float) j / m);
+            }
+        }
+        b.putShort((short) 0x4120).putInt(fLen).putShort((short) tCnt);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                final int v0 = i * m + j;
+                final int v1 = ((i + 1) % n) * m + j;
+                final int v2 = ((i + 1) % n) * m + (j + 1) % m;
+                final int v3 = i * m + (j + 1) % m;
+                b.putShort((short) v0).putShort((short) v1).putShort((short) v2).putShort((short) 0);
+                b.putShort((short) v0).putShort((short) v2).putShort((short) v3).putShort((short) 0);
+            }
+        }
+        return b.array();
+    }
+}
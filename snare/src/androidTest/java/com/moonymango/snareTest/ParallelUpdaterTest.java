@@ -0,0 +1,154 @@
+package com.moonymango.snareTest;
+
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.game.GameObj.ComponentType;
+import com.moonymango.snare.game.GameObj.IThreadSafeComponent;
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.game.ParallelUpdater;
+import com.moonymango.snare.game.logic.BaseComponent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class ParallelUpdaterTest {
+
+    GameStub mGame;
+    final ArrayList<GameObj> mObjects = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+    }
+
+    @Test
+    public void testUpdate() {
+        final int frames = 10;
+        createObjects(1000);
+        final ParallelUpdater updater = new ParallelUpdater(3, 16);
+        for (int f = 0; f < frames; f++) {
+            for (int i = 0; i < mObjects.size(); i++) {
+                mObjects.get(i).setPosition(f, i, 0);
+            }
+            updater.update(mObjects, f, 0, 0, true);
+
+            // barrier: everything done when update() returns
+            for (int i = 0; i < mObjects.size(); i++) {
+                final GameObj obj = mObjects.get(i);
+                assertEquals(f + 1, ((MovingComponent) obj.getComponent(ComponentType.LOGIC)).mCnt);
+                assertEquals(f + 1, ((GameThreadComponent) obj.getComponent(ComponentType.AI_PASSIVE)).mCnt);
+                assertEquals(f, obj.getToWorld()[12], 0);
+                assertEquals(f + 1, obj.getTransformVersion());
+            }
+        }
+        updater.shutdown();
+    }
+
+    @Test
+    public void testInterruptedWorker() throws InterruptedException {
+        // objects are updated from another thread below
+        for (int i = 0; i < 1000; i++) {
+            final GameObj obj = new GameObj(mGame, "obj" + i);
+            obj.addComponent(new MovingComponent(mGame));
+            mObjects.add(obj);
+        }
+        final ParallelUpdater updater = new ParallelUpdater(2, 16);
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("SnareUpdateWorker")) {
+                t.interrupt();
+            }
+        }
+        SystemClock.sleep(50);
+
+        // interrupted workers must still take part in the barrier
+        final Thread game = new Thread() {
+            @Override
+            public void run() {
+                updater.update(mObjects, 0, 0, 0, true);
+            }
+        };
+        game.start();
+        game.join(5000);
+        assertFalse(game.isAlive());
+        assertEquals(1, ((MovingComponent) mObjects.get(999).getComponent(ComponentType.LOGIC)).mCnt);
+        updater.shutdown();
+    }
+
+    @Test
+    public void testBenchmark() {
+        final int frames = 50;
+        final int[] sizes = {1000, 5000, 20000};
+        final int maxWorkers = Runtime.getRuntime().availableProcessors() - 1;
+        for (int size : sizes) {
+            createObjects(size);
+            for (int workers = 0; workers <= maxWorkers; workers = workers * 2 + 1) {
+                final ParallelUpdater updater = new ParallelUpdater(workers,
+                        ParallelUpdater.DEFAULT_CHUNK_SIZE);
+                final long start = SystemClock.elapsedRealtimeNanos();
+                for (int f = 0; f < frames; f++) {
+                    for (int i = 0; i < size; i++) {
+                        mObjects.get(i).setPosition(f, i, 0);
+                    }
+                    updater.update(mObjects, f, 0, 0, true);
+                }
+                final long time = SystemClock.elapsedRealtimeNanos() - start;
+                updater.shutdown();
+                Log.i(IGame.ENGINE_NAME, "parallel update, " + size + " objects, " + workers
+                        + " workers: " + time / frames / 1000 + " us/frame");
+            }
+        }
+    }
+
+    private void createObjects(int cnt) {
+        mObjects.clear();
+        for (int i = 0; i < cnt; i++) {
+            final GameObj obj = new GameObj(mGame, "obj" + i);
+            obj.addComponent(new MovingComponent(mGame));
+            obj.addComponent(new GameThreadComponent(mGame));
+            mObjects.add(obj);
+        }
+    }
+
+    /** Does some work on own object only. */
+    private static class MovingComponent extends BaseComponent implements IThreadSafeComponent {
+        int mCnt;
+
+        MovingComponent(IGame game) {
+            super(game, ComponentType.LOGIC);
+        }
+
+        @Override
+        public void onUpdate(long realTime, float realDelta, float virtualDelta) {
+            mCnt++;
+            getGameObj().rotate(0, 1, 0, 1);
+        }
+    }
+
+    /** Not thread-safe, must run on calling thread. */
+    private static class GameThreadComponent extends BaseComponent {
+        final Thread mThread = Thread.currentThread();
+        int mCnt;
+
+        GameThreadComponent(IGame game) {
+            super(game, ComponentType.AI_PASSIVE);
+        }
+
+        @Override
+        public void onUpdate(long realTime, float realDelta, float virtualDelta) {
+            assertSame(mThread, Thread.currentThread());
+            mCnt++;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.moonymango.snareTest;
+
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.util.Pool;
+import com.moonymango.snare.util.Pool.OverflowPolicy;
+import com.moonymango.snare.util.PoolItem;
+import com.moonymango.snare.util.StripedPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class PoolTest {
+
+    GameStub mGame;
+    final ArrayList<Item> mItems = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // disable leak detection for other tests
+        Pool.onFrame(0);
+    }
+
+    @Test
+    public void testCounters() {
+        final ItemPool pool = new ItemPool(mGame, 4);
+        assertEquals(4, pool.getAllocatedCnt());
+        obtain(pool, 10);
+        assertEquals(10, pool.getObtainedCnt());
+        assertEquals(10, pool.getOutstandingCnt());
+        assertEquals(12, pool.getAllocatedCnt());
+        assertEquals(2, pool.getGrowCnt());
+
+        recycleAll();
+        assertEquals(0, pool.getOutstandingCnt());
+        assertEquals(10, pool.getPeakOutstandingCnt());
+
+        // prewarmed items do not cause growth
+        assertEquals(50, pool.prewarm(50));
+        obtain(pool, 50);
+        assertEquals(2, pool.getGrowCnt());
+        recycleAll();
+
+        final ArrayList<Pool<?>> pools = new ArrayList<>();
+        Pool.getPools(pools);
+        assertTrue(pools.contains(pool));
+    }
+
+    @Test
+    public void testMaxCapacity() {
+        final ItemPool pool = new ItemPool(mGame, 4);
+        pool.setMaxCapacity(6, OverflowPolicy.RETURN_NULL);
+        obtain(pool, 6);
+        assertEquals(6, pool.getAllocatedCnt());
+        assertNull(pool.obtain());
+        assertEquals(1, pool.getOverflowCnt());
+
+        pool.setMaxCapacity(6, OverflowPolicy.THROW);
+        try {
+            pool.obtain();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        pool.setMaxCapacity(6, OverflowPolicy.GROW);
+        assertNotNull(pool.obtain());
+        assertEquals(10, pool.getAllocatedCnt());
+    }
+
+    @Test
+    public void testLeakDetection() {
+        final ItemPool pool = new ItemPool(mGame, 4);
+        Pool.onFrame(2);
+        obtain(pool, 3);
+        final Item kept = pool.obtain();
+        Pool.onFrame(2);
+        recycleAll();
+        Pool.onFrame(2);
+        assertEquals(1, pool.getLeakCnt());
+
+        kept.recycle();
+        Pool.onFrame(2);
+        assertEquals(0, pool.getLeakCnt());
+    }
+
+    @Test
+    public void testStripedPool() {
+        final StripedItemPool pool = new StripedItemPool(mGame);
+        final int stripes = pool.getStripeCnt();
+        obtain(pool, 5);
+        assertEquals(5, pool.getOutstandingCnt());
+        assertEquals(stripes * 20, pool.getAllocatedCnt());
+
+        Pool.onFrame(1);
+        Pool.onFrame(1);
+        assertEquals(5, pool.getLeakCnt());
+        recycleAll();
+        Pool.onFrame(1);
+        assertEquals(0, pool.getLeakCnt());
+        assertEquals(0, pool.getOutstandingCnt());
+    }
+
+    private void obtain(Pool<Item> pool, int cnt) {
+        for (int i = 0; i < cnt; i++) {
+            mItems.add(pool.obtain());
+        }
+    }
+
+    private void recycleAll() {
+        for (Item item : mItems) {
+            item.recycle();
+        }
+        mItems.clear();
+    }
+
+    private static class Item extends PoolItem {
+        Item(IGame game) {
+            super(game);
+        }
+    }
+
+    private static class ItemPool extends Pool<Item> {
+        ItemPool(IGame game, int capacityIncrement) {
+            super(game, capacityIncrement);
+        }
+
+        @Override
+        protected Item allocatePoolItem() {
+            return new Item(mGame);
+        }
+    }
+
+    private static class StripedItemPool extends StripedPool<Item> {
+        StripedItemPool(IGame game) {
+            super(game);
+        }
+
+        @Override
+        protected Item allocatePoolItem() {
+            return new Item(mGame);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.moonymango.snareTest;
+
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.game.IGame.ClockType;
+import com.moonymango.snare.proc.ProcessManager;
+import com.moonymango.snare.proc.ProcessManager.BaseProcess;
+import com.moonymango.snare.proc.ProcessManager.ProcState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ProcessManagerTest {
+
+    private static final float FRAME = 16;
+
+    GameStub mGame;
+    ProcessManager mPM;
+    long mTime;
+    float mVirtualTime;
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        mPM = mGame.getProcManager();
+    }
+
+    @Test
+    public void testDelay() {
+        final Random rnd = new Random(42);
+        final ArrayList<TestProc> procs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final ClockType clock = rnd.nextBoolean() ? ClockType.REALTIME : ClockType.VIRTUAL;
+            // some far beyond timing wheel range
+            final float delay = i % 100 == 0 ? 1e8f : rnd.nextFloat() * 10000;
+            final TestProc p = new TestProc(mGame, clock, delay, 3);
+            p.run();
+            procs.add(p);
+        }
+        tick(FRAME, FRAME);
+        assertEquals(1000, mPM.getProcessCount());
+        assertTrue(mPM.getWaitingProcessCount() > 900);
+
+        // killing a waiting process removes it
+        final TestProc killed = procs.get(0);
+        killed.kill();
+        tick(FRAME, FRAME);
+        assertTrue(killed.isDead());
+        assertEquals(999, mPM.getProcessCount());
+
+        // virtual clock runs at half speed
+        for (int f = 0; f < 2000; f++) {
+            tick(FRAME, FRAME / 2);
+        }
+        for (int i = 1; i < procs.size(); i++) {
+            final TestProc p = procs.get(i);
+            if (p.mDelay > 1e7f) {
+                assertEquals(ProcState.WAIT, p.getState());
+                assertEquals(0, p.mUpdates);
+                continue;
+            }
+            assertTrue(p.isDead());
+            assertEquals(3, p.mUpdates);
+            // first update in the frame the delay was over
+            final float clock = p.mClock == ClockType.REALTIME ? p.mFirstRealTime : p.mFirstVirtualTime;
+            final float delta = p.mClock == ClockType.REALTIME ? FRAME : FRAME / 2;
+            assertTrue(clock - p.mInitTime >= p.mDelay);
+            assertTrue(clock - p.mInitTime < p.mDelay + delta);
+        }
+    }
+
+    @Test
+    public void testBenchmark() {
+        final int cnt = 10000;
+        final int frames = 300;
+        final Random rnd = new Random(42);
+        for (int i = 0; i < cnt; i++) {
+            // every 5th process runs immediately, others wait up to 30 s
+            final float delay = i % 5 == 0 ? 0 : rnd.nextFloat() * 30000;
+            new TestProc(mGame, ClockType.VIRTUAL, delay, 1 + rnd.nextInt(60)).run();
+        }
+
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (int f = 0; f < frames; f++) {
+            tick(FRAME, FRAME);
+        }
+        final long time = SystemClock.elapsedRealtimeNanos() - start;
+        Log.i(IGame.ENGINE_NAME, "process manager, " + cnt + " processes: "
+                + time / frames / 1000 + " us/frame, " + mPM.getProcessCount() + " left, "
+                + mPM.getWaitingProcessCount() + " waiting");
+    }
+
+    private void tick(float realDelta, float virtualDelta) {
+        mTime += realDelta;
+        mVirtualTime += virtualDelta;
+        mPM.onUpdate(mTime, realDelta, virtualDelta);
+    }
+
+    private class TestProc extends BaseProcess {
+        final ClockType mClock;
+        final float mDelay;
+        final int mRuns;
+        int mUpdates;
+        float mInitTime;
+        float mFirstRealTime;
+        float mFirstVirtualTime;
+
+        TestProc(IGame game, ClockType clock, float delay, int runs) {
+            super(game, clock, delay, null);
+            mClock = clock;
+            mDelay = delay;
+            mRuns = runs;
+        }
+
+        @Override
+        protected void onInit() {
+            mInitTime = mClock == ClockType.REALTIME ? mTime : mVirtualTime;
+        }
+
+        @Override
+        protected boolean onUpdate(long realTime, float realDelta, float virtualDelta) {
+            if (mUpdates++ == 0) {
+                mFirstRealTime = mTime;
+                mFirstVirtualTime = mVirtualTime;
+            }
+            return mUpdates < mRuns;
+        }
+
+        @Override
+        protected void onKill() {
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.moonymango.snareTest;
+
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.opengl.GLState;
+import com.moonymango.snare.ui.scene3D.BaseEffect.RenderContext;
+import com.moonymango.snare.ui.scene3D.PerspectiveCamera;
+import com.moonymango.snare.ui.scene3D.RenderPass;
+import com.moonymango.snare.ui.scene3D.RenderQueue;
+import com.moonymango.snare.ui.scene3D.Scene3D.DrawBundle;
+import com.moonymango.snare.ui.scene3D.rendering.SceneDrawable;
+import com.moonymango.snare.util.Geometry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RenderQueueTest {
+
+    private static final int BUNDLE_CNT = 2000;
+
+    GameStub mGame;
+    RenderQueue.KeyRegistry mKeys;
+    RenderContext[] mContexts;
+    final Random mRnd = new Random(42);
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        mKeys = new RenderQueue.KeyRegistry();
+        final GLState[] states = {
+                new GLState().enableDepth().lock(),
+                new GLState().enableBackFaceCulling().lock(),
+                new GLState().enableDepth().enableBackFaceCulling().lock()
+        };
+        // 10 shader programs, each with all GL states
+        mContexts = new RenderContext[30];
+        for (int i = 0; i < mContexts.length; i++) {
+            mContexts[i] = new RenderContext(mGame, "prog" + i % 10, "", "", states[i / 10]);
+        }
+    }
+
+    @Test
+    public void testSort() {
+        final RenderQueue q = new RenderQueue();
+        final ArrayList<DrawBundle> bundles = createBundles(BUNDLE_CNT);
+        for (DrawBundle b : bundles) {
+            q.add(b);
+        }
+        q.sort();
+        assertSorted(q, BUNDLE_CNT);
+
+        // few bundles get inserted
+        for (DrawBundle b : createBundles(10)) {
+            q.add(b);
+        }
+        q.sort();
+        assertSorted(q, BUNDLE_CNT + 10);
+
+        // removing keeps order
+        for (int i = 0; i < 100; i++) {
+            assertTrue(q.remove(bundles.get(i * 3)));
+        }
+        assertFalse(q.remove(bundles.get(0)));
+        assertSorted(q, BUNDLE_CNT - 90);
+
+        q.clear();
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testKeys() {
+        // ordinal takes precedence over context, depth is least significant
+        final long k0 = RenderQueue.makeKey(0, 0, 5, 5, 5, RenderQueue.MAX_DEPTH);
+        final long k1 = RenderQueue.makeKey(0, 1, 0, 0, 0, 0);
+        assertTrue(k0 < k1);
+        assertTrue(RenderQueue.setDepth(k1, 1) > k1);
+        assertEquals(k1, RenderQueue.setDepth(RenderQueue.setDepth(k1, 7), 0));
+
+        // same context and material give same key
+        final DrawBundle b0 = new DrawBundle();
+        final DrawBundle b1 = new DrawBundle();
+        b0.setData(null, 0, mContexts[3], RenderPass.STATIC, null);
+        b1.setData(null, 0, mContexts[3], RenderPass.STATIC, null);
+        assertEquals(mKeys.updateKey(b0, 0), mKeys.updateKey(b1, 0));
+        b1.setData(null, 0, mContexts[4], RenderPass.STATIC, null);
+        assertTrue(mKeys.updateKey(b0, 0) != mKeys.updateKey(b1, 0));
+    }
+
+    @Test
+    public void testKeyRelease() {
+        final GLState state = mContexts[0].getGlState();
+        final DrawBundle b = new DrawBundle();
+        final long[] keys = new long[2];
+        for (int i = 0; i < 1000; i++) {
+            b.setData(null, 0, new RenderContext(mGame, "tmp" + i, "", "", state),
+                    RenderPass.STATIC, null);
+            // changed context releases id of previous one
+            final long k = mKeys.updateKey(b, 0);
+            assertEquals(2, mKeys.getIdCnt());
+            if (i > 1) {
+                // new id is taken before the old one is released, so 
+                // programs alternate between two ids
+                assertEquals(keys[i % 2], k);
+            }
+            keys[i % 2] = k;
+        }
+        mKeys.release(b);
+        assertEquals(0, mKeys.getIdCnt());
+    }
+
+    @Test
+    public void testStable() {
+        final RenderQueue q = new RenderQueue();
+        final ArrayList<DrawBundle> bundles = new ArrayList<DrawBundle>();
+        for (int i = 0; i < 100; i++) {
+            final DrawBundle b = new DrawBundle();
+            b.setData(null, 0, mContexts[i % 2], RenderPass.STATIC, null);
+            mKeys.updateKey(b, 0);
+            bundles.add(b);
+            q.add(b);
+        }
+        q.sort();
+        // bundles with equal keys keep their insertion order
+        for (int i = 0; i < 50; i++) {
+            assertSame(bundles.get(2 * i), q.get(i));
+            assertSame(bundles.get(2 * i + 1), q.get(50 + i));
+        }
+    }
+
+    @Test
+    public void testDepthSort() {
+        final RenderQueue q = new RenderQueue();
+        final ArrayList<DrawBundle> bundles = createBundles(100);
+        for (DrawBundle b : bundles) {
+            q.add(b);
+        }
+        q.sort();
+
+        // back-to-front: depth dominates all other criteria
+        for (int i = 0; i < q.size(); i++) {
+            q.setKey(i, RenderQueue.makeBackToFrontKey(q.get(i).getSortKey(), i));
+        }
+        q.sort();
+        for (int i = 1; i < q.size(); i++) {
+            assertTrue(q.getKey(i - 1) <= q.getKey(i));
+        }
+        final long far = RenderQueue.makeBackToFrontKey(RenderQueue.makeKey(0, 2, 9, 9, 9, 0), 10);
+        final long near = RenderQueue.makeBackToFrontKey(RenderQueue.makeKey(0, 0, 0, 0, 0, 0), 9);
+        assertTrue(far < near);
+        // same depth keeps ordinal order
+        final long o0 = RenderQueue.makeBackToFrontKey(RenderQueue.makeKey(0, 0, 9, 9, 9, 0), 5);
+        final long o1 = RenderQueue.makeBackToFrontKey(RenderQueue.makeKey(0, 1, 0, 0, 0, 0), 5);
+        assertTrue(o0 < o1);
+    }
+
+    @Test
+    public void testDistanceToCamera() {
+        final PerspectiveCamera cam = new PerspectiveCamera(false);
+        final GameObj camObj = new GameObj(mGame, "camera");
+        camObj.addComponent(cam);
+        camObj.setPosition(1, 2, 3);
+        camObj.onUpdateTransform(0, 0, 0);
+
+        final SceneDrawable d = new SceneDrawable(mGame, RenderPass.ALPHA);
+        final GameObj obj = new GameObj(mGame, "obj");
+        obj.addComponent(d);
+        obj.setPosition(1, 2, -7);
+        obj.onUpdateTransform(0, 0, 0);
+        assertEquals(10, d.getDistanceToCamera(cam), Geometry.PRECISION);
+    }
+
+    @Test
+    public void testBenchmark() {
+        final int frames = 100;
+        final ArrayList<DrawBundle> bundles = createBundles(BUNDLE_CNT);
+
+        // before: Collections.sort whenever the list changed
+        long start = System.nanoTime();
+        final ArrayList<DrawBundle> l = new ArrayList<DrawBundle>();
+        for (int f = 0; f < frames; f++) {
+            l.clear();
+            l.addAll(bundles);
+            Collections.sort(l);
+        }
+        final long listTime = (System.nanoTime() - start) / frames;
+        final int listChanges = countStateChanges(l);
+
+        // after: radix sort
+        final RenderQueue q = new RenderQueue();
+        start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            q.clear();
+            for (int i = 0; i < BUNDLE_CNT; i++) {
+                q.add(bundles.get(i));
+            }
+            q.sort();
+        }
+        final long queueTime = (System.nanoTime() - start) / frames;
+        final ArrayList<DrawBundle> sorted = new ArrayList<DrawBundle>();
+        for (int i = 0; i < q.size(); i++) {
+            sorted.add(q.get(i));
+        }
+        final int queueChanges = countStateChanges(sorted);
+
+        // incremental: one bundle added per frame
+        start = System.nanoTime();
+        for (int f = 0; f < frames; f++) {
+            q.remove(bundles.get(f));
+            q.add(bundles.get(f));
+            q.sort();
+        }
+        final long insertTime = (System.nanoTime() - start) / frames;
+
+        Log.i(IGame.ENGINE_NAME, "sort " + BUNDLE_CNT + " bundles: Collections.sort "
+                + listTime / 1000 + " us, " + listChanges + " state changes; radix sort "
+                + queueTime / 1000 + " us, " + queueChanges + " state changes; insert "
+                + insertTime / 1000 + " us");
+        assertTrue(queueChanges <= listChanges);
+    }
+
+    private ArrayList<DrawBundle> createBundles(int cnt) {
+        final ArrayList<DrawBundle> bundles = new ArrayList<DrawBundle>();
+        for (int i = 0; i < cnt; i++) {
+            final DrawBundle b = new DrawBundle();
+            b.setData(null, mRnd.nextInt(2), mContexts[mRnd.nextInt(mContexts.length)],
+                    RenderPass.STATIC, null);
+            mKeys.updateKey(b, mRnd.nextInt(RenderQueue.MAX_DEPTH));
+            bundles.add(b);
+        }
+        return bundles;
+    }
+
+    private static void assertSorted(RenderQueue q, int cnt) {
+        assertEquals(cnt, q.size());
+        for (int i = 1; i < cnt; i++) {
+            assertTrue(q.getKey(i - 1) <= q.getKey(i));
+            assertEquals(q.get(i).getSortKey(), q.getKey(i));
+        }
+    }
+
+    /** Number of render context switches when drawing in this order. */
+    private static int countStateChanges(ArrayList<DrawBundle> l) {
+        int changes = 0;
+        RenderContext ctx = null;
+        for (int i = 0; i < l.size(); i++) {
+            if (!l.get(i).getContext().equals(ctx)) {
+                ctx = l.get(i).getContext();
+                changes++;
+            }
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,132 @@
+package com.moonymango.snareTest;
+
+
+import android.app.Application;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.moonymango.snare.res.BaseResHandle;
+import com.moonymango.snare.res.BaseResource;
+import com.moonymango.snare.res.ResourceCache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ResourceCacheTest {
+
+    private static final int KB = 1024;
+
+    GameStub mGame = new GameStub();
+
+    @Test
+    public void testBudget() {
+        final ResourceCache cache = createCache(10 * KB);
+        final SizedResource a = new SizedResource("a", 4 * KB);
+        final SizedResource b = new SizedResource("b", 4 * KB);
+        final SizedResource c = new SizedResource("c", 4 * KB);
+
+        a.releaseHandle(a.acquire(cache));
+        b.releaseHandle(b.acquire(cache));
+        assertEquals(8 * KB, cache.getSize());
+
+        // c does not fit, least recently used a gets removed
+        final BaseResHandle hc = c.acquire(cache);
+        assertEquals(8 * KB, cache.getSize());
+        assertTrue(a.mRemoved);
+        assertFalse(b.mRemoved);
+        assertEquals(1, cache.getEvictionCnt());
+
+        // handles in use are never removed, budget gets exceeded
+        final BaseResHandle hb = b.acquire(cache);
+        final BaseResHandle ha = a.acquire(cache);
+        assertEquals(12 * KB, cache.getSize());
+
+        a.releaseHandle(ha);
+        b.releaseHandle(hb);
+        c.releaseHandle(hc);
+    }
+
+    @Test
+    public void testClassBudget() {
+        final ResourceCache cache = createCache(0);
+        cache.setBudget(LargeResource.class, 5 * KB);
+        final SizedResource a = new SizedResource("a", 4 * KB);
+        final LargeResource b = new LargeResource("b", 4 * KB);
+        final LargeResource c = new LargeResource("c", 4 * KB);
+
+        a.releaseHandle(a.acquire(cache));
+        b.releaseHandle(b.acquire(cache));
+        c.releaseHandle(c.acquire(cache));
+
+        // only resources of budget class get removed
+        assertTrue(b.mRemoved);
+        assertFalse(a.mRemoved);
+        assertEquals(4 * KB, cache.getSize(LargeResource.class));
+        assertEquals(8 * KB, cache.getSize());
+
+        // smaller budget removes resources immediately
+        cache.setBudget(LargeResource.class, 2 * KB);
+        assertTrue(c.mRemoved);
+        assertEquals(0, cache.getSize(LargeResource.class));
+        assertEquals(4 * KB, cache.getSize());
+    }
+
+    private ResourceCache createCache(long budget) {
+        final Application app = (Application) InstrumentationRegistry.getTargetContext()
+                .getApplicationContext();
+        final ResourceCache cache = new ResourceCache(mGame, budget, app, 1);
+        mGame.mResourceCache = cache;
+        return cache;
+    }
+
+    private class SizedResource extends BaseResource {
+
+        final int mSize;
+        boolean mRemoved;
+
+        SizedResource(String name, int size) {
+            super(ResourceCacheTest.this.mGame, name);
+            mSize = size;
+        }
+
+        BaseResHandle acquire(ResourceCache cache) {
+            mRemoved = false;
+            return getHandle(cache);
+        }
+
+        @Override
+        protected BaseResHandle createHandleByAsset(AssetManager am) {
+            return new BaseResHandle(this) {
+                @Override
+                public int getMemorySize() {
+                    return mSize;
+                }
+
+                @Override
+                public boolean onRemoveFromCachePending() {
+                    mRemoved = true;
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        protected BaseResHandle createHandleByResID(Resources res) {
+            return null;
+        }
+    }
+
+    private class LargeResource extends SizedResource {
+
+        LargeResource(String name, int size) {
+            super(name, size);
+        }
+    }
+}
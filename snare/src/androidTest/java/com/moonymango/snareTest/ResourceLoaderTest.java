@@ -0,0 +1,157 @@
+package com.moonymango.snareTest;
+
+
+import android.app.Application;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.moonymango.snare.res.BaseResHandle;
+import com.moonymango.snare.res.BaseResource;
+import com.moonymango.snare.res.ResourceBatch;
+import com.moonymango.snare.res.ResourceCache;
+import com.moonymango.snare.res.ResourceRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ResourceLoaderTest {
+
+    private static final long TIMEOUT = 5000;
+
+    GameStub mGame;
+    ResourceCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mGame = new GameStub();
+        final Application app = (Application) InstrumentationRegistry.getTargetContext()
+                .getApplicationContext();
+        mCache = new ResourceCache(mGame, 0, app, 2);
+        mGame.mResourceCache = mCache;
+    }
+
+    @Test
+    public void testAsyncLoad() {
+        final StubResource res = new StubResource("a", 50, false);
+        final ResourceRequest r = res.requestAsync();
+        assertFalse(r.isDone());
+        assertEquals(0, mCache.getItemCnt());
+
+        waitFor(r);
+        assertTrue(r.isLoaded());
+        assertNotSame(Thread.currentThread(), res.mThread);
+        assertEquals(1, mCache.getItemCnt());
+        assertEquals(1, mCache.getHandlesCnt());
+
+        // cached now, so request is done immediately
+        final ResourceRequest r2 = res.requestAsync();
+        assertTrue(r2.isLoaded());
+        assertSame(r.getHandle(), r2.getHandle());
+
+        r.release();
+        r2.release();
+        assertEquals(0, mCache.getHandlesCnt());
+    }
+
+    @Test
+    public void testSharedJob() {
+        final StubResource res = new StubResource("b", 100, false);
+        final ResourceRequest r1 = res.requestAsync();
+        final ResourceRequest r2 = res.requestAsync();
+
+        // synchronous request waits for job instead of loading again
+        final BaseResHandle hnd = res.getHandle();
+        assertEquals(1, res.mCreated.get());
+        assertTrue(r1.isLoaded());
+        assertTrue(r2.isLoaded());
+        assertSame(hnd, r1.getHandle());
+        assertEquals(3, mCache.getHandlesCnt());
+
+        // nothing left to publish
+        mCache.onUpdate();
+        assertEquals(1, res.mCreated.get());
+        assertEquals(0, mCache.getLoader().getPendingCnt());
+    }
+
+    @Test
+    public void testBatch() {
+        final ResourceBatch batch = new ResourceBatch();
+        batch.add(new StubResource("c", 10, false))
+                .add(new StubResource("d", 10, true))
+                .add(new StubResource("e", 10, false));
+        assertEquals(0, batch.getProgress(), 0);
+        batch.start();
+
+        final long end = SystemClock.uptimeMillis() + TIMEOUT;
+        float progress = 0;
+        while (!batch.isDone() && SystemClock.uptimeMillis() < end) {
+            mCache.onUpdate();
+            assertTrue(batch.getProgress() >= progress);
+            progress = batch.getProgress();
+        }
+        assertTrue(batch.isDone());
+        assertEquals(1, batch.getProgress(), 0);
+        assertEquals(1, batch.getFailedCnt());
+        assertFalse(batch.getRequest(1).isLoaded());
+        assertEquals(2, mCache.getItemCnt());
+
+        batch.release();
+        assertEquals(0, mCache.getHandlesCnt());
+    }
+
+    private void waitFor(ResourceRequest r) {
+        final long end = SystemClock.uptimeMillis() + TIMEOUT;
+        while (!r.isDone() && SystemClock.uptimeMillis() < end) {
+            mCache.onUpdate();
+            SystemClock.sleep(1);
+        }
+        assertTrue(r.isDone());
+    }
+
+    private class StubResource extends BaseResource {
+
+        final AtomicInteger mCreated = new AtomicInteger();
+        final long mDelay;
+        final boolean mFail;
+        volatile Thread mThread;
+
+        StubResource(String name, long delay, boolean fail) {
+            super(ResourceLoaderTest.this.mGame, name);
+            mDelay = delay;
+            mFail = fail;
+        }
+
+        BaseResHandle getHandle() {
+            return getHandle(mCache);
+        }
+
+        @Override
+        protected BaseResHandle createHandleByAsset(AssetManager am) {
+            mThread = Thread.currentThread();
+            mCreated.incrementAndGet();
+            SystemClock.sleep(mDelay);
+            if (mFail) {
+                throw new IllegalStateException("Stub failure.");
+            }
+            return new BaseResHandle(this) {};
+        }
+
+        @Override
+        protected BaseResHandle createHandleByResID(Resources res) {
+            return null;
+        }
+    }
+}
@@ -25,6 +25,12 @@ public class LoopResource extends BaseResource {
         return null;
     }
     
+    @Override
+    protected boolean isAsyncLoadable() {
+        // needs the audio manager of the game thread
+        return false;
+    }
+    
     public LoopHandle getHandle() {
         return (LoopHandle) getHandle(mGame.getResourceCache());
     }
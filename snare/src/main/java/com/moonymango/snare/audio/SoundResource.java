@@ -32,6 +32,12 @@ public class SoundResource extends BaseResource {
         return null;
     }
     
+    @Override
+    protected boolean isAsyncLoadable() {
+        // needs the audio manager of the game thread
+        return false;
+    }
+    
     public SoundHandle getHandle() {
         return (SoundHandle) getHandle(mGame.getResourceCache());
     }
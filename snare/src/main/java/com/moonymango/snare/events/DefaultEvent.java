@@ -33,6 +33,8 @@ public class DefaultEvent extends PoolItem implements
         IUserEvent {
     
     private IEventType mType;
+    /** Slot of event type in EventManager's dispatch table, -1 if unknown. */
+    int mSlot = -1;
     
     // generic data fields
     private int mIntA;
@@ -63,6 +65,7 @@ public class DefaultEvent extends PoolItem implements
     public void recycle() {
         super.recycle();  
         mType = IEvent.SystemEventType.INVALID;
+        mSlot = -1;
         mGameState0 = null;
         mGameState1 = null;
         mGameObj = null;
@@ -71,7 +74,7 @@ public class DefaultEvent extends PoolItem implements
 
     // IEvent -----------------------------
     public IEventType getType()             {return mType;}
-    public void setType(IEventType type) {mType = type;}
+    public void setType(IEventType type) {mType = type; mSlot = -1;}
        
     // IStatsUpdateEvent -----------------------------
     public float getFramesPerSecond() {return mFloatA;}
@@ -85,6 +88,12 @@ public class DefaultEvent extends PoolItem implements
         mFloatC = minDelta;
         mFloatD = maxDelta;
     }
+    public int getDispatchedEvents() {return mIntA;}
+    public int getDeferredEvents() {return mIntB;}
+    public void setEventStatsData(int dispatched, int deferred) {
+        mIntA = dispatched;
+        mIntB = deferred;
+    }
 
     // IGameStateChangedEvent -------------
     public IGameState getNewState() {return mGameState0;}
@@ -1,9 +1,13 @@
 package com.moonymango.snare.events;
 
 import com.moonymango.snare.game.IGame;
-import com.moonymango.snare.util.Pool;
+import com.moonymango.snare.util.StripedPool;
 
-public class DefaultEventPool extends Pool<DefaultEvent>
+/**
+ * Thread-safe pool of {@link DefaultEvent}s, so that events can be obtained
+ * from the ui thread without blocking the game thread.
+ */
+public class DefaultEventPool extends StripedPool<DefaultEvent>
 {
     public DefaultEventPool(IGame game)
     {
@@ -1,44 +1,198 @@
 package com.moonymango.snare.events;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
+import com.moonymango.snare.util.Logger;
+import com.moonymango.snare.util.Logger.LogSource;
+import com.moonymango.snare.util.MpscQueue;
 import com.moonymango.snare.util.Pool;
+import com.moonymango.snare.util.Pool.OverflowPolicy;
+import com.moonymango.snare.util.StripedPool;
 
 
 /**
  * This the only thread-safe class in snare, so you can fire events from
  * outside the game loop, i.e. from the ui thread. 
+ * Queued events are kept in a lock-free queue, so producers never block
+ * while the game thread dispatches events. 
+ * 
+ * Dispatching of queued events may be limited by a time budget per frame
+ * (see {@link #tick(long)}). Each event type has an {@link EventPriority},
+ * events of higher priority are dispatched first and events of priority 
+ * HIGH are never deferred.
+ * 
+ * In {@link DispatchMode#ARRAY} (default) each event type gets a dense slot
+ * number and listeners are kept in copy-on-write arrays indexed by slot, so
+ * dispatching an event takes neither a lock nor a map lookup. 
  */
 public class EventManager {
     
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final IEventListener[] NO_LISTENERS = new IEventListener[0];
+    
     private int mListenerCnt;
     private final HashMap<IEventType, ArrayList<IEventListener>> mEventListenerMap = new HashMap<>();
     
-    private final ArrayList<DefaultEvent> mEventQueueA = new ArrayList<>();
-    private final ArrayList<DefaultEvent> mEventQueueB = new ArrayList<>();
-    private ArrayList<DefaultEvent> mFrontQueue = mEventQueueA;
-    private ArrayList<DefaultEvent> mBackQueue = mEventQueueB;
+    private final DispatchMode mDispatchMode;
+    // slot number of each known event type, copy-on-write
+    private volatile HashMap<IEventType, Integer> mSlots = new HashMap<>();
+    // listeners by slot number, copy-on-write, used in DispatchMode.ARRAY only
+    private volatile IEventListener[][] mDispatchTable = new IEventListener[0][];
+    
+    private final MpscQueue<DefaultEvent> mQueue;
+    // events that did not fit into mQueue, delivered after those in mQueue
+    private final ArrayList<DefaultEvent> mOverflowA = new ArrayList<>();
+    private final ArrayList<DefaultEvent> mOverflowB = new ArrayList<>();
+    private ArrayList<DefaultEvent> mOverflow = mOverflowA;
+    private volatile boolean mOverflowing;
     
     private final Object mLockListeners = new Object(); // monitor for listener map
-    private final Object mLockQueues = new Object();    // monitor for queues lists
+    private final Object mLockOverflow = new Object();  // monitor for overflow lists
+    
+    // events taken from queue but not yet dispatched, one list per priority
+    @SuppressWarnings("unchecked")
+    private final ArrayList<DefaultEvent>[] mPending = new ArrayList[EventPriority.values().length];
+    private final HashMap<IEventType, EventPriority> mPriorities = new HashMap<>();
+    private int mDispatchedCnt;
+    private int mDeferredCnt;
    
     private final Pool<? extends DefaultEvent> mEventPool;
+    /** Pool does its own locking. */
+    private final boolean mPoolThreadSafe;
            
     public EventManager(Pool<? extends DefaultEvent> pool) {
+        this(pool, DEFAULT_QUEUE_CAPACITY);
+    }
+    
+    /**
+     * @param pool Event pool. Use a {@link StripedPool} to obtain events 
+     *             from multiple threads without contention. Overflow 
+     *             policy {@link OverflowPolicy#RETURN_NULL} is not supported.
+     * @param queueCapacity Max. number of events queued per frame before
+     *             falling back to a synchronized overflow list.
+     */
+    public EventManager(Pool<? extends DefaultEvent> pool, int queueCapacity) {
+        this(pool, queueCapacity, DispatchMode.ARRAY);
+    }
+    
+    /**
+     * @param pool Event pool.
+     * @param queueCapacity Queue capacity, see {@link #EventManager(Pool, int)}.
+     * @param mode How listeners are looked up when dispatching an event.
+     */
+    public EventManager(Pool<? extends DefaultEvent> pool, int queueCapacity, DispatchMode mode) {
+        if (mode == null)
+            throw new IllegalArgumentException();
+        mDispatchMode = mode;
         if (pool == null)
             throw new IllegalArgumentException("Missing event pool.");
+        if (pool.getOverflowPolicy() == OverflowPolicy.RETURN_NULL)
+            throw new IllegalArgumentException("Event pool must not return null.");
         mEventPool = pool;
+        mPoolThreadSafe = pool instanceof StripedPool;
+        mQueue = new MpscQueue<>(queueCapacity);
+        for (int i = 0; i < mPending.length; i++) {
+            mPending[i] = new ArrayList<>();
+        }
+        
+        // input and state changes must not lag behind
+        setPriority(ITouchEvent.EVENT_TYPE, EventPriority.HIGH);
+        setPriority(IFlingEvent.EVENT_TYPE, EventPriority.HIGH);
+        setPriority(IScrollEvent.EVENT_TYPE, EventPriority.HIGH);
+        setPriority(IScaleEvent.EVENT_TYPE, EventPriority.HIGH);
+        setPriority(IKeyEvent.EVENT_TYPE, EventPriority.HIGH);
+        setPriority(IWidgetTouchedBeginEvent.EVENT_TYPE, EventPriority.HIGH);
+        setPriority(IWidgetTouchedEndEvent.EVENT_TYPE, EventPriority.HIGH);
+        setPriority(IGameStateChangedEvent.EVENT_TYPE, EventPriority.HIGH);
+    }
+    
+    /**
+     * Sets dispatch priority of an event type. Event types without 
+     * explicit priority are NORMAL. Call from game thread only.
+     * @param evt Event type.
+     * @param priority Priority.
+     */
+    public void setPriority(IEventType evt, EventPriority priority) {
+        if (evt == null || priority == null)
+            throw new IllegalArgumentException();
+        mPriorities.put(evt, priority);
+    }
+    
+    public EventPriority getPriority(IEventType evt) {
+        final EventPriority p = mPriorities.get(evt);
+        return p != null ? p : EventPriority.NORMAL;
+    }
+    
+    /** Returns number of queued events dispatched in last tick. */
+    public int getDispatchedCnt() {
+        return mDispatchedCnt;
+    }
+    
+    /** Returns number of queued events deferred to next tick in last tick. */
+    public int getDeferredCnt() {
+        return mDeferredCnt;
     }
     
     public DefaultEvent obtain(IEventType type) {
         DefaultEvent e;
-        synchronized (mEventPool) {
-            e = mEventPool.obtain();    
+        if (mPoolThreadSafe) {
+            e = mEventPool.obtain();
+        } else {
+            synchronized (mEventPool) {
+                e = mEventPool.obtain();    
+            }
+        }
+        if (e == null) {
+            // policy changed after construction
+            throw new IllegalStateException("Event pool exhausted, overflow policy " 
+                    + OverflowPolicy.RETURN_NULL + " is not supported.");
         }
         e.setType(type);
+        if (mDispatchMode == DispatchMode.ARRAY) {
+            e.mSlot = getSlot(type);
+        }
         return e;
     }
+    
+    public DispatchMode getDispatchMode() {
+        return mDispatchMode;
+    }
+    
+    /**
+     * Returns slot number of event type. Unknown event types get
+     * the next free slot.
+     */
+    private int getSlot(IEventType evt) {
+        final Integer slot = mSlots.get(evt);
+        if (slot != null) return slot;
+        
+        synchronized (mLockListeners) {
+            HashMap<IEventType, Integer> slots = mSlots;
+            Integer s = slots.get(evt);
+            if (s == null) {
+                s = slots.size();
+                final IEventListener[][] table = Arrays.copyOf(mDispatchTable, s + 1);
+                table[s] = NO_LISTENERS;
+                mDispatchTable = table;
+                // publish slot after table, so readers never see a 
+                // slot number beyond table length
+                slots = new HashMap<>(slots);
+                slots.put(evt, s);
+                mSlots = slots;
+            }
+            return s;
+        }
+    }
+    
+    /** Publishes a copy of the listener list to the dispatch table. */
+    private void publishListeners(IEventType evt, ArrayList<IEventListener> list) {
+        final int slot = getSlot(evt);
+        final IEventListener[][] table = mDispatchTable.clone();
+        table[slot] = list.isEmpty() ? NO_LISTENERS : list.toArray(new IEventListener[list.size()]);
+        mDispatchTable = table;
+    }
         
      /**
      * Adds a listener for the given event type.
@@ -62,6 +216,9 @@ public class EventManager {
             
             if (list.contains(listener)) return false;  // check for duplicates
             list.add(listener);
+            if (mDispatchMode == DispatchMode.ARRAY) {
+                publishListeners(evt, list);
+            }
         }
         
         ++mListenerCnt;
@@ -86,6 +243,9 @@ public class EventManager {
             final boolean result = list.remove(listener);
             if (result) {
                 --mListenerCnt;
+                if (mDispatchMode == DispatchMode.ARRAY) {
+                    publishListeners(evt, list);
+                }
             }
             return result;
         }
@@ -115,64 +275,138 @@ public class EventManager {
     public boolean queueEvent(IEvent evt) {
         if (evt == null) return false;
         
-        synchronized (mLockQueues) {
-            mFrontQueue.add((DefaultEvent) evt);
+        // once the queue has overflown, keep using the overflow list
+        // until the next tick to preserve the order of events
+        if (mOverflowing || !mQueue.offer((DefaultEvent) evt)) {
+            synchronized (mLockOverflow) {
+                if (!mOverflowing) {
+                    Logger.w(LogSource.EVENTS, "event queue full, capacity " + mQueue.getCapacity());
+                    mOverflowing = true;
+                }
+                mOverflow.add((DefaultEvent) evt);
+            }
         }
         return true;
     }
 
     
     /**
-     * Trigger immediate handling for an event. 
+     * Trigger immediate handling for an event. In {@link DispatchMode#ARRAY}
+     * the listeners registered at the time of the call get notified, even if 
+     * some of them are removed by another listener meanwhile.
      * @param event Event.
      */
     public void triggerEvent(IEvent evt) {
-        final ArrayList<IEventListener> list = mEventListenerMap.get(evt.getType());
-        synchronized (mLockListeners) {
-
-            if (list != null) {
-                final int len = list.size();
-                for (int i = 0; i < len; i++) {
-                    if (list.get(i).handleEvent(evt)) {
-                        break;
+        if (mDispatchMode == DispatchMode.ARRAY) {
+            final DefaultEvent e = (DefaultEvent) evt;
+            if (e.mSlot < 0) {
+                // event type changed after obtain()
+                e.mSlot = getSlot(e.getType());
+            }
+            final IEventListener[] listeners = mDispatchTable[e.mSlot];
+            final int len = listeners.length;
+            for (int i = 0; i < len; i++) {
+                if (listeners[i].handleEvent(evt)) {
+                    break;
+                }
+            }
+        } else {
+            synchronized (mLockListeners) {
+                final ArrayList<IEventListener> list = mEventListenerMap.get(evt.getType());
+                if (list != null) {
+                    final int len = list.size();
+                    for (int i = 0; i < len; i++) {
+                        if (list.get(i).handleEvent(evt)) {
+                            break;
+                        }
                     }
                 }
             }
         }
         
-        synchronized(mEventPool) {
+        if (mPoolThreadSafe) {
             evt.recycle();
+        } else {
+            synchronized(mEventPool) {
+                evt.recycle();
+            }
         }
     }
     
     /**
-     * Handle events in queue.
-     * @param millis No effect.
-     * @return Always true.
+     * Handle events in queue. Only events queued before this call are
+     * handled, events queued by listeners are handled in the next tick.
+     * Events are dispatched by priority, in order of queuing within the 
+     * same priority. When the time budget is exhausted, the remaining 
+     * events (except those of priority HIGH) are deferred to the next tick, 
+     * but at least one event per priority is dispatched to guarantee 
+     * progress. Must always be called from the same thread.
+     * @param millis Time budget in milliseconds, 0 for no limit.
+     * @return True if all events were dispatched, false if some were deferred.
      */
     public boolean tick(long millis) {
-        // todo: implement time limit    
-        synchronized (mLockQueues) {
-            swapQueues();
-            int len = mBackQueue.size();
-            for (int i = 0; i < len; i++) {
-                triggerEvent(mBackQueue.get(i));
+        final long deadline = millis > 0 ? System.nanoTime() + millis * 1000000 : Long.MAX_VALUE;
+        collectQueuedEvents();
+        
+        int dispatched = 0;
+        int deferred = 0;
+        for (int p = 0; p < mPending.length; p++) {
+            final ArrayList<DefaultEvent> pending = mPending[p];
+            final boolean budgeted = p != EventPriority.HIGH.ordinal();
+            final int len = pending.size();
+            int i = 0;
+            while (i < len) {
+                if (budgeted && i > 0 && System.nanoTime() > deadline) {
+                    break;
+                }
+                triggerEvent(pending.get(i++));
+            }
+            dispatched += i;
+            deferred += len - i;
+            if (i == len) {
+                pending.clear();
+            } else {
+                pending.subList(0, i).clear();
             }
         }
-        return true;
+        mDispatchedCnt = dispatched;
+        mDeferredCnt = deferred;
+        return deferred == 0;
     }
     
-    private void swapQueues() {
-        if (mFrontQueue == mEventQueueA) {
-            mFrontQueue = mEventQueueB;
-            mBackQueue = mEventQueueA;
-        } else {
-            mFrontQueue = mEventQueueA;
-            mBackQueue = mEventQueueB;
+    /** Moves all events queued so far to the lists of pending events. */
+    private void collectQueuedEvents() {
+        final long end = mQueue.getTail();
+        ArrayList<DefaultEvent> overflow = null;
+        if (mOverflowing) {
+            synchronized (mLockOverflow) {
+                overflow = mOverflow;
+                mOverflow = overflow == mOverflowA ? mOverflowB : mOverflowA;
+                mOverflowing = false;
+            }
+        }
+        
+        while (mQueue.getHead() < end) {
+            final DefaultEvent e = mQueue.poll();
+            if (e == null) {
+                // slot claimed but not yet published, the producer does 
+                // so right after claiming. Wait for it, otherwise the 
+                // overflow events below would overtake it.
+                Thread.yield();
+                continue;
+            }
+            mPending[getPriority(e.getType()).ordinal()].add(e);
+        }
+        
+        if (overflow != null) {
+            final int len = overflow.size();
+            for (int i = 0; i < len; i++) {
+                final DefaultEvent e = overflow.get(i);
+                mPending[getPriority(e.getType()).ordinal()].add(e);
+            }
+            overflow.clear();
         }
-        mFrontQueue.clear();
     }
-    
      
     public interface IEventListener {
         /**
@@ -199,4 +433,26 @@ public class EventManager {
         boolean equals(Object o);
         String getName();
     }
+    
+    /**
+     * Listener lookup when dispatching events.
+     */
+    public enum DispatchMode {
+        /** Listener lists in a hash map, guarded by a lock during dispatch. */
+        MAP,
+        /** Lock-free copy-on-write listener arrays indexed by event type slot. */
+        ARRAY
+    }
+    
+    /**
+     * Dispatch priority of an event type.
+     */
+    public enum EventPriority {
+        /** Dispatched first and never deferred. */
+        HIGH,
+        /** Dispatched after HIGH events as long as time budget is left. */
+        NORMAL,
+        /** Dispatched after NORMAL events as long as time budget is left. */
+        LOW
+    }
 }
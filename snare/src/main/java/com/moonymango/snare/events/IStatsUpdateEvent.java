@@ -19,4 +19,14 @@ public interface IStatsUpdateEvent extends IEvent
      * @param prev Previous fps measurement.
      */
     void setStatsData(float fps, float prev, float minDelta, float maxDelta);
+    /** Gets number of queued events dispatched in last frame. */
+    int getDispatchedEvents();
+    /** Gets number of queued events deferred to next frame in last frame. */
+    int getDeferredEvents();
+    /**
+     * Sets event dispatch data.
+     * @param dispatched Events dispatched in last frame.
+     * @param deferred Events deferred to next frame.
+     */
+    void setEventStatsData(int dispatched, int deferred);
 }
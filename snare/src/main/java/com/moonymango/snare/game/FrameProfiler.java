@@ -0,0 +1,305 @@
+package com.moonymango.snare.game;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Records nested timing spans of the game loop without allocations. Each
+ * track (game thread, render thread) has a preallocated ring buffer
+ * holding the most recent spans, which may be exported to a Chrome trace
+ * file (chrome://tracing) by {@link #exportTrace(File, int)}.
+ *
+ * Durations are summed up per span name and frame. The sums of the last
+ * {@link #WINDOW} frames are kept to calculate percentiles, see
+ * {@link #getPercentile(String, int)}.
+ *
+ * Spans are identified by their name, use constant strings to avoid
+ * allocations. Spans of different tracks must not be recorded concurrently,
+ * which is the case as the game loop alternates between update and draw.
+ *
+ * Enable via {@link GameSettings#PROFILER}.
+ */
+public class FrameProfiler {
+
+    //---------------------------------------------------------
+    // static
+    //---------------------------------------------------------
+    public static final int TRACK_GAME = 0;
+    public static final int TRACK_RENDER = 1;
+    private static final String[] TRACK_NAMES = {"game", "render"};
+
+    // span names used by the engine
+    public static final String UPDATE = "update";
+    public static final String EVENTS = "events";
+    public static final String PHYSICS = "physics";
+    public static final String PROCESSES = "processes";
+    public static final String LOGIC = "logic";
+    public static final String OBJECTS = "objects";
+    public static final String VIEWS = "views";
+    public static final String DRAW = "draw";
+    public static final String GL_CACHE = "glcache";
+    public static final String SCENE = "scene";
+    public static final String SORT = "sort";
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    /** Number of frames used for percentiles. */
+    public static final int WINDOW = 128;
+    public static final int MAX_DEPTH = 16;
+    public static final int MAX_NAMES = 64;
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    private final boolean mEnabled;
+    private final Track[] mTracks;
+    private int mFrame;
+
+    // per span name
+    private final String[] mNames = new String[MAX_NAMES];
+    private int mNameCnt;
+    private final long[] mCurrent = new long[MAX_NAMES];   // sum of current frame
+    private final long[] mLast = new long[MAX_NAMES];      // sum of last frame
+    private final long[][] mWindow;                        // sums of last frames
+    private int mWindowPos;
+    private int mWindowCnt;
+    private final long[] mSorted;
+
+    // ---------------------------------------------------------
+    // constructors
+    // ---------------------------------------------------------
+    /**
+     * @param capacity Number of spans kept per track, 0 to disable profiler.
+     */
+    public FrameProfiler(int capacity)
+    {
+        mEnabled = capacity > 0;
+        final int c = Math.max(capacity, 0);
+        mTracks = new Track[TRACK_NAMES.length];
+        for (int i = 0; i < mTracks.length; i++) {
+            mTracks[i] = new Track(c);
+        }
+        mWindow = new long[mEnabled ? MAX_NAMES : 0][mEnabled ? WINDOW : 0];
+        mSorted = new long[mEnabled ? WINDOW : 0];
+    }
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /** Number of frames recorded so far. */
+    public int getFrame() {
+        return mFrame;
+    }
+
+    /**
+     * Completes current frame. Called by the game loop before update.
+     */
+    public void onFrame() {
+        if (!mEnabled) {
+            return;
+        }
+        for (int i = 0; i < mNameCnt; i++) {
+            mLast[i] = mCurrent[i];
+            mWindow[i][mWindowPos] = mCurrent[i];
+            mCurrent[i] = 0;
+        }
+        mWindowPos = (mWindowPos + 1) % WINDOW;
+        mWindowCnt = Math.min(mWindowCnt + 1, WINDOW);
+        mFrame++;
+    }
+
+    /**
+     * Opens a span, which is nested into the span opened before unless
+     * that was closed already.
+     * @param track {@link #TRACK_GAME} or {@link #TRACK_RENDER}.
+     * @param name Span name.
+     */
+    public void begin(int track, String name) {
+        if (!mEnabled) {
+            return;
+        }
+        final Track t = mTracks[track];
+        final int depth = t.mDepth++;
+        if (depth >= MAX_DEPTH) {
+            return;
+        }
+        final int idx = (int) (t.mSeq % t.mCapacity);
+        final long now = System.nanoTime();
+        t.mName[idx] = getNameIdx(name);
+        t.mStart[idx] = now;
+        t.mEnd[idx] = 0;
+        t.mFrame[idx] = mFrame;
+        t.mStackSeq[depth] = t.mSeq;
+        t.mStackStart[depth] = now;
+        t.mStackName[depth] = t.mName[idx];
+        t.mSeq++;
+    }
+
+    /**
+     * Closes the span opened last.
+     * @param track {@link #TRACK_GAME} or {@link #TRACK_RENDER}.
+     */
+    public void end(int track) {
+        if (!mEnabled) {
+            return;
+        }
+        final Track t = mTracks[track];
+        if (t.mDepth == 0) {
+            return;
+        }
+        final int depth = --t.mDepth;
+        if (depth >= MAX_DEPTH) {
+            return;
+        }
+        final long now = System.nanoTime();
+        mCurrent[t.mStackName[depth]] += now - t.mStackStart[depth];
+        final long seq = t.mStackSeq[depth];
+        if (t.mSeq - seq <= t.mCapacity) {
+            // record not overwritten yet
+            t.mEnd[(int) (seq % t.mCapacity)] = now;
+        }
+    }
+
+    /**
+     * @return Total time in ns spent in spans of that name during last frame.
+     */
+    public long getLastFrameTime(String name) {
+        final int idx = findName(name);
+        return idx < 0 ? 0 : mLast[idx];
+    }
+
+    /**
+     * Percentile of time per frame spent in spans of that name, based on
+     * the last {@link #WINDOW} frames. Call on game thread.
+     * @param name Span name.
+     * @param percentile Percentile, e.g. 95.
+     * @return Time in ns.
+     */
+    public long getPercentile(String name, int percentile) {
+        final int idx = findName(name);
+        final int cnt = mWindowCnt;
+        if (idx < 0 || cnt == 0) {
+            return 0;
+        }
+        System.arraycopy(mWindow[idx], 0, mSorted, 0, cnt);
+        Arrays.sort(mSorted, 0, cnt);
+        final int p = Math.max(0, Math.min(100, percentile));
+        final int rank = (p * cnt + 99) / 100;
+        return mSorted[Math.max(rank - 1, 0)];
+    }
+
+    /** Number of distinct span names recorded so far. */
+    public int getNameCnt() {
+        return mNameCnt;
+    }
+
+    public String getName(int idx) {
+        return mNames[idx];
+    }
+
+    /**
+     * Writes completed spans of the last frames to a file in Chrome trace
+     * event format. Call on game thread.
+     * @param file Target file.
+     * @param frames Number of frames, including the current one.
+     * @return Number of exported spans.
+     */
+    public int exportTrace(File file, int frames) throws IOException {
+        final Writer w = new BufferedWriter(new FileWriter(file));
+        try {
+            return writeTrace(w, frames);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Writes completed spans of the last frames in Chrome trace event format.
+     * @param frames Number of frames, including the current one.
+     * @return Number of exported spans.
+     */
+    public int writeTrace(Writer w, int frames) throws IOException {
+        final int firstFrame = mFrame - frames + 1;
+        int cnt = 0;
+        w.write("{\"traceEvents\":[");
+        for (int tr = 0; tr < mTracks.length; tr++) {
+            if (tr > 0) {
+                w.write(',');
+            }
+            w.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + tr
+                    + ",\"args\":{\"name\":\"" + TRACK_NAMES[tr] + "\"}}");
+            final Track t = mTracks[tr];
+            final long first = Math.max(t.mSeq - t.mCapacity, 0);
+            for (long s = first; s < t.mSeq; s++) {
+                final int idx = (int) (s % t.mCapacity);
+                if (t.mEnd[idx] == 0 || t.mFrame[idx] < firstFrame) {
+                    continue;
+                }
+                w.write(",\n{\"name\":\"" + mNames[t.mName[idx]]
+                        + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + tr
+                        + ",\"ts\":" + t.mStart[idx] / 1000
+                        + ",\"dur\":" + (t.mEnd[idx] - t.mStart[idx]) / 1000
+                        + ",\"args\":{\"frame\":" + t.mFrame[idx] + "}}");
+                cnt++;
+            }
+        }
+        w.write("\n]}\n");
+        return cnt;
+    }
+
+    private int findName(String name) {
+        for (int i = 0; i < mNameCnt; i++) {
+            if (mNames[i] == name || mNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int getNameIdx(String name) {
+        final int idx = findName(name);
+        if (idx >= 0) {
+            return idx;
+        }
+        if (mNameCnt == MAX_NAMES) {
+            throw new IllegalStateException("Too many span names.");
+        }
+        mNames[mNameCnt] = name;
+        return mNameCnt++;
+    }
+
+    // ---------------------------------------------------------
+    // classes + interfaces
+    // ---------------------------------------------------------
+    private static class Track
+    {
+        final int mCapacity;
+        final int[] mName;
+        final long[] mStart;
+        final long[] mEnd;
+        final int[] mFrame;
+        long mSeq;      // number of spans opened so far
+
+        // open spans
+        final long[] mStackSeq = new long[MAX_DEPTH];
+        final long[] mStackStart = new long[MAX_DEPTH];
+        final int[] mStackName = new int[MAX_DEPTH];
+        int mDepth;
+
+        Track(int capacity)
+        {
+            mCapacity = capacity;
+            mName = new int[capacity];
+            mStart = new long[capacity];
+            mEnd = new long[capacity];
+            mFrame = new int[capacity];
+        }
+    }
+}
@@ -24,6 +24,9 @@ import java.util.ArrayList;
  *      - after that the transformation are updated, i.e. the current settings
  *        of position, rotation and scale are used to produce the "toWorld"
  *        matrix. 
+ *  Position, rotation, scale and to-world matrix may live in a shared 
+ *  {@link TransformStore} instead of the object's own arrays, see 
+ *  {@link GameSettings#TRANSFORM_STORE}.
  */
 public class GameObj extends PoolItem implements IPositionable3D,
         IRotatable3D,
@@ -43,6 +46,8 @@ public class GameObj extends PoolItem implements IPositionable3D,
     //  types is constant) 
     @SuppressWarnings("unchecked")
     private final ArrayList<IComponent>[] mComponents = new ArrayList[ComponentType.getCount()];
+    private int mComponentCnt;
+    private int mThreadSafeComponentCnt;
     
     private final float[] mPosition     = {0, 0, 0, 1};  // xyz
     // switched to matrix representation for rotation,
@@ -51,6 +56,7 @@ public class GameObj extends PoolItem implements IPositionable3D,
     private final float[] mRotation     = new float[16];
     private final float[] mVec          = new float[4];
     private final float[] mScale        = {1, 1, 1, 0};  // scale xyz
+    private float[] mTmpMat;    // rotation scratch, keeps rotate() thread-safe
     
     private float[] mToWorld = new float[16];
     private float[] mFromWorld = new float[16];
@@ -63,6 +69,12 @@ public class GameObj extends PoolItem implements IPositionable3D,
     private boolean mSendScaleEvent;
     private boolean mSendRotateEvent;
     private float mLastModTime;
+    private int mTransformVersion;
+    
+    // transformation data is kept in store when set
+    TransformStore mStore;
+    int mSlot = -1;
+    private int mToWorldVersion;
     
     /**
      * Constructs game object with default layer.
@@ -140,6 +152,10 @@ public class GameObj extends PoolItem implements IPositionable3D,
         }
         lst.add(cpt);
         cpt.setGameObj(this);
+        mComponentCnt++;
+        if (cpt instanceof IThreadSafeComponent) {
+            mThreadSafeComponentCnt++;
+        }
         return this;
     }
     
@@ -186,11 +202,43 @@ public class GameObj extends PoolItem implements IPositionable3D,
         }
     }
     
+    /**
+     * Updates either thread-safe components only or all others. Used by 
+     * {@link ParallelUpdater}.
+     * @param threadSafe True to update {@link IThreadSafeComponent}s, 
+     *          false to update all other components.
+     */
+    public void onUpdateComponents(long realTime, float realDelta, 
+            float virtualDelta, boolean threadSafe) {
+        final int cnt = threadSafe ? mThreadSafeComponentCnt : 
+                mComponentCnt - mThreadSafeComponentCnt;
+        if (cnt == 0) {
+            return;
+        }
+        int len = mComponents.length;
+        for (int i = 0; i < len; i++) {
+            final ArrayList<IComponent> lst = mComponents[i];
+            for (int c = 0; c < lst.size(); c ++) {
+                final IComponent cpt = lst.get(c);
+                if ((cpt instanceof IThreadSafeComponent) == threadSafe) {
+                    cpt.onUpdate(realTime, realDelta, virtualDelta);
+                }
+            }
+        }
+    }
+    
     public void onUpdateTransform(long realTime, float realDelta, 
             float virtualDelta) { 
-        if (mMoved || mScaled || mRotated) {
-            mLastModTime = realTime;
-            updateTransform();
+        if (mStore != null) {
+            mStore.update(mSlot, realTime);
+        } else if (mMoved || mScaled || mRotated) {
+            // thread-safe variant, may run on worker thread
+            MatrixAF.local2World(mToWorld, 0, mPosition, 0, mScale, 0, mRotation, 0);
+            final int flags = getLocalFlags();
+            mMoved = false;
+            mScaled = false;
+            mRotated = false;
+            onTransformUpdated(realTime, flags);
         }
     }
     
@@ -245,53 +293,50 @@ public class GameObj extends PoolItem implements IPositionable3D,
     }
 
     public float[] getPosition() {
+        if (mStore != null) {
+            System.arraycopy(mStore.mPositions, positionOffset(), mPosition, 0, 4);
+        }
         return mPosition;
     }
     
     public GameObj setPosition(float x, float y, float z) {
-        mPosition[0] = x;
-        mPosition[1] = y;
-        mPosition[2] = z;
-        mMoved = true;
+        final float[] pos = positionData();
+        final int o = positionOffset();
+        pos[o] = x;
+        pos[o + 1] = y;
+        pos[o + 2] = z;
+        modified(TransformStore.MOVED);
         return this;
     }
     
     public GameObj setPostion(float[] pos) {
-        mPosition[0] = pos[0];
-        mPosition[1] = pos[1];
-        mPosition[2] = pos[2];
-        mMoved = true;
-        return this;
+        return setPosition(pos[0], pos[1], pos[2]);
     }
     
     /** Uniform scale */
     public GameObj setScale(float scale) {
-        // setting to 0 would result in non-invertible to-world matrix
-        final float s = scale == 0 ? 0.0001f : scale;
-        mScale[0] = s;
-        mScale[1] = s;
-        mScale[2] = s;
-        mScaled = true;
-        return this;
+        return setScale(scale, scale, scale);
     }
     
     public GameObj setScale(float[] scale) {
-        for (int i = 0; i < 3; i++) {
-            mScale[i] = scale[i] == 0 ? 0.0001f : scale[i];
-        }
-        mScaled = true;
-        return this;
+        return setScale(scale[0], scale[1], scale[2]);
     }
     
     public GameObj setScale(float x, float y, float z) {
-        mScale[0] = x == 0 ? 0.0001f : x;
-        mScale[1] = y == 0 ? 0.0001f : y;
-        mScale[2] = z == 0 ? 0.0001f : z;
-        mScaled = true;
+        // setting to 0 would result in non-invertible to-world matrix
+        final float[] scale = scaleData();
+        final int o = scaleOffset();
+        scale[o] = x == 0 ? 0.0001f : x;
+        scale[o + 1] = y == 0 ? 0.0001f : y;
+        scale[o + 2] = z == 0 ? 0.0001f : z;
+        modified(TransformStore.SCALED);
         return this;
     }
     
     public float[] getScale() {
+        if (mStore != null) {
+            System.arraycopy(mStore.mScales, scaleOffset(), mScale, 0, 4);
+        }
         return mScale;
     }
     
@@ -300,8 +345,16 @@ public class GameObj extends PoolItem implements IPositionable3D,
      */
     public GameObj rotate(float x, float y, float z, float angle) {
         //QuaternionAF.lhsRotateQ(mRotationQ, x, y, z, angle);
-        MatrixAF.lhsRotateM(mRotation, 0, angle, x, y, z);
-        mRotated = true;
+        // no MatrixAF.lhsRotateM() here because of its shared temporaries
+        if (mTmpMat == null) {
+            mTmpMat = new float[32];
+        }
+        final float[] rot = rotationData();
+        final int o = rotationOffset();
+        MatrixAF.setRotateM(mTmpMat, 0, angle, x, y, z);
+        MatrixAF.multiplyMM(mTmpMat, 16, mTmpMat, 0, rot, o);
+        System.arraycopy(mTmpMat, 16, rot, o, 16);
+        modified(TransformStore.ROTATED);
         return this;
     }
     
@@ -314,23 +367,25 @@ public class GameObj extends PoolItem implements IPositionable3D,
      * @param forward
      */
     public GameObj setRotation(float[] left, float[] up, float[] forward) {
-        mRotation[0] = left[0];
-        mRotation[1] = left[1];
-        mRotation[2] = left[2];
-        mRotation[3] = 0;
-        mRotation[4] = up[0];
-        mRotation[5] = up[1];
-        mRotation[6] = up[2];
-        mRotation[7] = 0;
-        mRotation[8] = forward[0];
-        mRotation[9] = forward[1];
-        mRotation[10] = forward[2];
-        mRotation[11] = 0;
-        mRotation[12] = 0;
-        mRotation[13] = 0;
-        mRotation[14] = 0;
-        mRotation[15] = 1;
-        mRotated = true;
+        final float[] rot = rotationData();
+        final int o = rotationOffset();
+        rot[o] = left[0];
+        rot[o + 1] = left[1];
+        rot[o + 2] = left[2];
+        rot[o + 3] = 0;
+        rot[o + 4] = up[0];
+        rot[o + 5] = up[1];
+        rot[o + 6] = up[2];
+        rot[o + 7] = 0;
+        rot[o + 8] = forward[0];
+        rot[o + 9] = forward[1];
+        rot[o + 10] = forward[2];
+        rot[o + 11] = 0;
+        rot[o + 12] = 0;
+        rot[o + 13] = 0;
+        rot[o + 14] = 0;
+        rot[o + 15] = 1;
+        modified(TransformStore.ROTATED);
         return this;
     }
     
@@ -340,8 +395,8 @@ public class GameObj extends PoolItem implements IPositionable3D,
      * @return
      */
     public GameObj setRotation(float[] mat) {
-        System.arraycopy(mat, 0, mRotation, 0, 16);
-        mRotated = true;
+        System.arraycopy(mat, 0, rotationData(), rotationOffset(), 16);
+        modified(TransformStore.ROTATED);
         return this;
     }
     
@@ -351,8 +406,8 @@ public class GameObj extends PoolItem implements IPositionable3D,
      */
     public GameObj setRotationQ(float[] q) {
         final float[] mat = QuaternionAF.toMatrix(q);
-        System.arraycopy(mat, 0, mRotation, 0, 16);
-        mRotated = true;
+        System.arraycopy(mat, 0, rotationData(), rotationOffset(), 16);
+        modified(TransformStore.ROTATED);
         return this;
     }
     
@@ -361,8 +416,8 @@ public class GameObj extends PoolItem implements IPositionable3D,
      */
     public GameObj resetRotation() {
         //QuaternionAF.setIdentity(mRotationQ);
-        MatrixAF.setIdentityM(mRotation, 0);
-        mRotated = true;
+        MatrixAF.setIdentityM(rotationData(), rotationOffset());
+        modified(TransformStore.ROTATED);
         return this;
     }
     
@@ -372,6 +427,9 @@ public class GameObj extends PoolItem implements IPositionable3D,
      */
     public float[] getRotation() {
         //return QuaternionAF.toAxisAngle(mRotationQ);
+        if (mStore != null) {
+            System.arraycopy(mStore.mRotations, rotationOffset(), mRotation, 0, 16);
+        }
         return mRotation;
     }
     
@@ -380,7 +438,7 @@ public class GameObj extends PoolItem implements IPositionable3D,
      * @return
      */
     public float[] getRotationQ() {
-        final float[] q = QuaternionAF.fromMatrix(mRotation);
+        final float[] q = QuaternionAF.fromMatrix(getRotation());
         for (int i = 0; i < 4; i++) {
             mVec[i] = q[i];
         }
@@ -409,9 +467,11 @@ public class GameObj extends PoolItem implements IPositionable3D,
      * @return
      */
     public float[] getUpVector() {
-        mVec[0] = mRotation[4];
-        mVec[1] = mRotation[5];
-        mVec[2] = mRotation[6];
+        final float[] rot = rotationData();
+        final int o = rotationOffset();
+        mVec[0] = rot[o + 4];
+        mVec[1] = rot[o + 5];
+        mVec[2] = rot[o + 6];
         mVec[3] = 0;
         return mVec;
     }
@@ -421,9 +481,11 @@ public class GameObj extends PoolItem implements IPositionable3D,
      * @return
      */
     public float[] getLeftVector() {
-        mVec[0] = mRotation[0];
-        mVec[1] = mRotation[1];
-        mVec[2] = mRotation[2];
+        final float[] rot = rotationData();
+        final int o = rotationOffset();
+        mVec[0] = rot[o + 0];
+        mVec[1] = rot[o + 1];
+        mVec[2] = rot[o + 2];
         mVec[3] = 0;
         return mVec;
     }
@@ -433,9 +495,11 @@ public class GameObj extends PoolItem implements IPositionable3D,
      * @return
      */
     public float[] getForwardVector() {
-        mVec[0] = mRotation[8];
-        mVec[1] = mRotation[9];
-        mVec[2] = mRotation[10];
+        final float[] rot = rotationData();
+        final int o = rotationOffset();
+        mVec[0] = rot[o + 8];
+        mVec[1] = rot[o + 9];
+        mVec[2] = rot[o + 10];
         mVec[3] = 0;
         return mVec;
     }
@@ -444,7 +508,16 @@ public class GameObj extends PoolItem implements IPositionable3D,
     public float getLastModTime() {
         // if object is dirty then last mod was in current frame,
         // otherwise return time of last transform update
-        return mMoved || mRotated || mScaled ? mGame.getRealTime() : mLastModTime;
+        return isDirty() ? mGame.getRealTime() : mLastModTime;
+    }
+    
+    /**
+     * Returns a counter which is incremented whenever the to-world
+     * transformation changes. Allows to detect movement of the object
+     * without comparing matrices.
+     */
+    public int getTransformVersion() {
+        return mTransformVersion;
     }
     
     /** Indicates if this object is currently active in the engine. */
@@ -459,66 +532,138 @@ public class GameObj extends PoolItem implements IPositionable3D,
      * @return
      */
     public boolean isDirty() {
-        return mMoved || mRotated || mScaled;
+        return mStore != null ? mStore.getFlags(mSlot) != 0 : mMoved || mRotated || mScaled;
     }
     
-    private void updateTransform()
+    /** 
+     * Called after the to-world transformation was recomputed. 
+     * @param flags Modifications, see {@link TransformStore#MOVED} etc.
+     */
+    void onTransformUpdated(long realTime, int flags)
     {
-        MatrixAF.local2World(mToWorld, mPosition, mScale, mRotation);
+        mLastModTime = realTime;
         mFromWorldValid = false; 
+        mTransformVersion++;
        
         // send events
-        if (mMoved && mSendMoveEvent) {
+        if ((flags & TransformStore.MOVED) != 0 && mSendMoveEvent) {
+            final float[] pos = getPosition();
             final EventManager em = mGame.getEventManager();
             final IGameObjMoveEvent e = em.obtain(IGameObjMoveEvent.EVENT_TYPE);
-            e.setGameObjData(mID, mPosition[0], mPosition[1], mPosition[2]);
+            e.setGameObjData(mID, pos[0], pos[1], pos[2]);
             em.queueEvent(e);  
         }
-        if (mScaled && mSendScaleEvent) {
+        if ((flags & TransformStore.SCALED) != 0 && mSendScaleEvent) {
+            final float[] scale = getScale();
             final EventManager em = mGame.getEventManager();
             final IGameObjScaleEvent e = em.obtain(IGameObjScaleEvent.EVENT_TYPE);
-            e.setGameObjData(mID, mScale[0], mScale[1], mScale[2]);
+            e.setGameObjData(mID, scale[0], scale[1], scale[2]);
             em.queueEvent(e);
         }
-        if (mRotated && mSendRotateEvent) {
+        if ((flags & TransformStore.ROTATED) != 0 && mSendRotateEvent) {
             final EventManager em = mGame.getEventManager();
             final IGameObjRotateEvent e = em.obtain(IGameObjRotateEvent.EVENT_TYPE);
             e.setGameObjData(mID);
             em.queueEvent(e);
         }
-        mMoved = false;
-        mScaled = false;
-        mRotated = false;
     }
    
     public float[] getToWorld() {
+        if (mStore != null && mToWorldVersion != mTransformVersion) {
+            System.arraycopy(mStore.mToWorld, mSlot * TransformStore.MAT_STRIDE, mToWorld, 0, 16);
+            mToWorldVersion = mTransformVersion;
+        }
         return mToWorld;
     }
     
     public float[] getFromWorld() {
-        if (!mFromWorldValid && !MatrixAF.invertM(mFromWorld, 0, mToWorld, 0)) {
-            throw new IllegalStateException("Inversion of transformation matrix failed.");
-        } 
+        if (!mFromWorldValid) {
+            if (!MatrixAF.invertM(mFromWorld, 0, getToWorld(), 0)) {
+                throw new IllegalStateException("Inversion of transformation matrix failed.");
+            }
+            mFromWorldValid = true;
+        }
         return mFromWorld;
     }
 
     @Override
     public boolean mimic(GameObj original) {
         // copy position, rotation, scale and transformations 
-        System.arraycopy(original.mPosition, 0, mPosition, 0, 4);
-        System.arraycopy(original.mScale, 0, mScale, 0, 4);
-        System.arraycopy(original.mRotation, 0, mRotation, 0, 16);
-        System.arraycopy(original.mToWorld, 0, mToWorld, 0, 16);
+        System.arraycopy(original.getPosition(), 0, positionData(), positionOffset(), 4);
+        System.arraycopy(original.getScale(), 0, scaleData(), scaleOffset(), 4);
+        System.arraycopy(original.getRotation(), 0, rotationData(), rotationOffset(), 16);
+        System.arraycopy(original.getToWorld(), 0, mToWorld, 0, 16);
         System.arraycopy(original.mFromWorld, 0, mFromWorld, 0, 16);
+        if (mStore != null) {
+            System.arraycopy(mToWorld, 0, mStore.mToWorld, mSlot * TransformStore.MAT_STRIDE, 16);
+        }
     
+        final int flags = original.mStore != null ? 
+                original.mStore.getFlags(original.mSlot) : original.getLocalFlags();
+        if (mStore != null) {
+            mStore.setFlags(mSlot, flags);
+        } else {
+            setLocalFlags(flags);
+        }
         mLastModTime    = original.mLastModTime;
-        mMoved          = original.mMoved;
-        mRotated        = original.mRotated;
-        mScaled         = original.mScaled;
         mFromWorldValid = original.mFromWorldValid;
+        mTransformVersion++;
+        mToWorldVersion = mTransformVersion;
         
         return true;
     }
+    
+    /** Moves transformation data to store, called by {@link TransformStore}. */
+    void attachStore(TransformStore store, int slot) {
+        mStore = store;
+        mSlot = slot;
+        System.arraycopy(mPosition, 0, store.mPositions, positionOffset(), 4);
+        System.arraycopy(mScale, 0, store.mScales, scaleOffset(), 4);
+        System.arraycopy(mRotation, 0, store.mRotations, rotationOffset(), 16);
+        System.arraycopy(mToWorld, 0, store.mToWorld, slot * TransformStore.MAT_STRIDE, 16);
+        store.setFlags(slot, getLocalFlags());
+        setLocalFlags(0);
+        mToWorldVersion = mTransformVersion;
+    }
+    
+    /** Moves transformation data back from store, called by {@link TransformStore}. */
+    void detachStore() {
+        getPosition();
+        getScale();
+        getRotation();
+        getToWorld();
+        setLocalFlags(mStore.getFlags(mSlot));
+        mStore = null;
+        mSlot = -1;
+    }
+    
+    private void modified(int flag) {
+        if (mStore != null) {
+            mStore.markDirty(mSlot, flag);
+        } else {
+            setLocalFlags(getLocalFlags() | flag);
+        }
+    }
+    
+    private int getLocalFlags() {
+        return (mMoved ? TransformStore.MOVED : 0) | 
+                (mScaled ? TransformStore.SCALED : 0) | 
+                (mRotated ? TransformStore.ROTATED : 0);
+    }
+    
+    private void setLocalFlags(int flags) {
+        mMoved = (flags & TransformStore.MOVED) != 0;
+        mScaled = (flags & TransformStore.SCALED) != 0;
+        mRotated = (flags & TransformStore.ROTATED) != 0;
+    }
+    
+    // transformation data is either in own arrays or in store
+    private float[] positionData()  {return mStore != null ? mStore.mPositions : mPosition;}
+    private int positionOffset()    {return mStore != null ? mSlot * TransformStore.POS_STRIDE : 0;}
+    private float[] scaleData()     {return mStore != null ? mStore.mScales : mScale;}
+    private int scaleOffset()       {return mStore != null ? mSlot * TransformStore.SCALE_STRIDE : 0;}
+    private float[] rotationData()  {return mStore != null ? mStore.mRotations : mRotation;}
+    private int rotationOffset()    {return mStore != null ? mSlot * TransformStore.MAT_STRIDE : 0;}
 
     @Override
     public boolean equals(Object o) {
@@ -559,6 +704,21 @@ public class GameObj extends PoolItem implements IPositionable3D,
         void setGameObj(GameObj obj);
     }
     
+    /**
+     * Marker for components that may be updated on a worker thread in 
+     * parallel to components of other game objects (see 
+     * {@link GameSettings#PARALLEL_UPDATE}). The onUpdate() method of such a
+     * component may only access its own game object and must not use
+     * engine facilities other than {@link EventManager#obtain} and
+     * {@link EventManager#queueEvent}. Note that {@link MatrixAF} and 
+     * {@link QuaternionAF} use shared temporaries, so the quaternion methods
+     * of {@link GameObj} are not safe either. Components not marked are 
+     * updated on the game thread before any thread-safe component.
+     */
+    public interface IThreadSafeComponent extends IComponent
+    {
+    }
+    
     public enum ComponentType {
         // order in this enum also defines order in which components
         // are initialized and updated in GameObject's onUpdate method:
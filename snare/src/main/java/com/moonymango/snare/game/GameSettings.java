@@ -3,11 +3,20 @@ package com.moonymango.snare.game;
 import android.content.pm.ActivityInfo;
 import android.media.SoundPool;
 
+import com.moonymango.snare.events.EventManager;
+import com.moonymango.snare.events.EventManager.EventPriority;
+import com.moonymango.snare.events.EventManager.IEventType;
 import com.moonymango.snare.events.IKeyEvent;
 import com.moonymango.snare.opengl.RenderOptions;
 import com.moonymango.snare.opengl.TextureObjOptions;
+import com.moonymango.snare.res.BaseResource;
+import com.moonymango.snare.res.ResourceCache;
+import com.moonymango.snare.res.ResourceLoader;
+import com.moonymango.snare.res.data.Max3DSParser;
+import com.moonymango.snare.res.data.Max3DSStreamParser;
 import com.moonymango.snare.ui.InputEventMask;
 import com.moonymango.snare.ui.scene3D.Scene3DOptions;
+import com.moonymango.snare.util.Pool;
 
 /**
  * Settings. Field names named upper case indicate a constant setting,
@@ -37,12 +46,40 @@ public class GameSettings extends BaseSnareClass
     /** Set true to create separate thread for game loop. 
      * Otherwise all will be done in GL loop. */
     public boolean MULTI_THREADED = false;
+    /** Set true to keep transformation data of all game objects in a 
+     * {@link TransformStore} and update only modified objects in one 
+     * tight loop. Arrays returned by {@link GameObj#getPosition()} etc. are
+     * copies then and must not be modified. */
+    public boolean TRANSFORM_STORE = false;
+    /** Set true to update game objects on several threads. Components 
+     * implementing {@link GameObj.IThreadSafeComponent} and the transformations
+     * (unless {@link #TRANSFORM_STORE} is set) are updated in parallel, 
+     * all other components on the game thread. */
+    public boolean PARALLEL_UPDATE = false;
+    /** Number of worker threads for parallel update, in addition to the 
+     * game thread. */
+    public int PARALLEL_UPDATE_WORKERS = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+    /** Number of game objects each worker claims at once. */
+    public int PARALLEL_UPDATE_CHUNK_SIZE = ParallelUpdater.DEFAULT_CHUNK_SIZE;
+    /** Set true to record timing spans of game loop and rendering. See
+     * {@link FrameProfiler}. */
+    public boolean PROFILER = false;
+    /** Number of spans kept per thread for trace export. */
+    public int PROFILER_CAPACITY = FrameProfiler.DEFAULT_CAPACITY;
     
     /** Max. delta between frames. When actual delta is greater than this, 
      * it will be clamped. */
     public long mRealtimeDeltaThreshold = 30;
     /** Delta between frames when debugger is connected. */
     public long mRealtimeDeltaWhenDebuggerConnected = 20;
+    /** Max. time in ms per frame for dispatching queued events, 0 for no limit.
+     * Remaining events are deferred to the next frame. Events of priority 
+     * HIGH (input, game state changes) are never deferred. See 
+     * {@link EventManager#setPriority(IEventType, EventPriority)}. */
+    public long mEventTimeBudget = 0;
+    /** Number of frames after which pool items, which were obtained but not
+     * recycled, are reported as leaks. 0 to disable. See {@link Pool}. */
+    public int mPoolLeakFrames = 0;
     /** Creates additional load in game loop. Debugging puposes. */
     public int mDummyLoops = 0;
     /** Set to true to create {@link IKeyEvent} when back button is touched. */
@@ -53,8 +90,24 @@ public class GameSettings extends BaseSnareClass
     public boolean mCustomVolumeDownButton = false;
     
     // Resource cache
-    /** Default cache threshold is VM maxMemory minus 4 MB */
+    /** 
+     * Max. bytes of resource data (bitmaps, meshes etc.) in the resource 
+     * cache, 0 means no limit. Default is VM maxMemory minus 4 MB. Budgets
+     * per resource class can be set via {@link ResourceCache#setBudget(Class, long)}.
+     */
     public long RESOURCE_CACHE_THRESHOLD = Runtime.getRuntime().maxMemory() - 4 *1024*1024;
+    /** Max. number of threads loading resources requested via {@link BaseResource#requestAsync()}. */
+    public int RESOURCE_LOADER_THREADS = ResourceLoader.DEFAULT_THREAD_CNT;
+    /** 
+     * Set to true to keep imported meshes in app cache directory, so that
+     * parsing and normal generation is done only once per app install.
+     */
+    public boolean MESH_CACHE = true;
+    /** 
+     * Set to true to import meshes with {@link Max3DSStreamParser}, which
+     * needs a fraction of the time and allocations of {@link Max3DSParser}.
+     */
+    public boolean MESH_STREAM_PARSER = true;
     
     // Renderer
     public final RenderOptions RENDER_OPTIONS = new RenderOptions(); 
@@ -78,6 +78,8 @@ public interface IGame
 
     GLObjCache getGLObjCache();
 
+    FrameProfiler getProfiler();
+
     IGameState getGameState();
 
     IGameState getPrevGameState();
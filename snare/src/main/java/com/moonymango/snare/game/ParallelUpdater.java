@@ -0,0 +1,234 @@
+package com.moonymango.snare.game;
+
+import com.moonymango.snare.game.GameObj.IThreadSafeComponent;
+import com.moonymango.snare.util.Logger;
+import com.moonymango.snare.util.Logger.LogSource;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Updates game objects on several threads. The object list is partitioned
+ * into chunks, which are claimed one by one by worker threads and the
+ * calling thread, so fast threads take over chunks of slow ones. Each call
+ * to {@link #update(ArrayList, long, float, float, boolean)} returns when
+ * all chunks are done (barrier).
+ *
+ * Components that are not {@link IThreadSafeComponent} are updated on
+ * the calling thread before the parallel part starts.
+ *
+ * Enable via {@link GameSettings#PARALLEL_UPDATE}.
+ */
+public class ParallelUpdater {
+
+    //---------------------------------------------------------
+    // static
+    //---------------------------------------------------------
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    private final Worker[] mWorkers;
+    private final int mChunkSize;
+    private final AtomicInteger mNextChunk = new AtomicInteger();
+
+    private final Object mLock = new Object();  // monitor for fields below
+    private int mJob;           // incremented for each update
+    private int mBusyWorkers;
+    private boolean mShutdown;
+    private Throwable mError;
+
+    // parameters of current update
+    private ArrayList<GameObj> mObjects;
+    private int mChunkCnt;
+    private long mRealTime;
+    private float mRealDelta;
+    private float mVirtualDelta;
+    private boolean mUpdateTransforms;
+
+    // ---------------------------------------------------------
+    // constructors
+    // ---------------------------------------------------------
+    /**
+     * Creates and starts worker threads.
+     * @param workerCnt Number of worker threads in addition to the calling
+     *          thread. 0 means all work is done by the calling thread.
+     * @param chunkSize Number of objects per chunk.
+     */
+    public ParallelUpdater(int workerCnt, int chunkSize)
+    {
+        if (workerCnt < 0 || chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid worker count or chunk size.");
+        }
+        mChunkSize = chunkSize;
+        mWorkers = new Worker[workerCnt];
+        for (int i = 0; i < workerCnt; i++) {
+            mWorkers[i] = new Worker();
+            mWorkers[i].setName("SnareUpdateWorker" + i);
+            mWorkers[i].setDaemon(true);
+            mWorkers[i].start();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    public int getWorkerCnt() {
+        return mWorkers.length;
+    }
+
+    /**
+     * Updates components of all objects and optionally their transformations.
+     * The list must not be modified until this method returns.
+     * @param objects Game objects.
+     * @param updateTransforms True to call {@link GameObj#onUpdateTransform(long, float, float)}
+     *          after the components of each object.
+     */
+    public void update(ArrayList<GameObj> objects, long realTime, float realDelta,
+            float virtualDelta, boolean updateTransforms)
+    {
+        // components that need the game thread
+        for (int i = objects.size() - 1; i >= 0; i--) {
+            objects.get(i).onUpdateComponents(realTime, realDelta, virtualDelta, false);
+        }
+
+        final int chunkCnt = (objects.size() + mChunkSize - 1) / mChunkSize;
+        mObjects = objects;
+        mChunkCnt = chunkCnt;
+        mRealTime = realTime;
+        mRealDelta = realDelta;
+        mVirtualDelta = virtualDelta;
+        mUpdateTransforms = updateTransforms;
+        mNextChunk.set(0);
+
+        if (mWorkers.length > 0 && chunkCnt > 1) {
+            synchronized (mLock) {
+                if (mShutdown) {
+                    throw new IllegalStateException("Updater already shut down.");
+                }
+                mBusyWorkers = mWorkers.length;
+                mJob++;
+                mLock.notifyAll();
+            }
+            try {
+                processChunks();
+            } catch (RuntimeException e) {
+                // let workers finish quickly
+                mNextChunk.set(chunkCnt);
+                throw e;
+            } finally {
+                awaitWorkers();
+            }
+        } else {
+            processChunks();
+        }
+        mObjects = null;
+
+        synchronized (mLock) {
+            if (mError != null) {
+                final Throwable t = mError;
+                mError = null;
+                throw new RuntimeException("Parallel update failed.", t);
+            }
+        }
+    }
+
+    /** Stops worker threads. */
+    public void shutdown() {
+        synchronized (mLock) {
+            mShutdown = true;
+            mLock.notifyAll();
+        }
+        for (Worker w : mWorkers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Barrier, waits until all workers are done with current update. */
+    private void awaitWorkers() {
+        boolean interrupted = false;
+        synchronized (mLock) {
+            while (mBusyWorkers > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    // keep waiting, workers still access the list
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Processes chunks until none is left. */
+    private void processChunks() {
+        final ArrayList<GameObj> objects = mObjects;
+        final int len = objects.size();
+        int chunk;
+        while ((chunk = mNextChunk.getAndIncrement()) < mChunkCnt) {
+            final int end = Math.min((chunk + 1) * mChunkSize, len);
+            for (int i = chunk * mChunkSize; i < end; i++) {
+                final GameObj obj = objects.get(i);
+                obj.onUpdateComponents(mRealTime, mRealDelta, mVirtualDelta, true);
+                if (mUpdateTransforms) {
+                    obj.onUpdateTransform(mRealTime, mRealDelta, mVirtualDelta);
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------
+    // classes + interfaces
+    // ---------------------------------------------------------
+    private class Worker extends Thread
+    {
+        @Override
+        public void run()
+        {
+            int lastJob = 0;
+            while (true) {
+                synchronized (mLock) {
+                    while (!mShutdown && mJob == lastJob) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // only shutdown() stops workers, otherwise the
+                            // next update would wait for this one forever
+                        }
+                    }
+                    if (mShutdown) {
+                        return;
+                    }
+                    lastJob = mJob;
+                }
+
+                try {
+                    processChunks();
+                } catch (Throwable t) {
+                    Logger.e(LogSource.GAME, "error in parallel update: " + t);
+                    synchronized (mLock) {
+                        if (mError == null) {
+                            mError = t;
+                        }
+                    }
+                    // let other threads finish quickly
+                    mNextChunk.set(mChunkCnt);
+                }
+
+                synchronized (mLock) {
+                    if (--mBusyWorkers == 0) {
+                        mLock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.moonymango.snare.events.IGameStateChangedEvent;
 import com.moonymango.snare.events.IStatsUpdateEvent;
 import com.moonymango.snare.game.GameObj.GameObjLayer;
 import com.moonymango.snare.opengl.GLObjCache;
+import com.moonymango.snare.opengl.GLStateCache;
 import com.moonymango.snare.opengl.IRenderer;
 import com.moonymango.snare.opengl.SnareGLSurfaceView;
 import com.moonymango.snare.physics.IPhysics;
@@ -28,8 +29,10 @@ import com.moonymango.snare.res.ResourceCache;
 import com.moonymango.snare.ui.BaseFont;
 import com.moonymango.snare.ui.PlayerGameView;
 import com.moonymango.snare.ui.PlayerIOGameView;
+import com.moonymango.snare.util.Cache;
 import com.moonymango.snare.util.Logger;
 import com.moonymango.snare.util.Logger.LogSource;
+import com.moonymango.snare.util.Pool;
 import com.moonymango.snare.util.RandomString;
 
 import java.util.ArrayList;
@@ -71,7 +74,10 @@ final class SnareGame implements IGame
     private final IRenderer mRenderer;
     //private final Vibrator mVibrator;
     private final ProcessManager mProcessManager = new ProcessManager();
+    private final TransformStore mTransformStore;
+    private ParallelUpdater mParallelUpdater;
     private final GLObjCache mGLObjCache;
+    private final FrameProfiler mProfiler;
     private final Random mRandom = new Random();
     private final RandomString mRandomStringGen;
 
@@ -95,6 +101,7 @@ final class SnareGame implements IGame
     private float mLastFPS;
     private float mMinDelta;
     private float mMaxDelta;
+    private final ArrayList<Pool<?>> mStatsPools = new ArrayList<>();
 
     private GameThread mGameThread;
     private boolean mInitDone = false;
@@ -112,9 +119,12 @@ final class SnareGame implements IGame
         mRenderer = activity.onLoadRenderer(this, mPrimaryPlayerView);
         mEventManager = activity.onLoadEventManager(this);
         mPhysics = activity.onLoadPhysics(this);
+        mTransformStore = mSettings.TRANSFORM_STORE ? new TransformStore() : null;
+        mProfiler = new FrameProfiler(mSettings.PROFILER ? mSettings.PROFILER_CAPACITY : 0);
 
         final Application app = activity.getApplication();
-        mResourceCache = new ResourceCache(this, mSettings.RESOURCE_CACHE_THRESHOLD, app);
+        mResourceCache = new ResourceCache(this, mSettings.RESOURCE_CACHE_THRESHOLD, app,
+                mSettings.RESOURCE_LOADER_THREADS);
         mGLObjCache = new GLObjCache(this);
         mAudioManager = new SnareAudioManager(mSettings.SOUND_MAX_STREAMS, app);
         //mVibrator = (Vibrator) app.getSystemService(Context.VIBRATOR_SERVICE);
@@ -208,6 +218,10 @@ final class SnareGame implements IGame
             mGameThread.setName("SnareGameLoop");
             mGameThread.start();
         }
+        if (mSettings.PARALLEL_UPDATE && mParallelUpdater == null) {
+            mParallelUpdater = new ParallelUpdater(mSettings.PARALLEL_UPDATE_WORKERS,
+                    mSettings.PARALLEL_UPDATE_CHUNK_SIZE);
+        }
     }
 
 
@@ -222,6 +236,10 @@ final class SnareGame implements IGame
             }
             mGameThread = null;
         }
+        if (mParallelUpdater != null) {
+            mParallelUpdater.shutdown();
+            mParallelUpdater = null;
+        }
         setGameState(mPauseGameState);
 
         // release sound resources
@@ -371,6 +389,12 @@ final class SnareGame implements IGame
         return mGLObjCache;
     }
 
+    @Override
+    public FrameProfiler getProfiler()
+    {
+        return mProfiler;
+    }
+
     /**
      * Returns active game state.
      */
@@ -481,6 +505,9 @@ final class SnareGame implements IGame
     {
         mObjects.put(obj.getID(), obj);
         mObjectsList.add(obj);
+        if (mTransformStore != null) {
+            mTransformStore.add(obj);
+        }
         obj.onInit();
 
         IGameObjNewEvent e = mEventManager.obtain(IGameObjNewEvent.EVENT_TYPE);
@@ -499,6 +526,9 @@ final class SnareGame implements IGame
 
         mObjects.delete(obj.getID());
         mObjectsList.remove(obj);
+        if (mTransformStore != null) {
+            mTransformStore.remove(obj);
+        }
         //Logger.i(LogSource.GAME, "removed game object id " + obj.getID());
         obj.onShutdown();
     }
@@ -659,26 +689,59 @@ final class SnareGame implements IGame
         mRealtime += delta;
         final float virtualDelta = mVirtualTimeStopped ? 0 : delta * mVirtualTimeFactor;
 
-        mEventManager.tick(0);
+        final FrameProfiler p = mProfiler;
+        p.onFrame();
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.UPDATE);
+
+        Pool.onFrame(mSettings.mPoolLeakFrames);
+        mResourceCache.onUpdate();
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.EVENTS);
+        mEventManager.tick(mSettings.mEventTimeBudget);
+        p.end(FrameProfiler.TRACK_GAME);
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.PHYSICS);
         mPhysics.tick(mRealtime, delta, virtualDelta);
+        p.end(FrameProfiler.TRACK_GAME);
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.PROCESSES);
         mProcessManager.onUpdate(mRealtime, delta, virtualDelta);
+        p.end(FrameProfiler.TRACK_GAME);
 
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.LOGIC);
         final IGameState state = mLogic.onUpdate(mRealtime, delta, virtualDelta);
         setGameState(state);
+        p.end(FrameProfiler.TRACK_GAME);
 
         // update game objects
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.OBJECTS);
         // TODO prioB: what happens when new objects are added during traversal??
-        for (int i = mObjectsList.size() - 1; i >= 0; i--) {
-            mObjectsList.get(i).onUpdateComponents(mRealtime, delta, virtualDelta);
-        }
-        for (int i = mObjectsList.size() - 1; i >= 0; i--) {
-            mObjectsList.get(i).onUpdateTransform(mRealtime, delta, virtualDelta);
+        if (mParallelUpdater != null) {
+            // returns when all objects are done, so views see final state
+            mParallelUpdater.update(mObjectsList, mRealtime, delta, virtualDelta,
+                    mTransformStore == null);
+            if (mTransformStore != null) {
+                mTransformStore.update(mRealtime);
+            }
+        } else {
+            for (int i = mObjectsList.size() - 1; i >= 0; i--) {
+                mObjectsList.get(i).onUpdateComponents(mRealtime, delta, virtualDelta);
+            }
+            if (mTransformStore != null) {
+                mTransformStore.update(mRealtime);
+            } else {
+                for (int i = mObjectsList.size() - 1; i >= 0; i--) {
+                    mObjectsList.get(i).onUpdateTransform(mRealtime, delta, virtualDelta);
+                }
+            }
         }
 
+        p.end(FrameProfiler.TRACK_GAME);
+
         // update views
+        p.begin(FrameProfiler.TRACK_GAME, FrameProfiler.VIEWS);
         for (int i = mViewsList.size() - 1; i >= 0; i--) {
             mViewsList.get(i).onUpdate(mRealtime, delta, virtualDelta);
         }
+        p.end(FrameProfiler.TRACK_GAME);
+        p.end(FrameProfiler.TRACK_GAME);
 
         if (mSettings.PRINT_STATS) {
             printStats();
@@ -708,6 +771,8 @@ final class SnareGame implements IGame
             final int gameObjCnt = mObjectsList.size();
             final int procCnt = mProcessManager.getProcessCount();
             final int listenerCnt = mEventManager.getListenerCnt();
+            final int dispatchedCnt = mEventManager.getDispatchedCnt();
+            final int deferredCnt = mEventManager.getDeferredCnt();
 
             // memory
             final int div = 1024 * 1024;
@@ -722,17 +787,28 @@ final class SnareGame implements IGame
             Logger.i(LogSource.FPS, sFps);
 
             String s = sFps +
-                    "\n " + resCacheHandles + " resource handles, " + resCacheItems + " items" +
-                    "\n " + glCacheHandles + " GL handles, " + glCacheItems + " items" +
+                    "\n " + resCacheHandles + " resource handles, " + resCacheItems + " items, "
+                            + mResourceCache.getSize() / 1024 + " KB" +
+                    printCacheStats(mResourceCache) +
+                    "\n " + glCacheHandles + " GL handles, " + glCacheItems + " items, "
+                            + mGLObjCache.getGpuSize() / 1024 + " KB GPU" +
+                            printGpuBudget() +
+                    printCacheStats(mGLObjCache) +
                     "\n " + gameObjCnt + " game objects" +
                     "\n " + procCnt + " processes" +
                     "\n " + listenerCnt + " event listeners" +
+                    "\n events: " + dispatchedCnt + " dispatched, " + deferredCnt + " deferred" +
+                    "\n GL calls: " + GLStateCache.getIssuedCnt() + " issued, " +
+                            GLStateCache.getSkippedCnt() + " skipped" +
+                    printPoolStats() +
+                    printProfilerStats() +
                     "\nmem: " + max + " max, " + heap + " heap, " + alloc + " alloc, " + n + " native";
             mPrimaryPlayerView.debugPrint(s);
 
             // distribute FPS info
             IStatsUpdateEvent e = mEventManager.obtain(IStatsUpdateEvent.EVENT_TYPE);
             e.setStatsData(fps, mLastFPS, mMinDelta, mMaxDelta);
+            e.setEventStatsData(dispatchedCnt, deferredCnt);
             mEventManager.queueEvent(e);
 
             mLastFPS = fps;
@@ -740,6 +816,52 @@ final class SnareGame implements IGame
             mMinDelta = Float.MAX_VALUE;
         }
     }
+
+    private String printCacheStats(Cache<?, ?, ?> cache)
+    {
+        return ", " + cache.getHitCnt() + " hits, " + cache.getMissCnt() + " misses, "
+                + cache.getEvictionCnt() + " evictions";
+    }
+
+    private String printGpuBudget()
+    {
+        final int budget = mGLObjCache.getGpuBudget();
+        return budget > 0 ? " of " + budget / 1024 + " KB" : "";
+    }
+
+    private String printProfilerStats()
+    {
+        if (!mProfiler.isEnabled()) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder();
+        final int div = 1000;
+        for (int i = 0; i < mProfiler.getNameCnt(); i++) {
+            final String name = mProfiler.getName(i);
+            sb.append("\n ").append(name).append(" us: ")
+                    .append(mProfiler.getPercentile(name, 50) / div).append(" p50, ")
+                    .append(mProfiler.getPercentile(name, 95) / div).append(" p95, ")
+                    .append(mProfiler.getPercentile(name, 99) / div).append(" p99");
+        }
+        return sb.toString();
+    }
+
+    private String printPoolStats()
+    {
+        final StringBuilder sb = new StringBuilder();
+        Pool.getPools(mStatsPools);
+        for (int i = 0; i < mStatsPools.size(); i++) {
+            final Pool<?> p = mStatsPools.get(i);
+            sb.append("\n pool ").append(p.getName()).append(": ")
+                    .append(p.getOutstandingCnt()).append(" out, ")
+                    .append(p.getPeakOutstandingCnt()).append(" peak, ")
+                    .append(p.getAllocatedCnt()).append(" alloc, ")
+                    .append(p.getGrowCnt()).append(" grows, ")
+                    .append(p.getLeakCnt()).append(" leaks");
+        }
+        mStatsPools.clear();
+        return sb.toString();
+    }
     // ---------------------------------------------------------
     // overrides
     // ---------------------------------------------------------
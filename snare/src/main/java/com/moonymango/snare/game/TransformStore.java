@@ -0,0 +1,209 @@
+package com.moonymango.snare.game;
+
+import com.moonymango.snare.util.MatrixAF;
+
+import java.util.Arrays;
+
+/**
+ * Keeps position, scale, rotation and to-world transformation of many
+ * {@link GameObj} in contiguous arrays (structure of arrays) instead of
+ * separate arrays per object. Modified objects are recorded in a dirty list,
+ * so {@link #update(long)} recomputes only their transformations in a tight
+ * loop over the arrays.
+ *
+ * Objects get a slot when added to the store. While in the store the
+ * {@link GameObj} getters and setters for position, rotation and scale
+ * operate on the slot, the arrays returned by the getters are copies
+ * and must be considered read-only.
+ *
+ * Enable via {@link GameSettings#TRANSFORM_STORE}. Not thread-safe.
+ */
+public class TransformStore {
+
+    //---------------------------------------------------------
+    // static
+    //---------------------------------------------------------
+    static final int POS_STRIDE = 4;
+    static final int SCALE_STRIDE = 4;
+    static final int MAT_STRIDE = 16;
+
+    static final int MOVED = 1;
+    static final int SCALED = 2;
+    static final int ROTATED = 4;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    // accessed directly by GameObj, do not cache the array references
+    // because they change when the store grows
+    float[] mPositions;
+    float[] mScales;
+    float[] mRotations;
+    float[] mToWorld;
+    private int[] mFlags;
+    private GameObj[] mOwners;
+
+    private int[] mDirty;
+    private int mDirtyCnt;
+    private int[] mFree;
+    private int mFreeCnt;
+    private int mSlotCnt;   // slots in use or on free list
+    private int mObjCnt;
+    private int mUpdatedCnt;
+
+    // ---------------------------------------------------------
+    // constructors
+    // ---------------------------------------------------------
+    public TransformStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TransformStore(int capacity) {
+        final int c = Math.max(capacity, 1);
+        mPositions = new float[c * POS_STRIDE];
+        mScales = new float[c * SCALE_STRIDE];
+        mRotations = new float[c * MAT_STRIDE];
+        mToWorld = new float[c * MAT_STRIDE];
+        mFlags = new int[c];
+        mOwners = new GameObj[c];
+        mDirty = new int[c];
+        mFree = new int[c];
+    }
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    /**
+     * Moves transformation data of an object into the store. Pending
+     * modifications of the object are kept.
+     * @param obj Object, must not be part of a store yet.
+     */
+    public void add(GameObj obj) {
+        if (obj.mStore != null) {
+            throw new IllegalStateException("Game object " + obj.getName() +
+                    " already in transform store.");
+        }
+        final int slot;
+        if (mFreeCnt > 0) {
+            slot = mFree[--mFreeCnt];
+        } else {
+            if (mSlotCnt == mOwners.length) {
+                grow(mSlotCnt * 2);
+            }
+            slot = mSlotCnt++;
+        }
+        mOwners[slot] = obj;
+        mFlags[slot] = 0;
+        mObjCnt++;
+        obj.attachStore(this, slot);
+    }
+
+    /**
+     * Moves transformation data back to the object and frees its slot.
+     * @param obj Object.
+     */
+    public void remove(GameObj obj) {
+        if (obj.mStore != this) {
+            return;
+        }
+        final int slot = obj.mSlot;
+        obj.detachStore();
+        // slot may remain on dirty list, it gets skipped there
+        // because of cleared flags
+        mFlags[slot] = 0;
+        mOwners[slot] = null;
+        mFree[mFreeCnt++] = slot;
+        mObjCnt--;
+    }
+
+    /**
+     * Recomputes to-world transformations of all modified objects.
+     * @param realTime Current time, used as modification time of objects.
+     */
+    public void update(long realTime) {
+        final int[] flags = mFlags;
+        final int[] dirty = mDirty;
+        final int cnt = mDirtyCnt;
+        int updated = 0;
+        for (int i = 0; i < cnt; i++) {
+            final int slot = dirty[i];
+            final int f = flags[slot];
+            if (f == 0) {
+                // removed or already updated
+                continue;
+            }
+            computeToWorld(slot);
+            flags[slot] = 0;
+            mOwners[slot].onTransformUpdated(realTime, f);
+            updated++;
+        }
+        mDirtyCnt = 0;
+        mUpdatedCnt = updated;
+    }
+
+    /**
+     * Recomputes to-world transformation of a single object in case it was
+     * modified.
+     */
+    void update(int slot, long realTime) {
+        final int f = mFlags[slot];
+        if (f == 0) {
+            return;
+        }
+        computeToWorld(slot);
+        // slot stays on dirty list and gets skipped there
+        mFlags[slot] = 0;
+        mOwners[slot].onTransformUpdated(realTime, f);
+    }
+
+    private void computeToWorld(int slot) {
+        MatrixAF.local2World(mToWorld, slot * MAT_STRIDE, mPositions, slot * POS_STRIDE,
+                mScales, slot * SCALE_STRIDE, mRotations, slot * MAT_STRIDE);
+    }
+
+    /** Records a modification of position, scale or rotation. */
+    void markDirty(int slot, int flag) {
+        if (mFlags[slot] == 0) {
+            if (mDirtyCnt == mDirty.length) {
+                mDirty = Arrays.copyOf(mDirty, mDirtyCnt * 2);
+            }
+            mDirty[mDirtyCnt++] = slot;
+        }
+        mFlags[slot] |= flag;
+    }
+
+    /** Replaces modification flags of slot. */
+    void setFlags(int slot, int flags) {
+        // in case slot is on dirty list already, it gets added again
+        mFlags[slot] = 0;
+        if (flags != 0) {
+            markDirty(slot, flags);
+        }
+    }
+
+    int getFlags(int slot) {
+        return mFlags[slot];
+    }
+
+    /** Number of objects in store. */
+    public int getObjCnt() {
+        return mObjCnt;
+    }
+
+    /** Number of transformations recomputed by last call to {@link #update(long)}. */
+    public int getUpdatedCnt() {
+        return mUpdatedCnt;
+    }
+
+    private void grow(int capacity) {
+        mPositions = Arrays.copyOf(mPositions, capacity * POS_STRIDE);
+        mScales = Arrays.copyOf(mScales, capacity * SCALE_STRIDE);
+        mRotations = Arrays.copyOf(mRotations, capacity * MAT_STRIDE);
+        mToWorld = Arrays.copyOf(mToWorld, capacity * MAT_STRIDE);
+        mFlags = Arrays.copyOf(mFlags, capacity);
+        mOwners = Arrays.copyOf(mOwners, capacity);
+        mFree = Arrays.copyOf(mFree, capacity);
+    }
+}
@@ -5,6 +5,7 @@ import android.opengl.GLES20;
 import com.moonymango.snare.util.CacheItem;
 
 import static android.opengl.GLES20.GL_NO_ERROR;
+import static android.opengl.GLES20.GL_OUT_OF_MEMORY;
 
 public abstract class BaseGLObj extends CacheItem<GLObjCache, GLObjDescriptor, BaseGLObj> {
 
@@ -34,6 +35,16 @@ public abstract class BaseGLObj extends CacheItem<GLObjCache, GLObjDescriptor, B
     
     private GLObjState mState = GLObjState.NOT_CONFIGURED;
     private GLObjState mPrevState = mState;
+    private boolean mDeferrable;
+    /** Bytes transferred to GPU by last onLoad() or onUpdate(). */
+    protected int mUploadSize;
+    /** Bytes occupied in GPU memory, to be set by onLoad() and onUpdate(). */
+    protected int mGpuSize;
+    
+    // bookkeeping of GLObjCache: pending work and list of all objects
+    boolean mQueued;
+    BaseGLObj mPrev;
+    BaseGLObj mNext;
    
     
     public BaseGLObj(GLObjDescriptor descriptor) {
@@ -63,6 +74,14 @@ public abstract class BaseGLObj extends CacheItem<GLObjCache, GLObjDescriptor, B
         if (state == GLObjState.TO_LOAD) {
             mID = INVALID_ID;
         }
+        
+        if (!mQueued && (state == GLObjState.TO_LOAD || state == GLObjState.TO_UPDATE
+                || state == GLObjState.TO_UNLOAD)) {
+            final GLObjCache cache = mGame.getGLObjCache();
+            if (cache != null) {
+                cache.enqueue(this);
+            }
+        }
     }
     
     /**
@@ -90,6 +109,31 @@ public abstract class BaseGLObj extends CacheItem<GLObjCache, GLObjDescriptor, B
         return mState == GLObjState.LOADED;
     }
     
+    /**
+     * Allows the {@link GLObjCache} to postpone loading of the object to 
+     * later frames when the upload budget of the actual frame is used up 
+     * (see {@link RenderOptions#GL_UPLOAD_BUDGET}). Only set this if 
+     * every user of the object checks {@link #isLoaded()} before drawing.
+     * @param deferrable
+     */
+    public void setDeferrable(boolean deferrable) {
+        mDeferrable = deferrable;
+    }
+    
+    public boolean isDeferrable() {
+        return mDeferrable;
+    }
+    
+    /** Bytes transferred to GPU by last onLoad() or onUpdate(). */
+    public int getUploadSize() {
+        return mUploadSize;
+    }
+    
+    /** Bytes occupied in GPU memory. */
+    public int getGpuSize() {
+        return mGpuSize;
+    }
+    
     /**
      * Returns the GL id of the object, i.e. buffer or texture names.
      * @return
@@ -118,6 +162,22 @@ public abstract class BaseGLObj extends CacheItem<GLObjCache, GLObjDescriptor, B
     }
 
 
+    /**
+     * True if the object may stay in GPU without handles when there is a
+     * GPU budget (see {@link RenderOptions#GPU_MEMORY_BUDGET}). Only 
+     * objects whose content is defined by their name may be retained, a
+     * new handle gets the loaded object without calling configure again.
+     */
+    protected boolean isRetainable() {
+        return false;
+    }
+    
+    /**
+     * Called when the last handle was released and the object stays in
+     * GPU. Drop references to the previous owner here.
+     */
+    protected void onRetain() {}
+
     @Override
     public void onAddedToCache() {}
     @Override
@@ -139,12 +199,27 @@ public abstract class BaseGLObj extends CacheItem<GLObjCache, GLObjDescriptor, B
         // just mark the object for removal but keep it in the cache. On next
         // switch to GL thread it will be unloaded from GPU and removed from
         // cache.
-        setState(GLObjState.TO_UNLOAD);
+        // With a GPU budget loaded objects stay in GPU until the cache 
+        // needs the memory, a new handle just reuses them.
+        final GLObjCache cache = mGame.getGLObjCache();
+        if (mState == GLObjState.LOADED && isRetainable() 
+                && cache != null && cache.retainsUnused()) {
+            onRetain();
+        } else {
+            setState(GLObjState.TO_UNLOAD);
+        }
         return false;
     }
     
     protected void checkGLError() {
         int stat = GLES20.glGetError();
+        if (stat == GL_OUT_OF_MEMORY) {
+            final GLObjCache cache = mGame.getGLObjCache();
+            throw new IllegalStateException("GPU out of memory while loading " 
+                    + mDescriptor.getQName() + ", " 
+                    + (cache != null ? cache.getGpuSize() / 1024 : 0) 
+                    + " KB in use (see RenderOptions.GPU_MEMORY_BUDGET)");
+        }
         if (stat != GL_NO_ERROR) {
             throw new IllegalStateException("GL error: 0x" 
                     + Integer.toHexString(stat) + " while loading " 
@@ -4,6 +4,7 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
 import static android.opengl.GLES20.GL_ARRAY_BUFFER;
@@ -12,12 +13,12 @@ import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
 import static android.opengl.GLES20.GL_FLOAT;
 import static android.opengl.GLES20.GL_STATIC_DRAW;
 import static android.opengl.GLES20.GL_STREAM_DRAW;
-import static android.opengl.GLES20.glBindBuffer;
+import static com.moonymango.snare.opengl.GLStateCache.glBindBuffer;
 import static android.opengl.GLES20.glBufferData;
 import static android.opengl.GLES20.glBufferSubData;
-import static android.opengl.GLES20.glDeleteBuffers;
-import static android.opengl.GLES20.glDisableVertexAttribArray;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glDeleteBuffers;
+import static com.moonymango.snare.opengl.GLStateCache.glDisableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glEnableVertexAttribArray;
 import static android.opengl.GLES20.glGenBuffers;
 import static android.opengl.GLES20.glVertexAttribPointer;
 
@@ -29,6 +30,13 @@ import static android.opengl.GLES20.glVertexAttribPointer;
  * {@link IBufferDataProvider}. When {@link IBufferDataProvider} 
  * is used, then it is also possible to update the VBO
  * (glBufferSubData). 
+ * 
+ * With a GPU budget a static buffer which was never updated stays loaded 
+ * when its last handle is released. The provider is dropped then, so the 
+ * next owner configures the buffer again and takes over the loaded 
+ * content without upload. If the next owner updates the buffer, it gets 
+ * loaded completely from the new provider first, since size and usage 
+ * may differ.
  */
 public class BufferObj extends BaseGLObj {
    
@@ -65,6 +73,9 @@ public class BufferObj extends BaseGLObj {
     private int mUsage;
     private final BufferSetup mSetup = new BufferSetup();
     private int mUpdateNum;
+    private boolean mUpdated;
+    /** Retained buffer taken over by a new owner, not loaded by it yet. */
+    private boolean mReused;
     
     protected BufferObj(GLObjDescriptor descriptor) {
         super(descriptor);
@@ -82,7 +93,21 @@ public class BufferObj extends BaseGLObj {
             throw new IllegalStateException("Already configured.");
         }
         mProvider = provider;
-        setState(GLObjState.TO_LOAD);
+        // retained buffer is still in GPU
+        mReused = getState() == GLObjState.LOADED;
+        if (!mReused) {
+            setState(GLObjState.TO_LOAD);
+        }
+    }
+    
+    public IBufferDataProvider getProvider() {
+        return mProvider;
+    }
+    
+    /** False for retained buffers which wait for a new provider. */
+    @Override
+    public boolean isConfigured() {
+        return super.isConfigured() && mProvider != null;
     }
     
     /**
@@ -122,7 +147,15 @@ public class BufferObj extends BaseGLObj {
             throw new IllegalArgumentException("Invalid number of update passes.");
         }
         mUpdateNum = num;
-        if (getState() == GLObjState.LOADED) { 
+        mUpdated = true;
+        if (mReused) {
+            // content and size of previous owner, load everything from
+            // new provider into the same GL buffer
+            mReused = false;
+            final int id = mID;
+            setState(GLObjState.TO_LOAD);
+            mID = id;
+        } else if (getState() == GLObjState.LOADED) { 
             setState(GLObjState.TO_UPDATE); // onUpdate() will be called
         }
     }
@@ -149,6 +182,8 @@ public class BufferObj extends BaseGLObj {
         glBindBuffer(mTarget.getIt(), mID);
         glBufferData(mTarget.getIt(), size, buf, mUsage);
         glBindBuffer(mTarget.getIt(), 0);
+        mUploadSize = size;
+        mGpuSize = size;
         
         mSetup.clear();
     }
@@ -165,8 +200,10 @@ public class BufferObj extends BaseGLObj {
                 glBufferSubData(mTarget.getIt(), mSetup.mOffset, mSetup.mSize, buf);
             } else {
                 glBufferData(mTarget.getIt(), mSetup.mSize, buf, mUsage);
+                mGpuSize = mSetup.mSize;
             }
             glBindBuffer(mTarget.getIt(), 0);
+            mUploadSize += mSetup.mSize;
             mSetup.clear();
         }
     }
@@ -179,11 +216,26 @@ public class BufferObj extends BaseGLObj {
         mID = INVALID_ID;
     }
 
+    @Override
+    protected boolean isRetainable() {
+        // updated content belongs to the released owner
+        return mUsage == GL_STATIC_DRAW && !mUpdated;
+    }
+    
+    @Override
+    protected void onRetain() {
+        // provider belongs to the released owner
+        mProvider = null;
+        mReused = false;
+    }
+
     private static int getBufferSize(Buffer buf) {
         if (buf instanceof FloatBuffer) {
             return buf.capacity() * Float.SIZE/8;
         } else if (buf instanceof ShortBuffer) {
             return buf.capacity() * Short.SIZE/8;
+        } else if (buf instanceof IntBuffer) {
+            return buf.capacity() * Integer.SIZE/8;
         } 
         throw new IllegalStateException("Invalid data buffer type.");
         
@@ -1,6 +1,7 @@
 package com.moonymango.snare.opengl;
 
 import com.moonymango.snare.game.BaseSnareClass;
+import com.moonymango.snare.game.FrameProfiler;
 import com.moonymango.snare.ui.PlayerGameView;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -43,6 +44,8 @@ public class FullScreenRenderer extends BaseSnareClass implements IRenderer
     {
         final RenderOptions ro = mGame.getSettings().RENDER_OPTIONS;
         mGame.waitForDraw();
+        final FrameProfiler p = mGame.getProfiler();
+        p.begin(FrameProfiler.TRACK_RENDER, FrameProfiler.DRAW);
 
         glClearColor(ro.BG_COLOR_R, ro.BG_COLOR_G, ro.BG_COLOR_B, 1.0f);
         if (mGame.getSettings().RENDER_OPTIONS.CLEAR_SCREEN) {
@@ -50,7 +53,9 @@ public class FullScreenRenderer extends BaseSnareClass implements IRenderer
         }
 
         // make sure everything is in GPU before actual drawing
+        p.begin(FrameProfiler.TRACK_RENDER, FrameProfiler.GL_CACHE);
         mGame.getGLObjCache().update();
+        p.end(FrameProfiler.TRACK_RENDER);
         GLState.sync();
         mPlayerGameView.draw();
 
@@ -72,6 +77,8 @@ public class FullScreenRenderer extends BaseSnareClass implements IRenderer
             mLastFPSUpdateTime = time;
         }
 
+        GLStateCache.endFrame();
+        p.end(FrameProfiler.TRACK_RENDER);
         mGame.notifyEndDraw();
     }
 
@@ -97,6 +104,8 @@ public class FullScreenRenderer extends BaseSnareClass implements IRenderer
             mRenderInfo = new GLInfo();
         }
         mRenderInfo.collectValues();
+        // new context, nothing of the shadowed GL state is valid
+        GLStateCache.reset();
         mGame.getGLObjCache().reloadAll();
 
         mGame.notifyEndDraw();
@@ -218,4 +218,34 @@ public class GLES20Trace extends GLES20
         GLES20.glUniform1i(location, x);
         if (sEnable) write("glUniform1i: location=" + location);
     }
+    
+    public static void glDeleteTextures(int n, int[] textures, int offset) {
+        GLES20.glDeleteTextures(n, textures, offset);
+        if (sEnable) write("glDeleteTextures:");
+    }
+    
+    public static void glDisableVertexAttribArray(int index) {
+        GLES20.glDisableVertexAttribArray(index);
+        if (sEnable) write("glDisableVertexAttribArray: index=" + index);
+    }
+    
+    public static void glUniform1f(int location, float x) {
+        GLES20.glUniform1f(location, x);
+        if (sEnable) write("glUniform1f: location=" + location);
+    }
+    
+    public static void glUniform2f(int location, float x, float y) {
+        GLES20.glUniform2f(location, x, y);
+        if (sEnable) write("glUniform2f: location=" + location);
+    }
+    
+    public static void glUniform3f(int location, float x, float y, float z) {
+        GLES20.glUniform3f(location, x, y, z);
+        if (sEnable) write("glUniform3f: location=" + location);
+    }
+    
+    public static void glUniform4f(int location, float x, float y, float z, float w) {
+        GLES20.glUniform4f(location, x, y, z, w);
+        if (sEnable) write("glUniform4f: location=" + location);
+    }
 }
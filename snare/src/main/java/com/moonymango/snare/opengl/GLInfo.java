@@ -36,6 +36,7 @@ public class GLInfo
     private float LINE_WIDTH_RANGE;
     private String GLSL_VERSION;
     private boolean ETC1_SUPPORT;
+    private boolean ELEMENT_INDEX_UINT;
     private String EXTENSIONS;
     
     
@@ -79,6 +80,8 @@ public class GLInfo
         ETC1_SUPPORT = ETC1Util.isETC1Supported();
         
         EXTENSIONS = glGetString(GL_EXTENSIONS);
+        ELEMENT_INDEX_UINT = EXTENSIONS != null 
+                && EXTENSIONS.contains("GL_OES_element_index_uint");
         
         logInfo();
     }
@@ -96,6 +99,7 @@ public class GLInfo
         Logger.i(LogSource.OPENGL, "GL_ALIASED_LINE_WIDTH_RANGE = " + LINE_WIDTH_RANGE);
         Logger.i(LogSource.OPENGL, "GL_SHADING_LANGUAGE_VERSION = " + GLSL_VERSION);
         Logger.i(LogSource.OPENGL, "ETC1 support = " + ETC1_SUPPORT);
+        Logger.i(LogSource.OPENGL, "32 bit indices = " + ELEMENT_INDEX_UINT);
         Logger.i(LogSource.OPENGL, EXTENSIONS);
     }
     
@@ -108,5 +112,7 @@ public class GLInfo
     public int getMaxTextureSize() {return MAX_TEXTURE_SIZE;}
     public int getMaxRenderbufferSize() {return MAX_RENDERBUFFER_SIZE;}
     public boolean hasETC1Support() {return ETC1_SUPPORT;}
+    /** True if GL_UNSIGNED_INT may be used with glDrawElements (OES_element_index_uint). */
+    public boolean hasElementIndexUint() {return ELEMENT_INDEX_UINT;}
     public String getExtensions() {return EXTENSIONS;}
 }
@@ -5,14 +5,29 @@ import com.moonymango.snare.opengl.BaseGLObj.GLObjState;
 import com.moonymango.snare.util.Cache;
 import com.moonymango.snare.util.Logger;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 
 public class GLObjCache extends Cache<GLObjCache, GLObjDescriptor, BaseGLObj> {
 
     public static boolean DEBUG = false;
+    
+    /** Unused objects which can be unloaded right away. */
+    private static final IItemFilter<BaseGLObj> sEvictable = new IItemFilter<BaseGLObj>() {
+        @Override
+        public boolean accept(BaseGLObj item) {
+            return item.isLoaded() && !item.mQueued;
+        }
+    };
 
-    /** Stores GL objects in same order they were created. */
-    private final ArrayList<BaseGLObj> mGLObjects = new ArrayList<BaseGLObj>();
+    // linked list of GL objects in same order they were created 
+    // (see BaseGLObj.mPrev and mNext)
+    private BaseGLObj mFirst;
+    private BaseGLObj mLast;
+    /** GL objects waiting for load, update or unload. */
+    private final ArrayDeque<BaseGLObj> mPending = new ArrayDeque<BaseGLObj>();
+    private int mUploadedBytes;
+    private int mGpuSize;
+    private boolean mOverBudget;
     
     public GLObjCache(IGame game)
     {
@@ -27,12 +42,64 @@ public class GLObjCache extends Cache<GLObjCache, GLObjDescriptor, BaseGLObj> {
     
     @Override
     protected void onItemCreated(BaseGLObj item) {
-        mGLObjects.add(item);
+        item.mPrev = mLast;
+        item.mNext = null;
+        if (mLast != null) {
+            mLast.mNext = item;
+        } else {
+            mFirst = item;
+        }
+        mLast = item;
     }
     
     @Override
     protected void onItemRemoved(BaseGLObj item) {
-        mGLObjects.remove(item);
+        if (item.mPrev != null) {
+            item.mPrev.mNext = item.mNext;
+        } else {
+            mFirst = item.mNext;
+        }
+        if (item.mNext != null) {
+            item.mNext.mPrev = item.mPrev;
+        } else {
+            mLast = item.mPrev;
+        }
+        item.mPrev = null;
+        item.mNext = null;
+    }
+    
+    /** Called by BaseGLObj when it gets a state which requires GL work. */
+    void enqueue(BaseGLObj obj) {
+        obj.mQueued = true;
+        mPending.add(obj);
+    }
+    
+    /** Number of GL objects waiting for load, update or unload. */
+    public int getPendingCnt() {
+        return mPending.size();
+    }
+    
+    /** Bytes loaded to GPU during last update. */
+    public int getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    /** Bytes occupied in GPU memory by all loaded GL objects. */
+    public int getGpuSize() {
+        return mGpuSize;
+    }
+    
+    /** See {@link RenderOptions#GPU_MEMORY_BUDGET}. */
+    public int getGpuBudget() {
+        return mGame.getSettings().RENDER_OPTIONS.GPU_MEMORY_BUDGET;
+    }
+    
+    /** 
+     * True if GL objects without handles stay loaded until their memory 
+     * is needed, see {@link BaseGLObj#isRetainable()}.
+     */
+    boolean retainsUnused() {
+        return getGpuBudget() > 0;
     }
 
     ////////////////////////////////////////////////////////////////
@@ -46,24 +113,49 @@ public class GLObjCache extends Cache<GLObjCache, GLObjDescriptor, BaseGLObj> {
      * This update function must be called prior to rendering from the
      * renderer's onDrawFrame to make sure everything is in the GPU.
      * 
-     * Note: GL objects are loaded in LIFO-like order, i.e. objects
-     * created last will be first to be loaded! 
+     * Only objects with pending work are visited, in the order their
+     * states were set. Loading of deferrable objects is left for later 
+     * frames when the upload budget (see {@link RenderOptions#GL_UPLOAD_BUDGET}) 
+     * is used up, at least one object is loaded per frame though.
+     * 
+     * Afterwards unused objects are unloaded in least recently used order 
+     * as long as the GPU budget (see {@link RenderOptions#GPU_MEMORY_BUDGET})
+     * is exceeded.
      */
     void update() {
-        for (int i = mGLObjects.size() - 1 ; i >= 0; i--) {
-            BaseGLObj obj = mGLObjects.get(i);
-            switch (obj.getState()) {
+        final int b = mGame.getSettings().RENDER_OPTIONS.GL_UPLOAD_BUDGET;
+        final int budget = b > 0 ? b : Integer.MAX_VALUE;
+        mUploadedBytes = 0;
+        // make room before uploading anything new
+        trim();
+        
+        for (int n = mPending.size(); n > 0; n--) {
+            final BaseGLObj obj = mPending.poll();
+            final GLObjState state = obj.getState();
+            if (mUploadedBytes >= budget && obj.isDeferrable()
+                    && state == GLObjState.TO_LOAD) {
+                mPending.add(obj); // next frame
+                continue;
+            }
+            
+            obj.mQueued = false;
+            switch (state) {
             case TO_LOAD:
-                obj.onLoad();
-                obj.setState(GLObjState.LOADED);
-                break;
             case TO_UPDATE:
-                obj.onUpdate();
+                // objects reloaded after context loss are still accounted
+                final int gpuSize = obj.mGpuSize;
+                obj.mUploadSize = 0;
+                if (state == GLObjState.TO_LOAD) {
+                    obj.onLoad();
+                } else {
+                    obj.onUpdate();
+                }
                 obj.setState(GLObjState.LOADED);
+                mUploadedBytes += obj.mUploadSize;
+                mGpuSize += obj.mGpuSize - gpuSize;
                 break;
             case TO_UNLOAD:
-                obj.onUnload();
-                obj.setState(GLObjState.UNLOADED);
+                unload(obj);
                 // remove item manually here (see also BaseGLObj
                 // onRemoveFromCachePending() override)
                 dropItem(obj);
@@ -71,14 +163,14 @@ public class GLObjCache extends Cache<GLObjCache, GLObjDescriptor, BaseGLObj> {
             default:
             }
         }
+        trim();
 
         // debug: print content of gl cache
         if (DEBUG)
         {
             Logger.d(Logger.LogSource.OPENGL, "========================================");
-            for (int i = mGLObjects.size() - 1 ; i >= 0; i--)
+            for (BaseGLObj obj = mLast; obj != null; obj = obj.mPrev)
             {
-                BaseGLObj obj = mGLObjects.get(i);
                 Logger.d(Logger.LogSource.OPENGL, obj.getDescriptor().getQName() + " -- refcnt " + obj.getRefCnt());
             }
             Logger.d(Logger.LogSource.OPENGL, "========================================");
@@ -86,21 +178,62 @@ public class GLObjCache extends Cache<GLObjCache, GLObjDescriptor, BaseGLObj> {
         }
     }
       
+    private void unload(BaseGLObj obj) {
+        // deferred objects may be unloaded before they were loaded
+        if (obj.mID != BaseGLObj.INVALID_ID || !obj.isDeferrable()) {
+            obj.onUnload();
+        }
+        obj.setState(GLObjState.UNLOADED);
+        mGpuSize -= obj.mGpuSize;
+        obj.mGpuSize = 0;
+    }
+    
+    /** Evicts unused objects until the GPU budget is met. */
+    private void trim() {
+        final int budget = getGpuBudget();
+        if (budget <= 0) {
+            return;
+        }
+        while (mGpuSize > budget) {
+            final BaseGLObj obj = getLeastRecentlyUsed(sEvictable);
+            if (obj == null) {
+                break;
+            }
+            unload(obj);
+            evictItem(obj);
+        }
+        
+        final boolean over = mGpuSize > budget;
+        if (over && !mOverBudget) {
+            Logger.w(Logger.LogSource.OPENGL, "GPU budget exceeded, " 
+                    + mGpuSize / 1024 + " KB used by objects in use");
+        }
+        mOverBudget = over;
+    }
+    
     /**
      * This is to be called from renderer's onSurfaceCreated.
      */
     void reloadAll() {
         // just mark all active gl objects to be loaded again 
-        // during next call to update()
-        // (use mRecentlyUsed because it is already an ArrayList
-        //  of all known gl objects)
-        int len = mGLObjects.size();
-        for (int i = 0; i < len; i++) {
-            BaseGLObj obj = mGLObjects.get(i);
+        // during next call to update(). Objects created last are queued
+        // first, e.g. FBO attachments get loaded before the FBO itself
+        // (see FramebufferObj.onLoad()). Unused objects kept for reuse
+        // are dropped, their GL names are gone with the context.
+        BaseGLObj prev;
+        for (BaseGLObj obj = mLast; obj != null; obj = prev) {
+            prev = obj.mPrev;
             switch (obj.getState()) {
             case LOADED:
             case TO_UPDATE:
-                obj.setState(GLObjState.TO_LOAD);
+                if (obj.getRefCnt() > 0) {
+                    obj.setState(GLObjState.TO_LOAD);
+                } else {
+                    obj.setState(GLObjState.UNLOADED);
+                    mGpuSize -= obj.mGpuSize;
+                    obj.mGpuSize = 0;
+                    evictItem(obj);
+                }
                 break;
             default:
             }
@@ -23,7 +23,6 @@ public class GLState {
     private static int sDFactor;
     private static boolean sCull;
     private static int sFace;
-    private static int sShader;
    
     
     /** Synchronizes actual GL state and data in {@link GLState} class. */
@@ -54,7 +53,7 @@ public class GLState {
         glDisable(GL_CULL_FACE);
         glFrontFace(GL_CCW);
         
-        sShader = -1;
+        GLStateCache.sync();
         
     }
     
@@ -148,10 +147,7 @@ public class GLState {
      */
     public void apply(int program) {
         
-        if (program != sShader) {
-            glUseProgram(program);
-            sShader = program;
-        }
+        GLStateCache.glUseProgram(program);
         
         if (mDepth != sDepth) {
             if (mDepth) {
@@ -0,0 +1,403 @@
+package com.moonymango.snare.opengl;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+/**
+ * Shadows GL bindings and uniform values to skip redundant GL calls.
+ * The methods have the same signatures as their GLES20 counterparts,
+ * so call sites just import them statically from here instead of GLES20.
+ * Shadowed are:
+ *      - current program
+ *      - buffer bound to GL_ARRAY_BUFFER and GL_ELEMENT_ARRAY_BUFFER
+ *      - active texture unit and GL_TEXTURE_2D binding per unit
+ *      - enabled vertex attribute arrays
+ *      - uniform values per program
+ *
+ * Bindings are unknown after {@link #sync()}, which is done along with
+ * {@link GLState#sync()} at start of each frame, so the first call per
+ * binding in a frame always reaches GL. Uniform values are program state
+ * and stay valid until the program gets linked again or the GL context
+ * is recreated (see {@link #reset()}).
+ *
+ * All state changing calls of the engine must go through this class,
+ * otherwise the shadowed state gets out of sync. Calls passed to GL go
+ * through {@link GLES20Trace}, so they show up in GL traces. Only to be
+ * used in GL thread.
+ */
+public class GLStateCache {
+
+    private static final int UNKNOWN = -1;
+    private static final int MAX_ATTRIBS = 32;
+    private static final int MAX_TEXTURE_UNITS = 32;
+    /** Uniforms with higher locations are not cached. */
+    private static final int MAX_UNIFORM_LOCATION = 256;
+    /** Programs with higher ids are not cached. */
+    private static final int MAX_PROGRAM_ID = 1024;
+
+    // per uniform location: type + up to 16 values (mat4)
+    private static final int UNIFORM_STRIDE = 17;
+    private static final int TYPE_NONE = 0;
+    private static final int TYPE_1F = 1;
+    private static final int TYPE_1I = 2;
+    private static final int TYPE_2F = 3;
+    private static final int TYPE_3F = 4;
+    private static final int TYPE_4F = 5;
+    private static final int TYPE_MAT4 = 6;
+
+    private static int sProgram = UNKNOWN;
+    private static int sArrayBuffer = UNKNOWN;
+    private static int sElementBuffer = UNKNOWN;
+    private static int sActiveUnit = UNKNOWN;
+    private static final int[] sTextures = new int[MAX_TEXTURE_UNITS];
+    // 1 = enabled, 0 = disabled, -1 = unknown
+    private static final int[] sAttribs = new int[MAX_ATTRIBS];
+    // cached uniforms, indexed by program id
+    private static int[][] sUniforms = new int[16][];
+
+    private static int sIssued;
+    private static int sSkipped;
+    private static volatile int sLastIssued;
+    private static volatile int sLastSkipped;
+
+    static {
+        sync();
+    }
+
+    /**
+     * Marks all bindings as unknown, so that the next call for each of
+     * them is passed to GL. Does not issue any GL call.
+     */
+    public static void sync() {
+        sProgram = UNKNOWN;
+        sArrayBuffer = UNKNOWN;
+        sElementBuffer = UNKNOWN;
+        sActiveUnit = UNKNOWN;
+        Arrays.fill(sTextures, UNKNOWN);
+        Arrays.fill(sAttribs, UNKNOWN);
+    }
+
+    /** Drops all shadowed state including uniforms, e.g. on new GL context. */
+    public static void reset() {
+        sync();
+        Arrays.fill(sUniforms, null);
+    }
+
+    /** Drops cached uniform values of a program, e.g. after (re)linking. */
+    public static void invalidateProgram(int program) {
+        if (program >= 0 && program < sUniforms.length) {
+            sUniforms[program] = null;
+        }
+    }
+
+    /**
+     * Finishes frame. Counters of finished frame are available via
+     * {@link #getIssuedCnt()} and {@link #getSkippedCnt()}.
+     */
+    public static void endFrame() {
+        sLastIssued = sIssued;
+        sLastSkipped = sSkipped;
+        sIssued = 0;
+        sSkipped = 0;
+    }
+
+    /** Number of calls passed to GL in last frame. */
+    public static int getIssuedCnt() {
+        return sLastIssued;
+    }
+
+    /** Number of redundant calls skipped in last frame. */
+    public static int getSkippedCnt() {
+        return sLastSkipped;
+    }
+
+    // ---------------------------------------------------------
+    // bindings
+    // ---------------------------------------------------------
+    public static void glUseProgram(int program) {
+        if (program == sProgram) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glUseProgram(program);
+        sProgram = program;
+        sIssued++;
+    }
+
+    public static void glBindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (buffer == sArrayBuffer) {
+                sSkipped++;
+                return;
+            }
+            sArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (buffer == sElementBuffer) {
+                sSkipped++;
+                return;
+            }
+            sElementBuffer = buffer;
+        }
+        GLES20Trace.glBindBuffer(target, buffer);
+        sIssued++;
+    }
+
+    /** Deleted buffers are unbound by GL. */
+    public static void glDeleteBuffers(int n, int[] buffers, int offset) {
+        for (int i = offset; i < offset + n; i++) {
+            if (buffers[i] == sArrayBuffer) {
+                sArrayBuffer = 0;
+            }
+            if (buffers[i] == sElementBuffer) {
+                sElementBuffer = 0;
+            }
+        }
+        GLES20Trace.glDeleteBuffers(n, buffers, offset);
+        sIssued++;
+    }
+
+    /** @param texture Texture unit (GL_TEXTUREi). */
+    public static void glActiveTexture(int texture) {
+        if (texture == sActiveUnit) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glActiveTexture(texture);
+        sActiveUnit = texture;
+        sIssued++;
+    }
+
+    /** Binding is shadowed for GL_TEXTURE_2D target only. */
+    public static void glBindTexture(int target, int texture) {
+        final int unit = sActiveUnit - GLES20.GL_TEXTURE0;
+        final boolean shadowed = target == GLES20.GL_TEXTURE_2D
+                && sActiveUnit != UNKNOWN && unit < MAX_TEXTURE_UNITS;
+        if (shadowed) {
+            if (sTextures[unit] == texture) {
+                sSkipped++;
+                return;
+            }
+            sTextures[unit] = texture;
+        }
+        GLES20Trace.glBindTexture(target, texture);
+        sIssued++;
+    }
+
+    /** Deleted textures are unbound by GL. */
+    public static void glDeleteTextures(int n, int[] textures, int offset) {
+        for (int i = offset; i < offset + n; i++) {
+            for (int u = 0; u < MAX_TEXTURE_UNITS; u++) {
+                if (sTextures[u] == textures[i]) {
+                    sTextures[u] = 0;
+                }
+            }
+        }
+        GLES20Trace.glDeleteTextures(n, textures, offset);
+        sIssued++;
+    }
+
+    public static void glEnableVertexAttribArray(int index) {
+        if (index >= 0 && index < MAX_ATTRIBS) {
+            if (sAttribs[index] == 1) {
+                sSkipped++;
+                return;
+            }
+            sAttribs[index] = 1;
+        }
+        GLES20Trace.glEnableVertexAttribArray(index);
+        sIssued++;
+    }
+
+    /** Negative index (attribute not used by shader) is ignored. */
+    public static void glDisableVertexAttribArray(int index) {
+        if (index < 0) {
+            sSkipped++;
+            return;
+        }
+        if (index < MAX_ATTRIBS) {
+            if (sAttribs[index] == 0) {
+                sSkipped++;
+                return;
+            }
+            sAttribs[index] = 0;
+        }
+        GLES20Trace.glDisableVertexAttribArray(index);
+        sIssued++;
+    }
+
+    // ---------------------------------------------------------
+    // uniforms
+    // ---------------------------------------------------------
+    // Location -1 is silently ignored by GL, so those calls are skipped.
+
+    public static void glUniform1f(int location, float x) {
+        final int[] u = getUniforms(location);
+        if (u != null) {
+            final int o = location * UNIFORM_STRIDE;
+            final int bx = Float.floatToRawIntBits(x);
+            if (u[o] == TYPE_1F && u[o + 1] == bx) {
+                sSkipped++;
+                return;
+            }
+            u[o] = TYPE_1F;
+            u[o + 1] = bx;
+        } else if (location < 0) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glUniform1f(location, x);
+        sIssued++;
+    }
+
+    public static void glUniform1i(int location, int x) {
+        final int[] u = getUniforms(location);
+        if (u != null) {
+            final int o = location * UNIFORM_STRIDE;
+            if (u[o] == TYPE_1I && u[o + 1] == x) {
+                sSkipped++;
+                return;
+            }
+            u[o] = TYPE_1I;
+            u[o + 1] = x;
+        } else if (location < 0) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glUniform1i(location, x);
+        sIssued++;
+    }
+
+    public static void glUniform2f(int location, float x, float y) {
+        final int[] u = getUniforms(location);
+        if (u != null) {
+            final int o = location * UNIFORM_STRIDE;
+            final int bx = Float.floatToRawIntBits(x);
+            final int by = Float.floatToRawIntBits(y);
+            if (u[o] == TYPE_2F && u[o + 1] == bx && u[o + 2] == by) {
+                sSkipped++;
+                return;
+            }
+            u[o] = TYPE_2F;
+            u[o + 1] = bx;
+            u[o + 2] = by;
+        } else if (location < 0) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glUniform2f(location, x, y);
+        sIssued++;
+    }
+
+    public static void glUniform3f(int location, float x, float y, float z) {
+        final int[] u = getUniforms(location);
+        if (u != null) {
+            final int o = location * UNIFORM_STRIDE;
+            final int bx = Float.floatToRawIntBits(x);
+            final int by = Float.floatToRawIntBits(y);
+            final int bz = Float.floatToRawIntBits(z);
+            if (u[o] == TYPE_3F && u[o + 1] == bx && u[o + 2] == by
+                    && u[o + 3] == bz) {
+                sSkipped++;
+                return;
+            }
+            u[o] = TYPE_3F;
+            u[o + 1] = bx;
+            u[o + 2] = by;
+            u[o + 3] = bz;
+        } else if (location < 0) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glUniform3f(location, x, y, z);
+        sIssued++;
+    }
+
+    public static void glUniform4f(int location, float x, float y, float z,
+            float w)
+    {
+        final int[] u = getUniforms(location);
+        if (u != null) {
+            final int o = location * UNIFORM_STRIDE;
+            final int bx = Float.floatToRawIntBits(x);
+            final int by = Float.floatToRawIntBits(y);
+            final int bz = Float.floatToRawIntBits(z);
+            final int bw = Float.floatToRawIntBits(w);
+            if (u[o] == TYPE_4F && u[o + 1] == bx && u[o + 2] == by
+                    && u[o + 3] == bz && u[o + 4] == bw) {
+                sSkipped++;
+                return;
+            }
+            u[o] = TYPE_4F;
+            u[o + 1] = bx;
+            u[o + 2] = by;
+            u[o + 3] = bz;
+            u[o + 4] = bw;
+        } else if (location < 0) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glUniform4f(location, x, y, z, w);
+        sIssued++;
+    }
+
+    /** Only single matrices are cached, arrays of matrices are always set. */
+    public static void glUniformMatrix4fv(int location, int count,
+            boolean transpose, float[] value, int offset)
+    {
+        final int[] u = getUniforms(location);
+        if (u != null) {
+            final int o = location * UNIFORM_STRIDE;
+            if (count == 1 && !transpose) {
+                if (u[o] == TYPE_MAT4 && equals(u, o + 1, value, offset)) {
+                    sSkipped++;
+                    return;
+                }
+                u[o] = TYPE_MAT4;
+                for (int i = 0; i < 16; i++) {
+                    u[o + 1 + i] = Float.floatToRawIntBits(value[offset + i]);
+                }
+            } else {
+                u[o] = TYPE_NONE;
+            }
+        } else if (location < 0) {
+            sSkipped++;
+            return;
+        }
+        GLES20Trace.glUniformMatrix4fv(location, count, transpose, value, offset);
+        sIssued++;
+    }
+
+    /**
+     * Returns uniform cache of current program or null if the uniform
+     * cannot be cached.
+     */
+    private static int[] getUniforms(int location) {
+        final int p = sProgram;
+        if (location < 0 || location >= MAX_UNIFORM_LOCATION || p <= 0
+                || p >= MAX_PROGRAM_ID) {
+            return null;
+        }
+        if (p >= sUniforms.length) {
+            sUniforms = Arrays.copyOf(sUniforms, Math.max(p + 1, 2 * sUniforms.length));
+        }
+        int[] u = sUniforms[p];
+        final int size = (location + 1) * UNIFORM_STRIDE;
+        if (u == null || u.length < size) {
+            final int len = u == null ? 8 * UNIFORM_STRIDE : u.length;
+            u = u == null ? new int[Math.max(len, size)]
+                    : Arrays.copyOf(u, Math.max(2 * len, size));
+            sUniforms[p] = u;
+        }
+        return u;
+    }
+
+    private static boolean equals(int[] u, int pos, float[] value, int offset) {
+        for (int i = 0; i < 16; i++) {
+            if (u[pos + i] != Float.floatToRawIntBits(value[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
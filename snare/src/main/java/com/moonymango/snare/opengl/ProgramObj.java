@@ -1,6 +1,7 @@
 package com.moonymango.snare.opengl;
 
 import static android.opengl.GLES20.*;
+import static com.moonymango.snare.opengl.GLStateCache.glUseProgram;
 
 public class ProgramObj extends BaseGLObj {
   
@@ -54,6 +55,8 @@ public class ProgramObj extends BaseGLObj {
         mVID = loadShader(GL_VERTEX_SHADER, mVertexShaderString);
         mFID = loadShader(GL_FRAGMENT_SHADER, mFragmentShaderString);
         mID = linkProgram(mVID, mFID);
+        // program ids may be reused, drop uniforms of previous program
+        GLStateCache.invalidateProgram(mID);
         mLocHolder.extractLocations(mDescriptor.getQName(), mID);
     }
 
@@ -62,6 +65,7 @@ public class ProgramObj extends BaseGLObj {
         if (isLoaded()) {
             glUseProgram(0);
             glDeleteProgram(mID);
+            GLStateCache.invalidateProgram(mID);
             glDeleteShader(mVID);
             glDeleteShader(mFID);
         }        
@@ -14,6 +14,22 @@ public class RenderOptions implements EGLConfigChooser{
     public float BG_COLOR_G;
     public float BG_COLOR_B;
     public boolean CLEAR_SCREEN = true;
+    /** 
+     * Max. bytes to load to GPU per frame, 0 means no limit. Loading of 
+     * meshes and textures of scene drawables is spread over several frames 
+     * then, the drawables are not drawn until loaded. Other GL objects
+     * are always loaded immediately.
+     */
+    public int GL_UPLOAD_BUDGET = 0;
+    /**
+     * Bytes of GPU memory textures, buffers and renderbuffers may occupy, 
+     * 0 means no limit. With a budget buffers and textures loaded from 
+     * resources are kept in GPU for reuse when they have no handles and 
+     * unloaded in least recently used order when the budget is exceeded. 
+     * Without budget they are unloaded immediately, as are all other GL 
+     * objects.
+     */
+    public int GPU_MEMORY_BUDGET = 0;
     
     // EGL stuff
     public int EGL_RED_SIZE = 5;
@@ -64,6 +64,8 @@ public class RenderbufferObj extends BaseGLObj {
         glRenderbufferStorage(GL_RENDERBUFFER, mFormat, mWidth, mHeight);
         checkGLError();
         glBindRenderbuffer(GL_RENDERBUFFER, 0);
+        // both supported formats have 16 bits per pixel
+        mGpuSize = mWidth * mHeight * 2;
     }
 
     @Override
@@ -1,16 +1,19 @@
 package com.moonymango.snare.opengl;
 
 import com.moonymango.snare.opengl.GLObjDescriptor.GLObjType;
+import com.moonymango.snare.opengl.TextureObjOptions.MipMapSource;
 import com.moonymango.snare.res.texture.BaseTextureResHandle;
 import com.moonymango.snare.res.texture.BaseTextureResource;
+import com.moonymango.snare.util.Logger;
+import com.moonymango.snare.util.Logger.LogSource;
 
 import static android.opengl.GLES20.GL_RGB;
 import static android.opengl.GLES20.GL_TEXTURE0;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_UNSIGNED_SHORT_5_6_5;
-import static android.opengl.GLES20.glActiveTexture;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glDeleteTextures;
+import static com.moonymango.snare.opengl.GLStateCache.glActiveTexture;
+import static com.moonymango.snare.opengl.GLStateCache.glBindTexture;
+import static com.moonymango.snare.opengl.GLStateCache.glDeleteTextures;
 import static android.opengl.GLES20.glGenTextures;
 import static android.opengl.GLES20.glTexImage2D;
 
@@ -71,14 +74,24 @@ public class TextureObj extends BaseGLObj  {
             glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, mSize.value(), 
                     mSize.value(), 0, GL_RGB, GL_UNSIGNED_SHORT_5_6_5, null);
             checkGLError();
-            mOptions.apply();
+            // content is rendered later, nothing to build mip levels from
+            mOptions.apply(MipMapSource.NONE);
             glBindTexture(GL_TEXTURE_2D, 0);
+            mUploadSize = mSize.value() * mSize.value() * 2;
+            mGpuSize = mUploadSize;
             
         } else {
             // create texture from resource
             mTextureResHandle = mTextureResource.getHandle();
             mID = mTextureResHandle.loadToGPU(mOptions);
             checkGLError();
+            mUploadSize = mTextureResHandle.getDataSize();
+            mGpuSize = mTextureResHandle.getGpuSize(mOptions);
+            if (mOptions.mGenMipMap 
+                    && mTextureResHandle.getMipMapSource() == MipMapSource.NONE) {
+                Logger.w(LogSource.OPENGL, "No mip levels for " + mDescriptor.getQName() 
+                        + ", sampled without mipmapping");
+            }
             mTextureResource.releaseHandle(mTextureResHandle);
             mTextureResHandle = null;
         }
@@ -92,6 +105,12 @@ public class TextureObj extends BaseGLObj  {
         mID = INVALID_ID;
     }
     
+    @Override
+    protected boolean isRetainable() {
+        // empty textures are configured by their owner, e.g. FBOs
+        return mTextureResource != null;
+    }
+    
     /**
      * Binds to specified target of specified unit.
      * @param unit
@@ -213,11 +232,19 @@ public class TextureObj extends BaseGLObj  {
             {
                 mTexObj = (TextureObj) mTexDescr.getHandle();
                 if (!mTexObj.isConfigured()) {
+                    // users of texture units check isLoaded() before drawing
+                    mTexObj.setDeferrable(true);
                     mTexObj.configure(res, options);
                 }
             }
         }
         
+        /** True when texture is in GPU. */
+        public boolean isLoaded()
+        {
+            return mTexObj != null && mTexObj.isLoaded();
+        }
+        
         public void unload()
         {
             mTexDescr.releaseHandle(mTexObj);
@@ -26,10 +26,10 @@ public class TextureObjOptions {
             new TextureObjOptions(GL_LINEAR, GL_LINEAR, GL_REPEAT, GL_CLAMP_TO_EDGE, false);
     
     public static final TextureObjOptions MIPMAP_NEAREST_REPEAT = 
-            new TextureObjOptions(GL_NEAREST_MIPMAP_NEAREST, GL_NEAREST_MIPMAP_NEAREST, GL_REPEAT, GL_REPEAT, true);
+            new TextureObjOptions(GL_NEAREST_MIPMAP_NEAREST, GL_NEAREST, GL_REPEAT, GL_REPEAT, true);
     
     public static final TextureObjOptions MIPMAP_LINEAR_REPEAT = 
-            new TextureObjOptions(GL_LINEAR_MIPMAP_LINEAR, GL_LINEAR_MIPMAP_LINEAR, GL_REPEAT, GL_REPEAT, true);
+            new TextureObjOptions(GL_LINEAR_MIPMAP_LINEAR, GL_LINEAR, GL_REPEAT, GL_REPEAT, true);
     
     public final int mLevel = 0;
     public final int mMinFilter;
@@ -46,15 +46,64 @@ public class TextureObjOptions {
         mGenMipMap = genMipMap;
     }
     
-    /** Apply options. Must be called in GL thread with texture bound to target */
+    /** 
+     * Number of levels of a complete mipmap chain, i.e. down to 1x1.
+     * @param width Width of level 0.
+     * @param height Height of level 0.
+     */
+    public static int getMipLevelCnt(int width, int height) {
+        int size = Math.max(width, height);
+        int cnt = 1;
+        while (size > 1) {
+            size >>= 1;
+            cnt++;
+        }
+        return cnt;
+    }
+    
+    /** 
+     * Apply options. Must be called in GL thread with texture bound to target.
+     * Mip levels get generated from level 0 if needed. 
+     */
     public void apply() {
+        apply(MipMapSource.GENERATE);
+    }
+    
+    /**
+     * Apply options. Must be called in GL thread with texture bound to target
+     * and all provided levels loaded. 
+     * @param mipMaps Where the mip levels come from if the options need them.
+     */
+    public void apply(MipMapSource mipMaps) {
+        int minFilter = mMinFilter;
+        if (mGenMipMap) {
+            switch (mipMaps) {
+            case GENERATE:
+                glGenerateMipmap(GL_TEXTURE_2D);
+                break;
+            case NONE:
+                // without mip levels the texture would be incomplete
+                minFilter = getBaseFilter(mMinFilter);
+                break;
+            default:
+            }
+        }
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, mMagFilter);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, mMinFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, mWrapS);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, mWrapT);
-        if (mGenMipMap) {
-            // TODO prioC: mipmap generation
-            //glGenerateMipmap(textures[0]);
+    }
+    
+    private static int getBaseFilter(int filter) {
+        switch (filter) {
+        case GL_NEAREST_MIPMAP_NEAREST:
+        case GL_NEAREST_MIPMAP_LINEAR:
+            return GL_NEAREST;
+        case GL_LINEAR_MIPMAP_NEAREST:
+        case GL_LINEAR_MIPMAP_LINEAR:
+            return GL_LINEAR;
+        default:
+            return filter;
         }
     }
     
@@ -93,4 +142,16 @@ public class TextureObjOptions {
         return mWrapT == other.mWrapT;
     }
     
+    /** Source of the mip levels below level 0. */
+    public enum MipMapSource {
+        /** Levels are generated on GPU from level 0 (glGenerateMipmap). */
+        GENERATE,
+        /** Complete chain was loaded, e.g. from a compressed container. */
+        LOADED,
+        /** 
+         * No levels available, e.g. compressed textures or NPOT textures. 
+         * Level 0 is sampled without mipmapping then. 
+         */
+        NONE
+    }
 }
@@ -1,6 +1,7 @@
 package com.moonymango.snare.opengl;
 
 import com.moonymango.snare.game.BaseSnareClass;
+import com.moonymango.snare.game.FrameProfiler;
 import com.moonymango.snare.game.IGame;
 import com.moonymango.snare.opengl.BufferObj.IBufferConfigurationSetup;
 import com.moonymango.snare.opengl.BufferObj.IBufferDataProvider;
@@ -25,18 +26,18 @@ import static android.opengl.GLES20.GL_STATIC_DRAW;
 import static android.opengl.GLES20.GL_TEXTURE0;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
-import static android.opengl.GLES20.glActiveTexture;
-import static android.opengl.GLES20.glBindBuffer;
+import static com.moonymango.snare.opengl.GLStateCache.glActiveTexture;
+import static com.moonymango.snare.opengl.GLStateCache.glBindBuffer;
 import static android.opengl.GLES20.glBindFramebuffer;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glDisableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glBindTexture;
+import static com.moonymango.snare.opengl.GLStateCache.glDisableVertexAttribArray;
 import static android.opengl.GLES20.glDrawArrays;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glEnableVertexAttribArray;
 import static android.opengl.GLES20.glGetAttribLocation;
 import static android.opengl.GLES20.glGetError;
 import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniform2f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1i;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform2f;
 import static android.opengl.GLES20.glVertexAttribPointer;
 import static com.moonymango.snare.opengl.GLES20Trace.glClear;
 import static com.moonymango.snare.opengl.GLES20Trace.glClearColor;
@@ -246,9 +247,13 @@ public class VarResolutionRenderer extends BaseSnareClass implements IRenderer,
         final RenderOptions ro = mGame.getSettings().RENDER_OPTIONS;
 
         mGame.waitForDraw();
+        final FrameProfiler p = mGame.getProfiler();
+        p.begin(FrameProfiler.TRACK_RENDER, FrameProfiler.DRAW);
 
         // make sure everything is in GPU before actual drawing
+        p.begin(FrameProfiler.TRACK_RENDER, FrameProfiler.GL_CACHE);
         mGame.getGLObjCache().update();
+        p.end(FrameProfiler.TRACK_RENDER);
         GLState.sync();
 
         // draw player view to framebuffer, draw framebuffer to screen
@@ -280,6 +285,8 @@ public class VarResolutionRenderer extends BaseSnareClass implements IRenderer,
             mLastFPSUpdateTime = time;
         }
 
+        GLStateCache.endFrame();
+        p.end(FrameProfiler.TRACK_RENDER);
         mGame.notifyEndDraw();
     }
 
@@ -328,6 +335,8 @@ public class VarResolutionRenderer extends BaseSnareClass implements IRenderer,
             mRenderInfo = new GLInfo();
         }
         mRenderInfo.collectValues();
+        // new context, nothing of the shadowed GL state is valid
+        GLStateCache.reset();
         mGame.getGLObjCache().reloadAll();
         mGame.notifyEndDraw();
     }
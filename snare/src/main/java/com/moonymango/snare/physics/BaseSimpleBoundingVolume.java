@@ -1,5 +1,7 @@
 package com.moonymango.snare.physics;
 
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.ui.scene3D.BaseCamera;
 import com.moonymango.snare.util.MatrixAF;
 import com.moonymango.snare.util.VectorAF;
 
@@ -10,6 +12,13 @@ public abstract class BaseSimpleBoundingVolume extends BaseBoundingVolume {
     private boolean centerWorldValid;
     private final float[] mCenterWorld = new float[4];
     private final float[] mCollisionPoint = new float[4];
+    private boolean mWorldBoundsValid;
+    private int mWorldBoundsVersion;
+    private final float[] mWorldBounds = new float[6];
+    /** Leaf of this volume in the raycast tree of {@link SimplePhysics}. */
+    int mTreeLeaf = BoundingVolumeTree.NULL_NODE;
+    /** Transform version of game object when tree leaf was last updated. */
+    int mTreeVersion;
     protected float[] mCenter = new float[4];
     
     /** general purpose vector */
@@ -63,12 +72,20 @@ public abstract class BaseSimpleBoundingVolume extends BaseBoundingVolume {
      * @return Distance.
      */
     public abstract float getCenterBorderDistance(float[] direction);
+
+    /**
+     * Returns the radius of a sphere around the center point which encloses
+     * the whole volume (local space).
+     * @return Radius.
+     */
+    protected abstract float getBoundingRadius();
     
     @Override
     public void onUpdate(long realTime, float realDelta, float virtualDelta) {
         // invalidate since game object transformation may have 
         // since last frame
         centerWorldValid = false;
+        mWorldBoundsValid = false;
     }
 
     /**
@@ -120,4 +137,58 @@ public abstract class BaseSimpleBoundingVolume extends BaseBoundingVolume {
         return mCenterWorld;
     }
 
+    /**
+     * Returns axis aligned bounds of the volume in world space as
+     * {minX, minY, minZ, maxX, maxY, maxZ}. The bounds are conservative,
+     * i.e. they enclose the bounding sphere of the volume, so they are
+     * independent of the object's rotation.
+     * @return Bounds.
+     */
+    public float[] getWorldBounds() {
+        // game object may have been moved after last update of this
+        // component, so check its transformation as well
+        final GameObj obj = getGameObj();
+        final int version = obj.getTransformVersion();
+        if (!mWorldBoundsValid || version != mWorldBoundsVersion) {
+            centerWorldValid = false;
+            final float[] c = getCenter();
+            final float r = getBoundingRadius() * getMaxScale(obj.getToWorld());
+            mWorldBounds[0] = c[0] - r;
+            mWorldBounds[1] = c[1] - r;
+            mWorldBounds[2] = c[2] - r;
+            mWorldBounds[3] = c[0] + r;
+            mWorldBounds[4] = c[1] + r;
+            mWorldBounds[5] = c[2] + r;
+            mWorldBoundsValid = true;
+            mWorldBoundsVersion = version;
+        }
+        return mWorldBounds;
+    }
+
+    /**
+     * Tests the bounding sphere of the volume against the frustrum of a camera.
+     * @return False if volume is completely outside of frustrum.
+     */
+    protected boolean isBoundingSphereInFrustrum(BaseCamera c) {
+        // do not use getCenter() here, game object may have been moved
+        // after last update of this component
+        final float[] m = getGameObj().getToWorld();
+        final float[] lc = mCenter;
+        final float x = m[0]*lc[0] + m[4]*lc[1] + m[8]*lc[2] + m[12];
+        final float y = m[1]*lc[0] + m[5]*lc[1] + m[9]*lc[2] + m[13];
+        final float z = m[2]*lc[0] + m[6]*lc[1] + m[10]*lc[2] + m[14];
+        return c.isSphereInFrustrum(x, y, z, getBoundingRadius() * getMaxScale(m));
+    }
+
+    /**
+     * Returns largest scale factor of a transformation, which is the length
+     * of its longest base vector.
+     */
+    private static float getMaxScale(float[] m) {
+        final float sx = m[0]*m[0] + m[1]*m[1] + m[2]*m[2];
+        final float sy = m[4]*m[4] + m[5]*m[5] + m[6]*m[6];
+        final float sz = m[8]*m[8] + m[9]*m[9] + m[10]*m[10];
+        return (float) Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+    }
+
 }
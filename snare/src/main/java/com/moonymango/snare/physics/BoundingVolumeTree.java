@@ -0,0 +1,558 @@
+package com.moonymango.snare.physics;
+
+import com.moonymango.snare.game.GameObj.GameObjLayer;
+import com.moonymango.snare.physics.BaseBoundingVolume.IntersectionDistance;
+import com.moonymango.snare.ui.scene3D.BaseCamera;
+
+import java.util.ArrayList;
+
+/**
+ * Dynamic bounding volume hierarchy (AABB tree) to accelerate raycasts
+ * and frustrum culling.
+ * Leaves hold the world bounds of a volume, enlarged by a margin so that
+ * small movements do not require a tree update. Each node additionally
+ * stores the combined layer mask of its subtree, so whole subtrees can be
+ * skipped when they do not contain any object of interest for a raycast.
+ * Inserting and removing leaves keeps the tree balanced by rotations (same
+ * approach as the dynamic tree of Box2D).
+ *
+ * All node data is kept in primitive arrays, so no allocations happen
+ * except when the tree has to grow.
+ */
+public class BoundingVolumeTree {
+
+    public static final int NULL_NODE = -1;
+    private static final int ALL_PLANES = 0x3f;
+    private static final int DEFAULT_CAPACITY = 64;
+    /** Enlargement of leaf bounds relative to volume size. */
+    private static final float MARGIN = 0.1f;
+
+    // node data, bounds are stored as minX, minY, minZ, maxX, maxY, maxZ
+    private float[] mBounds;
+    private int[] mParent;      // next free node when node is in free list
+    private int[] mChild1;
+    private int[] mChild2;
+    private int[] mHeight;      // leaf = 0, free node = -1
+    private int[] mMask;
+    private BaseSimpleBoundingVolume[] mVolumes;
+
+    private int mCapacity;
+    private int mRoot = NULL_NODE;
+    private int mFreeList;
+    private int mLeafCnt;
+
+    // traversal stack
+    private int[] mStack = new int[DEFAULT_CAPACITY];
+    private float[] mStackDist = new float[DEFAULT_CAPACITY];
+    private int[] mStackMask = new int[DEFAULT_CAPACITY];
+    private final float[] mInvDir = new float[3];
+
+    public BoundingVolumeTree() {
+        mCapacity = DEFAULT_CAPACITY;
+        mBounds = new float[6 * mCapacity];
+        mParent = new int[mCapacity];
+        mChild1 = new int[mCapacity];
+        mChild2 = new int[mCapacity];
+        mHeight = new int[mCapacity];
+        mMask = new int[mCapacity];
+        mVolumes = new BaseSimpleBoundingVolume[mCapacity];
+        linkFreeNodes(0);
+    }
+
+    /**
+     * Adds volume to the tree.
+     * @return Id of leaf node.
+     */
+    public int add(BaseSimpleBoundingVolume bv) {
+        final int leaf = allocateNode();
+        mVolumes[leaf] = bv;
+        mHeight[leaf] = 0;
+        mMask[leaf] = bv.getGameObj().getLayer().getMask();
+        setFatBounds(leaf, bv.getWorldBounds());
+        insertLeaf(leaf);
+        mLeafCnt++;
+        return leaf;
+    }
+
+    public void remove(int leaf) {
+        removeLeaf(leaf);
+        freeNode(leaf);
+        mLeafCnt--;
+    }
+
+    /**
+     * Updates leaf after the volume has moved. The tree is only changed when
+     * the volume has left the enlarged bounds of its leaf.
+     * @return True if tree was changed.
+     */
+    public boolean move(int leaf) {
+        final float[] b = mVolumes[leaf].getWorldBounds();
+        final int o = 6 * leaf;
+        if (b[0] >= mBounds[o] && b[1] >= mBounds[o + 1] && b[2] >= mBounds[o + 2]
+                && b[3] <= mBounds[o + 3] && b[4] <= mBounds[o + 4] && b[5] <= mBounds[o + 5]) {
+            return false;
+        }
+        removeLeaf(leaf);
+        setFatBounds(leaf, b);
+        insertLeaf(leaf);
+        return true;
+    }
+
+    public int getLeafCnt() {
+        return mLeafCnt;
+    }
+
+    /** Height of the tree, leaf only tree has height 0. */
+    int getHeight() {
+        return mRoot == NULL_NODE ? 0 : mHeight[mRoot];
+    }
+
+    /**
+     * Casts ray through the tree and adds intersections to the raycast.
+     * Subtrees are skipped when their bounds are missed by the ray or when
+     * they contain no object covered by the layer mask.
+     * @param r Raycast to receive intersections.
+     * @param s Ray origin.
+     * @param v Ray direction.
+     * @param layerMask Object layers to test.
+     * @param firstHitOnly True to add only the nearest intersection.
+     */
+    void raycast(Raycast r, float[] s, float[] v, GameObjLayer layerMask, boolean firstHitOnly) {
+        if (mRoot == NULL_NODE) {
+            return;
+        }
+        final int mask = layerMask.getMask();
+        for (int i = 0; i < 3; i++) {
+            mInvDir[i] = 1 / v[i];
+        }
+
+        float nearestDist = Float.MAX_VALUE;
+        BaseSimpleBoundingVolume nearest = null;
+
+        int top = 0;
+        final float rootDist = getEntryDistance(mRoot, s);
+        if ((mMask[mRoot] & mask) == 0 || Float.isNaN(rootDist)) {
+            return;
+        }
+        mStack[top] = mRoot;
+        mStackDist[top] = rootDist;
+        top++;
+
+        while (top > 0) {
+            top--;
+            final int n = mStack[top];
+            if (mStackDist[top] > nearestDist) {
+                // something closer was already hit
+                continue;
+            }
+
+            if (mHeight[n] == 0) {
+                final BaseSimpleBoundingVolume bv = mVolumes[n];
+                if (!bv.isRaycastEnabled() || !layerMask.covers(bv.getGameObj().getLayer())) {
+                    continue;
+                }
+                final IntersectionDistance d = bv.getRayDistance(s, v);
+                // only consider object that are completely in front of the ray origin
+                if (d == null || d.MIN <= 0) {
+                    continue;
+                }
+                if (!firstHitOnly) {
+                    r.addIntersection(d.MIN, bv.getGameObj());
+                } else if (d.MIN < nearestDist) {
+                    nearestDist = d.MIN;
+                    nearest = bv;
+                }
+                continue;
+            }
+
+            // push children, nearer child last so it is visited first
+            final int c1 = mChild1[n];
+            final int c2 = mChild2[n];
+            final float d1 = (mMask[c1] & mask) != 0 ? getEntryDistance(c1, s) : Float.NaN;
+            final float d2 = (mMask[c2] & mask) != 0 ? getEntryDistance(c2, s) : Float.NaN;
+            if (top + 2 > mStack.length) {
+                growStack();
+            }
+            if (!Float.isNaN(d1) && !Float.isNaN(d2) && d1 < d2) {
+                mStack[top] = c2;
+                mStackDist[top++] = d2;
+                mStack[top] = c1;
+                mStackDist[top++] = d1;
+            } else {
+                if (!Float.isNaN(d1)) {
+                    mStack[top] = c1;
+                    mStackDist[top++] = d1;
+                }
+                if (!Float.isNaN(d2)) {
+                    mStack[top] = c2;
+                    mStackDist[top++] = d2;
+                }
+            }
+        }
+
+        if (nearest != null) {
+            r.addIntersection(nearestDist, nearest.getGameObj());
+        }
+    }
+
+    /**
+     * Collects all volumes within the frustrum of a camera. Subtrees
+     * outside of the frustrum are skipped, subtrees completely inside are
+     * added without further tests. Only volumes whose leaf bounds intersect
+     * the frustrum are tested themselves.
+     * @param c Camera, its frustrum planes have to be up to date.
+     * @param visible List to receive visible volumes.
+     */
+    public void cull(BaseCamera c, ArrayList<BaseSimpleBoundingVolume> visible) {
+        if (mRoot == NULL_NODE) {
+            return;
+        }
+        final float[] pl = c.getFrustrumPlanes();
+        int top = 0;
+        mStack[top] = mRoot;
+        mStackMask[top++] = ALL_PLANES;
+
+        while (top > 0) {
+            top--;
+            final int n = mStack[top];
+            // planes which do not contain the parent completely
+            int mask = mStackMask[top];
+            final int o = 6 * n;
+            boolean outside = false;
+            for (int p = 0; p < 6 && mask != 0; p++) {
+                final int bit = 1 << p;
+                if ((mask & bit) == 0) {
+                    continue;
+                }
+                final int po = 4 * p;
+                final float a = pl[po], b = pl[po + 1], cc = pl[po + 2], d = pl[po + 3];
+                // corner farthest along plane normal outside means all outside
+                final float far = a * mBounds[a >= 0 ? o + 3 : o]
+                        + b * mBounds[b >= 0 ? o + 4 : o + 1]
+                        + cc * mBounds[cc >= 0 ? o + 5 : o + 2] + d;
+                if (far < 0) {
+                    outside = true;
+                    break;
+                }
+                // nearest corner inside means all inside
+                final float near = a * mBounds[a >= 0 ? o : o + 3]
+                        + b * mBounds[b >= 0 ? o + 1 : o + 4]
+                        + cc * mBounds[cc >= 0 ? o + 2 : o + 5] + d;
+                if (near >= 0) {
+                    mask &= ~bit;
+                }
+            }
+            if (outside) {
+                continue;
+            }
+
+            if (mHeight[n] == 0) {
+                final BaseSimpleBoundingVolume bv = mVolumes[n];
+                if (mask == 0 || bv.isInFrustrum(c)) {
+                    visible.add(bv);
+                }
+                continue;
+            }
+            if (top + 2 > mStack.length) {
+                growStack();
+            }
+            mStack[top] = mChild1[n];
+            mStackMask[top++] = mask;
+            mStack[top] = mChild2[n];
+            mStackMask[top++] = mask;
+        }
+    }
+
+    /**
+     * Slab test of ray against node bounds. Uses inverse ray direction
+     * prepared in mInvDir.
+     * @return Distance to entry point (negative when origin is inside
+     *      bounds) or NaN when ray misses the bounds.
+     */
+    private float getEntryDistance(int node, float[] s) {
+        final int o = 6 * node;
+        float tmin = -Float.MAX_VALUE;
+        float tmax = Float.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            final float inv = mInvDir[i];
+            if (Float.isInfinite(inv)) {
+                // ray parallel to slab, origin has to be inside
+                if (s[i] < mBounds[o + i] || s[i] > mBounds[o + 3 + i]) {
+                    return Float.NaN;
+                }
+                continue;
+            }
+            float t0 = (mBounds[o + i] - s[i]) * inv;
+            float t1 = (mBounds[o + 3 + i] - s[i]) * inv;
+            if (t0 > t1) {
+                final float t = t0;
+                t0 = t1;
+                t1 = t;
+            }
+            tmin = Math.max(tmin, t0);
+            tmax = Math.min(tmax, t1);
+            if (tmin > tmax) {
+                return Float.NaN;
+            }
+        }
+        // bounds completely behind origin
+        return tmax < 0 ? Float.NaN : tmin;
+    }
+
+    private void setFatBounds(int leaf, float[] b) {
+        final int o = 6 * leaf;
+        for (int i = 0; i < 3; i++) {
+            final float margin = MARGIN * (b[3 + i] - b[i]);
+            mBounds[o + i] = b[i] - margin;
+            mBounds[o + 3 + i] = b[3 + i] + margin;
+        }
+    }
+
+    private void insertLeaf(int leaf) {
+        if (mRoot == NULL_NODE) {
+            mRoot = leaf;
+            mParent[leaf] = NULL_NODE;
+            return;
+        }
+
+        // find best sibling by surface area heuristic
+        int index = mRoot;
+        while (mHeight[index] > 0) {
+            final int c1 = mChild1[index];
+            final int c2 = mChild2[index];
+            final float area = getArea(index, index);
+            final float combinedArea = getArea(index, leaf);
+            // cost of creating a new parent for this node and the new leaf
+            final float cost = 2 * combinedArea;
+            // minimum cost of pushing the leaf further down the tree
+            final float inheritanceCost = 2 * (combinedArea - area);
+            final float cost1 = getDescendCost(c1, leaf) + inheritanceCost;
+            final float cost2 = getDescendCost(c2, leaf) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        final int sibling = index;
+
+        // create new parent
+        final int oldParent = mParent[sibling];
+        final int newParent = allocateNode();
+        mParent[newParent] = oldParent;
+        mVolumes[newParent] = null;
+        mChild1[newParent] = sibling;
+        mChild2[newParent] = leaf;
+        mParent[sibling] = newParent;
+        mParent[leaf] = newParent;
+        refitNode(newParent);
+        if (oldParent != NULL_NODE) {
+            if (mChild1[oldParent] == sibling) {
+                mChild1[oldParent] = newParent;
+            } else {
+                mChild2[oldParent] = newParent;
+            }
+        } else {
+            mRoot = newParent;
+        }
+
+        fixUpwards(mParent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == mRoot) {
+            mRoot = NULL_NODE;
+            return;
+        }
+        final int parent = mParent[leaf];
+        final int grandParent = mParent[parent];
+        final int sibling = mChild1[parent] == leaf ? mChild2[parent] : mChild1[parent];
+
+        if (grandParent != NULL_NODE) {
+            // connect sibling to grand parent and destroy parent
+            if (mChild1[grandParent] == parent) {
+                mChild1[grandParent] = sibling;
+            } else {
+                mChild2[grandParent] = sibling;
+            }
+            mParent[sibling] = grandParent;
+            freeNode(parent);
+            fixUpwards(grandParent);
+        } else {
+            mRoot = sibling;
+            mParent[sibling] = NULL_NODE;
+            freeNode(parent);
+        }
+    }
+
+    /** Balances and refits all nodes from index up to the root. */
+    private void fixUpwards(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+            refitNode(index);
+            index = mParent[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if node A is imbalanced.
+     * @return New root index of the subtree.
+     */
+    private int balance(int iA) {
+        if (mHeight[iA] < 2) {
+            return iA;
+        }
+        final int iB = mChild1[iA];
+        final int iC = mChild2[iA];
+        final int balance = mHeight[iC] - mHeight[iB];
+
+        if (balance > 1) {
+            // rotate C up
+            final int iF = mChild1[iC];
+            final int iG = mChild2[iC];
+            replaceInParent(iA, iC);
+            mChild1[iC] = iA;
+            mParent[iA] = iC;
+            if (mHeight[iF] > mHeight[iG]) {
+                mChild2[iC] = iF;
+                mChild2[iA] = iG;
+                mParent[iG] = iA;
+            } else {
+                mChild2[iC] = iG;
+                mChild2[iA] = iF;
+                mParent[iF] = iA;
+            }
+            refitNode(iA);
+            refitNode(iC);
+            return iC;
+        }
+
+        if (balance < -1) {
+            // rotate B up
+            final int iD = mChild1[iB];
+            final int iE = mChild2[iB];
+            replaceInParent(iA, iB);
+            mChild1[iB] = iA;
+            mParent[iA] = iB;
+            if (mHeight[iD] > mHeight[iE]) {
+                mChild2[iB] = iD;
+                mChild1[iA] = iE;
+                mParent[iE] = iA;
+            } else {
+                mChild2[iB] = iE;
+                mChild1[iA] = iD;
+                mParent[iD] = iA;
+            }
+            refitNode(iA);
+            refitNode(iB);
+            return iB;
+        }
+        return iA;
+    }
+
+    /** Puts node b into the place of node a in a's parent. */
+    private void replaceInParent(int a, int b) {
+        final int parent = mParent[a];
+        mParent[b] = parent;
+        if (parent == NULL_NODE) {
+            mRoot = b;
+        } else if (mChild1[parent] == a) {
+            mChild1[parent] = b;
+        } else {
+            mChild2[parent] = b;
+        }
+    }
+
+    /** Recalculates bounds, mask and height of inner node from its children. */
+    private void refitNode(int n) {
+        final int c1 = mChild1[n];
+        final int c2 = mChild2[n];
+        final int o = 6 * n;
+        final int o1 = 6 * c1;
+        final int o2 = 6 * c2;
+        for (int i = 0; i < 3; i++) {
+            mBounds[o + i] = Math.min(mBounds[o1 + i], mBounds[o2 + i]);
+            mBounds[o + 3 + i] = Math.max(mBounds[o1 + 3 + i], mBounds[o2 + 3 + i]);
+        }
+        mMask[n] = mMask[c1] | mMask[c2];
+        mHeight[n] = 1 + Math.max(mHeight[c1], mHeight[c2]);
+    }
+
+    /** Cost of inserting leaf somewhere below node. */
+    private float getDescendCost(int node, int leaf) {
+        final float combined = getArea(node, leaf);
+        return mHeight[node] == 0 ? combined : combined - getArea(node, node);
+    }
+
+    /** Surface area (half) of the union of bounds of both nodes. */
+    private float getArea(int a, int b) {
+        final int oa = 6 * a;
+        final int ob = 6 * b;
+        final float dx = Math.max(mBounds[oa + 3], mBounds[ob + 3]) - Math.min(mBounds[oa], mBounds[ob]);
+        final float dy = Math.max(mBounds[oa + 4], mBounds[ob + 4]) - Math.min(mBounds[oa + 1], mBounds[ob + 1]);
+        final float dz = Math.max(mBounds[oa + 5], mBounds[ob + 5]) - Math.min(mBounds[oa + 2], mBounds[ob + 2]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private int allocateNode() {
+        if (mFreeList == NULL_NODE) {
+            grow();
+        }
+        final int n = mFreeList;
+        mFreeList = mParent[n];
+        mParent[n] = NULL_NODE;
+        mChild1[n] = NULL_NODE;
+        mChild2[n] = NULL_NODE;
+        mHeight[n] = 0;
+        return n;
+    }
+
+    private void freeNode(int n) {
+        mVolumes[n] = null;
+        mHeight[n] = -1;
+        mParent[n] = mFreeList;
+        mFreeList = n;
+    }
+
+    private void grow() {
+        final int old = mCapacity;
+        mCapacity *= 2;
+        final float[] bounds = new float[6 * mCapacity];
+        System.arraycopy(mBounds, 0, bounds, 0, 6 * old);
+        mBounds = bounds;
+        mParent = copyOf(mParent, mCapacity);
+        mChild1 = copyOf(mChild1, mCapacity);
+        mChild2 = copyOf(mChild2, mCapacity);
+        mHeight = copyOf(mHeight, mCapacity);
+        mMask = copyOf(mMask, mCapacity);
+        final BaseSimpleBoundingVolume[] volumes = new BaseSimpleBoundingVolume[mCapacity];
+        System.arraycopy(mVolumes, 0, volumes, 0, old);
+        mVolumes = volumes;
+        linkFreeNodes(old);
+    }
+
+    /** Puts all nodes starting at index into the free list. */
+    private void linkFreeNodes(int start) {
+        for (int i = start; i < mCapacity - 1; i++) {
+            mParent[i] = i + 1;
+            mHeight[i] = -1;
+        }
+        mParent[mCapacity - 1] = NULL_NODE;
+        mHeight[mCapacity - 1] = -1;
+        mFreeList = start;
+    }
+
+    private void growStack() {
+        final int len = mStack.length * 2;
+        mStack = copyOf(mStack, len);
+        final float[] dist = new float[len];
+        System.arraycopy(mStackDist, 0, dist, 0, mStackDist.length);
+        mStackDist = dist;
+        mStackMask = copyOf(mStackMask, len);
+    }
+
+    private static int[] copyOf(int[] src, int len) {
+        final int[] dst = new int[len];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+}
@@ -0,0 +1,39 @@
+package com.moonymango.snare.physics;
+
+import java.util.ArrayList;
+
+/**
+ * Broadphase without any pruning, every volume is a candidate for every
+ * other volume. Cost of collision checking grows with 
+ * O(checkers * volumes), so this is only useful for a very small number of
+ * volumes or as reference.
+ */
+public class BruteForceBroadphase implements IBroadphase {
+
+    private final ArrayList<BaseSimpleBoundingVolume> mVolumes = new ArrayList<BaseSimpleBoundingVolume>();
+
+    @Override
+    public void add(BaseSimpleBoundingVolume bv) {
+        mVolumes.add(bv);
+    }
+
+    @Override
+    public void remove(BaseSimpleBoundingVolume bv) {
+        mVolumes.remove(bv);
+    }
+
+    @Override
+    public void update() {}
+
+    @Override
+    public void query(BaseSimpleBoundingVolume bv, ArrayList<BaseSimpleBoundingVolume> result) {
+        for (int i = mVolumes.size() - 1; i >= 0; i--) {
+            result.add(mVolumes.get(i));
+        }
+    }
+
+    @Override
+    public int getVolumeCnt() {
+        return mVolumes.size();
+    }
+}
@@ -0,0 +1,36 @@
+package com.moonymango.snare.physics;
+
+import java.util.ArrayList;
+
+/**
+ * Broadphase of the collision detection. Keeps track of all bounding volumes
+ * of the physics world and quickly finds those volumes whose world space
+ * bounds (see {@link BaseSimpleBoundingVolume#getWorldBounds()}) overlap the
+ * bounds of a given volume. Only these candidates have to be tested by the
+ * exact (and expensive) narrow phase test.
+ */
+public interface IBroadphase {
+
+    /** Adds volume to the broadphase. */
+    void add(BaseSimpleBoundingVolume bv);
+
+    /** Removes volume from the broadphase. */
+    void remove(BaseSimpleBoundingVolume bv);
+
+    /**
+     * Refreshes internal data from the current world bounds of all volumes.
+     * Called once per physics tick before any call to query().
+     */
+    void update();
+
+    /**
+     * Collects all volumes whose bounds overlap the bounds of the specified
+     * volume. Note: the volume itself may be part of the result.
+     * @param bv Volume to test.
+     * @param result List to which candidates are appended.
+     */
+    void query(BaseSimpleBoundingVolume bv, ArrayList<BaseSimpleBoundingVolume> result);
+
+    /** Returns number of volumes currently held by the broadphase. */
+    int getVolumeCnt();
+}
@@ -17,6 +17,16 @@ public interface IPhysics extends IEventListener {
      */
     Raycast doRaycast(float[] s, float[] v, GameObjLayer layerMask);
 
+    /**
+     * Performs ray cast, but stops at the nearest hit. Use this in case only
+     * the nearest object is of interest, e.g. to pick a touched object.
+     * @param layerMask Object layers to test.
+     * @param s Ray origin.
+     * @param v Ray direction.
+     * @return Raycast object containing only the nearest object hit by ray.
+     */
+    Raycast doRaycastFirstHit(float[] s, float[] v, GameObjLayer layerMask);
+
     /**
      * Creates a new bounding volume. Note: the volume will not immediately be part of
      * of the physics world. Only when its game object is added to the game logic, the
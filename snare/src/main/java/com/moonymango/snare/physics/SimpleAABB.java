@@ -76,10 +76,15 @@ public class SimpleAABB extends BaseSimpleBoundingVolume {
         mCenter[3] = 1;
     }
 
+    @Override
+    protected float getBoundingRadius() {
+        return mEffectiveRadius;
+    }
+
     @Override
     public boolean isInFrustrum(BaseCamera c) {
-        // TODO prioD: visibility test
-        return true;
+        return c.isBoxInFrustrum(getGameObj().getToWorld(), mMin[0], mMin[1], mMin[2],
+                mMax[0], mMax[1], mMax[2]);
     }
 
     @Override
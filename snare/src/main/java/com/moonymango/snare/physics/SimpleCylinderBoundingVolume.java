@@ -84,10 +84,42 @@ public class SimpleCylinderBoundingVolume extends BaseSimpleBoundingVolume {
         mCenter[3] = 1;
     }
 
+    @Override
+    protected float getBoundingRadius() {
+        // height axis passes through local origin, center may be off axis
+        float d = 0, h = 0;
+        switch (mOrientation) {
+        case X:
+            d = (float) Math.sqrt(mCenter[1]*mCenter[1] + mCenter[2]*mCenter[2]);
+            h = mCenter[0];
+            break;
+        case Y:
+            d = (float) Math.sqrt(mCenter[0]*mCenter[0] + mCenter[2]*mCenter[2]);
+            h = mCenter[1];
+            break;
+        case Z:
+            d = (float) Math.sqrt(mCenter[0]*mCenter[0] + mCenter[1]*mCenter[1]);
+            h = mCenter[2];
+            break;
+        }
+        final float r = d + mRadius;
+        final float hh = Math.max(Math.abs(mHeightAxisMax - h), Math.abs(mHeightAxisMin - h));
+        return (float) Math.sqrt(r*r + hh*hh);
+    }
+
     @Override
     public boolean isInFrustrum(BaseCamera c) {
-        // TODO prioD: visibility test
-        return false;
+        // test box around cylinder, height axis passes through local origin
+        final float[] m = getGameObj().getToWorld();
+        final float r = mRadius;
+        switch (mOrientation) {
+        case X:
+            return c.isBoxInFrustrum(m, mHeightAxisMin, -r, -r, mHeightAxisMax, r, r);
+        case Y:
+            return c.isBoxInFrustrum(m, -r, mHeightAxisMin, -r, r, mHeightAxisMax, r);
+        default:
+            return c.isBoxInFrustrum(m, -r, -r, mHeightAxisMin, r, r, mHeightAxisMax);
+        }
     }
 
     @Override
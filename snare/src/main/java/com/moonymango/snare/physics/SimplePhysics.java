@@ -12,7 +12,6 @@ import com.moonymango.snare.game.GameObj;
 import com.moonymango.snare.game.GameObj.ComponentType;
 import com.moonymango.snare.game.GameObj.GameObjLayer;
 import com.moonymango.snare.game.IGame;
-import com.moonymango.snare.physics.BaseBoundingVolume.IntersectionDistance;
 import com.moonymango.snare.physics.BaseBoundingVolume.VolumeType;
 import com.moonymango.snare.util.Pool;
 
@@ -20,8 +19,10 @@ import java.util.ArrayList;
 
 /**
  * Provides raycasting and collision detection.
- * Implementation is probably not very efficient, so it is intended for cases 
- * when only a small number of objects have to be tested for collisions.
+ * Collision candidates are found by a pluggable {@link IBroadphase} 
+ * (sweep and prune by default), only candidates with overlapping
+ * bounds are tested by the narrow phase. Raycasts are accelerated by a
+ * bounding volume hierarchy, which is updated for moved objects only.
  * No motion, no forces or anything like that.
  */
 public class SimplePhysics extends BaseSnareClass implements IPhysics {
@@ -32,6 +33,13 @@ public class SimplePhysics extends BaseSnareClass implements IPhysics {
     private ArrayList<BaseSimpleBoundingVolume> mBoundingVolumes = new ArrayList<BaseSimpleBoundingVolume>();
     /** List of bounding volumes that want to be checked for collisions with others */
     private ArrayList<BaseSimpleBoundingVolume> mCollisionCheckers = new ArrayList<BaseSimpleBoundingVolume>();
+    /** Finds collision candidates. */
+    private IBroadphase mBroadphase = new SweepAndPruneBroadphase();
+    /** Candidates of a single collision checker, reused every tick. */
+    private final ArrayList<BaseSimpleBoundingVolume> mCandidates = new ArrayList<BaseSimpleBoundingVolume>();
+    private int mPairCnt;
+    /** Hierarchy of all bounding volumes for raycasting. */
+    private final BoundingVolumeTree mTree = new BoundingVolumeTree();
     
     // two list alternately used for current and previous collisions
     private final SparseArray<SimpleCollisionPair> mMapA = new SparseArray<SimpleCollisionPair>();
@@ -57,6 +65,35 @@ public class SimplePhysics extends BaseSnareClass implements IPhysics {
         mCollisionChecking = enable;
     }
 
+    /**
+     * Replaces the broadphase used to find collision candidates. All
+     * volumes of the current broadphase are transferred to the new one.
+     * @param broadphase
+     */
+    public void setBroadphase(IBroadphase broadphase) {
+        if (broadphase == null) {
+            throw new IllegalArgumentException("Missing broadphase.");
+        }
+        for (int i = mBoundingVolumes.size() - 1; i >= 0; i--) {
+            final BaseSimpleBoundingVolume bv = mBoundingVolumes.get(i);
+            mBroadphase.remove(bv);
+            broadphase.add(bv);
+        }
+        mBroadphase = broadphase;
+    }
+
+    public IBroadphase getBroadphase() {
+        return mBroadphase;
+    }
+
+    /**
+     * Returns number of pairs which had to be tested by the narrow phase
+     * in the last tick.
+     */
+    public int getPairCnt() {
+        return mPairCnt;
+    }
+
     public void onInit()
     {
         mGame.getEventManager().addListener(IGameObjNewEvent.EVENT_TYPE, this);
@@ -64,16 +101,21 @@ public class SimplePhysics extends BaseSnareClass implements IPhysics {
     }
 
     public void tick(long realTime, float realDelta, float virtualDelta) {
+        updateTree();
         if (!mCollisionChecking) {
             return;
         }
         // collision test:
-        // 1. collect pairs to test in list mCurrentCollisions
+        // 1. collect pairs to test in list mCurrentCollisions, only
+        //    volumes with overlapping bounds are candidates
+        mBroadphase.update();
         for (int i = mCollisionCheckers.size() - 1; i >= 0; i--) {
             final BaseSimpleBoundingVolume bvA = mCollisionCheckers.get(i);
             final GameObjLayer layerA = bvA.getGameObj().getLayer();
-            for (int j = mBoundingVolumes.size() - 1; j >= 0; j--) {
-                final BaseSimpleBoundingVolume bvB = mBoundingVolumes.get(j);
+            mCandidates.clear();
+            mBroadphase.query(bvA, mCandidates);
+            for (int j = mCandidates.size() - 1; j >= 0; j--) {
+                final BaseSimpleBoundingVolume bvB = mCandidates.get(j);
                 final GameObjLayer layerB = bvB.getGameObj().getLayer();
                 // do not test a volume against itself and only test if
                 // there is an intersection in layer masks
@@ -92,6 +134,8 @@ public class SimplePhysics extends BaseSnareClass implements IPhysics {
                 } 
             }
         }
+        mCandidates.clear();
+        mPairCnt = mCurrentIterator.size();
         
         // 2. remove all pairs from mCurrentCollisions that are actually not
         //    collisions
@@ -132,27 +176,38 @@ public class SimplePhysics extends BaseSnareClass implements IPhysics {
     }
 
     public Raycast doRaycast(float[] s, float[] v, GameObjLayer layerMask) {
+        return doRaycast(s, v, layerMask, false);
+    }
+
+    public Raycast doRaycastFirstHit(float[] s, float[] v, GameObjLayer layerMask) {
+        return doRaycast(s, v, layerMask, true);
+    }
+
+    private Raycast doRaycast(float[] s, float[] v, GameObjLayer layerMask, boolean firstHitOnly) {
         Raycast r = mRaycastPool.obtain();
         r.init(layerMask, s[0], s[1], s[2], v[0], v[1], v[2], true);
-        
+
+        // objects may have moved since last tick or last raycast, e.g. when
+        // raycast is done from an event listener or after the transform
+        // update, only leaves of moved volumes are refitted
+        updateTree();
+        mTree.raycast(r, s, v, layerMask, firstHitOnly);
+        return r;
+    }
+
+    /**
+     * Updates tree leaves of all volumes whose game object has been
+     * moved, rotated or scaled since the last update.
+     */
+    private void updateTree() {
         for (int i = mBoundingVolumes.size() - 1; i >= 0; i--) {
             final BaseSimpleBoundingVolume bv = mBoundingVolumes.get(i);
-            final boolean covered = layerMask.covers(bv.getGameObj().getLayer());
-            if (!covered || !bv.isRaycastEnabled()) {
-                // object is not in a layer of interest
-                continue;
-            }
-            
-            final IntersectionDistance d = bv.getRayDistance(s, v);
-            // only consider object that are completely in front of the ray origin, i.e.
-            // ignore object, if the ray origin is within the bounding volume and also ignore
-            // if object is behind ray origin
-            if (d != null && d.MIN > 0) {
-                r.addIntersection(d.MIN, bv.getGameObj());
+            final int version = bv.getGameObj().getTransformVersion();
+            if (version != bv.mTreeVersion) {
+                mTree.move(bv.mTreeLeaf);
+                bv.mTreeVersion = version;
             }
         }
-        
-        return r;
     }
     
     public BaseBoundingVolume createBoundingVolume(VolumeType type) {
@@ -177,6 +232,9 @@ public class SimplePhysics extends BaseSnareClass implements IPhysics {
             final BaseSimpleBoundingVolume bv = (BaseSimpleBoundingVolume) obj.getComponent(ComponentType.BOUNDING_VOLUME);
             if (bv != null) {
                 mBoundingVolumes.add(bv);
+                mBroadphase.add(bv);
+                bv.mTreeLeaf = mTree.add(bv);
+                bv.mTreeVersion = obj.getTransformVersion();
                 if (bv.isCollisionChecker()) {
                     mCollisionCheckers.add(bv);
                 }
@@ -188,9 +246,12 @@ public class SimplePhysics extends BaseSnareClass implements IPhysics {
             if (obj == null) {
                 return false;
             }
-            final BaseBoundingVolume bv= (BaseBoundingVolume) obj.getComponent(ComponentType.BOUNDING_VOLUME);
-            if (bv != null) {
+            final BaseSimpleBoundingVolume bv = (BaseSimpleBoundingVolume) obj.getComponent(ComponentType.BOUNDING_VOLUME);
+            if (bv != null && bv.mTreeLeaf != BoundingVolumeTree.NULL_NODE) {
                 mBoundingVolumes.remove(bv);
+                mBroadphase.remove(bv);
+                mTree.remove(bv.mTreeLeaf);
+                bv.mTreeLeaf = BoundingVolumeTree.NULL_NODE;
                 if (bv.isCollisionChecker()) {
                     mCollisionCheckers.remove(bv);
                 }
@@ -53,10 +53,14 @@ public class SimpleSphereBoundingVolume extends BaseSimpleBoundingVolume {
         mRadius = Math.max(rx, Math.max(ry, rz));
     }
 
+    @Override
+    protected float getBoundingRadius() {
+        return mRadius;
+    }
+
     @Override
     public boolean isInFrustrum(BaseCamera c) {
-        // TODO prioD: visibility test
-        return false;
+        return isBoundingSphereInFrustrum(c);
     }
 
     @Override
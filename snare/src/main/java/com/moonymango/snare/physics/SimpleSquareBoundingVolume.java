@@ -34,6 +34,18 @@ public class SimpleSquareBoundingVolume extends BaseSimpleBoundingVolume
         mMinZ = provider.getMinZ();
         if (provider.getMaxY() != 0 || provider.getMinY() != 0)
             throw new UnsupportedOperationException("only squares in xz plane supported.");
+        mCenter[0] = (mMinX + mMaxX) / 2;
+        mCenter[1] = 0;
+        mCenter[2] = (mMinZ + mMaxZ) / 2;
+        mCenter[3] = 1;
+    }
+
+    @Override
+    protected float getBoundingRadius()
+    {
+        final float hx = (mMaxX - mMinX) / 2;
+        final float hz = (mMaxZ - mMinZ) / 2;
+        return (float) Math.sqrt(hx*hx + hz*hz);
     }
 
     @Override
@@ -51,7 +63,7 @@ public class SimpleSquareBoundingVolume extends BaseSimpleBoundingVolume
     @Override
     public boolean isInFrustrum(BaseCamera c)
     {
-        throw new UnsupportedOperationException("function not implemented.");
+        return c.isBoxInFrustrum(getGameObj().getToWorld(), mMinX, 0, mMinZ, mMaxX, 0, mMaxZ);
     }
 
     @Override
@@ -0,0 +1,136 @@
+package com.moonymango.snare.physics;
+
+import java.util.ArrayList;
+
+/**
+ * Sweep and prune broadphase. All volumes are kept sorted by the minimum x
+ * value of their world bounds. Because objects usually move only a little
+ * between two frames, the order is restored by insertion sort in almost
+ * linear time. A query then only has to look at the slice of volumes whose
+ * x interval may overlap the x interval of the tested volume, which is found
+ * by binary search.
+ *
+ * Note: the slice is widened by the size of the largest volume, so a single
+ * huge volume (e.g. terrain) degrades the query towards a linear scan. Such
+ * volumes should not take part in collision checking.
+ */
+public class SweepAndPruneBroadphase implements IBroadphase {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private BaseSimpleBoundingVolume[] mVolumes = new BaseSimpleBoundingVolume[DEFAULT_CAPACITY];
+    private float[] mMinX = new float[DEFAULT_CAPACITY];
+    private float[] mMaxX = new float[DEFAULT_CAPACITY];
+    private int mCnt;
+    /** Largest extent along x axis of all volumes. */
+    private float mMaxSizeX;
+
+    @Override
+    public void add(BaseSimpleBoundingVolume bv) {
+        if (mCnt == mVolumes.length) {
+            grow();
+        }
+        // append, next update() will move it to the right place
+        mVolumes[mCnt] = bv;
+        mMinX[mCnt] = Float.MAX_VALUE;
+        mMaxX[mCnt] = Float.MAX_VALUE;
+        mCnt++;
+    }
+
+    @Override
+    public void remove(BaseSimpleBoundingVolume bv) {
+        for (int i = 0; i < mCnt; i++) {
+            if (mVolumes[i] == bv) {
+                // shift remaining volumes to keep the order
+                final int len = mCnt - i - 1;
+                System.arraycopy(mVolumes, i + 1, mVolumes, i, len);
+                System.arraycopy(mMinX, i + 1, mMinX, i, len);
+                System.arraycopy(mMaxX, i + 1, mMaxX, i, len);
+                mCnt--;
+                mVolumes[mCnt] = null;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void update() {
+        float maxSize = 0;
+        for (int i = 0; i < mCnt; i++) {
+            final float[] b = mVolumes[i].getWorldBounds();
+            mMinX[i] = b[0];
+            mMaxX[i] = b[3];
+            maxSize = Math.max(maxSize, b[3] - b[0]);
+        }
+        mMaxSizeX = maxSize;
+
+        // insertion sort by min x, which is almost linear because
+        // the order from last frame is mostly preserved
+        for (int i = 1; i < mCnt; i++) {
+            final BaseSimpleBoundingVolume bv = mVolumes[i];
+            final float min = mMinX[i];
+            final float max = mMaxX[i];
+            int j = i - 1;
+            while (j >= 0 && mMinX[j] > min) {
+                mVolumes[j + 1] = mVolumes[j];
+                mMinX[j + 1] = mMinX[j];
+                mMaxX[j + 1] = mMaxX[j];
+                j--;
+            }
+            mVolumes[j + 1] = bv;
+            mMinX[j + 1] = min;
+            mMaxX[j + 1] = max;
+        }
+    }
+
+    @Override
+    public void query(BaseSimpleBoundingVolume bv, ArrayList<BaseSimpleBoundingVolume> result) {
+        final float[] b = bv.getWorldBounds();
+        // volumes starting left of this are too small to reach b
+        int i = lowerBound(b[0] - mMaxSizeX);
+        for (; i < mCnt && mMinX[i] <= b[3]; i++) {
+            if (mMaxX[i] < b[0]) {
+                continue;
+            }
+            final BaseSimpleBoundingVolume other = mVolumes[i];
+            final float[] o = other.getWorldBounds();
+            if (o[1] > b[4] || o[4] < b[1] || o[2] > b[5] || o[5] < b[2]) {
+                continue;
+            }
+            result.add(other);
+        }
+    }
+
+    @Override
+    public int getVolumeCnt() {
+        return mCnt;
+    }
+
+    /** Returns index of first volume with min x not less than x. */
+    private int lowerBound(float x) {
+        int lo = 0;
+        int hi = mCnt;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (mMinX[mid] < x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void grow() {
+        final int capacity = mVolumes.length * 2;
+        final BaseSimpleBoundingVolume[] volumes = new BaseSimpleBoundingVolume[capacity];
+        final float[] minX = new float[capacity];
+        final float[] maxX = new float[capacity];
+        System.arraycopy(mVolumes, 0, volumes, 0, mCnt);
+        System.arraycopy(mMinX, 0, minX, 0, mCnt);
+        System.arraycopy(mMaxX, 0, maxX, 0, mCnt);
+        mVolumes = volumes;
+        mMinX = minX;
+        mMaxX = maxX;
+    }
+}
@@ -1,32 +1,30 @@
 package com.moonymango.snare.proc;
 
 import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.game.IGame.ClockType;
 import com.moonymango.snare.proc.ProcessManager.BaseProcess;
 
 public class DelayProc extends BaseProcess {
 
-    private float mDelay;
-    private float mWaited;
-    
     /**
-     * Constructor.
+     * Constructor. Uses the process delay, so the process stays parked
+     * in the {@link ProcessManager} until the delay is over.
      * @param delay Delay in ms.
      */
     public DelayProc(IGame game, float delay)
     {
-        super(game);
-        mDelay = delay;
+        super(game, ClockType.VIRTUAL, delay, null);
     }
     
     @Override
     public void onInit() {
-        mWaited = 0;
+        
     }
 
     @Override
     public boolean onUpdate(long realTime, float realDelta, float virtualDelta) {
-        mWaited += virtualDelta;
-        return mWaited < mDelay;
+        // delay is over
+        return false;
     }
 
     @Override
@@ -5,7 +5,6 @@ import com.moonymango.snare.game.IGame.ClockType;
 import com.moonymango.snare.util.PoolItem;
 
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Manager for all derivates of {@link BaseProcess}. A process is 
@@ -19,12 +18,35 @@ import java.util.List;
  * {@link BaseProcess} is also a {@link PoolItem}, recycle() is
  * called when the process stops. So it is possible to have
  * "fire-and-forget" processes which recycle themselves.
+ * 
+ * Processes waiting for their delay are parked in a timing wheel per 
+ * {@link ClockType} and are not visited until their delay is (almost) 
+ * over. Processes are updated in no particular order.
  */
 public class ProcessManager {
     
-    private final List<BaseProcess> mProcs = new ArrayList<BaseProcess>();
+    /** Resolution of timing wheels in ms. */
+    private static final float WHEEL_TICK = 16;
+    
+    private final ArrayList<BaseProcess> mProcs = new ArrayList<BaseProcess>();
+    // elapsed time and parked processes per clock type
+    private final double[] mClocks = new double[ClockType.values().length];
+    private final TimingWheel[] mWheels = new TimingWheel[ClockType.values().length];
+    
+    public ProcessManager() {
+        for (int i = 0; i < mWheels.length; i++) {
+            mWheels[i] = new TimingWheel();
+        }
+    }
    
     public void onUpdate(long realTime, float realDelta, float virtualDelta) {
+        mClocks[ClockType.REALTIME.ordinal()] += realDelta;
+        mClocks[ClockType.VIRTUAL.ordinal()] += virtualDelta;
+        // move processes with expiring delay to list
+        for (int i = 0; i < mWheels.length; i++) {
+            mWheels[i].advance((long) (mClocks[i] / WHEEL_TICK), mProcs);
+        }
+        
         for (int i = mProcs.size() - 1; i >= 0; i--) {
             BaseProcess proc = mProcs.get(i);
             switch (proc.mState) {
@@ -32,13 +54,18 @@ public class ProcessManager {
             case INIT:
                 proc.onInit();
                 proc.mState = ProcState.WAIT;
+                proc.mDue = mClocks[proc.mDelayClock.ordinal()] + proc.mDelay;
+                proc.mDueTick = (long) (proc.mDue / WHEEL_TICK);
+                final TimingWheel wheel = mWheels[proc.mDelayClock.ordinal()];
+                if (proc.mDueTick > wheel.mTick) {
+                    // park until delay is over
+                    removeAt(i);
+                    wheel.insert(proc);
+                }
                 break;
                 
             case WAIT:
-                final float d = proc.mDelayClock == ClockType.REALTIME ?
-                        realDelta : virtualDelta;
-                proc.mDelayTimer -= d;
-                if (proc.mDelayTimer > 0) {
+                if (mClocks[proc.mDelayClock.ordinal()] < proc.mDue) {
                     break;
                 }
                 proc.mState = ProcState.RUNNING;
@@ -67,21 +94,52 @@ public class ProcessManager {
                     attach(next);
                 }                    
                 
-                mProcs.remove(proc);
+                removeAt(i);
                 proc.recycle();
             }
         }
     }
     
     public int getProcessCount() {
-        return mProcs.size();
+        int cnt = mProcs.size();
+        for (int i = 0; i < mWheels.length; i++) {
+            cnt += mWheels[i].mCnt;
+        }
+        return cnt;
+    }
+    
+    /** Returns number of processes parked in timing wheels. */
+    public int getWaitingProcessCount() {
+        int cnt = 0;
+        for (int i = 0; i < mWheels.length; i++) {
+            cnt += mWheels[i].mCnt;
+        }
+        return cnt;
     }
     
     protected void attach(BaseProcess proc) {
         mProcs.add(proc);
         //proc.onInit();
+        proc.mManager = this;
         proc.mState = ProcState.INIT;
-        proc.mDelayTimer = proc.mDelay;
+    }
+    
+    /** Takes a parked process out of its timing wheel. */
+    private void wake(BaseProcess proc) {
+        mWheels[proc.mDelayClock.ordinal()].remove(proc);
+        mProcs.add(proc);
+    }
+    
+    /** 
+     * Removes process by swapping it with the last one. When iterating 
+     * backwards the swapped process has already been visited.
+     */
+    private void removeAt(int idx) {
+        final int last = mProcs.size() - 1;
+        if (idx != last) {
+            mProcs.set(idx, mProcs.get(last));
+        }
+        mProcs.remove(last);
     }
     
     public enum ProcState {
@@ -106,12 +164,19 @@ public class ProcessManager {
 
         private ClockType mDelayClock;
         private float mDelay;
-        private float mDelayTimer;
         private BaseProcess mNext;
         private ProcState mState = ProcState.DEAD;
         private long mLastUpdate;
         private IOnProcessKilledListener mListener;
         
+        private ProcessManager mManager;
+        private double mDue;        // clock time when delay is over
+        private long mDueTick;
+        // intrusive list of timing wheel slot, mWheelSlot < 0 when not parked
+        private BaseProcess mWheelPrev;
+        private BaseProcess mWheelNext;
+        private int mWheelSlot = -1;
+        
         protected  BaseProcess(IGame game)
         {
             this(game, ClockType.REALTIME, 0, null);
@@ -226,6 +291,9 @@ public class ProcessManager {
          */
         public void kill() {
             mState = ProcState.DEAD;
+            if (mWheelSlot >= 0) {
+                mManager.wake(this);
+            }
         }
         
         /**
@@ -235,6 +303,9 @@ public class ProcessManager {
         public void killChain() { 
             if (mState != ProcState.DEAD_CHAIN) {
                 mState = ProcState.DEAD_CHAIN;
+                if (mWheelSlot >= 0) {
+                    mManager.wake(this);
+                }
                 if (mNext != null) {
                     mNext.killChain();
                 }
@@ -274,4 +345,102 @@ public class ProcessManager {
             }
         }
     }
+    
+    /**
+     * Hierarchical timing wheel (see Varghese and Lauck). Each level has 
+     * 64 slots, a slot of level n covers 64^n ticks. Processes are kept in 
+     * intrusive lists, so insertion and removal take constant time. When 
+     * time advances to the next slot of a level, the processes of that slot 
+     * are moved down to the lower levels.
+     */
+    private static final class TimingWheel {
+        private static final int SLOT_BITS = 6;
+        private static final int SLOTS = 1 << SLOT_BITS;
+        private static final int MASK = SLOTS - 1;
+        private static final int LEVELS = 4;
+        private static final long RANGE = 1L << (SLOT_BITS * LEVELS);
+        
+        private final BaseProcess[] mSlots = new BaseProcess[SLOTS * LEVELS];
+        private long mTick;     // last processed tick
+        private int mCnt;
+        
+        /** Inserts process, its due tick must be greater than current tick. */
+        void insert(BaseProcess proc) {
+            long due = proc.mDueTick;
+            final long delta = due - mTick;
+            if (delta >= RANGE) {
+                // put to farthest slot, gets reinserted from there
+                due = mTick + RANGE - 1;
+            }
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+                level++;
+            }
+            final int slot = level * SLOTS + (int) ((due >> (SLOT_BITS * level)) & MASK);
+            
+            final BaseProcess head = mSlots[slot];
+            proc.mWheelPrev = null;
+            proc.mWheelNext = head;
+            if (head != null) {
+                head.mWheelPrev = proc;
+            }
+            mSlots[slot] = proc;
+            proc.mWheelSlot = slot;
+            mCnt++;
+        }
+        
+        void remove(BaseProcess proc) {
+            if (proc.mWheelPrev != null) {
+                proc.mWheelPrev.mWheelNext = proc.mWheelNext;
+            } else {
+                mSlots[proc.mWheelSlot] = proc.mWheelNext;
+            }
+            if (proc.mWheelNext != null) {
+                proc.mWheelNext.mWheelPrev = proc.mWheelPrev;
+            }
+            proc.mWheelPrev = null;
+            proc.mWheelNext = null;
+            proc.mWheelSlot = -1;
+            mCnt--;
+        }
+        
+        /**
+         * Advances wheel to tick. 
+         * @param tick Current tick.
+         * @param expired Processes due until tick are added to this list.
+         */
+        void advance(long tick, ArrayList<BaseProcess> expired) {
+            while (mTick < tick) {
+                if (mCnt == 0) {
+                    mTick = tick;
+                    return;
+                }
+                mTick++;
+                // move processes of higher levels down, highest first
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    final int shift = SLOT_BITS * level;
+                    if ((mTick & ((1L << shift) - 1)) == 0) {
+                        BaseProcess proc = mSlots[level * SLOTS + (int) ((mTick >> shift) & MASK)];
+                        while (proc != null) {
+                            final BaseProcess next = proc.mWheelNext;
+                            remove(proc);
+                            if (proc.mDueTick <= mTick) {
+                                expired.add(proc);
+                            } else {
+                                insert(proc);
+                            }
+                            proc = next;
+                        }
+                    }
+                }
+                BaseProcess proc = mSlots[(int) (mTick & MASK)];
+                while (proc != null) {
+                    final BaseProcess next = proc.mWheelNext;
+                    remove(proc);
+                    expired.add(proc);
+                    proc = next;
+                }
+            }
+        }
+    }
 }
@@ -4,10 +4,26 @@ import com.moonymango.snare.util.CacheItem;
 
 public abstract class BaseResHandle extends CacheItem<ResourceCache, BaseResource, BaseResHandle> {
     
+    // accounting of ResourceCache
+    int mAccountedSize;
+    ResourceCache.Budget mBudget;
     
     public BaseResHandle(BaseResource res) {
         super(res);
     }
+    
+    /**
+     * Memory used by the handle's data in bytes, including data outside 
+     * of the Java heap like bitmap pixels or direct buffers. Counts against 
+     * the budgets of {@link ResourceCache}. Default is 0.
+     */
+    public int getMemorySize() {
+        return 0;
+    }
+    
+    BaseResource getResource() {
+        return mDescriptor;
+    }
 
     @Override
     public void onAddedToCache() {}
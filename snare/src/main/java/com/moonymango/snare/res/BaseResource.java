@@ -4,6 +4,7 @@ import android.content.res.AssetManager;
 import android.content.res.Resources;
 
 import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.res.ResourceRequest.IListener;
 import com.moonymango.snare.util.CacheItemDescriptor;
 import com.moonymango.snare.util.Logger;
 import com.moonymango.snare.util.Logger.LogSource;
@@ -44,6 +45,36 @@ public abstract class BaseResource extends CacheItemDescriptor<ResourceCache, Ba
     }
     
 
+    /**
+     * Loads the resource in background, see {@link ResourceLoader}. The
+     * handle is available from the returned request when it is done.
+     * Game thread only.
+     */
+    public ResourceRequest requestAsync() {
+        return requestAsync(null);
+    }
+    
+    /**
+     * Loads the resource in background, see {@link ResourceLoader}.
+     * Game thread only.
+     * @param listener Called on game thread when done, may be null.
+     */
+    public ResourceRequest requestAsync(IListener listener) {
+        return mGame.getResourceCache().getLoader().request(this, listener);
+    }
+    
+    /**
+     * Override to return false if the handle cannot be created on a
+     * background thread, the request will be served on the game thread then.
+     */
+    protected boolean isAsyncLoadable() {
+        return true;
+    }
+    
+    void bind(ResourceCache cache) {
+        bindCache(cache);
+    }
+
     @Override
     protected BaseResHandle createCacheItem() {
         // check resource type
@@ -0,0 +1,119 @@
+package com.moonymango.snare.res;
+
+import com.moonymango.snare.res.ResourceRequest.IListener;
+
+import java.util.ArrayList;
+
+/**
+ * Loads a set of resources in background, e.g. all resources of a level
+ * while showing a loading screen. Progress is updated on the game thread
+ * when the cache publishes loaded resources, see
+ * {@link ResourceCache#onUpdate()}.
+ *
+ * The batch holds a handle of every loaded resource until
+ * {@link #release()}, so the resources stay in the cache meanwhile.
+ */
+public class ResourceBatch implements IListener {
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    private final ArrayList<BaseResource> mResources = new ArrayList<BaseResource>();
+    private final ArrayList<ResourceRequest> mRequests = new ArrayList<ResourceRequest>();
+    private final IBatchListener mListener;
+    private int mDoneCnt;
+    private int mFailedCnt;
+    private boolean mStarted;
+
+    // ---------------------------------------------------------
+    // constructors
+    // ---------------------------------------------------------
+    public ResourceBatch() {
+        this(null);
+    }
+
+    /** @param listener Gets notified about progress, may be null. */
+    public ResourceBatch(IBatchListener listener) {
+        mListener = listener;
+    }
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    public ResourceBatch add(BaseResource res) {
+        if (mStarted) {
+            throw new IllegalStateException("Batch already started.");
+        }
+        mResources.add(res);
+        return this;
+    }
+
+    /** Requests all resources. Game thread only. */
+    public void start() {
+        if (mStarted) {
+            throw new IllegalStateException("Batch already started.");
+        }
+        mStarted = true;
+        for (int i = 0; i < mResources.size(); i++) {
+            // listener may be called immediately for cached resources
+            mRequests.add(mResources.get(i).requestAsync(this));
+        }
+        if (mResources.isEmpty() && mListener != null) {
+            mListener.onBatchProgress(this);
+        }
+    }
+
+    /** Progress between 0 and 1. */
+    public float getProgress() {
+        final int cnt = mResources.size();
+        return cnt > 0 ? (float) mDoneCnt / cnt : (mStarted ? 1 : 0);
+    }
+
+    /** True when all requests are done, successfully or not. */
+    public boolean isDone() {
+        return mStarted && mDoneCnt == mResources.size();
+    }
+
+    public int getResourceCnt() {
+        return mResources.size();
+    }
+
+    public int getFailedCnt() {
+        return mFailedCnt;
+    }
+
+    /** Request of resource added at position i, null before {@link #start()}. */
+    public ResourceRequest getRequest(int i) {
+        return i < mRequests.size() ? mRequests.get(i) : null;
+    }
+
+    /**
+     * Releases the handles held by the batch. Pending requests are
+     * cancelled, i.e. progress is not updated anymore.
+     */
+    public void release() {
+        for (int i = 0; i < mRequests.size(); i++) {
+            mRequests.get(i).release();
+        }
+    }
+
+    @Override
+    public void onResourceLoaded(ResourceRequest request) {
+        mDoneCnt++;
+        if (!request.isLoaded()) {
+            mFailedCnt++;
+        }
+        if (mListener != null) {
+            mListener.onBatchProgress(this);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // classes + interfaces
+    // ---------------------------------------------------------
+    /** Gets notified on game thread whenever a resource of a batch is done. */
+    public interface IBatchListener {
+        /** Check {@link ResourceBatch#isDone()} for completion. */
+        void onBatchProgress(ResourceBatch batch);
+    }
+}
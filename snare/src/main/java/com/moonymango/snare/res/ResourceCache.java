@@ -4,35 +4,69 @@ import android.app.Application;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 
+import java.io.File;
+import java.util.HashMap;
+
 import com.moonymango.snare.game.IGame;
 import com.moonymango.snare.util.Cache;
+import com.moonymango.snare.util.CacheItemDescriptor;
+import com.moonymango.snare.util.Logger;
+import com.moonymango.snare.util.Logger.LogSource;
 
 
 /**
- * VM memory usage aware cache for all kinds of resources. Since it may not be
- * feasible to determine the size of a resource before actual creation, this
- * cache cannot guarantee that the memory usage will stay below a certain amount.
- * Instead it allows to define a memory usage threshold. A new resource will only 
- * be created when the actual memory usage is below the threshold.
+ * Cache for all kinds of resources with a memory budget in bytes. Each
+ * handle reports the size of its data ({@link BaseResHandle#getMemorySize()}),
+ * including memory outside of the Java heap like bitmap pixels and direct 
+ * buffers. Besides the overall budget there may be budgets per resource 
+ * class, see {@link #setBudget(Class, long)}.
+ * 
+ * Since the size of a resource is known only after creation, a new resource
+ * is created when its budget is not used up yet. Least recently used 
+ * resources without handles are removed afterwards until the budget is met
+ * again. When all resources are in use the budget may be exceeded. 
  */
 public class ResourceCache extends Cache<ResourceCache, BaseResource, BaseResHandle> {
 
     private final AssetManager mAssetManager;
     private final Resources mResources;
-    private final long mThreshold;
+    private final long mBudget;
+    private long mSize;
+    /** Budgets per resource class. */
+    private final HashMap<Class<?>, Budget> mBudgets = new HashMap<Class<?>, Budget>();
+    /** Budget of resource class or its closest super class with budget. */
+    private final HashMap<Class<?>, Budget> mBudgetLookup = new HashMap<Class<?>, Budget>();
+    private final File mCacheDir;
+    private final long mAssetStamp;
+    private final ResourceLoader mLoader;
+    
+    /**
+     * New resource cache. Budget value of 0 deactivates the overall budget.
+     * @param budget Max. bytes of resource data.
+     * @param appContext
+     */
+    public ResourceCache(IGame game, long budget, Application appContext)
+    {
+        this(game, budget, appContext, ResourceLoader.DEFAULT_THREAD_CNT);
+    }
     
     /**
-     * New resource cache. Threshold value of 0 deactivates memory usage 
-     * awareness.
-     * @param threshold Memory usage threshold for creation of new resources.
+     * New resource cache. Budget value of 0 deactivates the overall budget.
+     * @param budget Max. bytes of resource data.
      * @param appContext
+     * @param loaderThreads Max. number of threads for background loading.
      */
-    public ResourceCache(IGame game, long threshold, Application appContext)
+    public ResourceCache(IGame game, long budget, Application appContext, 
+            int loaderThreads)
     {
         super(game, CleanUpPolicy.USER_DEFINED);
+        mLoader = new ResourceLoader(this, loaderThreads);
         mResources = appContext.getResources();
         mAssetManager = appContext.getAssets();
-        mThreshold = threshold;
+        mBudget = budget;
+        mCacheDir = appContext.getCacheDir();
+        // apk gets replaced on every install or update
+        mAssetStamp = new File(appContext.getApplicationInfo().sourceDir).lastModified();
     }  
     
     public AssetManager getAssetManager() {
@@ -43,35 +77,198 @@ public class ResourceCache extends Cache<ResourceCache, BaseResource, BaseResHan
         return mResources;
     }
     
+    /** App private directory for data derived from resources. */
+    public File getCacheDir() {
+        return mCacheDir;
+    }
+    
+    /** 
+     * Changes when assets may have changed, i.e. data derived from assets
+     * with another stamp is outdated.
+     */
+    public long getAssetStamp() {
+        return mAssetStamp;
+    }
+    
+    /** Bytes of resource data in the cache. */
+    public long getSize() {
+        return mSize;
+    }
+    
+    /** Overall budget in bytes, 0 if there is none. */
+    public long getBudget() {
+        return mBudget;
+    }
+    
+    /**
+     * Sets budget for a resource class and its sub classes, e.g. for 
+     * {@link com.moonymango.snare.res.texture.BaseTextureResource}. Sub 
+     * classes may have budgets of their own, which are not part of the 
+     * super class's budget then. Resources exceeding the new budget are
+     * removed if possible.
+     * @param type Resource class.
+     * @param bytes Max. bytes of resource data, 0 removes budget.
+     */
+    public void setBudget(Class<? extends BaseResource> type, long bytes) {
+        if (bytes > 0) {
+            Budget b = mBudgets.get(type);
+            if (b == null) {
+                b = new Budget();
+                mBudgets.put(type, b);
+            }
+            b.mLimit = bytes;
+        } else {
+            mBudgets.remove(type);
+        }
+        
+        // reassign resources to budgets
+        mBudgetLookup.clear();
+        for (Budget b : mBudgets.values()) {
+            b.mSize = 0;
+        }
+        for (BaseResHandle hnd : mCache.values()) {
+            hnd.mBudget = findBudget(hnd.getResource().getClass());
+            if (hnd.mBudget != null) {
+                hnd.mBudget.mSize += hnd.mAccountedSize;
+            }
+        }
+        freeMemory(mBudgets.get(type), 0);
+    }
+    
+    /** Budget of resource class in bytes, 0 if there is none. */
+    public long getBudget(Class<? extends BaseResource> type) {
+        final Budget b = mBudgets.get(type);
+        return b != null ? b.mLimit : 0;
+    }
+    
+    /** Bytes of resource data counting against budget of resource class. */
+    public long getSize(Class<? extends BaseResource> type) {
+        final Budget b = mBudgets.get(type);
+        return b != null ? b.mSize : 0;
+    }
+    
+    /** Loader for background loading, see {@link BaseResource#requestAsync()}. */
+    public ResourceLoader getLoader() {
+        return mLoader;
+    }
+    
+    /** 
+     * Adds resources loaded in background to the cache and notifies 
+     * the requests. Call once per frame on the game thread.
+     */
+    public void onUpdate() {
+        mLoader.publish();
+    }
+    
     public void onPause() {
-        for (int i = mRecentlyUsed.size() - 1; i >= 0; i--) {
-            mRecentlyUsed.get(i).onPause();
+        for (BaseResHandle hnd : mCache.values()) {
+            hnd.onPause();
         }
     }
     
     public void onResume() {
-        for (int i = mRecentlyUsed.size() - 1; i >= 0; i--) {
-            mRecentlyUsed.get(i).onResume();
+        for (BaseResHandle hnd : mCache.values()) {
+            hnd.onResume();
         }
     }
 
+    @Override
+    protected BaseResHandle getHandle(CacheItemDescriptor<ResourceCache, BaseResource, BaseResHandle> descriptor) {
+        // do not create handle twice when it is being loaded in background 
+        mLoader.finish((BaseResource) descriptor);
+        return super.getHandle(descriptor);
+    }
+    
+    boolean publish(BaseResource res, BaseResHandle hnd) {
+        return addItem(res, hnd);
+    }
+    
+    boolean containsResource(BaseResource res) {
+        return containsItem(res);
+    }
+    
+    BaseResHandle acquire(BaseResource res) {
+        return getHandle(res);
+    }
+
     @Override
     protected boolean allowItemCreation(BaseResource res) {
-        if (mThreshold <= 0) {
-            return true;
+        // need at least one byte left
+        return freeMemory(findBudget(res.getClass()), 1);
+    }
+    
+    @Override
+    protected void onItemCreated(BaseResHandle item) {
+        final int size = item.getMemorySize();
+        final Budget b = findBudget(item.getResource().getClass());
+        item.mAccountedSize = size;
+        item.mBudget = b;
+        mSize += size;
+        if (b != null) {
+            b.mSize += size;
         }
-        final Runtime r = Runtime.getRuntime();
-        long alloc = r.totalMemory()- r.freeMemory();
-        while (alloc > mThreshold) {
+        
+        // size is known only now, so make room afterwards
+        if (!freeMemory(b, 0)) {
+            Logger.w(LogSource.RESOURCES, "resource budget exceeded by " 
+                    + item.getResource().getQName());
+        }
+    }
+    
+    @Override
+    protected void onItemRemoved(BaseResHandle item) {
+        mSize -= item.mAccountedSize;
+        if (item.mBudget != null) {
+            item.mBudget.mSize -= item.mAccountedSize;
+        }
+        item.mAccountedSize = 0;
+        item.mBudget = null;
+    }
+    
+    /**
+     * Removes least recently used resources until overall budget and
+     * given budget have at least the requested space left.
+     * @param b Budget of resource class, may be null.
+     * @param bytes Requested space.
+     * @return False if not enough resources could be removed.
+     */
+    private boolean freeMemory(Budget b, long bytes) {
+        while (mBudget > 0 && mSize + bytes > mBudget) {
             if (!freeLeastRecentlyUsed()) {
                 return false;  // cannot free any more items
             }
-            // TODO prioC: test corner case
-            System.gc();
-            alloc = r.totalMemory()- r.freeMemory();
+        }
+        while (b != null && b.mSize + bytes > b.mLimit) {
+            if (!freeLeastRecentlyUsed(b)) {
+                return false;
+            }
         }
         return true;
     }
     
+    private Budget findBudget(Class<?> type) {
+        if (mBudgets.isEmpty()) {
+            return null;
+        }
+        if (mBudgetLookup.containsKey(type)) {
+            return mBudgetLookup.get(type);
+        }
+        Budget b = null;
+        for (Class<?> c = type; c != null && b == null; c = c.getSuperclass()) {
+            b = mBudgets.get(c);
+        }
+        mBudgetLookup.put(type, b);
+        return b;
+    }
     
+    /** Memory budget of a resource class. */
+    static class Budget implements IItemFilter<BaseResHandle> {
+        long mLimit;
+        long mSize;
+        
+        @Override
+        public boolean accept(BaseResHandle item) {
+            return item.mBudget == this;
+        }
+    }
 }
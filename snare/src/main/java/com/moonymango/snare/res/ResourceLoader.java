@@ -0,0 +1,253 @@
+package com.moonymango.snare.res;
+
+import com.moonymango.snare.res.ResourceRequest.IListener;
+import com.moonymango.snare.util.Logger;
+import com.moonymango.snare.util.Logger.LogSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates resource handles on worker threads, so that decoding of
+ * bitmaps, meshes, XML etc. does not stall the game thread. Finished
+ * handles are added to the {@link ResourceCache} on the game thread by
+ * {@link ResourceCache#onUpdate()}, the cache itself is never touched
+ * by the workers.
+ *
+ * Requests for the same resource share one job. When a handle of a
+ * resource with a pending job is requested synchronously, the job is
+ * finished first instead of creating the handle twice. Resources which
+ * cannot be created in background (see {@link BaseResource#isAsyncLoadable()})
+ * are created on the game thread when the jobs are published.
+ *
+ * Workers are started on demand and terminate when idle.
+ */
+public class ResourceLoader {
+
+    //---------------------------------------------------------
+    // static
+    //---------------------------------------------------------
+    public static final int DEFAULT_THREAD_CNT = 2;
+    private static final long IDLE_TIMEOUT = 5000; // ms
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    private final ResourceCache mCache;
+    private final int mThreadCnt;
+    private final AtomicInteger mWorkerCnt = new AtomicInteger();
+    private int mWorkerNum;
+
+    private final LinkedBlockingQueue<Job> mQueue = new LinkedBlockingQueue<Job>();
+    private final ConcurrentLinkedQueue<Job> mFinished = new ConcurrentLinkedQueue<Job>();
+    // jobs not yet published, game thread only
+    private final HashMap<BaseResource, Job> mJobs = new HashMap<BaseResource, Job>();
+
+    // ---------------------------------------------------------
+    // constructors
+    // ---------------------------------------------------------
+    /**
+     * @param cache Cache to publish handles to.
+     * @param threadCnt Max. number of worker threads.
+     */
+    ResourceLoader(ResourceCache cache, int threadCnt) {
+        if (threadCnt < 1) {
+            throw new IllegalArgumentException("Invalid number of loader threads.");
+        }
+        mCache = cache;
+        mThreadCnt = threadCnt;
+    }
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    /**
+     * Requests handle of a resource. If the resource is in the cache
+     * already, the returned request is done immediately (and the listener
+     * has been called). Game thread only.
+     * @param listener Called on game thread when done, may be null.
+     */
+    public ResourceRequest request(BaseResource res, IListener listener) {
+        res.bind(mCache);
+        final ResourceRequest r = new ResourceRequest(res, listener);
+        if (mCache.containsResource(res)) {
+            r.setLoaded(mCache.acquire(res));
+            return r;
+        }
+
+        Job job = mJobs.get(res);
+        if (job == null) {
+            job = new Job(res, res.isAsyncLoadable());
+            mJobs.put(res, job);
+            if (job.mAsync) {
+                mQueue.add(job);
+                startWorker();
+            } else {
+                mFinished.add(job);
+            }
+        }
+        job.mRequests.add(r);
+        return r;
+    }
+
+    /** Number of resources requested but not yet published. */
+    public int getPendingCnt() {
+        return mJobs.size();
+    }
+
+    /** Publishes finished jobs to the cache, game thread only. */
+    void publish() {
+        Job job;
+        while ((job = mFinished.poll()) != null) {
+            publish(job);
+        }
+    }
+
+    /**
+     * Finishes pending job of resource, if any, and publishes it. Blocks
+     * while the job is running. Game thread only.
+     */
+    void finish(BaseResource res) {
+        final Job job = mJobs.get(res);
+        if (job == null) {
+            return;
+        }
+        if (job.mAsync) {
+            if (mQueue.remove(job)) {
+                // not started yet
+                job.run();
+            } else {
+                job.await();
+            }
+        }
+        publish(job);
+    }
+
+    private void publish(Job job) {
+        final BaseResource res = job.mResource;
+        if (mJobs.get(res) != job) {
+            return;  // already published by finish()
+        }
+        mJobs.remove(res);
+
+        if (job.mAsync) {
+            final BaseResHandle hnd = job.mHandle;
+            if (hnd != null && !mCache.publish(res, hnd)) {
+                // created synchronously in the meantime or no memory left
+                hnd.onRemoveFromCachePending();
+            }
+            if (job.mError != null) {
+                Logger.e(LogSource.RESOURCES, "Unable to load " + res.getQName()
+                        + ": " + job.mError);
+            }
+        }
+
+        for (int i = 0; i < job.mRequests.size(); i++) {
+            final ResourceRequest r = job.mRequests.get(i);
+            if (r.isReleased()) {
+                continue;
+            }
+            if (!job.mAsync || mCache.containsResource(res)) {
+                try {
+                    r.setLoaded(mCache.acquire(res));
+                } catch (RuntimeException e) {
+                    r.setFailed(e);
+                }
+            } else {
+                r.setFailed(job.mError);
+            }
+        }
+    }
+
+    private void startWorker() {
+        int n;
+        while ((n = mWorkerCnt.get()) < mThreadCnt) {
+            if (mWorkerCnt.compareAndSet(n, n + 1)) {
+                final Worker w = new Worker();
+                w.setName("SnareResourceLoader" + mWorkerNum++);
+                w.setDaemon(true);
+                w.setPriority(Thread.NORM_PRIORITY - 1);
+                w.start();
+                return;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------
+    // classes + interfaces
+    // ---------------------------------------------------------
+    private class Job implements Runnable {
+        final BaseResource mResource;
+        final boolean mAsync;
+        final ArrayList<ResourceRequest> mRequests = new ArrayList<ResourceRequest>();
+        // written by worker, read by game thread after mDone
+        BaseResHandle mHandle;
+        Throwable mError;
+        private boolean mDone;
+
+        Job(BaseResource res, boolean async) {
+            mResource = res;
+            mAsync = async;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mHandle = mResource.createCacheItem();
+                if (mHandle == null) {
+                    mError = new NullPointerException("Unable to create item handle: "
+                            + mResource.getQName());
+                }
+            } catch (Throwable t) {
+                mError = t;
+            }
+            synchronized (this) {
+                mDone = true;
+                notifyAll();
+            }
+            mFinished.add(this);
+        }
+
+        synchronized void await() {
+            while (!mDone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // keep waiting, job is finished in any case
+                }
+            }
+        }
+    }
+
+    private class Worker extends Thread {
+        @Override
+        public void run() {
+            while (true) {
+                Job job;
+                try {
+                    job = mQueue.poll(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    job = null;
+                }
+                if (job != null) {
+                    job.run();
+                    continue;
+                }
+
+                // idle, terminate unless a job came in meanwhile
+                mWorkerCnt.decrementAndGet();
+                if (mQueue.isEmpty()) {
+                    return;
+                }
+                final int n = mWorkerCnt.get();
+                if (n >= mThreadCnt || !mWorkerCnt.compareAndSet(n, n + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.moonymango.snare.res;
+
+/**
+ * Result of {@link BaseResource#requestAsync()}. The resource handle is
+ * created in background and published to the {@link ResourceCache} on
+ * the game thread, see {@link ResourceLoader}.
+ *
+ * When loaded, the request holds a handle of the resource, which has to
+ * be given back by {@link #release()}. All methods have to be called on
+ * the game thread.
+ */
+public class ResourceRequest {
+
+    private final BaseResource mResource;
+    private final IListener mListener;
+    private BaseResHandle mHandle;
+    private boolean mDone;
+    private boolean mReleased;
+    private Throwable mError;
+
+    ResourceRequest(BaseResource res, IListener listener) {
+        mResource = res;
+        mListener = listener;
+    }
+
+    public BaseResource getResource() {
+        return mResource;
+    }
+
+    /** True when loading has finished, successfully or not. */
+    public boolean isDone() {
+        return mDone;
+    }
+
+    /** True when the handle is available. */
+    public boolean isLoaded() {
+        return mHandle != null;
+    }
+
+    /**
+     * Returns handle of loaded resource. The handle is owned by the
+     * request, use {@link #release()} instead of releasing it directly.
+     */
+    public BaseResHandle getHandle() {
+        if (mHandle == null) {
+            throw new IllegalStateException("Resource not loaded: " + mResource.getQName());
+        }
+        return mHandle;
+    }
+
+    /** Exception thrown while loading, may be null for failed requests. */
+    public Throwable getError() {
+        return mError;
+    }
+
+    /**
+     * Releases the handle. Releasing a pending request cancels it, i.e.
+     * the listener is not called anymore. The resource is still loaded
+     * into the cache.
+     */
+    public void release() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        if (mHandle != null) {
+            mResource.releaseHandle(mHandle);
+            mHandle = null;
+        }
+    }
+
+    boolean isReleased() {
+        return mReleased;
+    }
+
+    void setLoaded(BaseResHandle hnd) {
+        mHandle = hnd;
+        mDone = true;
+        if (mListener != null) {
+            mListener.onResourceLoaded(this);
+        }
+    }
+
+    void setFailed(Throwable error) {
+        mError = error;
+        mDone = true;
+        if (mListener != null) {
+            mListener.onResourceLoaded(this);
+        }
+    }
+
+    /** Gets notified on game thread when a request is done. */
+    public interface IListener {
+        /** Check {@link ResourceRequest#isLoaded()} for success. */
+        void onResourceLoaded(ResourceRequest request);
+    }
+}
@@ -13,4 +13,9 @@ public class TextResHandle extends BaseResHandle {
         return mContent;
     }
     
+    @Override
+    public int getMemorySize() {
+        return mContent.length() * Character.SIZE/8;
+    }
+    
 }
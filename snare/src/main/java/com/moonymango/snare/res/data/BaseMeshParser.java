@@ -7,7 +7,7 @@ import java.util.ArrayList;
 
 public abstract class BaseMeshParser {
     
-    protected abstract boolean parse(InputStream in, String name) throws IOException;
+    public abstract boolean parse(InputStream in, String name) throws IOException;
     protected abstract ArrayList<Vertex> getVertexData();
     protected abstract ArrayList<Face> getFaces();
       
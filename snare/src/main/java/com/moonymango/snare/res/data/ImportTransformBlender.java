@@ -30,4 +30,17 @@ public class ImportTransformBlender extends BaseImportTransform {
         
     }
 
+    @Override
+    void transform(float[] positions, float[] uvs, int vertexCnt) {
+        for (int i = 0; i < 3 * vertexCnt; i += 3) {
+            final float y = positions[i + 1];
+            positions[i + 1] = positions[i + 2];
+            positions[i + 2] = -y;
+        }
+        if (uvs != null) {
+            for (int i = 1; i < 2 * vertexCnt; i += 2) {
+                uvs[i] = -uvs[i];
+            }
+        }
+    }
 }
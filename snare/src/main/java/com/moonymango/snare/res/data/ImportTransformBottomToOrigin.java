@@ -85,4 +85,39 @@ public class ImportTransformBottomToOrigin extends BaseImportTransform {
         
     }
 
+    @Override
+    void transform(float[] positions, float[] uvs, int vertexCnt) {
+        final float[] c = new float[3];
+        final float[] e = new float[3];
+        getCenter(positions, vertexCnt, c, e);
+        mOffsX = c[0];
+        if (mSwapYZ) {
+            mOffsY = c[1];
+            mOffsZ = e[2]/2 - c[2];
+        } else {
+            mOffsY = e[1]/2 - c[1];
+            mOffsZ = c[2];
+        }
+        
+        for (int i = 0; i < 3 * vertexCnt; i += 3) {
+            final float x = positions[i] - mOffsX;
+            if (mSwapYZ) {
+                final float y = positions[i + 2] + mOffsZ;
+                final float z = -(positions[i + 1] - mOffsY);
+                positions[i + 1] = y;
+                positions[i + 2] = z;
+            } else {
+                positions[i + 1] += mOffsY;
+                positions[i + 2] -= mOffsZ;
+            }
+            positions[i] = x;
+        }
+    }
+
+    @Override
+    protected void appendKey(StringBuilder sb) {
+        super.appendKey(sb);
+        sb.append(mSwapYZ);
+    }
+
 }
@@ -75,4 +75,24 @@ private void extractBB(ArrayList<Vertex> vertices) {
             v.position = p;
         }
     }
+
+    @Override
+    protected void appendKey(StringBuilder sb) {
+        super.appendKey(sb);
+        sb.append(mSwapYZ);
+    }
+
+    @Override
+    void transform(float[] positions, float[] uvs, int vertexCnt) {
+        final float[] c = new float[3];
+        getCenter(positions, vertexCnt, c, null);
+        for (int i = 0; i < 3 * vertexCnt; i += 3) {
+            final float x = positions[i] - c[0];
+            final float y = positions[i + 1] - c[1];
+            final float z = positions[i + 2] - c[2];
+            positions[i] = x;
+            positions[i + 1] = mSwapYZ ? z : y;
+            positions[i + 2] = mSwapYZ ? -y : z;
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.moonymango.snare.res.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.moonymango.snare.res.data.MeshResource.BaseImportTransform;
 import com.moonymango.snare.util.MatrixAF;
@@ -42,4 +43,24 @@ public class ImportTransformCustom extends BaseImportTransform {
         }
     }
 
+    @Override
+    protected void appendKey(StringBuilder sb) {
+        super.appendKey(sb);
+        sb.append(Arrays.toString(mT)).append(mSwapYZ);
+    }
+
+    @Override
+    void transform(float[] positions, float[] uvs, int vertexCnt) {
+        for (int i = 0; i < 3 * vertexCnt; i += 3) {
+            mVec[0] = positions[i];
+            mVec[1] = mSwapYZ ? positions[i + 2] : positions[i + 1];
+            mVec[2] = mSwapYZ ? -positions[i + 1] : positions[i + 2];
+            mVec[3] = 1;
+            
+            MatrixAF.multiplyMV(mT, mVec);
+            positions[i] = mVec[0];
+            positions[i + 1] = mVec[1];
+            positions[i + 2] = mVec[2];
+        }
+    }
 }
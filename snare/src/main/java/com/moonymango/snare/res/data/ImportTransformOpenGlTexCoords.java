@@ -24,4 +24,12 @@ public class ImportTransformOpenGlTexCoords extends BaseImportTransform {
         }
     }
 
+    @Override
+    void transform(float[] positions, float[] uvs, int vertexCnt) {
+        if (uvs != null) {
+            for (int i = 1; i < 2 * vertexCnt; i += 2) {
+                uvs[i] = -uvs[i];
+            }
+        }
+    }
 }
@@ -55,7 +55,7 @@ public class Max3DSParser extends BaseMeshParser {
     
     
     @Override
-    protected boolean parse(InputStream in, String name) throws IOException {
+    public boolean parse(InputStream in, String name) throws IOException {
         mMeshName = name;
         readHeader(in);
         if(chunkID != IDENTIFIER_3DS) {
@@ -0,0 +1,212 @@
+package com.moonymango.snare.res.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads a triangle mesh from a 3DS file held in a {@link ByteBuffer}
+ * (e.g. a memory mapped asset). Unlike {@link Max3DSParser} it does not
+ * create objects per vertex or face, positions, texture coordinates and
+ * indices are written to primitive arrays. Chunks which are not needed
+ * are skipped by their length instead of being read.
+ *
+ * Only the object with the given name is read. Result is passed to
+ * {@link MeshBuilder} to calculate normals and create GL buffers.
+ */
+public class Max3DSStreamParser {
+
+    private static final int IDENTIFIER_3DS = 0x4D4D;
+    private static final int MESH_BLOCK = 0x3D3D;
+    private static final int OBJECT_BLOCK = 0x4000;
+    private static final int TRIMESH = 0x4100;
+    private static final int VERTICES = 0x4110;
+    private static final int FACES = 0x4120;
+    private static final int TEXCOORD = 0x4140;
+    private static final int HEADER_SIZE = 6;   // 2 bytes id, 4 bytes length
+
+    private ByteBuffer mBuf;
+    private String mMeshName;
+    private boolean mFound;
+
+    private int mVertexCnt;
+    private float[] mPositions;
+    private float[] mUVs;
+    private int mTriangleCnt;
+    private int[] mIndices;
+
+    /**
+     * @param buf 3DS file content from position 0 to limit. Byte order
+     *          of buffer will be changed.
+     * @param name Name of object to read.
+     * @return False if data is no 3DS file or does not contain the object.
+     * @throws IOException Corrupt file.
+     */
+    public boolean parse(ByteBuffer buf, String name) throws IOException {
+        mBuf = buf;
+        mMeshName = name;
+        mFound = false;
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < HEADER_SIZE || getId(0) != IDENTIFIER_3DS) {
+            mBuf = null;
+            return false;
+        }
+        readChunks(HEADER_SIZE, getEnd(0, buf.limit()), false);
+        mBuf = null;
+        return mFound && mPositions != null && mIndices != null;
+    }
+
+    public int getVertexCnt() {
+        return mVertexCnt;
+    }
+
+    /** Vertex positions, 3 floats per vertex. */
+    public float[] getPositions() {
+        return mPositions;
+    }
+
+    /** Texture coordinates, 2 floats per vertex, null if there are none. */
+    public float[] getTexCoords() {
+        return mUVs;
+    }
+
+    public int getTriangleCnt() {
+        return mTriangleCnt;
+    }
+
+    /** Vertex indices, 3 per triangle. */
+    public int[] getIndices() {
+        return mIndices;
+    }
+
+    /**
+     * Reads sub chunks in range.
+     * @param selected True when inside the object to read.
+     */
+    private void readChunks(int pos, int end, boolean selected) throws IOException {
+        while (pos + HEADER_SIZE <= end) {
+            final int id = getId(pos);
+            final int chunkEnd = getEnd(pos, end);
+            final int data = pos + HEADER_SIZE;
+
+            switch (id) {
+            case MESH_BLOCK:
+                readChunks(data, chunkEnd, false);
+                break;
+
+            case OBJECT_BLOCK:
+                // object name is a zero terminated string
+                int p = data;
+                while (p < chunkEnd && mBuf.get(p) != 0) {
+                    p++;
+                }
+                final boolean match = !mFound && nameEquals(data, p);
+                if (match) {
+                    mFound = true;
+                    readChunks(p + 1, chunkEnd, true);
+                }
+                break;
+
+            case TRIMESH:
+                if (selected) {
+                    readChunks(data, chunkEnd, true);
+                }
+                break;
+
+            case VERTICES:
+                if (selected) {
+                    readVertices(data, chunkEnd);
+                }
+                break;
+
+            case FACES:
+                if (selected) {
+                    readFaces(data, chunkEnd);
+                }
+                break;
+
+            case TEXCOORD:
+                if (selected) {
+                    readTexCoords(data, chunkEnd);
+                }
+                break;
+
+            default:
+                // skip chunk
+            }
+            pos = chunkEnd;
+        }
+    }
+
+    private void readVertices(int pos, int end) throws IOException {
+        final int n = getCount(pos, end, 3 * Float.SIZE/8);
+        mVertexCnt = n;
+        mPositions = new float[3 * n];
+        mBuf.position(pos + 2);
+        mBuf.asFloatBuffer().get(mPositions);
+    }
+
+    private void readFaces(int pos, int end) throws IOException {
+        // a, b, c, flags
+        final int n = getCount(pos, end, 4 * Short.SIZE/8);
+        mTriangleCnt = n;
+        mIndices = new int[3 * n];
+        int p = pos + 2;
+        for (int i = 0; i < 3 * n; i += 3) {
+            mIndices[i] = mBuf.getShort(p) & 0xffff;
+            mIndices[i + 1] = mBuf.getShort(p + 2) & 0xffff;
+            mIndices[i + 2] = mBuf.getShort(p + 4) & 0xffff;
+            p += 8;
+        }
+        // sub chunks (materials, smoothing groups) are ignored
+    }
+
+    private void readTexCoords(int pos, int end) throws IOException {
+        final int n = getCount(pos, end, 2 * Float.SIZE/8);
+        if (n != mVertexCnt) {
+            throw new IOException("Number of texture coordinates is different " +
+                    "from number of vertices.");
+        }
+        mUVs = new float[2 * n];
+        mBuf.position(pos + 2);
+        mBuf.asFloatBuffer().get(mUVs);
+    }
+
+    private int getId(int pos) {
+        return mBuf.getShort(pos) & 0xffff;
+    }
+
+    /** End of chunk at pos, must not exceed end of parent chunk. */
+    private int getEnd(int pos, int parentEnd) throws IOException {
+        final int len = mBuf.getInt(pos + 2);
+        if (len < HEADER_SIZE || len > parentEnd - pos) {
+            throw new IOException("Invalid chunk length " + len + " at " + pos);
+        }
+        return pos + len;
+    }
+
+    /** Reads element count and checks that elements fit into chunk. */
+    private int getCount(int pos, int end, int elementSize) throws IOException {
+        if (pos + 2 > end) {
+            throw new IOException("Chunk too short at " + pos);
+        }
+        final int n = mBuf.getShort(pos) & 0xffff;
+        if (pos + 2 + n * elementSize > end) {
+            throw new IOException("Chunk too short at " + pos);
+        }
+        return n;
+    }
+
+    private boolean nameEquals(int start, int end) {
+        final String name = mMeshName;
+        if (name == null || name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != (char) (mBuf.get(start + i) & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,254 @@
+package com.moonymango.snare.res.data;
+
+import com.moonymango.snare.res.data.MeshResource.BaseImportTransform;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Creates a {@link MeshResHandle} from vertex data in primitive arrays, as
+ * delivered by {@link Max3DSStreamParser}: applies import transforms,
+ * calculates smoothed normals and builds the interleaved vertex buffer
+ * and index buffers, see {@link MeshSplitter}.
+ *
+ * Normals are averaged over the faces adjacent to a vertex, weighted by
+ * face area. Faces forming an angle larger than the smoothing angle with
+ * the averaged normal are left out, so edges are preserved, and get a
+ * copy of the vertex instead. Result is the same as with
+ * {@link MeshResHandle}, but adjacency is kept in flat arrays (faces per
+ * vertex as offsets into one index array) instead of objects.
+ *
+ * The builder modifies the given arrays.
+ */
+public class MeshBuilder {
+
+    private static final int CHUNK_VERTICES = 256;
+
+    private final float[] mPositions;
+    private final float[] mUVs;
+    private final int mVertexCnt;
+    private final int[] mIndices;
+    private final int mTriangleCnt;
+
+    // result of normal calculation, vertices behind mVertexCnt are copies
+    private int mOutCnt;
+    private int[] mOutSrc;      // source vertex
+    private float[] mNormals;
+
+    public MeshBuilder(Max3DSStreamParser parser) {
+        this(parser.getPositions(), parser.getTexCoords(), parser.getVertexCnt(),
+                parser.getIndices(), parser.getTriangleCnt());
+    }
+
+    /**
+     * @param positions 3 floats per vertex.
+     * @param uvs 2 floats per vertex, may be null.
+     * @param vertexCnt Number of vertices.
+     * @param indices 3 per triangle.
+     * @param triangleCnt Number of triangles.
+     */
+    public MeshBuilder(float[] positions, float[] uvs, int vertexCnt,
+            int[] indices, int triangleCnt)
+    {
+        if (positions == null || indices == null || vertexCnt == 0) {
+            throw new IllegalArgumentException("Missing vertex positions or faces.");
+        }
+        for (int i = 0; i < 3 * triangleCnt; i++) {
+            if (indices[i] < 0 || indices[i] >= vertexCnt) {
+                throw new IllegalArgumentException("Invalid vertex index " + indices[i]);
+            }
+        }
+        mPositions = positions;
+        mUVs = uvs;
+        mVertexCnt = vertexCnt;
+        mIndices = indices;
+        mTriangleCnt = triangleCnt;
+    }
+
+    public MeshResHandle build(MeshResource res, BaseImportTransform transform) {
+        BaseImportTransform t = transform;
+        while (t != null) {
+            t.transform(mPositions, mUVs, mVertexCnt);
+            t = t.getNext();
+        }
+        calculateNormals();
+        final MeshSplitter splitter = new MeshSplitter(buildVertexBuffer(), 
+                mUVs != null ? MeshResHandle.FLOATS_PER_VERTEX_UV : MeshResHandle.FLOATS_PER_VERTEX,
+                mIndices, 3 * mTriangleCnt, res != null && res.useIntIndices());
+        return new MeshResHandle(res, splitter.getVertexBuffers(), 
+                splitter.getIndexBuffers(), mUVs != null, getBoundingBox());
+    }
+
+    private void calculateNormals() {
+        final int vCnt = mVertexCnt;
+        final int tCnt = mTriangleCnt;
+        final int[] idx = mIndices;
+        final float[] p = mPositions;
+
+        // face normals, length is twice the face area
+        final float[] fn = new float[3 * tCnt];
+        final float[] fu = new float[3 * tCnt];
+        for (int t = 0; t < 3 * tCnt; t += 3) {
+            final int a = 3 * idx[t];
+            final int b = 3 * idx[t + 1];
+            final int c = 3 * idx[t + 2];
+            final float abx = p[b] - p[a];
+            final float aby = p[b + 1] - p[a + 1];
+            final float abz = p[b + 2] - p[a + 2];
+            final float acx = p[c] - p[a];
+            final float acy = p[c + 1] - p[a + 1];
+            final float acz = p[c + 2] - p[a + 2];
+            final float nx = aby*acz - abz*acy;
+            final float ny = abz*acx - abx*acz;
+            final float nz = abx*acy - aby*acx;
+            fn[t] = nx;
+            fn[t + 1] = ny;
+            fn[t + 2] = nz;
+            final float len = (float) Math.sqrt(nx*nx + ny*ny + nz*nz);
+            fu[t] = nx/len;
+            fu[t + 1] = ny/len;
+            fu[t + 2] = nz/len;
+        }
+
+        // corners per vertex: corners[start[v]] .. corners[start[v + 1] - 1],
+        // corner i belongs to face i / 3
+        final int[] start = new int[vCnt + 1];
+        for (int i = 0; i < 3 * tCnt; i++) {
+            start[idx[i] + 1]++;
+        }
+        int maxCorners = 0;
+        for (int v = 0; v < vCnt; v++) {
+            maxCorners = Math.max(maxCorners, start[v + 1]);
+            start[v + 1] += start[v];
+        }
+        final int[] corners = new int[3 * tCnt];
+        for (int i = 0; i < 3 * tCnt; i++) {
+            corners[start[idx[i]]++] = i;
+        }
+        for (int v = vCnt; v > 0; v--) {
+            start[v] = start[v - 1];
+        }
+        start[0] = 0;
+
+        mOutCnt = vCnt;
+        mOutSrc = new int[vCnt + vCnt/4];
+        mNormals = new float[3 * mOutSrc.length];
+        for (int v = 0; v < vCnt; v++) {
+            mOutSrc[v] = v;
+        }
+
+        // Same grouping as the object based import: faces are added to the
+        // averaged normal as long as they do not form an edge with it, the
+        // remaining faces start a new group with a copy of the vertex.
+        final float cos = MeshResHandle.SMOOTH_ANGLE_COS;
+        final int[] todo = new int[maxCorners];
+        for (int v = vCnt - 1; v >= 0; v--) {
+            int n = 0;
+            for (int j = start[v]; j < start[v + 1]; j++) {
+                todo[n++] = corners[j];
+            }
+            int o = v;
+            while (n > 0) {
+                float nx = 0;
+                float ny = 0;
+                float nz = 0;
+                boolean first = true;
+                for (int k = n - 1; k >= 0; k--) {
+                    final int c = todo[k];
+                    final int f = 3 * (c / 3);
+                    if (!first) {
+                        final float len = (float) Math.sqrt(nx*nx + ny*ny + nz*nz);
+                        final float dot = nx/len*fu[f] + ny/len*fu[f + 1] + nz/len*fu[f + 2];
+                        if (dot < cos) {
+                            continue;
+                        }
+                    }
+                    first = false;
+                    nx += fn[f];
+                    ny += fn[f + 1];
+                    nz += fn[f + 2];
+                    idx[c] = o;
+                    todo[k] = -1;
+                }
+                final float len = (float) Math.sqrt(nx*nx + ny*ny + nz*nz);
+                setNormal(o, nx/len, ny/len, nz/len);
+
+                // keep faces of subsequent groups in order
+                int m = 0;
+                for (int k = 0; k < n; k++) {
+                    if (todo[k] >= 0) {
+                        todo[m++] = todo[k];
+                    }
+                }
+                n = m;
+                if (n > 0) {
+                    o = addCopy(v);
+                }
+            }
+        }
+    }
+
+    private int addCopy(int src) {
+        if (mOutCnt == mOutSrc.length) {
+            final int len = 2 * mOutCnt;
+            mOutSrc = Arrays.copyOf(mOutSrc, len);
+            mNormals = Arrays.copyOf(mNormals, 3 * len);
+        }
+        final int o = mOutCnt++;
+        mOutSrc[o] = src;
+        return o;
+    }
+
+    private void setNormal(int o, float x, float y, float z) {
+        mNormals[3 * o] = x;
+        mNormals[3 * o + 1] = y;
+        mNormals[3 * o + 2] = z;
+    }
+
+    private FloatBuffer buildVertexBuffer() {
+        final int fpv = mUVs != null ? MeshResHandle.FLOATS_PER_VERTEX_UV
+                : MeshResHandle.FLOATS_PER_VERTEX;
+        final ByteBuffer bb = ByteBuffer.allocateDirect(mOutCnt * fpv * Float.SIZE/8);
+        bb.order(ByteOrder.nativeOrder());
+        final FloatBuffer fb = bb.asFloatBuffer();
+
+        // bulk put in chunks, single puts into direct buffers are slow
+        final float[] chunk = new float[CHUNK_VERTICES * fpv];
+        int pos = 0;
+        for (int o = 0; o < mOutCnt; o++) {
+            final int src = mOutSrc[o];
+            chunk[pos++] = mPositions[3 * src];
+            chunk[pos++] = mPositions[3 * src + 1];
+            chunk[pos++] = mPositions[3 * src + 2];
+            chunk[pos++] = mNormals[3 * o];
+            chunk[pos++] = mNormals[3 * o + 1];
+            chunk[pos++] = mNormals[3 * o + 2];
+            if (mUVs != null) {
+                chunk[pos++] = mUVs[2 * src];
+                chunk[pos++] = mUVs[2 * src + 1];
+            }
+            if (pos == chunk.length) {
+                fb.put(chunk);
+                pos = 0;
+            }
+        }
+        fb.put(chunk, 0, pos);
+        fb.rewind();
+        return fb;
+    }
+
+    /** @return {minX, maxX, minY, maxY, minZ, maxZ} */
+    private float[] getBoundingBox() {
+        final float[] bb = {Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < 3 * mVertexCnt; i += 3) {
+            for (int k = 0; k < 3; k++) {
+                bb[2 * k] = Math.min(bb[2 * k], mPositions[i + k]);
+                bb[2 * k + 1] = Math.max(bb[2 * k + 1], mPositions[i + k]);
+            }
+        }
+        return bb;
+    }
+}
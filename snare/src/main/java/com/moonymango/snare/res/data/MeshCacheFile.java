@@ -0,0 +1,231 @@
+package com.moonymango.snare.res.data;
+
+import com.moonymango.snare.util.Logger;
+import com.moonymango.snare.util.Logger.LogSource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+
+/**
+ * Compiled mesh, i.e. the final interleaved vertex buffers, index buffers and
+ * bounding box of an imported mesh. Loading it skips parsing, import
+ * transforms and normal generation. The buffers are memory mapped from
+ * the file and handed to {@link MeshResHandle} as they are.
+ *
+ * File layout (header big endian, data in native byte order):
+ *      magic, version, byte order, asset stamp, key, texture coords flag,
+ *      32 bit indices flag, number of parts, bounding box,
+ *      per part: number of vertex floats, number of indices,
+ *      padding to 4 bytes, 
+ *      per part: vertex data, index data, padding to 4 bytes
+ *
+ * The file is ignored when the key (asset name + import transforms) or
+ * the asset stamp does not match, so outdated files just get overwritten.
+ */
+class MeshCacheFile {
+
+    private static final int MAGIC = 0x534e4d43;    // "SNMC"
+    private static final int VERSION = 2;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int NATIVE_ORDER =
+            ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0;
+
+    private final File mFile;
+    private final String mKey;
+    private final long mStamp;
+
+    /**
+     * @param dir Cache directory.
+     * @param key Identifies mesh, i.e. asset name and import transforms.
+     * @param stamp Asset stamp, see {@link com.moonymango.snare.res.ResourceCache#getAssetStamp()}.
+     */
+    MeshCacheFile(File dir, String key, long stamp) {
+        // collisions are fine, key is checked on read
+        mFile = new File(dir, "mesh_" + Integer.toHexString(key.hashCode()) + ".bin");
+        mKey = key;
+        mStamp = stamp;
+    }
+
+    /**
+     * Creates handle from file.
+     * @param intIndices True if 32 bit indices are supported.
+     * @return Null if there is no valid file for this mesh.
+     */
+    MeshResHandle read(MeshResource res, boolean intIndices) {
+        if (!mFile.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(mFile, "r");
+            final FileChannel ch = raf.getChannel();
+            final MappedByteBuffer map = ch.map(MapMode.READ_ONLY, 0, ch.size());
+            if (map.getInt() != MAGIC || map.getInt() != VERSION
+                    || map.getInt() != NATIVE_ORDER || map.getLong() != mStamp) {
+                return null;
+            }
+            final byte[] key = new byte[map.getInt()];
+            map.get(key);
+            if (!mKey.equals(new String(key, UTF8))) {
+                return null;
+            }
+            final boolean hasTexCoords = map.getInt() != 0;
+            final boolean hasIntIndices = map.getInt() != 0;
+            if (hasIntIndices && !intIndices) {
+                return null;
+            }
+            final int indexSize = hasIntIndices ? Integer.SIZE/8 : Short.SIZE/8;
+            final int partCnt = map.getInt();
+            final float[] bb = new float[6];
+            for (int i = 0; i < bb.length; i++) {
+                bb[i] = map.getFloat();
+            }
+            final int[] floatCnt = new int[partCnt];
+            final int[] indexCnt = new int[partCnt];
+            for (int i = 0; i < partCnt; i++) {
+                floatCnt[i] = map.getInt();
+                indexCnt[i] = map.getInt();
+            }
+
+            final FloatBuffer[] vertices = new FloatBuffer[partCnt];
+            final Buffer[] indices = new Buffer[partCnt];
+            int pos = align(map.position());
+            for (int i = 0; i < partCnt; i++) {
+                final int vertexSize = floatCnt[i] * Float.SIZE/8;
+                final int indicesSize = indexCnt[i] * indexSize;
+                if (pos + vertexSize + indicesSize > map.capacity()) {
+                    return null;
+                }
+                map.position(pos);
+                final ByteBuffer vb = map.slice().order(ByteOrder.nativeOrder());
+                vb.limit(vertexSize);
+                vertices[i] = vb.asFloatBuffer();
+
+                map.position(pos + vertexSize);
+                final ByteBuffer ib = map.slice().order(ByteOrder.nativeOrder());
+                ib.limit(indicesSize);
+                indices[i] = hasIntIndices ? ib.asIntBuffer() : ib.asShortBuffer();
+                pos = align(pos + vertexSize + indicesSize);
+            }
+
+            return new MeshResHandle(res, vertices, indices, hasTexCoords, bb);
+
+        } catch (IOException e) {
+            Logger.w(LogSource.RESOURCES, "Unable to read mesh cache file " + mFile);
+            return null;
+        } catch (BufferUnderflowException e) {
+            Logger.w(LogSource.RESOURCES, "Corrupt mesh cache file " + mFile);
+            return null;
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * Writes mesh data of handle to file. Errors are logged only, since
+     * the mesh can be imported again.
+     */
+    void write(MeshResHandle hnd) {
+        final int partCnt = hnd.getPartCnt();
+        final boolean hasIntIndices = hnd.hasIntIndices();
+        final int indexSize = hasIntIndices ? Integer.SIZE/8 : Short.SIZE/8;
+        final byte[] key = mKey.getBytes(UTF8);
+
+        final int headerSize = align(4*4 + 8 + key.length + 3*4 + 6*4 + partCnt*2*4);
+        final ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.putInt(MAGIC).putInt(VERSION).putInt(NATIVE_ORDER).putLong(mStamp);
+        header.putInt(key.length).put(key);
+        header.putInt(hnd.hasTexCoords() ? 1 : 0);
+        header.putInt(hasIntIndices ? 1 : 0);
+        header.putInt(partCnt);
+        header.putFloat(hnd.getMinX()).putFloat(hnd.getMaxX());
+        header.putFloat(hnd.getMinY()).putFloat(hnd.getMaxY());
+        header.putFloat(hnd.getMinZ()).putFloat(hnd.getMaxZ());
+        int dataSize = 0;
+        for (int i = 0; i < partCnt; i++) {
+            final int floatCnt = hnd.getVertexAttribs(i).capacity();
+            final int indexCnt = hnd.getIndicesCnt(i);
+            header.putInt(floatCnt).putInt(indexCnt);
+            dataSize += align(floatCnt * Float.SIZE/8 + indexCnt * indexSize);
+        }
+        header.clear();
+
+        final ByteBuffer data = ByteBuffer.allocate(dataSize).order(ByteOrder.nativeOrder());
+        int pos = 0;
+        for (int i = 0; i < partCnt; i++) {
+            final FloatBuffer vertices = hnd.getVertexAttribs(i).duplicate();
+            vertices.clear();
+            data.position(pos);
+            data.asFloatBuffer().put(vertices);
+            pos += vertices.capacity() * Float.SIZE/8;
+
+            data.position(pos);
+            final Buffer indices = hnd.getIndices(i);
+            if (hasIntIndices) {
+                final IntBuffer ib = ((IntBuffer) indices).duplicate();
+                ib.clear();
+                data.asIntBuffer().put(ib);
+            } else {
+                final ShortBuffer sb = ((ShortBuffer) indices).duplicate();
+                sb.clear();
+                data.asShortBuffer().put(sb);
+            }
+            pos = align(pos + indices.capacity() * indexSize);
+        }
+        data.clear();
+
+        // write to temporary file first, so that there is never a
+        // partially written file under the actual name
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            final FileChannel ch = out.getChannel();
+            while (header.hasRemaining()) {
+                ch.write(header);
+            }
+            while (data.hasRemaining()) {
+                ch.write(data);
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            Logger.w(LogSource.RESOURCES, "Unable to write mesh cache file " + mFile
+                    + ": " + e.getMessage());
+            tmp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static int align(int pos) {
+        return (pos + 3) & ~3;
+    }
+
+    private static void close(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.moonymango.snare.res.data;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
@@ -14,14 +16,15 @@ import com.moonymango.snare.ui.scene3D.mesh.Mesh.IMeshDataProvider;
 public class MeshResHandle extends BaseResHandle implements IBoundingVolumeProvider,
         IMeshDataProvider {
 
-    private static final float SMOOTH_ANGLE_GRAD = 80; 
-    private static final float SMOOTH_ANGLE_COS = (float) Math.cos((float) (2*Math.PI/360*SMOOTH_ANGLE_GRAD));
-    private static final int FLOATS_PER_VERTEX = 6;    // 3x position, 3x normal
-    private static final int FLOATS_PER_VERTEX_UV = 8; // 3x pos, 3x normal, 2x uv
-    private static final int SHORTS_PER_FACE = 3;      // 3 indices per triangle 
+    static final float SMOOTH_ANGLE_GRAD = 80; 
+    static final float SMOOTH_ANGLE_COS = (float) Math.cos((float) (2*Math.PI/360*SMOOTH_ANGLE_GRAD));
+    static final int FLOATS_PER_VERTEX = 6;    // 3x position, 3x normal
+    static final int FLOATS_PER_VERTEX_UV = 8; // 3x pos, 3x normal, 2x uv
+    private static final int INDICES_PER_FACE = 3;     // 3 indices per triangle 
     
-    private FloatBuffer mVertexAttribs;
-    private ShortBuffer mIndices; 
+    // one entry per part, see MeshSplitter
+    private FloatBuffer[] mVertexAttribs;
+    private Buffer[] mIndices; 
     private ArrayList<Vertex> mVertexData;
     private ArrayList<Face> mFaces;
     private final boolean mHasNormals;
@@ -70,28 +73,97 @@ public class MeshResHandle extends BaseResHandle implements IBoundingVolumeProvi
         mHasTexCoords = mVertexData.get(0).uv != null;
         
         // set up deliveries of this handle
-        buildVertexAttrBuffer();
-        buildIndexBuffer();
+        final MeshSplitter splitter = new MeshSplitter(buildVertexAttrBuffer(), 
+                mHasTexCoords ? FLOATS_PER_VERTEX_UV : FLOATS_PER_VERTEX,
+                buildIndices(), mFaces.size() * INDICES_PER_FACE, 
+                res != null && res.useIntIndices());
+        mVertexAttribs = splitter.getVertexBuffers();
+        mIndices = splitter.getIndexBuffers();
         extractBoundingBox();
         
         // clean up
         mVertexData = null;
         mFaces = null;
     }
+    
+    /**
+     * Creates handle from already processed data, see {@link MeshBuilder}
+     * and {@link MeshCacheFile}.
+     * @param vertexAttribs Vertex buffer per part.
+     * @param indices Index buffer per part, see {@link MeshSplitter}.
+     * @param bb Bounding box {minX, maxX, minY, maxY, minZ, maxZ}.
+     */
+    MeshResHandle(MeshResource res, FloatBuffer[] vertexAttribs, 
+            Buffer[] indices, boolean hasTexCoords, float[] bb) {
+        super(res);
+        mVertexAttribs = vertexAttribs;
+        mIndices = indices;
+        mHasNormals = true;
+        mHasTexCoords = hasTexCoords;
+        mMinX = bb[0];
+        mMaxX = bb[1];
+        mMinY = bb[2];
+        mMaxY = bb[3];
+        mMinZ = bb[4];
+        mMaxZ = bb[5];
+    }
 
       
     /* (non-Javadoc)
      * @see com.moonymango.snare.res.loader3d.IBufferProvider#getVertexAttribs()
      */
     public FloatBuffer getVertexAttribs() {
-        return mVertexAttribs;
+        return mVertexAttribs[0];
     }
     
     /* (non-Javadoc)
      * @see com.moonymango.snare.res.loader3d.IBufferProvider#getIndices()
      */
     public ShortBuffer getIndices() {
-        return mIndices;
+        if (hasIntIndices()) {
+            throw new IllegalStateException("Mesh has 32 bit indices.");
+        }
+        return (ShortBuffer) mIndices[0];
+    }
+    
+    /** 
+     * Number of parts. Meshes with more than 64k vertices are split into
+     * parts, unless they use 32 bit indices.
+     */
+    public int getPartCnt() {
+        return mVertexAttribs.length;
+    }
+    
+    public FloatBuffer getVertexAttribs(int part) {
+        return mVertexAttribs[part];
+    }
+    
+    /** 
+     * Index buffer of part, {@link IntBuffer} if {@link #hasIntIndices()}, 
+     * {@link ShortBuffer} otherwise. 
+     */
+    public Buffer getIndices(int part) {
+        return mIndices[part];
+    }
+    
+    public int getIndicesCnt(int part) {
+        return mIndices[part].capacity();
+    }
+    
+    @Override
+    public int getMemorySize() {
+        final int indexSize = hasIntIndices() ? Integer.SIZE/8 : Short.SIZE/8;
+        int size = 0;
+        for (int i = 0; i < mVertexAttribs.length; i++) {
+            size += mVertexAttribs[i].capacity() * Float.SIZE/8;
+            size += mIndices[i].capacity() * indexSize;
+        }
+        return size;
+    }
+    
+    /** True if indices are 32 bit, i.e. GL_UNSIGNED_INT. */
+    public boolean hasIntIndices() {
+        return mIndices[0] instanceof IntBuffer;
     }
     
     
@@ -140,7 +212,7 @@ public class MeshResHandle extends BaseResHandle implements IBoundingVolumeProvi
      * @see com.moonymango.snare.res.loader3d.IBufferProvider#getIndicesCnt()
      */
     public int getIndicesCnt() {
-        return mIndices.capacity();
+        return mIndices[0].capacity();
     }
     
     public String getName() {
@@ -230,45 +302,43 @@ public class MeshResHandle extends BaseResHandle implements IBoundingVolumeProvi
         
     }
     
-    private void buildVertexAttrBuffer() {
+    private FloatBuffer buildVertexAttrBuffer() {
         final int len = mVertexData.size();
         final int floatPerVertex = mHasTexCoords ? 
                 FLOATS_PER_VERTEX_UV : FLOATS_PER_VERTEX; 
                     
         final ByteBuffer vbb = ByteBuffer.allocateDirect(len * floatPerVertex * Float.SIZE/8 ); 
         vbb.order(ByteOrder.nativeOrder());
-        mVertexAttribs = vbb.asFloatBuffer();
+        final FloatBuffer vertexAttribs = vbb.asFloatBuffer();
         
         for (int i = 0; i < len; i++) {
             final Vertex v = mVertexData.get(i);
-            mVertexAttribs.put(v.position.x);
-            mVertexAttribs.put(v.position.y);
-            mVertexAttribs.put(v.position.z);
-            mVertexAttribs.put(v.normal.x);
-            mVertexAttribs.put(v.normal.y);
-            mVertexAttribs.put(v.normal.z);
+            vertexAttribs.put(v.position.x);
+            vertexAttribs.put(v.position.y);
+            vertexAttribs.put(v.position.z);
+            vertexAttribs.put(v.normal.x);
+            vertexAttribs.put(v.normal.y);
+            vertexAttribs.put(v.normal.z);
             
             if (mHasTexCoords) {
-                    mVertexAttribs.put(v.uv.x);
-                    mVertexAttribs.put(v.uv.y);
+                    vertexAttribs.put(v.uv.x);
+                    vertexAttribs.put(v.uv.y);
             }
         }
-        mVertexAttribs.rewind();
+        vertexAttribs.rewind();
+        return vertexAttribs;
     }
     
-    private void buildIndexBuffer() {
+    private int[] buildIndices() {
         final int len = mFaces.size();
-        final ByteBuffer vbb = ByteBuffer.allocateDirect(len * SHORTS_PER_FACE * Short.SIZE/8);  
-        vbb.order(ByteOrder.nativeOrder());
-        mIndices = vbb.asShortBuffer();  
-        
+        final int[] indices = new int[len * INDICES_PER_FACE];
         for (int i = 0; i < len; i++) {
             final Face f = mFaces.get(i);
-            mIndices.put((short) f.vertices[0].index);
-            mIndices.put((short) f.vertices[1].index);
-            mIndices.put((short) f.vertices[2].index);
+            indices[3*i] = f.vertices[0].index;
+            indices[3*i + 1] = f.vertices[1].index;
+            indices[3*i + 2] = f.vertices[2].index;
         }
-        mIndices.rewind();
+        return indices;
     }
     
     private void splitFacesToTriangles() {
@@ -1,16 +1,24 @@
 package com.moonymango.snare.res.data;
 
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 
 import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.opengl.GLInfo;
+import com.moonymango.snare.opengl.IRenderer;
 import com.moonymango.snare.res.BaseResHandle;
 import com.moonymango.snare.res.BaseResource;
 import com.moonymango.snare.res.IAssetName;
 
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class MeshResource extends BaseResource {
     
@@ -39,15 +47,30 @@ public class MeshResource extends BaseResource {
         
         final int i = mName.lastIndexOf(".");
         final String fileExt = (i > 0) ? mName.substring(i) : "";
-        
-        BaseMeshParser parser = null;
-        if (fileExt.equals(".3ds")) {
-            parser = new Max3DSParser();
-        }
-        if (parser == null) {
+        if (!fileExt.equals(".3ds")) {
             throw new UnsupportedOperationException("Unsupported file type " + fileExt);
         }
         
+        MeshCacheFile file = null;
+        if (mGame.getSettings().MESH_CACHE) {
+            file = new MeshCacheFile(mCache.getCacheDir(), getCacheKey(), 
+                    mCache.getAssetStamp());
+            final MeshResHandle hnd = file.read(this, useIntIndices());
+            if (hnd != null) {
+                return hnd;
+            }
+        }
+        
+        final MeshResHandle hnd = mGame.getSettings().MESH_STREAM_PARSER ?
+                importStreamed(am) : importParsed(am);
+        if (hnd != null && file != null) {
+            file.write(hnd);
+        }
+        return hnd;
+    }
+    
+    private MeshResHandle importParsed(AssetManager am) {
+        final BaseMeshParser parser = new Max3DSParser();
         InputStream in;
         try {
             in = am.open(mName);
@@ -59,9 +82,64 @@ public class MeshResource extends BaseResource {
         } catch (IOException e) {
             return null;
         }
-        
         return new MeshResHandle(this, parser, mTransform);
     }
+    
+    private MeshResHandle importStreamed(AssetManager am) {
+        final Max3DSStreamParser parser = new Max3DSStreamParser();
+        try {
+            if (!parser.parse(readAsset(am), mQualifier)) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return new MeshBuilder(parser).build(this, mTransform);
+    }
+    
+    /** Maps asset into memory if it is stored uncompressed, reads it otherwise. */
+    private ByteBuffer readAsset(AssetManager am) throws IOException {
+        try {
+            final AssetFileDescriptor fd = am.openFd(mName);
+            final FileInputStream in = fd.createInputStream();
+            try {
+                return in.getChannel().map(MapMode.READ_ONLY, fd.getStartOffset(), 
+                        fd.getLength());
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            // asset is compressed
+        }
+        
+        final InputStream in = am.open(mName);
+        try {
+            byte[] buf = new byte[Math.max(in.available(), 4096)];
+            int len = 0;
+            int n;
+            while ((n = in.read(buf, len, buf.length - len)) > 0) {
+                len += n;
+                if (len == buf.length) {
+                    buf = Arrays.copyOf(buf, 2 * len);
+                }
+            }
+            return ByteBuffer.wrap(buf, 0, len);
+        } finally {
+            in.close();
+        }
+    }
+    
+    /** Asset name and import transforms. */
+    private String getCacheKey() {
+        final StringBuilder sb = new StringBuilder(mQName);
+        BaseImportTransform t = mTransform;
+        while (t != null) {
+            sb.append('|');
+            t.appendKey(sb);
+            t = t.getNext();
+        }
+        return sb.toString();
+    }
 
     @Override
     protected BaseResHandle createHandleByResID(Resources res) {
@@ -73,6 +151,16 @@ public class MeshResource extends BaseResource {
         return (MeshResHandle) getHandle(mGame.getResourceCache());
     }
     
+    /** 
+     * True if meshes with more than 64k vertices may use 32 bit indices
+     * instead of being split. Requires GL info to be collected already.
+     */
+    boolean useIntIndices() {
+        final IRenderer renderer = mGame.getRenderer();
+        final GLInfo info = renderer != null ? renderer.getInfo() : null;
+        return info != null && info.hasElementIndexUint();
+    }
+    
     /** Transformation operation performed during mesh import. */
     public static abstract class BaseImportTransform 
     {    
@@ -81,8 +169,57 @@ public class MeshResource extends BaseResource {
         public void setNext(BaseImportTransform next) {mNext = next;}
         public BaseImportTransform getNext() {return mNext;}
         
+        /** 
+         * Appends whatever makes the result of this transformation unique,
+         * used to identify cached meshes. Transforms with parameters have
+         * to override this.
+         */
+        protected void appendKey(StringBuilder sb) {
+            sb.append(getClass().getName());
+        }
+        
         /** Transforms vertices. */
         abstract void transform(ArrayList<Vertex> vertices, 
                 ArrayList<Face> faces);
+        
+        /**
+         * Transforms vertices given as primitive arrays, see {@link MeshBuilder}.
+         * @param positions 3 floats per vertex.
+         * @param uvs 2 floats per vertex, may be null.
+         * @param vertexCnt Number of vertices.
+         */
+        abstract void transform(float[] positions, float[] uvs, int vertexCnt);
+        
+        /** 
+         * Calculates center of bounding box of positions.
+         * @param center Receives x, y, z of center.
+         * @param extent Receives size in x, y, z direction, may be null.
+         */
+        static void getCenter(float[] positions, int vertexCnt, float[] center,
+                float[] extent) 
+        {
+            float maxX = -Float.MAX_VALUE;
+            float maxY = -Float.MAX_VALUE;
+            float maxZ = -Float.MAX_VALUE;
+            float minX = Float.MAX_VALUE;
+            float minY = Float.MAX_VALUE;
+            float minZ = Float.MAX_VALUE;
+            for (int i = 0; i < 3 * vertexCnt; i += 3) {
+                maxX = Math.max(maxX, positions[i]);
+                minX = Math.min(minX, positions[i]);
+                maxY = Math.max(maxY, positions[i + 1]);
+                minY = Math.min(minY, positions[i + 1]);
+                maxZ = Math.max(maxZ, positions[i + 2]);
+                minZ = Math.min(minZ, positions[i + 2]);
+            }
+            center[0] = (maxX + minX)/2;
+            center[1] = (maxY + minY)/2;
+            center[2] = (maxZ + minZ)/2;
+            if (extent != null) {
+                extent[0] = maxX - minX;
+                extent[1] = maxY - minY;
+                extent[2] = maxZ - minZ;
+            }
+        }
     }    
 }
@@ -0,0 +1,142 @@
+package com.moonymango.snare.res.data;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Creates the GL buffers of a mesh from interleaved vertex data and
+ * indices. Meshes with up to 64k vertices get a single part with 16 bit
+ * indices. Larger meshes either get a single part with 32 bit indices,
+ * if the GL supports it, or are split into parts of up to 64k vertices,
+ * each with its own vertex buffer and 16 bit index buffer.
+ *
+ * Triangles are assigned to parts in the order of the index list, so
+ * triangles which are close in the list end up in the same part and
+ * only few vertices get duplicated at the borders of parts.
+ */
+class MeshSplitter {
+
+    /** Max. number of vertices addressable by 16 bit indices. */
+    static final int MAX_PART_VERTICES = 0x10000;
+
+    private final ArrayList<FloatBuffer> mVertexBuffers = new ArrayList<FloatBuffer>();
+    private final ArrayList<Buffer> mIndexBuffers = new ArrayList<Buffer>();
+
+    /**
+     * @param vertices Interleaved vertex data.
+     * @param floatsPerVertex Floats per vertex in vertex data.
+     * @param indices 3 per triangle, modified when the mesh gets split.
+     * @param indexCnt Number of indices.
+     * @param intIndices True if 32 bit indices may be used.
+     */
+    MeshSplitter(FloatBuffer vertices, int floatsPerVertex, int[] indices,
+            int indexCnt, boolean intIndices)
+    {
+        final int vertexCnt = vertices.capacity() / floatsPerVertex;
+        if (vertexCnt <= MAX_PART_VERTICES) {
+            mVertexBuffers.add(vertices);
+            mIndexBuffers.add(createShortBuffer(indices, 0, indexCnt));
+        } else if (intIndices) {
+            mVertexBuffers.add(vertices);
+            mIndexBuffers.add(createIntBuffer(indices, indexCnt));
+        } else {
+            split(vertices, floatsPerVertex, vertexCnt, indices, indexCnt);
+        }
+    }
+
+    /** Number of parts. */
+    int getPartCnt() {
+        return mVertexBuffers.size();
+    }
+
+    FloatBuffer[] getVertexBuffers() {
+        return mVertexBuffers.toArray(new FloatBuffer[mVertexBuffers.size()]);
+    }
+
+    /** {@link ShortBuffer} per part or a single {@link IntBuffer}. */
+    Buffer[] getIndexBuffers() {
+        return mIndexBuffers.toArray(new Buffer[mIndexBuffers.size()]);
+    }
+
+    private void split(FloatBuffer vertices, int floatsPerVertex, int vertexCnt,
+            int[] indices, int indexCnt)
+    {
+        // vertex index in actual part, -1 = not used yet
+        final int[] map = new int[vertexCnt];
+        Arrays.fill(map, -1);
+        // source vertices of actual part
+        final int[] src = new int[MAX_PART_VERTICES];
+        final float[] vertex = new float[floatsPerVertex];
+
+        int start = 0;
+        int partVertexCnt = 0;
+        for (int t = 0; t <= indexCnt; t += 3) {
+            // vertices the triangle would add to the actual part
+            int newCnt = 0;
+            if (t < indexCnt) {
+                for (int k = t; k < t + 3; k++) {
+                    if (map[indices[k]] < 0) {
+                        newCnt++;
+                    }
+                }
+            }
+
+            if (t == indexCnt || partVertexCnt + newCnt > MAX_PART_VERTICES) {
+                // close part
+                final ByteBuffer bb = ByteBuffer.allocateDirect(
+                        partVertexCnt * floatsPerVertex * Float.SIZE/8);
+                bb.order(ByteOrder.nativeOrder());
+                final FloatBuffer fb = bb.asFloatBuffer();
+                for (int v = 0; v < partVertexCnt; v++) {
+                    vertices.position(src[v] * floatsPerVertex);
+                    vertices.get(vertex);
+                    fb.put(vertex);
+                    map[src[v]] = -1;
+                }
+                fb.rewind();
+                vertices.rewind();
+                mVertexBuffers.add(fb);
+                mIndexBuffers.add(createShortBuffer(indices, start, t - start));
+                start = t;
+                partVertexCnt = 0;
+            }
+
+            if (t < indexCnt) {
+                for (int k = t; k < t + 3; k++) {
+                    final int v = indices[k];
+                    if (map[v] < 0) {
+                        map[v] = partVertexCnt;
+                        src[partVertexCnt++] = v;
+                    }
+                    indices[k] = map[v];
+                }
+            }
+        }
+    }
+
+    private static ShortBuffer createShortBuffer(int[] indices, int start, int cnt) {
+        final ByteBuffer bb = ByteBuffer.allocateDirect(cnt * Short.SIZE/8);
+        bb.order(ByteOrder.nativeOrder());
+        final ShortBuffer sb = bb.asShortBuffer();
+        for (int i = start; i < start + cnt; i++) {
+            sb.put((short) indices[i]);
+        }
+        sb.rewind();
+        return sb;
+    }
+
+    private static IntBuffer createIntBuffer(int[] indices, int cnt) {
+        final ByteBuffer bb = ByteBuffer.allocateDirect(cnt * Integer.SIZE/8);
+        bb.order(ByteOrder.nativeOrder());
+        final IntBuffer ib = bb.asIntBuffer();
+        ib.put(indices, 0, cnt);
+        ib.rewind();
+        return ib;
+    }
+}
@@ -1,6 +1,7 @@
 package com.moonymango.snare.res.texture;
 
 import com.moonymango.snare.opengl.TextureObjOptions;
+import com.moonymango.snare.opengl.TextureObjOptions.MipMapSource;
 import com.moonymango.snare.res.BaseResHandle;
 
 public abstract class BaseTextureResHandle  extends BaseResHandle {
@@ -11,4 +12,23 @@ public abstract class BaseTextureResHandle  extends BaseResHandle {
     
     public abstract int loadToGPU(TextureObjOptions options);
     
+    /** Size of texture data in bytes. */
+    public abstract int getDataSize();
+    
+    /** Source of mip levels when loaded with options which need them. */
+    public abstract MipMapSource getMipMapSource();
+    
+    /** Bytes occupied in GPU memory when loaded with the given options. */
+    public int getGpuSize(TextureObjOptions options) {
+        final int size = getDataSize();
+        // generated levels add up to a third of level 0
+        return options.mGenMipMap && getMipMapSource() == MipMapSource.GENERATE 
+                ? size + size / 3 : size;
+    }
+    
+    @Override
+    public int getMemorySize() {
+        return getDataSize();
+    }
+    
 }
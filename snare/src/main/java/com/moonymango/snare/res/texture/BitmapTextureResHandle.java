@@ -1,9 +1,10 @@
 package com.moonymango.snare.res.texture;
 
 import static android.opengl.GLES20.GL_TEXTURE_2D;
-import static com.moonymango.snare.opengl.GLES20Trace.glBindTexture;
+import static com.moonymango.snare.opengl.GLStateCache.glBindTexture;
 import static com.moonymango.snare.opengl.GLES20Trace.glGenTextures;
 import com.moonymango.snare.opengl.TextureObjOptions;
+import com.moonymango.snare.opengl.TextureObjOptions.MipMapSource;
 import android.graphics.Bitmap;
 import android.opengl.GLUtils;
 
@@ -20,6 +21,18 @@ public class BitmapTextureResHandle extends BaseTextureResHandle {
         return mContent;
     }
 
+    @Override
+    public int getDataSize() {
+        return mContent.getByteCount();
+    }
+
+    @Override
+    public MipMapSource getMipMapSource() {
+        // GLES 2.0 supports mipmaps for power of two sizes only
+        return isPowerOfTwo(mContent.getWidth()) && isPowerOfTwo(mContent.getHeight()) 
+                ? MipMapSource.GENERATE : MipMapSource.NONE;
+    }
+
     @Override
     public boolean onRemoveFromCachePending() {
         mContent.recycle();
@@ -33,9 +46,13 @@ public class BitmapTextureResHandle extends BaseTextureResHandle {
         glGenTextures(1, textures, 0);
         glBindTexture(GL_TEXTURE_2D, textures[0]);
         GLUtils.texImage2D(GL_TEXTURE_2D, level, mContent, 0);
-        options.apply();     
+        options.apply(getMipMapSource());     
         glBindTexture(GL_TEXTURE_2D, 0);
         return textures[0];
     }
     
+    private static boolean isPowerOfTwo(int n) {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+    
 }
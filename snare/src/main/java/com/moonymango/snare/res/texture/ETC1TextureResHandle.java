@@ -3,33 +3,80 @@ package com.moonymango.snare.res.texture;
 import static android.opengl.GLES20.GL_RGB;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_UNSIGNED_SHORT_5_6_5;
-import static com.moonymango.snare.opengl.GLES20Trace.glBindTexture;
+import static com.moonymango.snare.opengl.GLStateCache.glBindTexture;
 import static com.moonymango.snare.opengl.GLES20Trace.glGenTextures;
 import com.moonymango.snare.opengl.TextureObjOptions;
+import com.moonymango.snare.opengl.TextureObjOptions.MipMapSource;
 import android.opengl.ETC1Util;
 import android.opengl.ETC1Util.ETC1Texture;
 
 public class ETC1TextureResHandle extends BaseTextureResHandle {
 
-    private final ETC1Texture mContent;
-    
+    private final ETC1Texture[] mLevels;
+
     public ETC1TextureResHandle(ETC1TextureResource res, ETC1Texture texture) {
         super(res);
-        mContent = texture;
+        mLevels = new ETC1Texture[] {texture};
     }
-    
+
+    /**
+     * @param res
+     * @param levels Mip levels starting with level 0.
+     */
+    public ETC1TextureResHandle(ETC1TextureResource res, ETC1Texture[] levels) {
+        super(res);
+        mLevels = levels;
+    }
+
+    /** Level 0. */
     public ETC1Texture getContent() {
-        return mContent;
+        return mLevels[0];
+    }
+
+    public ETC1Texture getLevel(int level) {
+        return mLevels[level];
+    }
+
+    public int getLevelCnt() {
+        return mLevels.length;
+    }
+
+    @Override
+    public int getDataSize() {
+        int size = 0;
+        for (int i = 0; i < mLevels.length; i++) {
+            size += mLevels[i].getData().capacity();
+        }
+        return size;
+    }
+
+    @Override
+    public MipMapSource getMipMapSource() {
+        // compressed textures cannot be mipmapped by GPU, incomplete
+        // chains are of no use either
+        final ETC1Texture t = mLevels[0];
+        return mLevels.length >= TextureObjOptions.getMipLevelCnt(t.getWidth(), t.getHeight())
+                ? MipMapSource.LOADED : MipMapSource.NONE;
+    }
+
+    @Override
+    public int getGpuSize(TextureObjOptions options) {
+        return getMipMapSource() == MipMapSource.LOADED && options.mGenMipMap
+                ? getDataSize() : mLevels[0].getData().capacity();
     }
 
     @Override
     public int loadToGPU(TextureObjOptions options) {
         int textures[] = new int[1];
         int level = (options.mGenMipMap) ? 0 : options.mLevel;
+        final MipMapSource mipMaps = getMipMapSource();
+        final int cnt = options.mGenMipMap && mipMaps == MipMapSource.LOADED ? mLevels.length : 1;
         glGenTextures(1, textures, 0);
         glBindTexture(GL_TEXTURE_2D, textures[0]);
-        ETC1Util.loadTexture(GL_TEXTURE_2D, level, 0, GL_RGB, GL_UNSIGNED_SHORT_5_6_5, mContent);
-        options.apply();
+        for (int i = 0; i < cnt; i++) {
+            ETC1Util.loadTexture(GL_TEXTURE_2D, level + i, 0, GL_RGB, GL_UNSIGNED_SHORT_5_6_5, mLevels[i]);
+        }
+        options.apply(mipMaps);
         glBindTexture(GL_TEXTURE_2D, 0);
         return textures[0];
     }
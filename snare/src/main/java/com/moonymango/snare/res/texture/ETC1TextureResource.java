@@ -1,6 +1,7 @@
 package com.moonymango.snare.res.texture;
 
 import android.content.res.AssetManager;
+import android.opengl.ETC1;
 import android.opengl.ETC1Util;
 import android.opengl.ETC1Util.ETC1Texture;
 
@@ -9,42 +10,143 @@ import com.moonymango.snare.res.BaseResHandle;
 import com.moonymango.snare.res.IAssetName;
 
 import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 
+/**
+ * ETC1 compressed texture, loaded from a PKM file (single level) or from a
+ * KTX file, which may contain a complete mip chain.
+ *
+ * ETC1 has no alpha channel, therefore alpha can be provided by a separate
+ * ETC1 texture which holds the alpha values in its color channels, see
+ * {@link #getAlphaTexture()}.
+ */
 public class ETC1TextureResource extends BaseTextureResource {
 
+    private static final byte[] KTX_IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1',
+            (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+    private static final int KTX_ENDIANNESS = 0x04030201;
+    /** Header size following the identifier. */
+    private static final int KTX_HEADER_SIZE = 13 * 4;
+
+    private final ETC1TextureResource mAlpha;
+
     public ETC1TextureResource(IGame game, String name, ITextureRegionProvider provider)
     {
         super(game, name, provider);
+        mAlpha = null;
     }
 
     public ETC1TextureResource(IGame game, String name) {
         super(game, name);
+        mAlpha = null;
+    }
+
+    /**
+     * @param game
+     * @param name
+     * @param alphaName Texture holding the alpha values.
+     */
+    public ETC1TextureResource(IGame game, String name, String alphaName) {
+        super(game, name);
+        mAlpha = new ETC1TextureResource(game, alphaName);
     }
 
     public ETC1TextureResource(IGame game, IAssetName asset) {
         super(game, asset);
+        mAlpha = null;
     }
-    
+
     public ETC1TextureResource(IGame game, IAssetName asset, ITextureRegionProvider provider)
     {
         super(game, asset, provider);
+        mAlpha = null;
+    }
+
+    /**
+     * @param game
+     * @param asset
+     * @param alphaAsset Texture holding the alpha values.
+     */
+    public ETC1TextureResource(IGame game, IAssetName asset, IAssetName alphaAsset) {
+        super(game, asset);
+        mAlpha = new ETC1TextureResource(game, alphaAsset);
+    }
+
+    /**
+     * Texture holding the alpha values in its red channel, null if the
+     * texture is opaque. Needs to be bound to a separate texture unit.
+     */
+    public ETC1TextureResource getAlphaTexture() {
+        return mAlpha;
     }
 
     @Override
     protected BaseResHandle createHandleByAsset(AssetManager am) {
-        ETC1Texture t;
+        ETC1Texture[] t;
         try {
             BufferedInputStream in = new BufferedInputStream(am.open(mName));
-            t = ETC1Util.createTexture(in);
+            t = isKTX(in) ? readKTX(in) : new ETC1Texture[] {ETC1Util.createTexture(in)};
             in.close();
         } catch (IOException e) {
             return null;
-        } 
-        if (t == null) {
+        }
+        if (t[0] == null) {
             return null;
         }
         return new ETC1TextureResHandle(this, t);
     }
 
+    private static boolean isKTX(BufferedInputStream in) throws IOException {
+        final byte[] id = new byte[KTX_IDENTIFIER.length];
+        in.mark(id.length);
+        final int cnt = in.read(id);
+        in.reset();
+        return cnt == id.length && Arrays.equals(id, KTX_IDENTIFIER);
+    }
+
+    /** Reads all mip levels of a 2D ETC1 texture from a KTX file. */
+    private ETC1Texture[] readKTX(InputStream is) throws IOException {
+        final DataInputStream in = new DataInputStream(is);
+        in.readFully(new byte[KTX_IDENTIFIER.length]);
+        final ByteBuffer header = readBytes(in, KTX_HEADER_SIZE, ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != KTX_ENDIANNESS) {
+            header.order(ByteOrder.BIG_ENDIAN);
+        }
+        final int format = header.getInt(16);
+        final int width = header.getInt(24);
+        final int height = header.getInt(28);
+        final int faces = header.getInt(40);
+        final int levels = Math.max(header.getInt(44), 1);
+        final int keyValueBytes = header.getInt(48);
+        if (format != ETC1.ETC1_RGB8_OES || faces != 1) {
+            throw new IOException("No ETC1 2D texture: " + mName);
+        }
+        in.readFully(new byte[keyValueBytes]);
+
+        final ETC1Texture[] t = new ETC1Texture[levels];
+        for (int i = 0; i < levels; i++) {
+            final int size = readBytes(in, 4, header.order()).getInt(0);
+            final ByteBuffer data = ByteBuffer.allocateDirect(size)
+                    .order(ByteOrder.nativeOrder());
+            data.put(readBytes(in, size, header.order())).position(0);
+            t[i] = new ETC1Texture(Math.max(width >> i, 1),
+                    Math.max(height >> i, 1), data);
+            // levels are 4 byte aligned
+            in.readFully(new byte[(4 - size % 4) % 4]);
+        }
+        return t;
+    }
+
+    private static ByteBuffer readBytes(DataInputStream in, int cnt, ByteOrder order)
+            throws IOException {
+        final byte[] b = new byte[cnt];
+        in.readFully(b);
+        return ByteBuffer.wrap(b).order(order);
+    }
+
 }
@@ -5,14 +5,29 @@ import com.moonymango.snare.res.BaseResHandle;
 public class XMLResHandle<T> extends BaseResHandle {
 
     private final T mContent;
+    private final int mSize;
     
     public XMLResHandle(XMLResource<T> res, T content) {
+        this(res, content, 0);
+    }
+    
+    /**
+     * @param size Estimated memory size of content, e.g. size of the
+     *          XML document.
+     */
+    public XMLResHandle(XMLResource<T> res, T content, int size) {
         super(res);
         mContent = content;
+        mSize = size;
     }
     
     public T getContent() {
         return mContent;
     }
+    
+    @Override
+    public int getMemorySize() {
+        return mSize;
+    }
 
 }
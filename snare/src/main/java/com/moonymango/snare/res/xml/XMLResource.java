@@ -56,7 +56,10 @@ public class XMLResource<T> extends BaseResource {
     private XMLResHandle<T> parse(InputStream in) {
         SAXParserFactory f = SAXParserFactory.newInstance();
         InputSource s = new InputSource(in);
+        int size;
         try {
+            // size of parsed content is unknown, take document size instead
+            size = in.available();
             SAXParser p = f.newSAXParser();
             XMLReader r = p.getXMLReader();
             r.setContentHandler(mHandler);
@@ -68,7 +71,7 @@ public class XMLResource<T> extends BaseResource {
         }
         final T content = mHandler.getXMLParseResult();
         mHandler.release();
-        return new XMLResHandle<T>(this, content);
+        return new XMLResHandle<T>(this, content, size);
     }
     
     /** 
@@ -13,12 +13,14 @@ public abstract class BaseCamera {
     public static final int FRUSTRUM_BOTTOM_PLANE_IDX = 3;
     public static final int FRUSTRUM_NEAR_PLANE_IDX = 4;
     public static final int FRUSTRUM_FAR_PLANE_IDX = 5;
+    private static final int PLANE_CNT = 6;
     
     protected final float[] mViewTransform = new float[16];
     protected final float[] mProjectionTransform = new float[16];
     protected final float[] mViewProjTransform = new float[16];
     
     private final float[] mFrustrumPlane = new float[4];
+    private final float[] mFrustrumPlanes = new float[PLANE_CNT * 4];
     
     public float[] getViewTransform()           {return mViewTransform;}
     public float[] getProjectionTransform()     {return mProjectionTransform;}
@@ -62,63 +64,148 @@ public abstract class BaseCamera {
      * @return Distance (neg. values mean that p is not inside the frustrum)
      */
     public float getPlaneDistance(float[] p, int plane) {
+        extractPlane(plane, mFrustrumPlane, 0);
+        VectorAF.normalize(mFrustrumPlane);
+        return VectorAF.dot(p, mFrustrumPlane);
+    }
+
+    /**
+     * Returns the planes of the frustrum as cached by the last call to
+     * {@link #updateFrustrumPlanes()}. Each plane is stored as normalized
+     * vector (a, b, c, d), so that a*x + b*y + c*z + d is the distance of
+     * a point from it, at the index given by the FRUSTRUM_XXX_PLANE_IDX
+     * constants times 4. Normals point into the frustrum.
+     */
+    public float[] getFrustrumPlanes() {
+        return mFrustrumPlanes;
+    }
+
+    /**
+     * Extracts the frustrum planes from the view projection transformation.
+     * Has to be called by subclasses whenever that transformation changes.
+     */
+    protected void updateFrustrumPlanes() {
+        for (int i = 0; i < PLANE_CNT; i++) {
+            final int o = i * 4;
+            extractPlane(i, mFrustrumPlanes, o);
+            final float[] pl = mFrustrumPlanes;
+            final float mag = (float) Math.sqrt(pl[o]*pl[o] + pl[o+1]*pl[o+1] + pl[o+2]*pl[o+2]);
+            if (mag > 0) {
+                pl[o] /= mag;
+                pl[o+1] /= mag;
+                pl[o+2] /= mag;
+                pl[o+3] /= mag;
+            }
+        }
+    }
+
+    /**
+     * Tests a sphere against the cached frustrum planes.
+     * @param x Center in world coordinates.
+     * @param y Center in world coordinates.
+     * @param z Center in world coordinates.
+     * @param radius Radius.
+     * @return False if sphere is completely outside of frustrum, true otherwise.
+     */
+    public boolean isSphereInFrustrum(float x, float y, float z, float radius) {
+        final float[] pl = mFrustrumPlanes;
+        for (int o = 0; o < PLANE_CNT * 4; o += 4) {
+            if (pl[o]*x + pl[o+1]*y + pl[o+2]*z + pl[o+3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests a box given in local space of an object against the cached
+     * frustrum planes. The box becomes an oriented box in world space, it
+     * is tested exactly, i.e. not via its bounding sphere.
+     * @param toWorld Transformation from local to world space.
+     * @return False if box is completely outside of frustrum, true otherwise.
+     */
+    public boolean isBoxInFrustrum(float[] toWorld, float minX, float minY, float minZ,
+            float maxX, float maxY, float maxZ) {
+        final float[] m = toWorld;
+        final float lx = (minX + maxX) / 2;
+        final float ly = (minY + maxY) / 2;
+        final float lz = (minZ + maxZ) / 2;
+        final float hx = (maxX - minX) / 2;
+        final float hy = (maxY - minY) / 2;
+        final float hz = (maxZ - minZ) / 2;
+        // center in world space
+        final float cx = m[0]*lx + m[4]*ly + m[8]*lz + m[12];
+        final float cy = m[1]*lx + m[5]*ly + m[9]*lz + m[13];
+        final float cz = m[2]*lx + m[6]*ly + m[10]*lz + m[14];
+
+        final float[] pl = mFrustrumPlanes;
+        for (int o = 0; o < PLANE_CNT * 4; o += 4) {
+            final float a = pl[o], b = pl[o+1], c = pl[o+2];
+            // projection of box half axes onto plane normal
+            final float r = hx * Math.abs(a*m[0] + b*m[1] + c*m[2])
+                    + hy * Math.abs(a*m[4] + b*m[5] + c*m[6])
+                    + hz * Math.abs(a*m[8] + b*m[9] + c*m[10]);
+            if (a*cx + b*cy + c*cz + pl[o+3] < -r) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void extractPlane(int plane, float[] out, int o) {
+        final float[] m = mViewProjTransform;
         switch(plane) {
         case FRUSTRUM_LEFT_PLANE_IDX:
             // left pane: row 4 + row 1
-            mFrustrumPlane[0] = mViewProjTransform[3] + mViewProjTransform[0];
-            mFrustrumPlane[1] = mViewProjTransform[7] + mViewProjTransform[4];
-            mFrustrumPlane[2] = mViewProjTransform[11] + mViewProjTransform[8];
-            mFrustrumPlane[3] = mViewProjTransform[15] + mViewProjTransform[12];
+            out[o]   = m[3] + m[0];
+            out[o+1] = m[7] + m[4];
+            out[o+2] = m[11] + m[8];
+            out[o+3] = m[15] + m[12];
             break;
                
         case FRUSTRUM_RIGHT_PLANE_IDX:
             // right pane: row 4 - row 1
-            mFrustrumPlane[0] = mViewProjTransform[3] - mViewProjTransform[0];
-            mFrustrumPlane[1] = mViewProjTransform[7] - mViewProjTransform[4];
-            mFrustrumPlane[2] = mViewProjTransform[11] - mViewProjTransform[8];
-            mFrustrumPlane[3] = mViewProjTransform[15] - mViewProjTransform[12];
+            out[o]   = m[3] - m[0];
+            out[o+1] = m[7] - m[4];
+            out[o+2] = m[11] - m[8];
+            out[o+3] = m[15] - m[12];
             break;
                 
         case FRUSTRUM_TOP_PLANE_IDX:
             // top pane: row 4 - row 2
-            mFrustrumPlane[0] = mViewProjTransform[3] - mViewProjTransform[1];
-            mFrustrumPlane[1] = mViewProjTransform[7] - mViewProjTransform[5];
-            mFrustrumPlane[2] = mViewProjTransform[11] - mViewProjTransform[9];
-            mFrustrumPlane[3] = mViewProjTransform[15] - mViewProjTransform[13];
+            out[o]   = m[3] - m[1];
+            out[o+1] = m[7] - m[5];
+            out[o+2] = m[11] - m[9];
+            out[o+3] = m[15] - m[13];
             break;
             
         case FRUSTRUM_BOTTOM_PLANE_IDX:
             // bottom: row 4 + row 2
-            mFrustrumPlane[0] = mViewProjTransform[3] + mViewProjTransform[1];
-            mFrustrumPlane[1] = mViewProjTransform[7] + mViewProjTransform[5];
-            mFrustrumPlane[2] = mViewProjTransform[11] + mViewProjTransform[9];
-            mFrustrumPlane[3] = mViewProjTransform[15] + mViewProjTransform[13];
+            out[o]   = m[3] + m[1];
+            out[o+1] = m[7] + m[5];
+            out[o+2] = m[11] + m[9];
+            out[o+3] = m[15] + m[13];
             break;
             
         case FRUSTRUM_NEAR_PLANE_IDX:
             // near: row 4 + row 3
-            mFrustrumPlane[0] = mViewProjTransform[3] + mViewProjTransform[2];
-            mFrustrumPlane[1] = mViewProjTransform[7] + mViewProjTransform[6];
-            mFrustrumPlane[2] = mViewProjTransform[11] + mViewProjTransform[10];
-            mFrustrumPlane[3] = mViewProjTransform[15] + mViewProjTransform[14];
+            out[o]   = m[3] + m[2];
+            out[o+1] = m[7] + m[6];
+            out[o+2] = m[11] + m[10];
+            out[o+3] = m[15] + m[14];
             break; 
             
         case FRUSTRUM_FAR_PLANE_IDX:
             // far: row 4 - row 3
-            mFrustrumPlane[0] = mViewProjTransform[3] - mViewProjTransform[2];
-            mFrustrumPlane[1] = mViewProjTransform[7] - mViewProjTransform[6];
-            mFrustrumPlane[2] = mViewProjTransform[11] - mViewProjTransform[10];
-            mFrustrumPlane[3] = mViewProjTransform[15] - mViewProjTransform[14];
+            out[o]   = m[3] - m[2];
+            out[o+1] = m[7] - m[6];
+            out[o+2] = m[11] - m[10];
+            out[o+3] = m[15] - m[14];
             break;
             
         default:
             throw new IllegalArgumentException("Invalid plane index.");
-                
         }
-        
-        VectorAF.normalize(mFrustrumPlane);
-        return VectorAF.dot(p, mFrustrumPlane);
-        
     }
 
-}
\ No newline at end of file
+}
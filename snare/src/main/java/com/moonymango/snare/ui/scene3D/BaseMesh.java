@@ -11,24 +11,31 @@ import com.moonymango.snare.opengl.BufferObj.Target;
 import com.moonymango.snare.opengl.GLObjDescriptor;
 import com.moonymango.snare.opengl.GLObjDescriptor.GLObjType;
 
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 import static android.opengl.GLES20.GL_ARRAY_BUFFER;
 import static android.opengl.GLES20.GL_DYNAMIC_DRAW;
 import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
 import static android.opengl.GLES20.GL_FLOAT;
 import static android.opengl.GLES20.GL_STATIC_DRAW;
-import static android.opengl.GLES20.glBindBuffer;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
+import static android.opengl.GLES20.GL_UNSIGNED_INT;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static com.moonymango.snare.opengl.GLStateCache.glBindBuffer;
+import static com.moonymango.snare.opengl.GLStateCache.glEnableVertexAttribArray;
 import static android.opengl.GLES20.glVertexAttribPointer;
 
 public abstract class BaseMesh extends BaseComponent implements IBufferDataProvider
 {
-    private final GLObjDescriptor mVertexBufferDescr;
-    private BufferObj mVertexBufferObj;
-    private final GLObjDescriptor mIndexBufferDescr;
-    private BufferObj mIndexBufferObj;
+    private final String mName;
+    // one buffer pair per part, see getPartCnt()
+    private GLObjDescriptor[] mVertexBufferDescr;
+    private BufferObj[] mVertexBufferObj;
+    private GLObjDescriptor[] mIndexBufferDescr;
+    private BufferObj[] mIndexBufferObj;
+    private int mPart;
     
     private int mStride;
     private int mNormalOffset;
@@ -39,6 +46,7 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
     private final boolean mUpdatableIndices;
     
     private int mHash;
+    private int mVersion;
     
     /**
      * Constructs a mesh object
@@ -49,8 +57,12 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
     protected BaseMesh(IGame game, String name, boolean updatableVertices,
                        boolean updatableIndices) {
         super(game, ComponentType.MESH);
-        mVertexBufferDescr = new GLObjDescriptor(game, name + ".vertices", GLObjType.BUFFER);
-        mIndexBufferDescr = new GLObjDescriptor(game, name + ".indices", GLObjType.BUFFER);
+        mName = name;
+        mVertexBufferDescr = new GLObjDescriptor[1];
+        mVertexBufferObj = new BufferObj[1];
+        mIndexBufferDescr = new GLObjDescriptor[1];
+        mIndexBufferObj = new BufferObj[1];
+        createDescriptors(0);
         mUpdatableVertices = updatableVertices;
         mUpdatableIndices = updatableIndices;
     }
@@ -68,13 +80,15 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
      * @param num
      */
     protected void updateVertices(int num) {
-        if (mUpdatableVertices) {
-            mVertexBufferObj.update(num);
+        mVersion++;
+        if (mUpdatableVertices && mVertexBufferObj[0] != null) {
+            mVertexBufferObj[0].update(num);
         }
     }
     protected void updateIndices(int num) {
-        if (mUpdatableIndices) {
-            mIndexBufferObj.update(num);
+        mVersion++;
+        if (mUpdatableIndices && mIndexBufferObj[0] != null) {
+            mIndexBufferObj[0].update(num);
         }
     }
         
@@ -85,39 +99,111 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
         mTexOffset = getTexOffset();
         mColorOffset = getColorOffset();
         
-        if (mVertexBufferObj == null) {
-            mVertexBufferObj = (BufferObj) mVertexBufferDescr.getHandle();
-        }
-        if (!mVertexBufferObj.isConfigured()) {
-            mVertexBufferObj.configure(this);
+        final int parts = getPartCnt();
+        if (parts > mVertexBufferDescr.length) {
+            final int old = mVertexBufferDescr.length;
+            mVertexBufferDescr = Arrays.copyOf(mVertexBufferDescr, parts);
+            mVertexBufferObj = Arrays.copyOf(mVertexBufferObj, parts);
+            mIndexBufferDescr = Arrays.copyOf(mIndexBufferDescr, parts);
+            mIndexBufferObj = Arrays.copyOf(mIndexBufferObj, parts);
+            for (int i = old; i < parts; i++) {
+                createDescriptors(i);
+            }
         }
         
-        if (mIndexBufferObj == null) {
-            mIndexBufferObj = (BufferObj) mIndexBufferDescr.getHandle();
-        }
-        if (!mIndexBufferObj.isConfigured()) {
-            mIndexBufferObj.configure(this);
+        for (int i = 0; i < parts; i++) {
+            if (mVertexBufferObj[i] == null) {
+                mVertexBufferObj[i] = (BufferObj) mVertexBufferDescr[i].getHandle();
+            }
+            if (!mVertexBufferObj[i].isConfigured()) {
+                // drawables check isLoaded() before drawing
+                mVertexBufferObj[i].setDeferrable(true);
+                mVertexBufferObj[i].configure(this);
+            }
+            
+            if (mIndexBufferObj[i] == null) {
+                mIndexBufferObj[i] = (BufferObj) mIndexBufferDescr[i].getHandle();
+            }
+            if (!mIndexBufferObj[i].isConfigured()) {
+                mIndexBufferObj[i].setDeferrable(true);
+                mIndexBufferObj[i].configure(this);
+            }
         }
+        mPart = 0;
         
         // calc hash based on vertex attributes
         final int prime = 31;
         mHash = 1;
-        mHash = prime * mHash + mVertexBufferDescr.getQName().hashCode();
-        mHash = prime * mHash + mIndexBufferDescr.getQName().hashCode();
+        mHash = prime * mHash + mVertexBufferDescr[0].getQName().hashCode();
+        mHash = prime * mHash + mIndexBufferDescr[0].getQName().hashCode();
         
     }
 
-    protected void unloadFromGpu() {
-        if (mVertexBufferObj != null) {
-            mVertexBufferDescr.releaseHandle(mVertexBufferObj);
-            mVertexBufferObj = null;
+    /** True when buffers of all parts are in GPU. */
+    public boolean isLoaded() {
+        for (int i = 0; i < mVertexBufferObj.length; i++) {
+            if (mVertexBufferObj[i] == null || !mVertexBufferObj[i].isLoaded()
+                    || mIndexBufferObj[i] == null || !mIndexBufferObj[i].isLoaded()) {
+                return false;
+            }
         }
-        if (mIndexBufferObj != null) {
-            mIndexBufferDescr.releaseHandle(mIndexBufferObj);
-            mIndexBufferObj = null;
+        return true;
+    }
+
+    protected void unloadFromGpu() {
+        for (int i = 0; i < mVertexBufferObj.length; i++) {
+            if (mVertexBufferObj[i] != null) {
+                mVertexBufferDescr[i].releaseHandle(mVertexBufferObj[i]);
+                mVertexBufferObj[i] = null;
+            }
+            if (mIndexBufferObj[i] != null) {
+                mIndexBufferDescr[i].releaseHandle(mIndexBufferObj[i]);
+                mIndexBufferObj[i] = null;
+            }
         }
     }
     
+    /** Buffer names of first part are name.vertices and name.indices. */
+    private void createDescriptors(int part) {
+        final String suffix = part == 0 ? "" : "." + part;
+        mVertexBufferDescr[part] = new GLObjDescriptor(mGame, 
+                mName + ".vertices" + suffix, GLObjType.BUFFER);
+        mIndexBufferDescr[part] = new GLObjDescriptor(mGame, 
+                mName + ".indices" + suffix, GLObjType.BUFFER);
+    }
+    
+    /**
+     * Number of parts of the mesh. Each part has its own vertex and index
+     * buffer and is drawn separately, see {@link #selectPart(int)}. 
+     * Default is one part.
+     */
+    public int getPartCnt() {
+        return 1;
+    }
+    
+    /**
+     * Selects part used by bindBuffers(), getIndexCount() and 
+     * getIndexOffset(). Drawables call this for each part before 
+     * rendering.
+     */
+    public void selectPart(int part) {
+        mPart = part;
+    }
+    
+    public int getSelectedPart() {
+        return mPart;
+    }
+    
+    /** Index type for glDrawElements, GL_UNSIGNED_SHORT by default. */
+    public int getIndexType() {
+        return GL_UNSIGNED_SHORT;
+    }
+    
+    /** Size of an index in bytes, to calculate offsets for glDrawElements. */
+    public int getIndexSize() {
+        return getIndexType() == GL_UNSIGNED_INT ? Integer.SIZE/8 : Short.SIZE/8;
+    }
+    
     /**
      * Returns vertex data when vertex buffer is to be created.
      * @return
@@ -128,6 +214,21 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
      * @return
      */
     protected abstract ShortBuffer getIndices();
+    /**
+     * Returns vertex data of a part when its vertex buffer is to be 
+     * created. Meshes with more than one part have to override this.
+     */
+    protected FloatBuffer getVertices(int part) {
+        return getVertices();
+    }
+    /**
+     * Returns indices of a part when its index buffer is to be created,
+     * {@link java.nio.IntBuffer} for GL_UNSIGNED_INT indices. Meshes with
+     * more than one part or 32 bit indices have to override this.
+     */
+    protected Buffer getIndices(int part) {
+        return getIndices();
+    }
     /** Returns stride in bytes. Called after configureBuffers() */
     protected abstract int getStride();
     /** Returns offset of normals in bytes. Called after configureBuffers() */
@@ -139,8 +240,8 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
     
     public void bindBuffers(int positionLocation, int normalLocation,
             int textureLocation, int colorLocation) {
-        glBindBuffer(GL_ARRAY_BUFFER, mVertexBufferObj.getID());
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, mIndexBufferObj.getID());
+        glBindBuffer(GL_ARRAY_BUFFER, mVertexBufferObj[mPart].getID());
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, mIndexBufferObj[mPart].getID());
         if (positionLocation >= 0) {
             // floats per vertex
             glVertexAttribPointer(positionLocation, 3, 
@@ -174,23 +275,86 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
         return null;
     }
 
+    /** 
+     * Incremented whenever vertex or index data changes, see 
+     * updateVertices() and updateIndices().
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /** Returns number of vertices in vertex buffer data. */
+    public int getVertexCnt() {
+        return getVertices().capacity() * Float.SIZE/8 / getStride();
+    }
+
+    /**
+     * Copies vertex data to an array, e.g. to merge several meshes into
+     * one buffer. Each vertex is written as {x, y, z, nx, ny, nz, u, v},
+     * missing normals and texture coords are set to zero.
+     * @param dst Target array, must hold getVertexCnt() vertices.
+     * @param stride Number of floats between vertices in target array.
+     */
+    public void copyVertices(float[] dst, int stride) {
+        checkSinglePart();
+        final FloatBuffer src = getVertices();
+        final int srcStride = getStride() * 8/Float.SIZE;
+        final int normal = hasNormals() ? getNormalOffset() * 8/Float.SIZE : -1;
+        final int tex = hasTexCoords() ? getTexOffset() * 8/Float.SIZE : -1;
+        final int cnt = src.capacity() / srcStride;
+        for (int v = 0; v < cnt; v++) {
+            final int s = v * srcStride;
+            final int d = v * stride;
+            for (int i = 0; i < 3; i++) {
+                dst[d + i] = src.get(s + i);
+                dst[d + 3 + i] = normal < 0 ? 0 : src.get(s + normal + i);
+            }
+            dst[d + 6] = tex < 0 ? 0 : src.get(s + tex);
+            dst[d + 7] = tex < 0 ? 0 : src.get(s + tex + 1);
+        }
+    }
+
+    /**
+     * Copies the indices to draw (see getIndexCount() and getIndexOffset())
+     * to an array.
+     * @param dst Target array, must hold getIndexCount() indices.
+     */
+    public void copyIndices(short[] dst) {
+        checkSinglePart();
+        final ShortBuffer src = getIndices();
+        final int offset = getIndexOffset();
+        final int cnt = getIndexCount();
+        for (int i = 0; i < cnt; i++) {
+            dst[i] = src.get(offset + i);
+        }
+    }
+
+    private void checkSinglePart() {
+        if (getPartCnt() > 1 || getIndexType() != GL_UNSIGNED_SHORT) {
+            throw new UnsupportedOperationException("Mesh " + mName + 
+                    " has multiple parts or 32 bit indices.");
+        }
+    }
+
     @Override
     public final void getConfigurationSetup(String name,
             IBufferConfigurationSetup setup) {
         
-        if (name.equals(mVertexBufferDescr.getQName())) {
-            setup.setTarget(Target.ARRAY);
-            setup.enableAutoSize(true);
-            setup.setUsage(mUpdatableVertices ? GL_DYNAMIC_DRAW : GL_STATIC_DRAW);
-            setup.setBuffer(getVertices());
-            return;
-        }
-        if (name.equals(mIndexBufferDescr.getQName())) {
-            setup.setTarget(Target.ELEMENT);
-            setup.enableAutoSize(true);
-            setup.setUsage(mUpdatableIndices ? GL_DYNAMIC_DRAW : GL_STATIC_DRAW);
-            setup.setBuffer(getIndices());
-            return;
+        for (int i = 0; i < mVertexBufferDescr.length; i++) {
+            if (name.equals(mVertexBufferDescr[i].getQName())) {
+                setup.setTarget(Target.ARRAY);
+                setup.enableAutoSize(true);
+                setup.setUsage(mUpdatableVertices ? GL_DYNAMIC_DRAW : GL_STATIC_DRAW);
+                setup.setBuffer(getVertices(i));
+                return;
+            }
+            if (name.equals(mIndexBufferDescr[i].getQName())) {
+                setup.setTarget(Target.ELEMENT);
+                setup.enableAutoSize(true);
+                setup.setUsage(mUpdatableIndices ? GL_DYNAMIC_DRAW : GL_STATIC_DRAW);
+                setup.setBuffer(getIndices(i));
+                return;
+            }
         }
         throw new IllegalArgumentException("Unkown descriptor name.");
         
@@ -198,11 +362,12 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
     
     @Override
     public final void getUpdateSetup(String name, int pass, IBufferUpdateSetup setup) {
-       if (name.equals(mVertexBufferDescr.getQName())) {
+        // updatable meshes have a single part
+        if (name.equals(mVertexBufferDescr[0].getQName())) {
             getUpdateSetup(false, setup, pass);
             return;
         }
-        if (name.equals(mIndexBufferDescr.getQName())) {
+        if (name.equals(mIndexBufferDescr[0].getQName())) {
             getUpdateSetup(true, setup, pass);
             return;
         }
@@ -258,7 +423,7 @@ public abstract class BaseMesh extends BaseComponent implements IBufferDataProvi
      */
     //public abstract void bindBuffers(int positionLocation, int normalLocation, 
       //      int textureLocation, int colorLocation);
-    /** Returns number of indices to draw. */
+    /** Returns number of indices to draw (of selected part). */
     public abstract int getIndexCount();
     /** 
      * Returns offset into index buffer object. 
@@ -5,6 +5,7 @@ import com.moonymango.snare.game.GameObj;
 import com.moonymango.snare.game.GameObj.ComponentType;
 import com.moonymango.snare.game.GameObj.IComponent;
 import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.opengl.RenderOptions;
 import com.moonymango.snare.ui.scene3D.BaseEffect.RenderContext;
 import com.moonymango.snare.ui.scene3D.Scene3D.DrawBundle;
 
@@ -31,6 +32,8 @@ public abstract class BaseSceneDrawable extends BaseSnareClass implements ICompo
     protected Material mMat;
     
     private DrawBundle[] mBundle = new DrawBundle[Scene3D.MAX_CTX_PER_DRAWABLE];
+    /** Index in culling data of scene, -1 if not culled by tree. */
+    int mCullIdx = -1;
 
     public BaseSceneDrawable(IGame game, RenderPass pass)
     {
@@ -64,9 +67,17 @@ public abstract class BaseSceneDrawable extends BaseSnareClass implements ICompo
         return mBundle;
     }
 
+    /**
+     * Distance between camera and origin of game object in world space,
+     * used for depth sorting.
+     */
     public float getDistanceToCamera(BaseCamera camera) {
-        // TODO prioC: distance to camera for alpha pass sorting
-        return 0;
+        final float[] c = camera.getPosition();
+        final float[] m = mGameObj.getToWorld();
+        final float dx = m[12] - c[0];
+        final float dy = m[13] - c[1];
+        final float dz = m[14] - c[2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
     }
 
     /**
@@ -97,6 +108,15 @@ public abstract class BaseSceneDrawable extends BaseSnareClass implements ICompo
     public boolean isVisible() {
         return mIsVisible;
     }
+    
+    /**
+     * Mesh and textures may be loaded to GPU some frames after 
+     * initialization, see {@link RenderOptions#GL_UPLOAD_BUDGET}. 
+     * Drawables must not be drawn before.
+     */
+    public boolean isLoaded() {
+        return (mMesh == null || mMesh.isLoaded()) && (mMat == null || mMat.isLoaded());
+    }
 
     public void onTraverse(Object userData) {}
 
@@ -190,6 +190,16 @@ public class Material extends BaseComponent implements IColorSeqListener {
         }
     }
 
+    /** True when all textures are in GPU. */
+    public boolean isLoaded() {
+        for (int i = 0; i < mTexUnits.length; i++) {
+            if (mTexUnits[i] != null && !mTexUnits[i].isLoaded()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void unloadFromGpu() {
         for (int i = 0; i < mTexUnits.length; i++) {
             if (mTexUnits[i] != null) {
@@ -221,6 +221,7 @@ public class PerspectiveCamera extends BaseCamera implements IComponent,
         
         if (mUpdateProjection || objChanged) {
             MatrixAF.multiplyMM(mViewProjTransform, 0, mProjectionTransform, 0, mViewTransform, 0);
+            updateFrustrumPlanes();
             mUpdateProjection = false;
         }
     }
@@ -0,0 +1,416 @@
+package com.moonymango.snare.ui.scene3D;
+
+import com.moonymango.snare.opengl.GLState;
+import com.moonymango.snare.ui.scene3D.BaseEffect.RenderContext;
+import com.moonymango.snare.ui.scene3D.Scene3D.DrawBundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Draw bundles of one render pass, ordered by a packed 64 bit sort key
+ * (see {@link #makeKey(int, int, int, int, int, int)}). Keys are kept in
+ * a primitive array, which is sorted by radix sort when many bundles were
+ * added since the last sort. A few added bundles are inserted into the
+ * sorted array instead. Removing bundles keeps the order.
+ *
+ * For depth sorting the scene replaces the keys in the queue each frame
+ * (see {@link #setKey(int, long)}), the bundle itself keeps its key
+ * without depth.
+ *
+ * Ids for shader programs, GL states and materials are assigned by
+ * {@link KeyRegistry}. Ids are released with the last bundle using them
+ * and reused afterwards. In case the number of ids in use exceeds the bits
+ * reserved in the key, different objects share ids. That only affects 
+ * grouping, not correctness, since the scene checks for context and 
+ * material changes anyway.
+ */
+public class RenderQueue {
+
+    //---------------------------------------------------------
+    // static
+    //---------------------------------------------------------
+    // key layout, from most to least significant bits
+    private static final int PASS_BITS = 3;
+    private static final int ORDINAL_BITS = 2;
+    private static final int PROGRAM_BITS = 12;
+    private static final int STATE_BITS = 10;
+    private static final int MATERIAL_BITS = 20;
+    private static final int DEPTH_BITS = 16;
+
+    private static final int DEPTH_SHIFT = 0;
+    private static final int MATERIAL_SHIFT = DEPTH_SHIFT + DEPTH_BITS;
+    private static final int STATE_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+    private static final int PROGRAM_SHIFT = STATE_SHIFT + STATE_BITS;
+    private static final int ORDINAL_SHIFT = PROGRAM_SHIFT + PROGRAM_BITS;
+    private static final int PASS_SHIFT = ORDINAL_SHIFT + ORDINAL_BITS;
+    // depth in front of all other criteria
+    private static final int MAJOR_DEPTH_SHIFT = PASS_SHIFT + PASS_BITS - DEPTH_BITS;
+
+    /** Max. value of depth part of the key. */
+    public static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+    /** Up to this number of added bundles get inserted instead of sorting. */
+    private static final int INSERT_LIMIT = 16;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Packs sort criteria into a key. Bundles are sorted by pass, ordinal
+     * (context with lower ordinal is guaranteed to be rendered before
+     * higher ordinal), shader program, GL state, material and depth.
+     */
+    public static long makeKey(int pass, int ordinal, int program, int state,
+            int material, int depth)
+    {
+        return pack(pass, PASS_BITS, PASS_SHIFT)
+                | pack(ordinal, ORDINAL_BITS, ORDINAL_SHIFT)
+                | pack(program, PROGRAM_BITS, PROGRAM_SHIFT)
+                | pack(state, STATE_BITS, STATE_SHIFT)
+                | pack(material, MATERIAL_BITS, MATERIAL_SHIFT)
+                | pack(depth, DEPTH_BITS, DEPTH_SHIFT);
+    }
+
+    /** Replaces depth part of a key. */
+    public static long setDepth(long key, int depth) {
+        return (key & ~pack(-1, DEPTH_BITS, DEPTH_SHIFT))
+                | pack(depth, DEPTH_BITS, DEPTH_SHIFT);
+    }
+
+    /**
+     * Turns a key into a key for back-to-front sorting, i.e. depth
+     * becomes the most significant criterion and larger depths come
+     * first. The remaining criteria keep their order, so bundles of same
+     * depth keep their ordinal order.
+     */
+    public static long makeBackToFrontKey(long key, int depth) {
+        final int d = Math.max(0, Math.min(depth, MAX_DEPTH));
+        return ((long) (MAX_DEPTH - d) << MAJOR_DEPTH_SHIFT) | (key >>> DEPTH_BITS);
+    }
+
+    private static long pack(int value, int bits, int shift) {
+        return ((long) value & ((1L << bits) - 1)) << shift;
+    }
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    private DrawBundle[] mBundles = new DrawBundle[DEFAULT_CAPACITY];
+    private long[] mKeys = new long[DEFAULT_CAPACITY];
+    private int mCnt;
+    private int mSortedCnt;     // bundles in front that are sorted
+
+    // radix sort buffers, allocated on demand
+    private DrawBundle[] mTmpBundles;
+    private long[] mTmpKeys;
+    private int[] mCounts;
+
+    private long mSortTime;
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    /**
+     * Adds bundle using its current sort key. The bundle will be
+     * in order after next call to {@link #sort()}.
+     */
+    public void add(DrawBundle b) {
+        if (mCnt == mKeys.length) {
+            mBundles = Arrays.copyOf(mBundles, 2 * mCnt);
+            mKeys = Arrays.copyOf(mKeys, 2 * mCnt);
+        }
+        mBundles[mCnt] = b;
+        mKeys[mCnt++] = b.mSortKey;
+    }
+
+    /**
+     * Removes bundle, order of remaining bundles is kept.
+     * @return False if bundle is not in queue.
+     */
+    public boolean remove(DrawBundle b) {
+        for (int i = mCnt - 1; i >= 0; i--) {
+            if (mBundles[i] == b) {
+                final int tail = mCnt - i - 1;
+                System.arraycopy(mBundles, i + 1, mBundles, i, tail);
+                System.arraycopy(mKeys, i + 1, mKeys, i, tail);
+                mBundles[--mCnt] = null;
+                if (i < mSortedCnt) {
+                    mSortedCnt--;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all bundles which were not found visible in given frame
+     * (see {@link DrawBundle#mVisibleFrame}), order of remaining bundles
+     * is kept.
+     * @return Number of removed bundles.
+     */
+    public int removeInvisible(int frame) {
+        int cnt = 0;
+        int sortedCnt = 0;
+        for (int i = 0; i < mCnt; i++) {
+            if (mBundles[i].mVisibleFrame == frame) {
+                mBundles[cnt] = mBundles[i];
+                mKeys[cnt] = mKeys[i];
+                cnt++;
+                if (i < mSortedCnt) {
+                    sortedCnt++;
+                }
+            }
+        }
+        final int removed = mCnt - cnt;
+        Arrays.fill(mBundles, cnt, mCnt, null);
+        mCnt = cnt;
+        mSortedCnt = sortedCnt;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(mBundles, 0, mCnt, null);
+        mCnt = 0;
+        mSortedCnt = 0;
+    }
+
+    public int size() {
+        return mCnt;
+    }
+
+    public DrawBundle get(int idx) {
+        return mBundles[idx];
+    }
+
+    public long getKey(int idx) {
+        return mKeys[idx];
+    }
+
+    /**
+     * Replaces key of a bundle in queue. The queue is in order after next
+     * call to {@link #sort()}.
+     */
+    public void setKey(int idx, long key) {
+        mKeys[idx] = key;
+        if (idx < mSortedCnt) {
+            mSortedCnt = idx;
+        }
+    }
+
+    /**
+     * Brings bundles added since last sort in order.
+     */
+    public void sort() {
+        final int added = mCnt - mSortedCnt;
+        if (added == 0) {
+            return;
+        }
+        final long start = System.nanoTime();
+        if (added <= INSERT_LIMIT) {
+            for (int i = mSortedCnt; i < mCnt; i++) {
+                insert(i);
+            }
+        } else {
+            radixSort();
+        }
+        mSortedCnt = mCnt;
+        mSortTime = System.nanoTime() - start;
+    }
+
+    /** Time in ns spent by last sort which actually had to do something. */
+    public long getLastSortTime() {
+        return mSortTime;
+    }
+
+    /** Moves element at index into sorted range in front of it. */
+    private void insert(int idx) {
+        final long key = mKeys[idx];
+        final DrawBundle b = mBundles[idx];
+        // first element with greater key, keeps equal keys in insertion order
+        int lo = 0;
+        int hi = idx;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (mKeys[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        System.arraycopy(mKeys, lo, mKeys, lo + 1, idx - lo);
+        System.arraycopy(mBundles, lo, mBundles, lo + 1, idx - lo);
+        mKeys[lo] = key;
+        mBundles[lo] = b;
+    }
+
+    /**
+     * Stable LSD radix sort over 8 bit digits. Digits that are equal for
+     * all keys are skipped.
+     */
+    private void radixSort() {
+        final int n = mCnt;
+        if (mTmpKeys == null || mTmpKeys.length < n) {
+            mTmpKeys = new long[mKeys.length];
+            mTmpBundles = new DrawBundle[mKeys.length];
+        }
+        if (mCounts == null) {
+            mCounts = new int[RADIX];
+        }
+        // keys are non-negative, so sorting unsigned is correct
+        long or = 0;
+        long and = -1;
+        for (int i = 0; i < n; i++) {
+            or |= mKeys[i];
+            and &= mKeys[i];
+        }
+        final long varying = or ^ and;
+
+        long[] srcKeys = mKeys;
+        DrawBundle[] srcBundles = mBundles;
+        long[] dstKeys = mTmpKeys;
+        DrawBundle[] dstBundles = mTmpBundles;
+        final int[] counts = mCounts;
+        for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+            if (((varying >>> shift) & (RADIX - 1)) == 0) {
+                continue;
+            }
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(int) ((srcKeys[i] >>> shift) & (RADIX - 1))]++;
+            }
+            int sum = 0;
+            for (int d = 0; d < RADIX; d++) {
+                final int c = counts[d];
+                counts[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                final int d = (int) ((srcKeys[i] >>> shift) & (RADIX - 1));
+                final int pos = counts[d]++;
+                dstKeys[pos] = srcKeys[i];
+                dstBundles[pos] = srcBundles[i];
+            }
+            final long[] tk = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tk;
+            final DrawBundle[] tb = srcBundles;
+            srcBundles = dstBundles;
+            dstBundles = tb;
+        }
+        if (srcKeys != mKeys) {
+            // result ended up in temporary arrays, swap them
+            mTmpKeys = mKeys;
+            mTmpBundles = mBundles;
+            mKeys = srcKeys;
+            mBundles = srcBundles;
+        }
+        Arrays.fill(mTmpBundles, null);
+    }
+
+    // ---------------------------------------------------------
+    // classes + interfaces
+    // ---------------------------------------------------------
+    /**
+     * Assigns small ids to shader programs, GL states and materials,
+     * which are packed into sort keys. Each bundle holds its ids until 
+     * {@link #release(DrawBundle)} is called or its key is updated.
+     */
+    public static class KeyRegistry
+    {
+        private final IdMap<String> mPrograms = new IdMap<String>();
+        private final IdMap<GLState> mStates = new IdMap<GLState>();
+        private final IdMap<Material> mMaterials = new IdMap<Material>();
+
+        /** Calculates sort key of bundle and stores it in the bundle. */
+        public long updateKey(DrawBundle b, int depth) {
+            final RenderContext c = b.getContext();
+            final Material m = b.getMaterial();
+            // acquire before release, so unchanged objects keep their ids
+            final int program = mPrograms.acquire(c.getName());
+            final int state = mStates.acquire(c.getGlState());
+            final int material = m == null ? 0 : mMaterials.acquire(m);
+            release(b);
+            b.mProgramId = program;
+            b.mStateId = state;
+            b.mMaterialId = material;
+            b.mSortKey = makeKey(b.getPass().ordinal(), b.getOrdinal(),
+                    program, state, material, depth);
+            return b.mSortKey;
+        }
+
+        /** Releases ids of a bundle removed from the scene. */
+        public void release(DrawBundle b) {
+            mPrograms.release(b.mProgramId);
+            mStates.release(b.mStateId);
+            mMaterials.release(b.mMaterialId);
+            b.mProgramId = 0;
+            b.mStateId = 0;
+            b.mMaterialId = 0;
+        }
+
+        /** Number of ids in use, i.e. programs, states and materials. */
+        public int getIdCnt() {
+            return mPrograms.size() + mStates.size() + mMaterials.size();
+        }
+    }
+
+    /** Ids of objects in use, counted by users. */
+    private static class IdMap<T>
+    {
+        private final HashMap<T, Integer> mIds = new HashMap<T, Integer>();
+        // objects and user count by id, 0 is reserved for no object
+        private final ArrayList<T> mObjects = new ArrayList<T>();
+        private int[] mUseCnts = new int[16];
+        // released ids
+        private int[] mFree = new int[16];
+        private int mFreeCnt;
+
+        IdMap() {
+            mObjects.add(null);
+        }
+
+        int acquire(T obj) {
+            final Integer id = mIds.get(obj);
+            int i;
+            if (id != null) {
+                i = id;
+            } else if (mFreeCnt > 0) {
+                i = mFree[--mFreeCnt];
+                mObjects.set(i, obj);
+                mIds.put(obj, i);
+            } else {
+                i = mObjects.size();
+                mObjects.add(obj);
+                if (i == mUseCnts.length) {
+                    mUseCnts = Arrays.copyOf(mUseCnts, 2 * i);
+                }
+                mIds.put(obj, i);
+            }
+            mUseCnts[i]++;
+            return i;
+        }
+
+        void release(int id) {
+            if (id == 0 || --mUseCnts[id] > 0) {
+                return;
+            }
+            final T obj = mObjects.get(id);
+            final Integer mapped = mIds.get(obj);
+            if (mapped != null && mapped == id) {
+                mIds.remove(obj);
+            }
+            mObjects.set(id, null);
+            if (mFreeCnt == mFree.length) {
+                mFree = Arrays.copyOf(mFree, 2 * mFreeCnt);
+            }
+            mFree[mFreeCnt++] = id;
+        }
+
+        int size() {
+            return mIds.size();
+        }
+    }
+}
@@ -8,10 +8,14 @@ import com.moonymango.snare.events.IGameObjNewEvent;
 import com.moonymango.snare.events.IGameObjTouchEvent;
 import com.moonymango.snare.events.ITouchEvent;
 import com.moonymango.snare.game.BaseSnareClass;
+import com.moonymango.snare.game.FrameProfiler;
 import com.moonymango.snare.game.GameObj;
 import com.moonymango.snare.game.GameObj.ComponentType;
 import com.moonymango.snare.game.GameObj.GameObjLayer;
 import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.physics.BaseBoundingVolume;
+import com.moonymango.snare.physics.BaseSimpleBoundingVolume;
+import com.moonymango.snare.physics.BoundingVolumeTree;
 import com.moonymango.snare.physics.Raycast;
 import com.moonymango.snare.ui.IScreenElement;
 import com.moonymango.snare.ui.PlayerGameView;
@@ -20,7 +24,7 @@ import com.moonymango.snare.util.MatrixAF;
 import com.moonymango.snare.util.MatrixStack;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 
 /**
  * 3D scene. When the scene is attached to a view it listens to 
@@ -30,10 +34,23 @@ import java.util.Collections;
  * 
  * The scene manages the drawables in sorted lists, one for each render 
  * pass. During draw() those lists are iterated and the drawables gets
- * drawn. The drawables are sorted by render context and material. During
+ * drawn. The drawables are sorted by render context and material using
+ * packed sort keys, see {@link RenderQueue}. Drawables of the alpha pass
+ * are sorted back-to-front by their distance to the camera each frame,
+ * drawables of the other passes optionally front-to-back within their
+ * render context and material (see {@link Scene3DOptions#FRONT_TO_BACK}).
+ * During
  * draw iteration the scene checks if a drawable belongs to a new render
  * context or material and performs a render context switch or binds the
  * necessary textures.
+ *
+ * With {@link Scene3DOptions#ENABLE_FRUSTRUM_CULLING} the scene keeps the
+ * bounding volumes of its drawables in a {@link BoundingVolumeTree}. Once
+ * per frame the tree is queried for volumes within the camera's frustrum
+ * and the bundles of those drawables are collected into per pass lists of
+ * visible bundles, so draw() iterates visible bundles only. The lists are
+ * kept between frames, only bundles which enter or leave the frustrum are
+ * added or removed, so few of them need to be sorted again.
  */
 public class Scene3D extends BaseSnareClass implements IScreenElement, IEventListener {
     
@@ -47,15 +64,40 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
     private final ArrayList<Light> mDirectionalLights = new ArrayList<Light>();
     private final ArrayList<Light> mPointLights = new ArrayList<Light>();
     private final ArrayList<Light> mSpotLights = new ArrayList<Light>();
-    // one separate list of draw bundles for each render pass
-    private final ArrayList<ArrayList<DrawBundle>> mPasses = 
-            new ArrayList<ArrayList<DrawBundle>>();
-    private boolean[] mListDirty;
+    // one separate queue of draw bundles for each render pass
+    private final RenderQueue[] mPasses = new RenderQueue[RenderPass.COUNT];
+    private final RenderQueue.KeyRegistry mKeys = new RenderQueue.KeyRegistry();
     
     private final MatrixStack mViewTransformStack;
     private final GameObjLayer mLayerMask;
         
     private final float[] mCompleteTransform = new float[16];
+
+    // frustrum culling, drawables with simple bounding volume are kept in
+    // the tree, the remaining ones in a separate list
+    private final boolean mCulling;
+    private final BoundingVolumeTree mCullTree;
+    private final ArrayList<BaseSimpleBoundingVolume> mCullVolumes =
+            new ArrayList<BaseSimpleBoundingVolume>();
+    private int[] mCullLeaves = new int[16];
+    private int[] mCullVersions = new int[16];
+    private BaseSceneDrawable[] mCullDrawables = new BaseSceneDrawable[16];
+    private final ArrayList<BaseSceneDrawable> mUnbounded =
+            new ArrayList<BaseSceneDrawable>();
+    private final ArrayList<BaseSimpleBoundingVolume> mVisibleVolumes =
+            new ArrayList<BaseSimpleBoundingVolume>();
+    // visible bundles for each render pass, see DrawBundle.mVisibleFrame
+    private final RenderQueue[] mVisible;
+    private int mCullFrame = 1;
+
+    // depth sorting
+    private final boolean mFrontToBack;
+    private float[] mDistances = new float[64];
+
+    // statistics of last draw()
+    private int mBundleCnt;
+    private int mCulledCnt;
+    private int mStateChangeCnt;
         
     /**
      * Constructs scene using default layer mask.
@@ -83,9 +125,18 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
         
         // create collections for drawables
         for (int i = 0; i < RenderPass.COUNT; i++) {
-            mPasses.add(new ArrayList<DrawBundle>());
+            mPasses[i] = new RenderQueue();
+        }
+
+        mFrontToBack = game.getSettings().SCENE_OPTIONS.FRONT_TO_BACK;
+        mCulling = game.getSettings().SCENE_OPTIONS.ENABLE_FRUSTRUM_CULLING;
+        mCullTree = mCulling ? new BoundingVolumeTree() : null;
+        mVisible = mCulling ? new RenderQueue[RenderPass.COUNT] : null;
+        if (mCulling) {
+            for (int i = 0; i < RenderPass.COUNT; i++) {
+                mVisible[i] = new RenderQueue();
+            }
         }
-        mListDirty = new boolean[RenderPass.COUNT];
     }
       
     public void setCamera(BaseCamera camera) {
@@ -171,11 +222,11 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
             for (int i = 0; i < len; i++) {
                 if (b[i].mContext == null)
                     break;
-                final int passIdx = b[i].mPass.ordinal(); 
-                final ArrayList<DrawBundle> lst = 
-                        mPasses.get(passIdx);
-                lst.add(b[i]);    
-                mListDirty[passIdx] = true;
+                mKeys.updateKey(b[i], 0);
+                mPasses[b[i].mPass.ordinal()].add(b[i]);
+            }
+            if (mCulling) {
+                addToCulling(obj, d);
             }
         }
         
@@ -206,9 +257,15 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
             for (int i = 0; i < b.length; i++) {
                 if (b[i].mContext == null)
                    break;
-                final ArrayList<DrawBundle> lst =
-                        mPasses.get(b[i].mPass.ordinal());
-                lst.remove(b[i]);
+                mPasses[b[i].mPass.ordinal()].remove(b[i]);
+                mKeys.release(b[i]);
+                if (mCulling && b[i].mVisibleFrame == mCullFrame) {
+                    mVisible[b[i].mPass.ordinal()].remove(b[i]);
+                }
+                b[i].mVisibleFrame = 0;
+            }
+            if (mCulling) {
+                removeFromCulling(d);
             }
         }
         
@@ -227,6 +284,102 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
         }
     }
     
+    private void addToCulling(GameObj obj, BaseSceneDrawable d) {
+        final BaseBoundingVolume bv = (BaseBoundingVolume)
+                obj.getComponent(ComponentType.BOUNDING_VOLUME);
+        if (!(bv instanceof BaseSimpleBoundingVolume)) {
+            mUnbounded.add(d);
+            return;
+        }
+        final BaseSimpleBoundingVolume sbv = (BaseSimpleBoundingVolume) bv;
+        final int idx = mCullVolumes.size();
+        if (idx == mCullLeaves.length) {
+            mCullLeaves = Arrays.copyOf(mCullLeaves, idx * 2);
+            mCullVersions = Arrays.copyOf(mCullVersions, idx * 2);
+            mCullDrawables = Arrays.copyOf(mCullDrawables, idx * 2);
+        }
+        mCullVolumes.add(sbv);
+        mCullLeaves[idx] = mCullTree.add(sbv);
+        mCullVersions[idx] = obj.getTransformVersion();
+        mCullDrawables[idx] = d;
+        d.mCullIdx = idx;
+    }
+
+    private void removeFromCulling(BaseSceneDrawable d) {
+        final int idx = d.mCullIdx;
+        if (idx < 0) {
+            mUnbounded.remove(d);
+            return;
+        }
+        mCullTree.remove(mCullLeaves[idx]);
+        // move last entry into gap
+        final int last = mCullVolumes.size() - 1;
+        mCullVolumes.set(idx, mCullVolumes.get(last));
+        mCullVolumes.remove(last);
+        mCullLeaves[idx] = mCullLeaves[last];
+        mCullVersions[idx] = mCullVersions[last];
+        mCullDrawables[idx] = mCullDrawables[last];
+        mCullDrawables[idx].mCullIdx = idx;
+        mCullDrawables[last] = null;
+        d.mCullIdx = -1;
+    }
+
+    /**
+     * Updates the lists of visible bundles: bundles of drawables which
+     * entered the camera's frustrum are added, the ones of drawables which
+     * left it are removed. Camera has to be prepared for drawing already.
+     */
+    private void cull() {
+        // update bounds of moved objects
+        final int vcnt = mCullVolumes.size();
+        for (int i = 0; i < vcnt; i++) {
+            final int version = mCullVolumes.get(i).getGameObj().getTransformVersion();
+            if (version != mCullVersions[i]) {
+                mCullTree.move(mCullLeaves[i]);
+                mCullVersions[i] = version;
+            }
+        }
+
+        mCullFrame++;
+        mVisibleVolumes.clear();
+        mCullTree.cull(mCamera, mVisibleVolumes);
+        for (int i = mVisibleVolumes.size() - 1; i >= 0; i--) {
+            final BaseSceneDrawable d = (BaseSceneDrawable) mVisibleVolumes.get(i)
+                    .getGameObj().getComponent(ComponentType.RENDERING);
+            addVisible(d);
+        }
+        for (int i = mUnbounded.size() - 1; i >= 0; i--) {
+            final BaseSceneDrawable d = mUnbounded.get(i);
+            final BaseBoundingVolume bv = (BaseBoundingVolume)
+                    d.getGameObj().getComponent(ComponentType.BOUNDING_VOLUME);
+            if (bv == null || bv.isInFrustrum(mCamera)) {
+                addVisible(d);
+            }
+        }
+
+        // entered bundles get sorted in draw()
+        int total = 0;
+        for (int i = 0; i < RenderPass.COUNT; i++) {
+            mVisible[i].removeInvisible(mCullFrame);
+            total += mPasses[i].size() - mVisible[i].size();
+        }
+        mCulledCnt = total;
+    }
+
+    private void addVisible(BaseSceneDrawable d) {
+        final DrawBundle[] b = d.getBundles();
+        final int len = Math.min(b.length, MAX_CTX_PER_DRAWABLE);
+        for (int i = 0; i < len; i++) {
+            if (b[i].mContext == null)
+                break;
+            if (b[i].mVisibleFrame < mCullFrame - 1) {
+                // not visible in last frame, so not in list yet
+                mVisible[b[i].mPass.ordinal()].add(b[i]);
+            }
+            b[i].mVisibleFrame = mCullFrame;
+        }
+    }
+
     /** Returns the number of ambient lights in the scene. */
     public int getAmbientLightCnt() {
         return mAmbientLights.size();
@@ -279,13 +432,19 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
         if (mCamera == null) {
             return;
         }
+        final FrameProfiler profiler = mGame.getProfiler();
+        profiler.begin(FrameProfiler.TRACK_RENDER, FrameProfiler.SCENE);
         
         mCamera.onPreDraw();  
         mViewTransformStack.reset();
+        mBundleCnt = 0;
+        mCulledCnt = 0;
+        mStateChangeCnt = 0;
         mViewTransformStack.pushMatrix(mCamera.getViewTransform());
+        if (mCulling) {
+            cull();
+        }
         
-        // TODO prioB: sort drawables by distance to camera 
-        // (e.g. for correct alpha pass)
         RenderContext actualCtx = null;
         Material actualMat = null;
 
@@ -293,12 +452,18 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
         do
         {
             final int po = pass.ordinal();
-            final ArrayList<DrawBundle> l = mPasses.get(po);
-            // group drawables by render context and material if list is dirty
-            if (mListDirty[po]) {
-                Collections.sort(l);
-                mListDirty[po] = false;
+            final RenderQueue l = mCulling ? mVisible[po] : mPasses[po];
+            profiler.begin(FrameProfiler.TRACK_RENDER, FrameProfiler.SORT);
+            if (pass == RenderPass.ALPHA) {
+                sortByDepth(l, true);
+            } else if (mFrontToBack) {
+                sortByDepth(l, false);
+            } else {
+                // group drawables by render context and material, only
+                // bundles added since last frame need to be sorted
+                l.sort();
             }
+            profiler.end(FrameProfiler.TRACK_RENDER);
 
             final int dcnt = l.size();
             for (int i = 0; i < dcnt; i++) {
@@ -313,17 +478,66 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
                     }
                     actualCtx = db.mContext;
                     actualCtx.begin();
+                    mStateChangeCnt++;
                 }
                 // check for material change
                 if (db.mMaterial != null && !db.mMaterial.equals(actualMat)) {
                     actualMat = db.mMaterial;
                     actualMat.bindTextures();
+                    mStateChangeCnt++;
                 }
                 db.mDrawable.draw(this, db, pass);
+                mBundleCnt++;
             }
 
             pass = pass.getNext();
         } while (pass != null);
+        profiler.end(FrameProfiler.TRACK_RENDER);
+    }
+
+    /**
+     * Sorts queue by distance of drawables to camera. Distances are
+     * quantized relative to the most distant drawable.
+     * @param backToFront True to sort by depth first, false to sort by
+     *          depth within same render context and material (front-to-back).
+     */
+    private void sortByDepth(RenderQueue q, boolean backToFront) {
+        final int cnt = q.size();
+        if (cnt > mDistances.length) {
+            mDistances = new float[Math.max(cnt, 2 * mDistances.length)];
+        }
+        float max = 0;
+        for (int i = 0; i < cnt; i++) {
+            final float d = q.get(i).mDrawable.getDistanceToCamera(mCamera);
+            mDistances[i] = d;
+            max = Math.max(max, d);
+        }
+        final float scale = max > 0 ? RenderQueue.MAX_DEPTH / max : 0;
+        for (int i = 0; i < cnt; i++) {
+            final int depth = (int) (mDistances[i] * scale);
+            final long key = q.get(i).mSortKey;
+            q.setKey(i, backToFront ? RenderQueue.makeBackToFrontKey(key, depth)
+                    : RenderQueue.setDepth(key, depth));
+        }
+        q.sort();
+    }
+
+    /** Number of draw bundles actually drawn during last frame. */
+    public int getDrawnCnt() {
+        return mBundleCnt;
+    }
+
+    /** Number of draw bundles culled during last frame. */
+    public int getCulledCnt() {
+        return mCulledCnt;
+    }
+
+    /**
+     * Number of render context switches and texture binds during last
+     * frame.
+     */
+    public int getStateChangeCnt() {
+        return mStateChangeCnt;
     }
 
     private boolean mIsVisible = true;
@@ -348,7 +562,7 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
         final float[] s = mCamera.getPosition();
         final float[] v = mCamera.getRayDirection(x, y);
         
-        final Raycast r = mGame.getPhysics().doRaycast(s, v, mLayerMask);
+        final Raycast r = mGame.getPhysics().doRaycastFirstHit(s, v, mLayerMask);
         final GameObj touchedObj = r.getNearestHit();
         
         if (touchedObj != null) {
@@ -393,6 +607,18 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
         private RenderContext mContext;
         private RenderPass mPass;
         private Material mMaterial;
+        /** Set by scene, see {@link RenderQueue}. */
+        long mSortKey;
+        // ids held in RenderQueue.KeyRegistry
+        int mProgramId;
+        int mStateId;
+        int mMaterialId;
+        /** 
+         * Last cull frame in which the bundle was visible, set by scene. 
+         * The bundle is in the list of visible bundles of its pass if it 
+         * was visible during the latest cull. 
+         */
+        int mVisibleFrame;
         
         /**
          * @param drawable Reference to drawable component.
@@ -418,6 +644,9 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
         
         public RenderContext getContext() {return mContext;}
         public int getOrdinal() {return mOrdinal;}
+        public RenderPass getPass() {return mPass;}
+        public Material getMaterial() {return mMaterial;}
+        public long getSortKey() {return mSortKey;}
 
         @Override
         public int compareTo(DrawBundle another) {
@@ -433,14 +662,19 @@ public class Scene3D extends BaseSnareClass implements IScreenElement, IEventLis
                 return i;
             
             // 2. criterium: render context
-            i = mContext.hashCode() - another.mContext.hashCode();
+            i = compare(mContext.hashCode(), another.mContext.hashCode());
             if (i != 0)
                 return i;
             
             // 3. criterium: material (optional)
             final int h0 = mMaterial != null ? mMaterial.hashCode() : 0;
             final int h1 = another.mMaterial != null ? another.mMaterial.hashCode() : 0;
-            return h0 - h1;
+            return compare(h0, h1);
+        }
+
+        /** Compares without overflow of the difference. */
+        private static int compare(int a, int b) {
+            return a < b ? -1 : (a == b ? 0 : 1);
         }
 
         @Override
@@ -18,6 +18,12 @@ public class Scene3DOptions extends BaseSnareClass
     /** Default material for 3D objects */
     public final Material DEFAULT_MATERIAL;
     public boolean SORT_DRAWABLES = false;
+    /**
+     * Sorts drawables of opaque passes front-to-back within same render
+     * context and material each frame, so early depth test discards more
+     * fragments. The alpha pass is always sorted back-to-front.
+     */
+    public boolean FRONT_TO_BACK = false;
 
     public Scene3DOptions(IGame game)
     {
@@ -1,37 +1,108 @@
 package com.moonymango.snare.ui.scene3D.batch_rendering;
 
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.game.GameObj.ComponentType;
 import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.ui.scene3D.BaseMesh;
 import com.moonymango.snare.ui.scene3D.BaseSceneDrawable;
 import com.moonymango.snare.ui.scene3D.RenderPass;
 import com.moonymango.snare.ui.scene3D.Scene3D;
 import com.moonymango.snare.ui.scene3D.Scene3D.DrawBundle;
 
 /**
- * Idea for batch drawing:
- *  - BatchDrawable manages buffer objects (vertices and indices)
- *  - BatchDrawable is added to a dummy game object 
+ * Draws many objects sharing render context and material with few draw
+ * calls:
+ *  - BatchDrawable owns a {@link BatchMesh}, which merges the meshes of
+ *    all members into one vertex and one index buffer
+ *  - BatchDrawable is added to a dummy game object, together with its
+ *    mesh (see {@link #getMesh()}), the material and an effect supporting
+ *    batches (e.g. {@link BatchLightingEffect})
  *  - all other objects that should be rendered in the batch are registered
- *    with the BatchDrawable:
- *          + buffers will be modified and updated on GPU
- *          + during draw the BatchDrawable collect matrices from all
- *            registered objects and passes them as uniforms
- *            
- *  requires new effect classes to support this
+ *    with the BatchDrawable, buffers will be modified and updated on GPU
+ *  - during draw the BatchDrawable collects matrices from registered
+ *    objects and passes them as uniforms, one draw call per
+ *    {@link BatchMesh#MAX_CHUNK_SIZE} members
+ *
+ * Members must not have a drawable of their own in the same scene.
+ * Frustrum culling is done for the batch as a whole, i.e. the dummy object
+ * should not have a bounding volume unless it covers all members.
  */
 public class BatchDrawable extends BaseSceneDrawable {
 
+    private final BatchMesh mBatchMesh;
 
-    public BatchDrawable(IGame game, RenderPass pass)
+    /**
+     * @param name Name of batch, used for GL buffer objects.
+     * @param pass Render pass.
+     * @param vertexCapacity Initial number of vertices of all members.
+     * @param indexCapacity Initial number of indices of all members.
+     */
+    public BatchDrawable(IGame game, String name, RenderPass pass,
+            int vertexCapacity, int indexCapacity)
     {
         super(game, pass);
+        mBatchMesh = new BatchMesh(game, name, vertexCapacity, indexCapacity);
+    }
+
+    /** Mesh to be added to the dummy game object. */
+    public BatchMesh getMesh() {
+        return mBatchMesh;
+    }
+
+    /**
+     * Registers object using its mesh component.
+     * @param obj Object with mesh component.
+     */
+    public void add(GameObj obj) {
+        add(obj, (BaseMesh) obj.getComponent(ComponentType.MESH));
+    }
+
+    /**
+     * Registers object, which is drawn with given mesh. Meshes may be
+     * shared between members.
+     */
+    public void add(GameObj obj, BaseMesh mesh) {
+        mBatchMesh.add(obj, mesh);
+    }
+
+    /**
+     * Unregisters object.
+     * @return False if object was not registered.
+     */
+    public boolean remove(GameObj obj) {
+        return mBatchMesh.remove(obj);
+    }
+
+    public int getMemberCnt() {
+        return mBatchMesh.getMemberCnt();
+    }
+
+    @Override
+    public void onInit() {
+        super.onInit();
+        if (mMesh != mBatchMesh)
+            throw new IllegalStateException("Batch mesh missing at game object " +
+                    mGameObj.getName());
     }
 
     @Override
     public void draw(Scene3D scene, DrawBundle bundle, RenderPass pass) {
-        // TODO Auto-generated method stub
+        final int chunks = mBatchMesh.getChunkCnt();
+        if (isFinished() || chunks == 0 || !isLoaded())
+            return;
 
+        final int o = bundle.getOrdinal();
+        if (o == 0) {
+            // init value because this is the first draw call to this drawable
+            // in actual scene
+            mIsFinished = true;
+        }
+        // members bring their own to-world transformations, so nothing
+        // is pushed to the view transform stack
+        for (int c = 0; c < chunks; c++) {
+            mBatchMesh.selectChunk(c);
+            mIsFinished &= !mEffects[o].render(scene, mBatchMesh, mMat, mGameObj, pass);
+        }
     }
 
-    
-
 }
@@ -0,0 +1,183 @@
+package com.moonymango.snare.ui.scene3D.batch_rendering;
+
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.opengl.GLState;
+import com.moonymango.snare.ui.scene3D.BaseEffect;
+import com.moonymango.snare.ui.scene3D.BaseMesh;
+import com.moonymango.snare.ui.scene3D.Light;
+import com.moonymango.snare.ui.scene3D.Material;
+import com.moonymango.snare.ui.scene3D.RenderPass;
+import com.moonymango.snare.ui.scene3D.Scene3D;
+
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static com.moonymango.snare.opengl.GLStateCache.glDisableVertexAttribArray;
+import static android.opengl.GLES20.glDrawElements;
+import static android.opengl.GLES20.glGetAttribLocation;
+import static android.opengl.GLES20.glGetUniformLocation;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform3f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform4f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
+
+/**
+ * Diffuse and ambient lighting (same as DiffuseLightingEffect) for
+ * a {@link BatchMesh}. Draws the selected chunk of the batch, the to-world
+ * transformations of its members are passed as uniform array. Normals are
+ * transformed by the to-world transformations, so members should not
+ * use non-uniform scaling.
+ */
+public class BatchLightingEffect extends BaseEffect {
+
+    private static final String VERTEX_SHADER =
+            "precision mediump float;   \n" +
+            "precision lowp int;        \n" +
+
+            "uniform mat4 uViewProjTransform;       \n" +
+            "uniform mat4 uToWorld[" + BatchMesh.MAX_CHUNK_SIZE + "]; \n" +
+            "uniform vec4 uDiffuseReflection;       \n" +
+            "uniform vec4 uAmbientReflection;       \n" +
+            "uniform vec4 uLightColor;              \n" +
+            "uniform vec4 uAmbientLightColor;       \n" +
+            "uniform vec3 uLightDirection;          \n" +
+
+            "attribute vec4 aPosition;              \n" +
+            "attribute vec3 aNormal;                \n" +
+            "attribute float aInstance;             \n" +
+
+            "varying vec4 vColor;                   \n" +
+
+            "const float ZERO = 0.0;                \n" +
+
+            "void main(){                                                                   \n" +
+            "   mat4 toWorld = uToWorld[int(aInstance)];                                    \n" +
+            "   vec3 normal = normalize(vec3(toWorld * vec4(aNormal, ZERO)));               \n" +
+            "   float NdotL  = max(dot(normal, uLightDirection), ZERO);                     \n" +
+            "   vColor = NdotL * uDiffuseReflection * uLightColor;                          \n" +
+            "   vColor += uAmbientReflection * uAmbientLightColor;                          \n" +
+            "   gl_Position = uViewProjTransform * toWorld * aPosition;                     \n" +
+            "}                                                                              \n";
+
+    private static final String FRAGMENT_SHADER =
+            "precision lowp float;      \n" +
+            "precision lowp int;        \n" +
+
+            "varying vec4 vColor;        \n" +
+
+            "void main(){                                   \n" +
+            "   gl_FragColor = vColor;                      \n" +
+            "}                                              \n";
+
+    private static RenderContext createRenderContext(IGame game) {
+        final GLState s = new GLState();
+        s.enableDepth().enableBackFaceCulling().lock();
+        return new RenderContext(game,
+                BatchLightingEffect.class.getName(),
+                VERTEX_SHADER,
+                FRAGMENT_SHADER,
+                s);
+    }
+
+    private static final String A_POSITION = "aPosition";
+    private static final String A_NORMAL = "aNormal";
+    private static final String A_INSTANCE = "aInstance";
+    private static final String U_VIEWPROJ_TRANSFORM = "uViewProjTransform";
+    private static final String U_TO_WORLD = "uToWorld";
+    private static final String U_DIFFUSE_REFLECTION = "uDiffuseReflection";
+    private static final String U_AMBIENT_REFLECTION = "uAmbientReflection";
+    private static final String U_LIGHT_COLOR = "uLightColor";
+    private static final String U_AMBIENT_LIGHT_COLOR = "uAmbientLightColor";
+    private static final String U_LIGHT_DIR = "uLightDirection";
+
+    private static int muViewProjTransform;
+    private static int muToWorld;
+    private static int muDiffuseReflection;
+    private static int muAmbientReflection;
+    private static int muLightColor;
+    private static int muAmbientLightColor;
+    private static int muLightDirection;
+    private static int maPosition;
+    private static int maNormal;
+    private static int maInstance;
+
+    public BatchLightingEffect(IGame game) {
+        super(createRenderContext(game));
+    }
+
+    public void extractLocations(String programName, int prog) {
+        maPosition = glGetAttribLocation(prog, A_POSITION);
+        maNormal = glGetAttribLocation(prog, A_NORMAL);
+        maInstance = glGetAttribLocation(prog, A_INSTANCE);
+        muViewProjTransform = glGetUniformLocation(prog, U_VIEWPROJ_TRANSFORM);
+        // location of first array element
+        muToWorld = glGetUniformLocation(prog, U_TO_WORLD);
+        muLightDirection = glGetUniformLocation(prog, U_LIGHT_DIR);
+        muDiffuseReflection = glGetUniformLocation(prog, U_DIFFUSE_REFLECTION);
+        muAmbientReflection = glGetUniformLocation(prog, U_AMBIENT_REFLECTION);
+        muLightColor = glGetUniformLocation(prog, U_LIGHT_COLOR);
+        muAmbientLightColor = glGetUniformLocation(prog, U_AMBIENT_LIGHT_COLOR);
+    }
+
+    @Override
+    public boolean render(Scene3D scene, BaseMesh mesh, Material material,
+                          GameObj obj, RenderPass pass) {
+        final BatchMesh batch = (BatchMesh) mesh;
+        float[] v;
+        // drawable does not push a transformation, so this is view-projection
+        final float[] viewProjTransform = scene.getModelViewProjMatrix();
+
+        final Light directionalLight = scene.getDirectionalLight(0);
+        final Light ambientLight = scene.getAmbientLight(0);
+
+        batch.bindBuffers(maPosition, maNormal, -1, -1);
+        batch.bindInstanceIndex(maInstance);
+
+        glUniformMatrix4fv(muViewProjTransform, 1, false, viewProjTransform, 0);
+        glUniformMatrix4fv(muToWorld, batch.getChunkSize(), false, batch.getTransforms(), 0);
+
+        if (directionalLight == null) {
+            glUniform3f(muLightDirection, 1, 0, 0);
+            glUniform4f(muLightColor, 0, 0, 0, 0);
+        } else {
+            // light direction stays in world space, reversed to get
+            // a value in [0..1] from dot product
+            v = directionalLight.getDirection();
+            glUniform3f(muLightDirection, -v[0], -v[1], -v[2]);
+            v = directionalLight.getColor();
+            glUniform4f(muLightColor, v[0], v[1], v[2], 1);
+        }
+
+        if (ambientLight == null) {
+            glUniform4f(muAmbientLightColor, 0, 0, 0, 0);
+        } else {
+            v = ambientLight.getColor();
+            glUniform4f(muAmbientLightColor, v[0], v[1], v[2], 1);
+        }
+
+        v = material.getColor(Material.DIFFUSE_COLOR_IDX);
+        glUniform4f(muDiffuseReflection, v[0], v[1], v[2], v[3]);
+        v = material.getColor(Material.AMBIENT_COLOR_IDX);
+        glUniform4f(muAmbientReflection, v[0], v[1], v[2], v[3]);
+
+        glDrawElements(GL_TRIANGLES, batch.getIndexCount(), GL_UNSIGNED_SHORT,
+                batch.getIndexOffset()*Short.SIZE/8);
+
+        glDisableVertexAttribArray(maPosition);
+        glDisableVertexAttribArray(maNormal);
+        glDisableVertexAttribArray(maInstance);
+        return true;
+    }
+
+    @Override
+    protected void check(BaseMesh mesh, Material mat)
+    {
+        if (!(mesh instanceof BatchMesh))
+            throw new IllegalStateException("BatchLightingEffect: " +
+                    "invalid mesh");
+        if (mat == null || mat.getColor(Material.AMBIENT_COLOR_IDX) == null ||
+                mat.getColor(Material.DIFFUSE_COLOR_IDX) == null)
+            throw new IllegalStateException("BatchLightingEffect: " +
+                    "invalid material");
+    }
+
+}
@@ -0,0 +1,376 @@
+package com.moonymango.snare.ui.scene3D.batch_rendering;
+
+import com.moonymango.snare.game.GameObj;
+import com.moonymango.snare.game.IGame;
+import com.moonymango.snare.opengl.BufferObj.IBufferUpdateSetup;
+import com.moonymango.snare.ui.scene3D.BaseMesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static com.moonymango.snare.opengl.GLStateCache.glEnableVertexAttribArray;
+import static android.opengl.GLES20.glVertexAttribPointer;
+
+/**
+ * Mesh that merges the meshes of several game objects into one vertex and
+ * one index buffer. Each vertex carries the index of its member within a
+ * chunk of {@link #MAX_CHUNK_SIZE} members, which is used by the shader to
+ * pick the member's transformation out of a uniform matrix array. So
+ * a whole chunk is drawn by a single draw call.
+ *
+ * Buffer contents are rebuilt on CPU side when members are added or removed,
+ * only the modified range gets updated on the GPU. Removing a member
+ * rebuilds all members behind it, so prefer removing recently added members.
+ *
+ * Vertex layout: position (3 floats), normal (3), texture coords (2),
+ * member index (1).
+ */
+public class BatchMesh extends BaseMesh {
+
+    /**
+     * Max. number of members per draw call. Limited by the number of
+     * uniform vectors GLES 2.0 guarantees for vertex shaders (128).
+     */
+    public static final int MAX_CHUNK_SIZE = 24;
+    /** Floats per vertex. */
+    public static final int STRIDE = 9;
+    private static final int NORMAL_OFFSET = 3;
+    private static final int TEX_OFFSET = 6;
+    private static final int INSTANCE_OFFSET = 8;
+    private static final int MAX_VERTICES = 0x10000;
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    private final ArrayList<GameObj> mMembers = new ArrayList<GameObj>();
+    private final ArrayList<BaseMesh> mMeshes = new ArrayList<BaseMesh>();
+    // first vertex and index of each member, one additional element for end
+    private int[] mVertexStart = new int[17];
+    private int[] mIndexStart = new int[17];
+
+    private FloatBuffer mVertices;
+    private ShortBuffer mIndices;
+    // ranges to upload, in vertices and indices
+    private int mDirtyVertex;
+    private int mDirtyIndex;
+    private boolean mVerticesGrown;
+    private boolean mIndicesGrown;
+
+    // data of last source mesh, members usually share their mesh
+    private BaseMesh mSrcMesh;
+    private int mSrcVersion;
+    private float[] mSrcVertices = new float[0];
+    private short[] mSrcIndices = new short[0];
+    private int mSrcVertexCnt;
+    private int mSrcIndexCnt;
+
+    // chunk selected for drawing
+    private final float[] mTransforms = new float[16 * MAX_CHUNK_SIZE];
+    private int mChunkSize;
+    private int mChunkIndexOffset;
+    private int mChunkIndexCnt;
+
+    // ---------------------------------------------------------
+    // constructors
+    // ---------------------------------------------------------
+    /**
+     * @param name Base name of GL buffer objects.
+     * @param vertexCapacity Initial number of vertices.
+     * @param indexCapacity Initial number of indices.
+     */
+    public BatchMesh(IGame game, String name, int vertexCapacity, int indexCapacity) {
+        super(game, name, true, true);
+        mVertices = allocVertices(Math.max(vertexCapacity, 1));
+        mIndices = allocIndices(Math.max(indexCapacity, 1));
+    }
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    /**
+     * Adds an object to the batch.
+     * @param obj Member, its to-world transformation is used when drawing.
+     * @param mesh Mesh of the member, has to be drawn as GL_TRIANGLES. Its
+     *          data is copied, later changes of the mesh do not affect
+     *          the member until it is added again.
+     */
+    public void add(GameObj obj, BaseMesh mesh) {
+        if (mesh == null || mesh.getDrawMode() != GL_TRIANGLES) {
+            throw new IllegalArgumentException("Batch members need a triangle mesh.");
+        }
+        if (mMembers.contains(obj)) {
+            throw new IllegalArgumentException("Object " + obj.getName() +
+                    " already in batch.");
+        }
+        if (mVertexStart[mMembers.size()] + mesh.getVertexCnt() > MAX_VERTICES) {
+            throw new IllegalStateException("Batch exceeds " + MAX_VERTICES + " vertices.");
+        }
+        mMembers.add(obj);
+        mMeshes.add(mesh);
+        rebuild(mMembers.size() - 1);
+    }
+
+    /**
+     * Removes an object from the batch.
+     * @return False if object is not a member.
+     */
+    public boolean remove(GameObj obj) {
+        final int idx = mMembers.indexOf(obj);
+        if (idx < 0) {
+            return false;
+        }
+        mMembers.remove(idx);
+        mMeshes.remove(idx);
+        rebuild(idx);
+        return true;
+    }
+
+    public int getMemberCnt() {
+        return mMembers.size();
+    }
+
+    public GameObj getMember(int idx) {
+        return mMembers.get(idx);
+    }
+
+    /** Number of draw calls needed to draw all members. */
+    public int getChunkCnt() {
+        return (mMembers.size() + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+    }
+
+    /**
+     * Selects the members to draw by next draw call and collects their
+     * transformations, see {@link #getTransforms()}.
+     * @param chunk Chunk index.
+     */
+    public void selectChunk(int chunk) {
+        final int first = chunk * MAX_CHUNK_SIZE;
+        final int end = Math.min(first + MAX_CHUNK_SIZE, mMembers.size());
+        for (int i = first; i < end; i++) {
+            System.arraycopy(mMembers.get(i).getToWorld(), 0, mTransforms,
+                    (i - first) * 16, 16);
+        }
+        mChunkSize = end - first;
+        mChunkIndexOffset = mIndexStart[first];
+        mChunkIndexCnt = mIndexStart[end] - mIndexStart[first];
+    }
+
+    /** Number of members in selected chunk. */
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /** To-world transformations of members in selected chunk. */
+    public float[] getTransforms() {
+        return mTransforms;
+    }
+
+    /**
+     * Sets up vertex array pointer for member index. Call after
+     * bindBuffers().
+     * @param location Attribute location.
+     */
+    public void bindInstanceIndex(int location) {
+        glVertexAttribPointer(location, 1, GL_FLOAT, false,
+                STRIDE * Float.SIZE/8, INSTANCE_OFFSET * Float.SIZE/8);
+        glEnableVertexAttribArray(location);
+    }
+
+    /** Rebuilds buffer contents starting with specified member. */
+    private void rebuild(int first) {
+        final int cnt = mMembers.size();
+        if (cnt + 1 > mVertexStart.length) {
+            mVertexStart = Arrays.copyOf(mVertexStart, 2 * cnt + 1);
+            mIndexStart = Arrays.copyOf(mIndexStart, 2 * cnt + 1);
+        }
+        int vertex = mVertexStart[first];
+        int index = mIndexStart[first];
+        for (int i = first; i < cnt; i++) {
+            loadSource(mMeshes.get(i));
+            ensureCapacity(vertex + mSrcVertexCnt, index + mSrcIndexCnt);
+
+            final float instance = i % MAX_CHUNK_SIZE;
+            mVertices.position(vertex * STRIDE);
+            for (int v = 0; v < mSrcVertexCnt; v++) {
+                mVertices.put(mSrcVertices, v * STRIDE, INSTANCE_OFFSET);
+                mVertices.put(instance);
+            }
+            for (int j = 0; j < mSrcIndexCnt; j++) {
+                mIndices.put(index + j, (short) (vertex + mSrcIndices[j]));
+            }
+            mVertexStart[i] = vertex;
+            mIndexStart[i] = index;
+            vertex += mSrcVertexCnt;
+            index += mSrcIndexCnt;
+        }
+        mVertexStart[cnt] = vertex;
+        mIndexStart[cnt] = index;
+        mVertices.position(0);
+
+        // upload everything behind first modified member
+        final int dirtyVertex = mVertexStart[first];
+        final int dirtyIndex = mIndexStart[first];
+        if (vertex > dirtyVertex) {
+            mDirtyVertex = Math.min(mDirtyVertex, dirtyVertex);
+            updateVertices(1);
+        }
+        if (index > dirtyIndex) {
+            mDirtyIndex = Math.min(mDirtyIndex, dirtyIndex);
+            updateIndices(1);
+        }
+    }
+
+    private void loadSource(BaseMesh mesh) {
+        if (mesh == mSrcMesh && mesh.getVersion() == mSrcVersion) {
+            return;
+        }
+        mSrcVertexCnt = mesh.getVertexCnt();
+        mSrcIndexCnt = mesh.getIndexCount();
+        if (mSrcVertices.length < mSrcVertexCnt * STRIDE) {
+            mSrcVertices = new float[mSrcVertexCnt * STRIDE];
+        }
+        if (mSrcIndices.length < mSrcIndexCnt) {
+            mSrcIndices = new short[mSrcIndexCnt];
+        }
+        mesh.copyVertices(mSrcVertices, STRIDE);
+        mesh.copyIndices(mSrcIndices);
+        mSrcMesh = mesh;
+        mSrcVersion = mesh.getVersion();
+    }
+
+    private void ensureCapacity(int vertexCnt, int indexCnt) {
+        if (vertexCnt * STRIDE > mVertices.capacity()) {
+            final FloatBuffer b = allocVertices(Math.max(vertexCnt, 2 * mVertices.capacity() / STRIDE));
+            mVertices.position(0);
+            b.put(mVertices);
+            mVertices = b;
+            mVerticesGrown = true;
+        }
+        if (indexCnt > mIndices.capacity()) {
+            final ShortBuffer b = allocIndices(Math.max(indexCnt, 2 * mIndices.capacity()));
+            mIndices.position(0);
+            b.put(mIndices);
+            mIndices = b;
+            mIndicesGrown = true;
+        }
+    }
+
+    private static FloatBuffer allocVertices(int vertexCnt) {
+        final ByteBuffer bb = ByteBuffer.allocateDirect(vertexCnt * STRIDE * Float.SIZE/8);
+        bb.order(ByteOrder.nativeOrder());
+        return bb.asFloatBuffer();
+    }
+
+    private static ShortBuffer allocIndices(int indexCnt) {
+        final ByteBuffer bb = ByteBuffer.allocateDirect(indexCnt * Short.SIZE/8);
+        bb.order(ByteOrder.nativeOrder());
+        return bb.asShortBuffer();
+    }
+
+    @Override
+    protected FloatBuffer getVertices() {
+        // complete buffer gets loaded
+        mDirtyVertex = mVertexStart[mMembers.size()];
+        mVerticesGrown = false;
+        mVertices.position(0);
+        return mVertices;
+    }
+
+    @Override
+    protected ShortBuffer getIndices() {
+        mDirtyIndex = mIndexStart[mMembers.size()];
+        mIndicesGrown = false;
+        mIndices.position(0);
+        return mIndices;
+    }
+
+    @Override
+    protected void getUpdateSetup(boolean indices, IBufferUpdateSetup setup, int pass) {
+        final int end;
+        if (indices) {
+            end = mIndexStart[mMembers.size()];
+            setup.setBuffer(mIndices);
+            if (mIndicesGrown) {
+                setup.enableBufferSubData(false);
+                setup.setSize(mIndices.capacity() * Short.SIZE/8);
+            } else {
+                setup.setBufferPosition(mDirtyIndex);
+                setup.setOffset(mDirtyIndex * Short.SIZE/8);
+                setup.setSize(Math.max(end - mDirtyIndex, 0) * Short.SIZE/8);
+            }
+            mDirtyIndex = end;
+            mIndicesGrown = false;
+        } else {
+            end = mVertexStart[mMembers.size()];
+            setup.setBuffer(mVertices);
+            if (mVerticesGrown) {
+                setup.enableBufferSubData(false);
+                setup.setSize(mVertices.capacity() * Float.SIZE/8);
+            } else {
+                setup.setBufferPosition(mDirtyVertex * STRIDE);
+                setup.setOffset(mDirtyVertex * STRIDE * Float.SIZE/8);
+                setup.setSize(Math.max(end - mDirtyVertex, 0) * STRIDE * Float.SIZE/8);
+            }
+            mDirtyVertex = end;
+            mVerticesGrown = false;
+        }
+    }
+
+    @Override
+    protected int getStride() {
+        return STRIDE * Float.SIZE/8;
+    }
+
+    @Override
+    protected int getNormalOffset() {
+        return NORMAL_OFFSET * Float.SIZE/8;
+    }
+
+    @Override
+    protected int getTexOffset() {
+        return TEX_OFFSET * Float.SIZE/8;
+    }
+
+    @Override
+    protected int getColorOffset() {
+        return 0;
+    }
+
+    @Override
+    public boolean hasNormals() {
+        return true;
+    }
+
+    @Override
+    public boolean hasColor() {
+        return false;
+    }
+
+    @Override
+    public boolean hasTexCoords() {
+        return true;
+    }
+
+    @Override
+    public int getDrawMode() {
+        return GL_TRIANGLES;
+    }
+
+    /** Number of indices of selected chunk. */
+    @Override
+    public int getIndexCount() {
+        return mChunkIndexCnt;
+    }
+
+    /** Offset of selected chunk into index buffer. */
+    @Override
+    public int getIndexOffset() {
+        return mChunkIndexOffset;
+    }
+}
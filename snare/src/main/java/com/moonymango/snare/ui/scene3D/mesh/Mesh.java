@@ -6,6 +6,7 @@ import com.moonymango.snare.res.data.MeshResHandle;
 import com.moonymango.snare.res.data.MeshResource;
 import com.moonymango.snare.ui.scene3D.BaseMesh;
 
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
@@ -13,6 +14,8 @@ import java.nio.ShortBuffer;
  * Mesh which gets its data from the resource cache. 
  * For each mesh data callback the resource handle is obtained and
  * immediately released. So there is no long living handle to a resource.
+ * Large meshes consist of several parts, or use 32 bit indices, see 
+ * {@link MeshResHandle#getPartCnt()}.
  */
 public class Mesh extends BaseMesh {
     
@@ -76,6 +79,39 @@ public class Mesh extends BaseMesh {
         return mHnd.getIndices();
     }
 
+    @Override
+    protected FloatBuffer getVertices(int part) {
+        if (mHnd == null)
+        {
+            mHnd = mMeshRes.getHandle();
+        }
+        return mHnd.getVertexAttribs(part);
+    }
+
+    @Override
+    protected Buffer getIndices(int part) {
+        if (mHnd == null) {
+            mHnd = mMeshRes.getHandle();
+        }
+        return mHnd.getIndices(part);
+    }
+
+    @Override
+    public int getPartCnt() {
+        if (mHnd == null) {
+            mHnd = mMeshRes.getHandle();
+        }
+        return mHnd.getPartCnt();
+    }
+
+    @Override
+    public int getIndexType() {
+        if (mHnd == null) {
+            mHnd = mMeshRes.getHandle();
+        }
+        return mHnd.hasIntIndices() ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT;
+    }
+
     @Override
     protected int getTexOffset() {
         if (mHnd == null)
@@ -116,7 +152,7 @@ public class Mesh extends BaseMesh {
         {
             mHnd = mMeshRes.getHandle();
         }
-        return mHnd.getIndicesCnt();
+        return mHnd.getIndicesCnt(getSelectedPart());
     }
 
     @Override
@@ -147,6 +183,16 @@ public class Mesh extends BaseMesh {
         int getTexOffset();
         /** Number of indices for glDrawElements. */
         int getIndicesCnt();
+        /** Number of parts, each with own vertex and index buffer. */
+        int getPartCnt();
+        /** Direct buffer with vertex attributes of part. */
+        FloatBuffer getVertexAttribs(int part);
+        /** Direct buffer with indices of part, short or int. */
+        Buffer getIndices(int part);
+        /** Number of indices of part. */
+        int getIndicesCnt(int part);
+        /** Indicates if indices are 32 bit (GL_UNSIGNED_INT). */
+        boolean hasIntIndices();
         /** Name of the buffer set (i.e. used as name for VBOs). */
         String getName();
     }
@@ -26,9 +26,9 @@ import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
 import static android.opengl.GLES20.glDrawElements;
 import static android.opengl.GLES20.glGetAttribLocation;
 import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform1f;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1i;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
 
 /** 
  * Draws a ring of radius 1 with movable inner edge.
@@ -14,14 +14,13 @@ import com.moonymango.snare.ui.scene3D.RenderPass;
 import com.moonymango.snare.ui.scene3D.Scene3D;
 
 import static android.opengl.GLES20.GL_TRIANGLES;
-import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
-import static android.opengl.GLES20.glDisableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glDisableVertexAttribArray;
 import static android.opengl.GLES20.glDrawElements;
 import static android.opengl.GLES20.glGetAttribLocation;
-import static android.opengl.GLES20.glUniform1f;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniform3f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1i;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform3f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
 import static com.moonymango.snare.opengl.GLES20Trace.glGetUniformLocation;
 
 /**
@@ -153,8 +152,8 @@ public class CelShader2 extends BaseEffect {
         glUniform1i(muTex, 0);
         glUniform1f(muFetchT, mFetchT);
         
-        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), GL_UNSIGNED_SHORT, 
-                mesh.getIndexOffset()*Short.SIZE/8);
+        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), mesh.getIndexType(), 
+                mesh.getIndexOffset()*mesh.getIndexSize());
         
         glDisableVertexAttribArray(maPosition);
         glDisableVertexAttribArray(maNormal);
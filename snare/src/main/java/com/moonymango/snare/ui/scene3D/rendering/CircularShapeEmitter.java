@@ -19,10 +19,10 @@ import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
 import static android.opengl.GLES20.glDrawElements;
 import static android.opengl.GLES20.glGetAttribLocation;
 import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform1f;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1i;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform4f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
 
 //TODO prioC: add texture handling like in PyramidShapeEmitter
 public class CircularShapeEmitter extends BaseDynamicMeshEffect {
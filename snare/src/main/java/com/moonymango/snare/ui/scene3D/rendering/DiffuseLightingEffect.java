@@ -11,14 +11,13 @@ import com.moonymango.snare.ui.scene3D.RenderPass;
 import com.moonymango.snare.ui.scene3D.Scene3D;
 
 import static android.opengl.GLES20.GL_TRIANGLES;
-import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
-import static android.opengl.GLES20.glDisableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glDisableVertexAttribArray;
 import static android.opengl.GLES20.glDrawElements;
 import static android.opengl.GLES20.glGetAttribLocation;
 import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform3f;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform3f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform4f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
 
 /**
  * Simple diffuse and ambient lighting. Supports only one ambient and one
@@ -160,8 +159,8 @@ public class DiffuseLightingEffect extends BaseEffect {
         v = material.getColor(Material.AMBIENT_COLOR_IDX);
         glUniform4f(muAmbientReflection, v[0], v[1], v[2], v[3]);
                 
-        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), GL_UNSIGNED_SHORT, 
-                mesh.getIndexOffset()*Short.SIZE/8);
+        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), mesh.getIndexType(), 
+                mesh.getIndexOffset()*mesh.getIndexSize());
         
         glDisableVertexAttribArray(maPosition);
         glDisableVertexAttribArray(maNormal);
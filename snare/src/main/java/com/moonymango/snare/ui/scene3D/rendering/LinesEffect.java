@@ -10,14 +10,13 @@ import com.moonymango.snare.ui.scene3D.RenderPass;
 import com.moonymango.snare.ui.scene3D.Scene3D;
 
 import static android.opengl.GLES20.GL_LINES;
-import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
-import static android.opengl.GLES20.glDisableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glDisableVertexAttribArray;
 import static android.opengl.GLES20.glDrawElements;
 import static android.opengl.GLES20.glGetAttribLocation;
 import static android.opengl.GLES20.glGetUniformLocation;
 import static android.opengl.GLES20.glLineWidth;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform4f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
 
 public class LinesEffect extends BaseEffect {
 
@@ -96,8 +95,8 @@ public class LinesEffect extends BaseEffect {
         
         float[] c = material.getColor(Material.LINE_COLOR_IDX);
         glUniform4f(muColor, c[0], c[1], c[2], c[3]);   
-        glDrawElements(GL_LINES, mesh.getIndexCount(), GL_UNSIGNED_SHORT, 
-                mesh.getIndexOffset()*Short.SIZE/8);
+        glDrawElements(GL_LINES, mesh.getIndexCount(), mesh.getIndexType(), 
+                mesh.getIndexOffset()*mesh.getIndexSize());
         glDisableVertexAttribArray(maPosition);
         return true;
     }
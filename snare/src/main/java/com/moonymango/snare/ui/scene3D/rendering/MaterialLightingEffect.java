@@ -15,12 +15,11 @@ import com.moonymango.snare.ui.scene3D.Scene3D;
 import static android.opengl.GLES20.GL_ONE_MINUS_SRC_ALPHA;
 import static android.opengl.GLES20.GL_SRC_ALPHA;
 import static android.opengl.GLES20.GL_TRIANGLES;
-import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
-import static android.opengl.GLES20.glDisableVertexAttribArray;
+import static com.moonymango.snare.opengl.GLStateCache.glDisableVertexAttribArray;
 import static android.opengl.GLES20.glDrawElements;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform1i;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform4f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
 import static com.moonymango.snare.opengl.GLES20Trace.glGetAttribLocation;
 import static com.moonymango.snare.opengl.GLES20Trace.glGetUniformLocation;
 
@@ -113,8 +112,8 @@ public class MaterialLightingEffect extends BaseEffect {
         final float[] c = material.getColor(Material.AMBIENT_COLOR_IDX);
         glUniform4f(muColor, c[0], c[1], c[2], c[3]);        
         
-        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), GL_UNSIGNED_SHORT, 
-                mesh.getIndexOffset()*Short.SIZE/8);
+        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), mesh.getIndexType(), 
+                mesh.getIndexOffset()*mesh.getIndexSize());
         glDisableVertexAttribArray(maPosition);
         glDisableVertexAttribArray(maTexCoord);
         return true;
@@ -54,6 +54,8 @@ public class OffsetSceneDrawable extends BaseSceneDrawable {
     }
 
     public void draw(Scene3D scene, DrawBundle bundle, RenderPass pass) {
+        if (!isLoaded())
+            return;
         
         final float[] pos = mGameObj.getPosition();
         for (int i = 0; i < 3; i++) {
@@ -72,7 +74,14 @@ public class OffsetSceneDrawable extends BaseSceneDrawable {
             // in actual scene
             mIsFinished = true;
         }
-        mIsFinished &= !mEffects[o].render(scene, mMesh, mMat, mGameObj, pass);
+        // large meshes are drawn part by part
+        final int parts = mMesh != null ? mMesh.getPartCnt() : 1;
+        for (int i = 0; i < parts; i++) {
+            if (mMesh != null) {
+                mMesh.selectPart(i);
+            }
+            mIsFinished &= !mEffects[o].render(scene, mMesh, mMat, mGameObj, pass);
+        }
         
         ms.popMatrix();
     } 
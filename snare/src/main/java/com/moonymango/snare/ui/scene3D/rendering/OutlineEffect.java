@@ -12,14 +12,13 @@ import com.moonymango.snare.util.MatrixAF;
 
 import static android.opengl.GLES20.GL_POLYGON_OFFSET_FILL;
 import static android.opengl.GLES20.GL_TRIANGLES;
-import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
 import static android.opengl.GLES20.glDisable;
 import static android.opengl.GLES20.glDrawElements;
 import static android.opengl.GLES20.glEnable;
 import static android.opengl.GLES20.glGetAttribLocation;
 import static android.opengl.GLES20.glPolygonOffset;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static com.moonymango.snare.opengl.GLStateCache.glUniform4f;
+import static com.moonymango.snare.opengl.GLStateCache.glUniformMatrix4fv;
 import static com.moonymango.snare.opengl.GLES20Trace.glGetUniformLocation;
 
 /**
@@ -104,8 +103,8 @@ public class OutlineEffect extends BaseEffect {
         //glEnable(GL_POLYGON_OFFSET_FILL);
         //glPolygonOffset(-1.0f, -5.0f);
 
-        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), GL_UNSIGNED_SHORT, 
-                mesh.getIndexOffset()*Short.SIZE/8);
+        glDrawElements(GL_TRIANGLES, mesh.getIndexCount(), mesh.getIndexType(), 
+                mesh.getIndexOffset()*mesh.getIndexSize());
 
         //glDisable(GL_POLYGON_OFFSET_FILL);
 
@@ -1,13 +1,10 @@
 package com.moonymango.snare.ui.scene3D.rendering;
 
-import com.moonymango.snare.game.GameObj.ComponentType;
 import com.moonymango.snare.game.IGame;
-import com.moonymango.snare.physics.BaseBoundingVolume;
 import com.moonymango.snare.ui.scene3D.BaseSceneDrawable;
 import com.moonymango.snare.ui.scene3D.RenderPass;
 import com.moonymango.snare.ui.scene3D.Scene3D;
 import com.moonymango.snare.ui.scene3D.Scene3D.DrawBundle;
-import com.moonymango.snare.ui.scene3D.Scene3DOptions;
 import com.moonymango.snare.util.MatrixStack;
 
 
@@ -20,17 +17,10 @@ public class SceneDrawable extends BaseSceneDrawable {
 
     public void draw(Scene3D scene, DrawBundle bundle, RenderPass pass)
     {
-        if (isFinished())
+        if (isFinished() || !isLoaded())
             return;
         
-        // frustrum culling
-        final Scene3DOptions ro = mGame.getSettings().SCENE_OPTIONS;
-        final BaseBoundingVolume bv = (BaseBoundingVolume) 
-                mGameObj.getComponent(ComponentType.BOUNDING_VOLUME);
-        if (bv != null && ro.ENABLE_FRUSTRUM_CULLING 
-                && !bv.isInFrustrum(scene.getCamera())) {
-            return;
-        }
+        // frustrum culling is done by scene before drawing
                
         // use the game objects transform
         final MatrixStack ms = scene.getViewTransformStack();
@@ -42,7 +32,14 @@ public class SceneDrawable extends BaseSceneDrawable {
             // in actual scene
             mIsFinished = true;
         }
-        mIsFinished &= !mEffects[o].render(scene, mMesh, mMat, mGameObj, pass);
+        // large meshes are drawn part by part
+        final int parts = mMesh != null ? mMesh.getPartCnt() : 1;
+        for (int i = 0; i < parts; i++) {
+            if (mMesh != null) {
+                mMesh.selectPart(i);
+            }
+            mIsFinished &= !mEffects[o].render(scene, mMesh, mMat, mGameObj, pass);
+        }
         
         ms.popMatrix();
     }
@@ -2,16 +2,18 @@ package com.moonymango.snare.util;
 
 import com.moonymango.snare.game.BaseSnareClass;
 import com.moonymango.snare.game.IGame;
-import com.moonymango.snare.proc.AsyncProc;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
- * TODO prioC: make this thread-safe, so that it can be used within 
- * {@link AsyncProc}.
+ * Not thread-safe, all methods have to be called on the same thread.
+ * Items may be created on other threads though and added later on via
+ * {@link #addItem(CacheItemDescriptor, CacheItem)}.
+ * 
+ * Items without handles are kept in a doubly linked list in the order 
+ * their last handle was released, so looking up and evicting items
+ * is O(1).
  *
  * @param <C>
  * @param <D>
@@ -29,10 +31,16 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
     // fields
     // ---------------------------------------------------------
     protected Map<D, I> mCache = new HashMap<D, I>();
-    protected List<I> mRecentlyUsed = new ArrayList<I>();
+    // items without handles, least recently used first
+    private I mLruFirst;
+    private I mLruLast;
     private int mHandlesCnt; 
     private final CleanUpPolicy mCleanUpPolicy;
     
+    private int mHitCnt;
+    private int mMissCnt;
+    private int mEvictionCnt;
+    
     
     // ---------------------------------------------------------
     // constructors
@@ -51,10 +59,13 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
         if (item == null) return;
         item.mRefCnt--;
         item.onRefCntDecr();
-        if (item.mRefCnt <= 0 
-                && mCleanUpPolicy == CleanUpPolicy.IMMEDIATELY
-                && item.onRemoveFromCachePending()) {
-            dropItem(item);
+        if (item.mRefCnt <= 0) {
+            if (mCleanUpPolicy == CleanUpPolicy.IMMEDIATELY
+                    && item.onRemoveFromCachePending()) {
+                dropItem(item);
+            } else {
+                linkLru(item);
+            }
         }
         mHandlesCnt--;
     }
@@ -64,6 +75,7 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
         D descr = (D) descriptor;
         I item = mCache.get(descr);
         if (item == null) {
+            mMissCnt++;
             if (!allowItemCreation(descr)) {
                 throw new IllegalStateException("Not allowed to create new item: " + descr.toString());
             }
@@ -72,19 +84,17 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
                 throw new NullPointerException("Unable to create item handle: " + descr.mName);
             }
             mCache.put(descr, item);
-            mRecentlyUsed.add(item);
             onItemCreated(item);
             item.onAddedToCache();
         } else {
+            mHitCnt++;
             if (!item.mDescriptor.mName.equals(descr.mName)) {
                 throw new IllegalStateException("cache item descriptor hashCode collision: " 
                         + descr.mName + ", " 
                         + item.mDescriptor.mName);
             }
-            // getting an item makes it "recently used", so put
-            // it on top of the list
-            mRecentlyUsed.remove(item);
-            mRecentlyUsed.add(item);
+            // items with handles cannot be evicted
+            unlinkLru(item);
         } 
         
         item.mRefCnt++;
@@ -93,6 +103,28 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
         return item;
     }
     
+    /**
+     * Adds an item which was created outside of the cache, e.g. by a
+     * background thread. The item gets no handle.
+     * @return False if there is already an item for the descriptor or 
+     *          creation of a new item is not allowed. The item is not 
+     *          added then.
+     */
+    protected boolean addItem(D descr, I item) {
+        if (mCache.containsKey(descr) || !allowItemCreation(descr)) {
+            return false;
+        }
+        mCache.put(descr, item);
+        onItemCreated(item);
+        item.onAddedToCache();
+        linkLru(item);
+        return true;
+    }
+    
+    protected boolean containsItem(D descr) {
+        return mCache.containsKey(descr);
+    }
+    
     public int getHandlesCnt() {
         return mHandlesCnt;
     }
@@ -101,6 +133,30 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
         return mCache.size();
     }
     
+    /** Number of handle requests served by existing items. */
+    public int getHitCnt() {
+        return mHitCnt;
+    }
+    
+    /** Number of handle requests which needed a new item. */
+    public int getMissCnt() {
+        return mMissCnt;
+    }
+    
+    /** 
+     * Number of items removed by {@link #freeLeastRecentlyUsed()} or 
+     * {@link #evictItem(CacheItem)}. 
+     */
+    public int getEvictionCnt() {
+        return mEvictionCnt;
+    }
+    
+    public void resetStats() {
+        mHitCnt = 0;
+        mMissCnt = 0;
+        mEvictionCnt = 0;
+    }
+    
     /**
      * Removes the least recently used item without handles 
      * from the cache. Return value false can mean two things:
@@ -111,17 +167,52 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
      * @return true, if an item has been removed, false otherwise
      */
     protected boolean freeLeastRecentlyUsed() {
-        int size = mRecentlyUsed.size();
-        for (int i = 0; i < size; i++) {
-            I item = mRecentlyUsed.get(i);
-            if (item.mRefCnt <= 0 && item.onRemoveFromCachePending()) {
-                dropItem(item);
+        return freeLeastRecentlyUsed(null);
+    }
+    
+    /**
+     * Like {@link #freeLeastRecentlyUsed()}, but only items accepted by
+     * the filter are removed.
+     * @param filter May be null to accept all items.
+     * @return true, if an item has been removed, false otherwise
+     */
+    protected boolean freeLeastRecentlyUsed(IItemFilter<I> filter) {
+        for (I item = mLruFirst; item != null; item = item.mLruNext) {
+            if ((filter == null || filter.accept(item)) 
+                    && item.onRemoveFromCachePending()) {
+                evictItem(item);
                 return true;
             }
         }
         return false;
     }
     
+    /**
+     * Returns the least recently used item without handles which is 
+     * accepted by the filter. The item stays in the cache, use this if 
+     * removal needs more than {@link CacheItem#onRemoveFromCachePending()}.
+     * @param filter May be null to accept all items.
+     * @return Item or null if there is none.
+     */
+    protected I getLeastRecentlyUsed(IItemFilter<I> filter) {
+        for (I item = mLruFirst; item != null; item = item.mLruNext) {
+            if (filter == null || filter.accept(item)) {
+                return item;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Removes an item and counts it as eviction.
+     * Note: Same as {@link #dropItem(CacheItem)}, no check for references.
+     * @param item
+     */
+    protected void evictItem(I item) {
+        dropItem(item);
+        mEvictionCnt++;
+    }
+    
     /**
      * Override to specify if creation of new item is allowed. Use
      * freeLeastRecentlyUsed() in here to remove items if there is
@@ -148,13 +239,49 @@ public abstract class Cache<C extends Cache<C, D, I>, D extends CacheItemDescrip
      */
     protected void dropItem(I item) {
         mCache.remove(item.mDescriptor);
-        mRecentlyUsed.remove(item);
+        unlinkLru(item);
         onItemRemoved(item);
     } 
     
+    /** Appends item to the list of items without handles. */
+    private void linkLru(I item) {
+        if (item.mInLru) return;
+        item.mInLru = true;
+        item.mLruPrev = mLruLast;
+        item.mLruNext = null;
+        if (mLruLast != null) {
+            mLruLast.mLruNext = item;
+        } else {
+            mLruFirst = item;
+        }
+        mLruLast = item;
+    }
+    
+    private void unlinkLru(I item) {
+        if (!item.mInLru) return;
+        item.mInLru = false;
+        if (item.mLruPrev != null) {
+            item.mLruPrev.mLruNext = item.mLruNext;
+        } else {
+            mLruFirst = item.mLruNext;
+        }
+        if (item.mLruNext != null) {
+            item.mLruNext.mLruPrev = item.mLruPrev;
+        } else {
+            mLruLast = item.mLruPrev;
+        }
+        item.mLruPrev = null;
+        item.mLruNext = null;
+    }
+    
     // ---------------------------------------------------------
     // classes + interfaces
     // ---------------------------------------------------------
+    /** Selects items, e.g. for {@link Cache#freeLeastRecentlyUsed(IItemFilter)}. */
+    public interface IItemFilter<I> {
+        boolean accept(I item);
+    }
+    
     public enum CleanUpPolicy {
         /** 
          * Remove items as soon as there are no handles left.
@@ -15,6 +15,10 @@ public abstract class CacheItem<C extends Cache<C,D,I>, D extends CacheItemDescr
     // ---------------------------------------------------------
     protected final D mDescriptor;
     long mRefCnt = 0;
+    // list of items without handles, see Cache
+    boolean mInLru;
+    I mLruPrev;
+    I mLruNext;
 
     // ---------------------------------------------------------
     // constructors
@@ -46,6 +46,12 @@ public abstract class CacheItemDescriptor<C extends Cache<C,D,I>, D extends Cach
     // methods
     // ---------------------------------------------------------
     protected I getHandle(C cache) {
+        bindCache(cache);
+        return mCache.getHandle(this);
+    }
+    
+    /** Binds descriptor to cache, a descriptor can only be used with one cache. */
+    protected void bindCache(C cache) {
         if (cache == null) {
             throw new IllegalArgumentException("Missing cache.");
         }
@@ -54,7 +60,6 @@ public abstract class CacheItemDescriptor<C extends Cache<C,D,I>, D extends Cach
                     + mCache.toString() + " / " + cache.toString());
         }
         mCache = cache;
-        return mCache.getHandle(this);
     }
     
     public void releaseHandle(I item) {
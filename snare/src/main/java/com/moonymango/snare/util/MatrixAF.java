@@ -290,4 +290,28 @@ public class MatrixAF extends Matrix {
         MatrixAF.scaleM(toWorld, 0, sTmpMatA, 0, scale[0], scale[1], scale[2]);
     }
     
+    /**
+     * Same as {@link #local2World(float[], float[], float[], float[])} for 
+     * data at arbitrary offsets. Does not use temporary storage, so it may
+     * be called from any thread. toWorld must not overlap the inputs.
+     */
+    public static void local2World(float[] toWorld, int toWorldOffset, 
+            float[] position, int positionOffset, float[] scale, int scaleOffset, 
+            float[] rotation, int rotationOffset) {
+        // to-world = translation * rotation * scale
+        final float px = position[positionOffset];
+        final float py = position[positionOffset + 1];
+        final float pz = position[positionOffset + 2];
+        for (int c = 0; c < 4; c++) {
+            final int r = rotationOffset + c * 4;
+            final int o = toWorldOffset + c * 4;
+            final float sc = c < 3 ? scale[scaleOffset + c] : 1;
+            final float w = rotation[r + 3] * sc;
+            toWorld[o]     = rotation[r] * sc + px * w;
+            toWorld[o + 1] = rotation[r + 1] * sc + py * w;
+            toWorld[o + 2] = rotation[r + 2] * sc + pz * w;
+            toWorld[o + 3] = w;
+        }
+    }
+    
 }
@@ -0,0 +1,110 @@
+package com.moonymango.snare.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for multiple producers and a single consumer.
+ * Producers claim a slot by advancing the tail counter via CAS and publish
+ * the item by updating the slot's sequence number, so they never block each
+ * other or the consumer (see D. Vyukov's bounded MPMC queue).
+ *
+ * Only one thread at a time may call the consumer methods
+ * {@link #poll()} and {@link #getHead()}.
+ */
+public class MpscQueue<T> {
+
+    private final int mCapacity;
+    private final int mMask;
+    private final AtomicReferenceArray<T> mItems;
+    /**
+     * Sequence number of each slot. A slot is free for position p when its
+     * sequence equals p and contains a published item when it equals p + 1.
+     */
+    private final AtomicLongArray mSequences;
+    private final AtomicLong mTail = new AtomicLong();
+    /** Consumer position, only accessed by consumer thread. */
+    private long mHead;
+
+    /**
+     * @param capacity Max. number of items in queue, rounded up to the
+     *                 next power of two.
+     */
+    public MpscQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must not be less than 1.");
+        }
+        int c = 1;
+        while (c < capacity) {
+            c <<= 1;
+        }
+        mCapacity = c;
+        mMask = c - 1;
+        mItems = new AtomicReferenceArray<T>(c);
+        mSequences = new AtomicLongArray(c);
+        for (int i = 0; i < c; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds item to the queue. May be called from any thread.
+     * @param item Item, must not be null.
+     * @return True if item was added, false if queue is full.
+     */
+    public boolean offer(T item) {
+        long tail = mTail.get();
+        while (true) {
+            final int idx = (int) (tail & mMask);
+            final long diff = mSequences.get(idx) - tail;
+            if (diff == 0) {
+                if (mTail.compareAndSet(tail, tail + 1)) {
+                    mItems.lazySet(idx, item);
+                    // publish item to consumer
+                    mSequences.set(idx, tail + 1);
+                    return true;
+                }
+                tail = mTail.get();
+            } else if (diff < 0) {
+                // slot still holds item of previous round
+                return false;
+            } else {
+                // another producer claimed this slot
+                tail = mTail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the head item. Consumer thread only.
+     * @return Item or null in case queue is empty or the head item is
+     *      claimed but not yet published by its producer.
+     */
+    public T poll() {
+        final int idx = (int) (mHead & mMask);
+        if (mSequences.get(idx) != mHead + 1) {
+            return null;
+        }
+        final T item = mItems.get(idx);
+        mItems.lazySet(idx, null);
+        // free slot for next round
+        mSequences.set(idx, mHead + mCapacity);
+        mHead++;
+        return item;
+    }
+
+    /** Returns number of items taken by the consumer so far. Consumer thread only. */
+    public long getHead() {
+        return mHead;
+    }
+
+    /** Returns number of slots claimed by producers so far. */
+    public long getTail() {
+        return mTail.get();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+}
@@ -4,24 +4,90 @@ import com.moonymango.snare.game.BaseSnareClass;
 import com.moonymango.snare.game.IGame;
 import com.moonymango.snare.util.Logger.LogSource;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 
-
+/**
+ * Pool of reusable items. Besides handing out items, each pool keeps
+ * counters of obtained, outstanding and allocated items, which can be
+ * inspected via {@link #getPools(ArrayList)}. The number of allocated items
+ * may be limited by {@link #setMaxCapacity(int, OverflowPolicy)}.
+ *
+ * Items obtained but not recycled for some frames are reported as leaks,
+ * see {@link #onFrame(int)}.
+ */
 public abstract class Pool<T extends PoolItem> extends BaseSnareClass {
 
     //---------------------------------------------------------
     // static
     //---------------------------------------------------------
     private static final int DEFAULT_CAPACITY_INCREMENT = 20;
-    
+
+    private static final ArrayList<WeakReference<Pool<?>>> sPools = new ArrayList<>();
+    private static volatile int sFrame;
+    private static volatile int sLeakFrames;
+
+    /**
+     * Advances frame counter and reports items which are outstanding
+     * for more than the specified number of frames. Called once per frame
+     * by the game loop.
+     * @param leakFrames Number of frames, 0 to disable leak detection. Items
+     *          are tracked only while leak detection is enabled.
+     */
+    public static void onFrame(int leakFrames) {
+        final int frame = ++sFrame;
+        sLeakFrames = leakFrames;
+        if (leakFrames <= 0) {
+            return;
+        }
+        synchronized (sPools) {
+            for (int i = sPools.size() - 1; i >= 0; i--) {
+                final Pool<?> p = sPools.get(i).get();
+                if (p == null) {
+                    sPools.remove(i);
+                } else {
+                    p.checkLeaks(frame - leakFrames);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects all pools currently in use.
+     * @param out List to receive the pools.
+     */
+    public static void getPools(ArrayList<Pool<?>> out) {
+        synchronized (sPools) {
+            for (int i = sPools.size() - 1; i >= 0; i--) {
+                final Pool<?> p = sPools.get(i).get();
+                if (p == null) {
+                    sPools.remove(i);
+                } else {
+                    out.add(p);
+                }
+            }
+        }
+    }
+
     // ---------------------------------------------------------
     // fields
     // ---------------------------------------------------------
     private final ArrayList<T> mItems = new ArrayList<>();
     private final int mCapacityIncrement;
+    private int mMaxCapacity = Integer.MAX_VALUE;
+    private OverflowPolicy mOverflowPolicy = OverflowPolicy.GROW;
     
     private int mObtained = 0;
     private int mRecycled = 0;
+    private int mPeakOutstanding = 0;
+    private int mAllocated = 0;
+    private int mGrowCnt = 0;
+    private int mOverflowCnt = 0;
+    private int mLeakCnt = 0;
+
+    // outstanding items in order of obtain, only while leak detection is enabled
+    private PoolItem mOldest;
+    private PoolItem mNewest;
     
     
     // ---------------------------------------------------------
@@ -34,6 +100,24 @@ public abstract class Pool<T extends PoolItem> extends BaseSnareClass {
     
     
     public Pool(IGame game, int capacityIncrement)
+    {
+        this(game, capacityIncrement, true);
+    }
+    
+    /**
+     * @param preallocate False to skip allocation of the initial items, i.e.
+     *                    for pools which delegate to other pools.
+     */
+    protected Pool(IGame game, int capacityIncrement, boolean preallocate)
+    {
+        this(game, capacityIncrement, preallocate, true);
+    }
+
+    /**
+     * @param register False to hide pool from {@link #getPools(ArrayList)},
+     *                 i.e. for pools which are part of other pools.
+     */
+    Pool(IGame game, int capacityIncrement, boolean preallocate, boolean register)
     {
         super(game);
 
@@ -43,11 +127,13 @@ public abstract class Pool<T extends PoolItem> extends BaseSnareClass {
             mCapacityIncrement = capacityIncrement;
         }
         
-        for (int i = 0; i < mCapacityIncrement; i++) {
-            T item = allocatePoolItem();
-            if (item == null)
-                throw new IllegalStateException("allocatePoolItem() returned null.");
-            mItems.add(item);
+        if (preallocate) {
+            allocate(mCapacityIncrement);
+        }
+        if (register) {
+            synchronized (sPools) {
+                sPools.add(new WeakReference<Pool<?>>(this));
+            }
         }
     }
     
@@ -55,20 +141,47 @@ public abstract class Pool<T extends PoolItem> extends BaseSnareClass {
     // ---------------------------------------------------------
     // methods
     // ---------------------------------------------------------
+    /**
+     * Obtains an item. In case the pool is exhausted it grows, unless
+     * max. capacity is reached. The behaviour then depends on the
+     * {@link OverflowPolicy}.
+     * @return Item or null in case of {@link OverflowPolicy#RETURN_NULL}.
+     */
     public T obtain() {
         if (mItems.isEmpty()) {
-            for (int i = 0; i < mCapacityIncrement; i++) {
-                T item = allocatePoolItem();
-                if (item == null)
-                    throw new IllegalStateException("allocatePoolItem() returned null.");
-                mItems.add(item);
+            int cnt = Math.min(mCapacityIncrement, mMaxCapacity - mAllocated);
+            if (cnt <= 0) {
+                mOverflowCnt++;
+                switch (mOverflowPolicy) {
+                    case RETURN_NULL:
+                        return null;
+                    case THROW:
+                        throw new IllegalStateException(getName() + ": max. capacity of "
+                                + mMaxCapacity + " items exceeded.");
+                    default:
+                        if (mOverflowCnt == 1) {
+                            Logger.w(LogSource.UTILS, getName() + ": max. capacity of "
+                                    + mMaxCapacity + " items exceeded, growing anyway.");
+                        }
+                        cnt = mCapacityIncrement;
+                        break;
+                }
             }
+            allocate(cnt);
+            mGrowCnt++;
         }
             
         T item = mItems.remove(mItems.size()-1);
         item.mPool = this;
         item.mIsRecycled = false;
         mObtained++;
+        final int outstanding = mObtained - mRecycled;
+        if (outstanding > mPeakOutstanding) {
+            mPeakOutstanding = outstanding;
+        }
+        if (sLeakFrames > 0) {
+            track(item);
+        }
         return item;
     }
     
@@ -76,6 +189,9 @@ public abstract class Pool<T extends PoolItem> extends BaseSnareClass {
     public void recycle(PoolItem item) {
         if (item == null || item.mPool != this || item.mIsRecycled) return;
         item.mIsRecycled = true;
+        if (item.mTracked) {
+            untrack(item);
+        }
         mItems.add((T) item);
         mRecycled++;
         if (mRecycled > mObtained) {
@@ -83,10 +199,147 @@ public abstract class Pool<T extends PoolItem> extends BaseSnareClass {
             mObtained = mRecycled; 
         }
     }
+
+    /**
+     * Limits the number of items allocated by this pool.
+     * @param maxCapacity Max. number of items.
+     * @param policy Behaviour of {@link #obtain()} when pool is exhausted
+     *          and max. capacity is reached.
+     */
+    public void setMaxCapacity(int maxCapacity, OverflowPolicy policy) {
+        if (maxCapacity <= 0 || policy == null) {
+            throw new IllegalArgumentException("Invalid max. capacity or policy.");
+        }
+        mMaxCapacity = maxCapacity;
+        mOverflowPolicy = policy;
+    }
+
+    public int getMaxCapacity() {
+        return mMaxCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * Allocates items in advance, so that later calls to {@link #obtain()}
+     * do not need to allocate.
+     * @param cnt Number of items that should be available, limited
+     *          by max. capacity.
+     * @return Number of available items.
+     */
+    public int prewarm(int cnt) {
+        final int n = Math.min(cnt - mItems.size(), mMaxCapacity - mAllocated);
+        if (n > 0) {
+            allocate(n);
+        }
+        return mItems.size();
+    }
     
+    /** Number of items available without allocation. */
     public int getCapacity() {
         return mItems.size();
     }
+
+    /** Total number of calls to {@link #obtain()}. */
+    public int getObtainedCnt() {
+        return mObtained;
+    }
+
+    /** Number of items obtained but not recycled yet. */
+    public int getOutstandingCnt() {
+        return mObtained - mRecycled;
+    }
+
+    /** Max. number of outstanding items so far. */
+    public int getPeakOutstandingCnt() {
+        return mPeakOutstanding;
+    }
+
+    /** Number of items allocated by this pool. */
+    public int getAllocatedCnt() {
+        return mAllocated;
+    }
+
+    /** Number of times the pool had to grow when obtaining an item. */
+    public int getGrowCnt() {
+        return mGrowCnt;
+    }
+
+    /** Number of times the pool was exhausted at max. capacity. */
+    public int getOverflowCnt() {
+        return mOverflowCnt;
+    }
+
+    /** Number of outstanding items detected as leaks by last check. */
+    public int getLeakCnt() {
+        return mLeakCnt;
+    }
+
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Reports items obtained before or in the specified frame.
+     * @return Number of leaked items.
+     */
+    protected int checkLeaks(int frame) {
+        int cnt = 0;
+        PoolItem item = mOldest;
+        while (item != null && item.mObtainFrame <= frame) {
+            if (!item.mLeakReported) {
+                item.mLeakReported = true;
+                Logger.w(LogSource.UTILS, getName() + ": " + item.getClass().getSimpleName()
+                        + " obtained in frame " + item.mObtainFrame + " not recycled.");
+            }
+            cnt++;
+            item = item.mNextOutstanding;
+        }
+        mLeakCnt = cnt;
+        return cnt;
+    }
+
+    private void allocate(int cnt) {
+        for (int i = 0; i < cnt; i++) {
+            T item = allocatePoolItem();
+            if (item == null)
+                throw new IllegalStateException("allocatePoolItem() returned null.");
+            mItems.add(item);
+        }
+        mAllocated += cnt;
+    }
+
+    private void track(PoolItem item) {
+        item.mTracked = true;
+        item.mLeakReported = false;
+        item.mObtainFrame = sFrame;
+        item.mPrevOutstanding = mNewest;
+        item.mNextOutstanding = null;
+        if (mNewest != null) {
+            mNewest.mNextOutstanding = item;
+        } else {
+            mOldest = item;
+        }
+        mNewest = item;
+    }
+
+    private void untrack(PoolItem item) {
+        if (item.mPrevOutstanding != null) {
+            item.mPrevOutstanding.mNextOutstanding = item.mNextOutstanding;
+        } else {
+            mOldest = item.mNextOutstanding;
+        }
+        if (item.mNextOutstanding != null) {
+            item.mNextOutstanding.mPrevOutstanding = item.mPrevOutstanding;
+        } else {
+            mNewest = item.mPrevOutstanding;
+        }
+        item.mPrevOutstanding = null;
+        item.mNextOutstanding = null;
+        item.mTracked = false;
+    }
     
     protected abstract T allocatePoolItem();
     
@@ -97,5 +350,13 @@ public abstract class Pool<T extends PoolItem> extends BaseSnareClass {
     // ---------------------------------------------------------
     // classes + interfaces
     // ---------------------------------------------------------
-    
+    /** Behaviour of {@link #obtain()} when max. capacity is reached. */
+    public enum OverflowPolicy {
+        /** Allocate more items anyway, log a warning. */
+        GROW,
+        /** Return null. */
+        RETURN_NULL,
+        /** Throw {@link IllegalStateException}. */
+        THROW
+    }
 }
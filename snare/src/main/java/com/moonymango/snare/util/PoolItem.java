@@ -14,6 +14,13 @@ public abstract class PoolItem extends BaseSnareClass
     // ---------------------------------------------------------
     Pool<? extends PoolItem> mPool;
     boolean mIsRecycled = true;
+
+    // leak detection, see Pool
+    PoolItem mPrevOutstanding;
+    PoolItem mNextOutstanding;
+    int mObtainFrame;
+    boolean mTracked;
+    boolean mLeakReported;
     
     // ---------------------------------------------------------
     // constructors
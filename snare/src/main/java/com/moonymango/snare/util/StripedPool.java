@@ -0,0 +1,229 @@
+package com.moonymango.snare.util;
+
+import com.moonymango.snare.game.IGame;
+
+import java.util.ArrayList;
+
+/**
+ * Thread-safe pool. Items are distributed over several stripes, each of them
+ * a separate pool with its own monitor. A thread always obtains items from
+ * the stripe selected by its thread id, so threads obtaining items
+ * concurrently (e.g. ui thread and game thread) usually do not contend for
+ * the same monitor. Items return to the stripe they were obtained from, no
+ * matter which thread recycles them.
+ *
+ * Counters are the sums over all stripes, max. capacity and prewarming
+ * are split evenly between stripes.
+ */
+public abstract class StripedPool<T extends PoolItem> extends Pool<T> {
+
+    //---------------------------------------------------------
+    // static
+    //---------------------------------------------------------
+    private static final int DEFAULT_STRIPE_CNT = 4;
+
+    // ---------------------------------------------------------
+    // fields
+    // ---------------------------------------------------------
+    private final ArrayList<Stripe> mStripes = new ArrayList<>();
+    private final int mMask;
+
+    // ---------------------------------------------------------
+    // constructors
+    // ---------------------------------------------------------
+    public StripedPool(IGame game)
+    {
+        this(game, DEFAULT_STRIPE_CNT);
+    }
+
+    /**
+     * @param stripeCnt Number of stripes, rounded up to the next power of two.
+     */
+    public StripedPool(IGame game, int stripeCnt)
+    {
+        super(game, 0, false);
+        int n = 1;
+        while (n < stripeCnt) {
+            n <<= 1;
+        }
+        mMask = n - 1;
+        for (int i = 0; i < n; i++) {
+            mStripes.add(new Stripe(game));
+        }
+    }
+
+    // ---------------------------------------------------------
+    // methods
+    // ---------------------------------------------------------
+    public int getStripeCnt() {
+        return mStripes.size();
+    }
+
+    // ---------------------------------------------------------
+    // overrides
+    // ---------------------------------------------------------
+    @Override
+    public T obtain() {
+        final int idx = (int) Thread.currentThread().getId() & mMask;
+        return mStripes.get(idx).obtain();
+    }
+
+    @Override
+    public void recycle(PoolItem item) {
+        if (item == null || item.mPool == null) return;
+        // item knows its stripe
+        item.mPool.recycle(item);
+    }
+
+    @Override
+    public int getCapacity() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getCapacity();
+        }
+        return c;
+    }
+
+    @Override
+    public void setMaxCapacity(int maxCapacity, OverflowPolicy policy) {
+        super.setMaxCapacity(maxCapacity, policy);
+        final int n = mStripes.size();
+        for (int i = 0; i < n; i++) {
+            mStripes.get(i).setMaxCapacity((maxCapacity + n - 1) / n, policy);
+        }
+    }
+
+    @Override
+    public int prewarm(int cnt) {
+        final int n = mStripes.size();
+        int c = 0;
+        for (int i = 0; i < n; i++) {
+            c += mStripes.get(i).prewarm((cnt + n - 1) / n);
+        }
+        return c;
+    }
+
+    @Override
+    public int getObtainedCnt() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getObtainedCnt();
+        }
+        return c;
+    }
+
+    @Override
+    public int getOutstandingCnt() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getOutstandingCnt();
+        }
+        return c;
+    }
+
+    /** Sum of peaks of all stripes, may exceed actual peak. */
+    @Override
+    public int getPeakOutstandingCnt() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getPeakOutstandingCnt();
+        }
+        return c;
+    }
+
+    @Override
+    public int getAllocatedCnt() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getAllocatedCnt();
+        }
+        return c;
+    }
+
+    @Override
+    public int getGrowCnt() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getGrowCnt();
+        }
+        return c;
+    }
+
+    @Override
+    public int getOverflowCnt() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getOverflowCnt();
+        }
+        return c;
+    }
+
+    @Override
+    public int getLeakCnt() {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).getLeakCnt();
+        }
+        return c;
+    }
+
+    @Override
+    protected int checkLeaks(int frame) {
+        int c = 0;
+        for (int i = 0; i < mStripes.size(); i++) {
+            c += mStripes.get(i).checkLeaks(frame);
+        }
+        return c;
+    }
+
+    // ---------------------------------------------------------
+    // classes + interfaces
+    // ---------------------------------------------------------
+    private final class Stripe extends Pool<T> {
+
+        Stripe(IGame game)
+        {
+            super(game, 0, true, false);
+        }
+
+        @Override
+        public synchronized T obtain() {
+            return super.obtain();
+        }
+
+        @Override
+        public synchronized void recycle(PoolItem item) {
+            super.recycle(item);
+        }
+
+        @Override
+        public synchronized int getCapacity() {
+            return super.getCapacity();
+        }
+
+        @Override
+        public synchronized void setMaxCapacity(int maxCapacity, OverflowPolicy policy) {
+            super.setMaxCapacity(maxCapacity, policy);
+        }
+
+        @Override
+        public synchronized int prewarm(int cnt) {
+            return super.prewarm(cnt);
+        }
+
+        @Override
+        protected synchronized int checkLeaks(int frame) {
+            return super.checkLeaks(frame);
+        }
+
+        @Override
+        public String getName() {
+            return StripedPool.this.getName();
+        }
+
+        @Override
+        protected T allocatePoolItem() {
+            return StripedPool.this.allocatePoolItem();
+        }
+    }
+}